@@ -0,0 +1,116 @@
+package emissary.client.response;
+
+import emissary.directory.DirectoryEntry;
+
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+
+/**
+ * One change made to a directory, an entry added (or its cost changed) or an entry removed
+ */
+@XmlAccessorType(XmlAccessType.NONE)
+public class DirectoryChange implements Serializable {
+
+    private static final long serialVersionUID = -1808566322563817201L;
+
+    public static final String ADD = "add";
+    public static final String REMOVE = "remove";
+
+    @XmlElement(name = "op")
+    private String op;
+
+    @XmlElement(name = "key")
+    private String key;
+
+    @XmlElement(name = "description")
+    private String description;
+
+    @XmlElement(name = "cost")
+    private int cost;
+
+    @XmlElement(name = "quality")
+    private int quality;
+
+    // used by object mapper
+    public DirectoryChange() {}
+
+    public DirectoryChange(String op, DirectoryEntry entry) {
+        this.op = op;
+        this.key = entry.getKey();
+        if (ADD.equals(op)) {
+            this.description = entry.getDescription();
+            this.cost = entry.getCost();
+            this.quality = entry.getQuality();
+        }
+    }
+
+    public static DirectoryChange added(DirectoryEntry entry) {
+        return new DirectoryChange(ADD, entry);
+    }
+
+    public static DirectoryChange removed(DirectoryEntry entry) {
+        return new DirectoryChange(REMOVE, entry);
+    }
+
+    public boolean isAdd() {
+        return ADD.equals(op);
+    }
+
+    public boolean isRemove() {
+        return REMOVE.equals(op);
+    }
+
+    /**
+     * Build the entry that was added
+     */
+    public DirectoryEntry toEntry() {
+        return new DirectoryEntry(key, description, cost, quality);
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public void setOp(String op) {
+        this.op = op;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public void setCost(int cost) {
+        this.cost = cost;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public void setQuality(int quality) {
+        this.quality = quality;
+    }
+
+    @Override
+    public String toString() {
+        return op + " " + key;
+    }
+}
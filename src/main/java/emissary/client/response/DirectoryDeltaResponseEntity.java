@@ -0,0 +1,85 @@
+package emissary.client.response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The changes made to a directory since a point in its history. The point is given by the epoch of the directory, which
+ * is new each time it starts, and the sequence number of the last change seen. When the directory no longer remembers
+ * every change since then the response is not complete and the caller has to fall back to a full zone transfer, picking
+ * up from the epoch and sequence given here afterwards.
+ */
+@XmlRootElement(name = "delta")
+@XmlAccessorType(XmlAccessType.NONE)
+public class DirectoryDeltaResponseEntity extends BaseResponseEntity {
+
+    private static final long serialVersionUID = -4171669574718830462L;
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryDeltaResponseEntity.class);
+
+    @XmlElement(name = "epoch")
+    private String epoch;
+
+    @XmlElement(name = "sequence")
+    private long sequence;
+
+    @XmlElement(name = "complete")
+    private boolean complete;
+
+    @XmlElement(name = "changes")
+    private List<DirectoryChange> changes = new ArrayList<>();
+
+    // used by object mapper
+    public DirectoryDeltaResponseEntity() {}
+
+    public DirectoryDeltaResponseEntity(String epoch, long sequence, boolean complete, List<DirectoryChange> changes) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.complete = complete;
+        this.changes = changes;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(String epoch) {
+        this.epoch = epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    public List<DirectoryChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<DirectoryChange> changes) {
+        this.changes = changes;
+    }
+
+    @Override
+    public void dumpToConsole() {
+        logger.info("Directory epoch {} at {}, {} changes, complete={}", epoch, sequence, changes == null ? 0 : changes.size(), complete);
+    }
+}
@@ -3,11 +3,11 @@ package emissary.core;
 import emissary.core.channels.SeekableByteChannelFactory;
 import emissary.core.channels.SeekableByteChannelHelper;
 import emissary.directory.DirectoryEntry;
+import emissary.directory.DirectoryKey;
 import emissary.pickup.Priority;
 import emissary.util.ByteUtil;
 import emissary.util.PayloadUtil;
 
-import com.google.common.collect.LinkedListMultimap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
@@ -20,10 +20,12 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.rmi.Remote;
+import java.util.AbstractList;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -43,7 +45,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     public static final int MAX_BYTE_ARRAY_SIZE = Integer.MAX_VALUE - 8;
 
     /* Including this here make serialization of this object faster. */
-    private static final long serialVersionUID = 7362181964652092657L;
+    private static final long serialVersionUID = -4810672113406823317L;
 
     /* Actual data - migrate away from this towards byte channels. */
     protected byte[] theData;
@@ -88,7 +90,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     /**
      * Dynamic facets or metadata attributes of the data
      */
-    protected LinkedListMultimap<String, Object> parameters = LinkedListMultimap.create(100);
+    protected ParameterStore parameters = new ParameterStore();
 
     /**
      * If this file caused other agents to be sprouted, indicate how many
@@ -111,6 +113,32 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      */
     protected Map<String, byte[]> multipartAlternative = new TreeMap<>();
 
+    /**
+     * True while {@link #parameters} is shared with a clone and must be copied before it is changed
+     */
+    protected transient boolean parametersShared = false;
+
+    /**
+     * True while {@link #currentForm} is shared with a clone and must be copied before it is changed
+     */
+    protected transient boolean currentFormShared = false;
+
+    /**
+     * True while {@link #multipartAlternative} is shared with a clone and must be copied before it is changed
+     */
+    protected transient boolean alternateViewsShared = false;
+
+    /**
+     * True once a live map view of {@link #parameters} has been handed out, so it is copied rather than shared on clone
+     */
+    protected transient boolean parametersExposed = false;
+
+    /**
+     * True once a live view of {@link #multipartAlternative} has been handed out, so it is copied rather than shared on
+     * clone
+     */
+    protected transient boolean alternateViewsExposed = false;
+
     /**
      * Any header that goes along with the data
      */
@@ -378,13 +406,29 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
                 return theData;
             case CHANNEL_ONLY:
                 // Max size here is slightly less than the true max size to avoid memory issues
-                return SeekableByteChannelHelper.getByteArrayFromBdo(this, MAX_BYTE_ARRAY_SIZE);
+                final byte[] bytes = SeekableByteChannelHelper.getByteArrayFromBdo(this, MAX_BYTE_ARRAY_SIZE);
+                DataMaterialization.record(this, bytes.length);
+                return bytes;
             case NO_DATA:
             default:
                 return null; // NOSONAR maintains backwards compatibility
         }
     }
 
+    /**
+     * Get a read only view of a range of the data. Data held in a byte array is not copied.
+     */
+    @Override
+    public ByteBuffer getDataWindow(final long position, final int length) throws IOException {
+        if (getDataState() == DataState.BYTE_ARRAY_ONLY) {
+            Validate.isTrue(position >= 0 && length >= 0, "Required: position >= 0 and length >= 0");
+            final int start = (int) Math.min(position, this.theData.length);
+            final int end = (int) Math.min(this.theData.length, start + (long) length);
+            return ByteBuffer.wrap(this.theData, start, end - start).slice().asReadOnlyBuffer();
+        }
+        return IBaseDataObject.super.getDataWindow(position, length);
+    }
+
     /**
      * @see #setData(byte[], int, int)
      */
@@ -541,7 +585,12 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public void replaceCurrentForm(@Nullable final String form) {
-        this.currentForm.clear();
+        if (this.currentFormShared) {
+            this.currentForm = new ArrayList<>();
+            this.currentFormShared = false;
+        } else {
+            this.currentForm.clear();
+        }
         if (form != null) {
             pushCurrentForm(form);
         }
@@ -557,7 +606,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         if (this.currentForm.isEmpty()) {
             return null;
         } else {
-            return this.currentForm.remove(0);
+            return ownCurrentForm().remove(0);
         }
     }
 
@@ -569,8 +618,12 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
             return count;
         }
 
+        if (!this.currentForm.contains(form)) {
+            return count;
+        }
+
         // Remove all matching
-        for (final Iterator<String> i = this.currentForm.iterator(); i.hasNext();) {
+        for (final Iterator<String> i = ownCurrentForm().iterator(); i.hasNext();) {
             final String val = i.next();
             if (val.equals(form)) {
                 i.remove();
@@ -584,7 +637,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     public int deleteCurrentFormAt(final int i) {
         // Make sure its a legal position.
         if ((i >= 0) && (i < this.currentForm.size())) {
-            this.currentForm.remove(i);
+            ownCurrentForm().remove(i);
         }
         return this.currentForm.size();
     }
@@ -597,9 +650,9 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
         checkForAndLogDuplicates(newForm, "addCurrentFormAt");
         if (i < this.currentForm.size()) {
-            this.currentForm.add(i, newForm);
+            ownCurrentForm().add(i, newForm);
         } else {
-            this.currentForm.add(newForm);
+            ownCurrentForm().add(newForm);
         }
         return this.currentForm.size();
     }
@@ -611,7 +664,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         }
 
         checkForAndLogDuplicates(newForm, "enqueueCurrentForm");
-        this.currentForm.add(newForm);
+        ownCurrentForm().add(newForm);
         return this.currentForm.size();
     }
 
@@ -661,11 +714,22 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
             // If deleted, add it back on top
             if (count > 0) {
-                this.currentForm.add(0, curForm);
+                ownCurrentForm().add(0, curForm);
             }
         }
     }
 
+    /**
+     * Get the current form list for changing, copying it first if it is shared with a clone
+     */
+    private List<String> ownCurrentForm() {
+        if (this.currentFormShared) {
+            this.currentForm = new ArrayList<>(this.currentForm);
+            this.currentFormShared = false;
+        }
+        return this.currentForm;
+    }
+
     private void checkForAndLogDuplicates(String newForm, String method) {
         if (currentForm.contains(newForm)) {
             logger.info("Duplicate form {} being added through BaseDataObject.{}", newForm, method);
@@ -760,13 +824,13 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public DirectoryEntry getLastPlaceVisited() {
-        String entry = history.lastVisit();
+        DirectoryKey entry = history.lastVisitKey();
         return entry == null ? null : new DirectoryEntry(entry);
     }
 
     @Override
     public DirectoryEntry getPenultimatePlaceVisited() {
-        String entry = history.penultimateVisit();
+        DirectoryKey entry = history.penultimateVisitKey();
         return entry == null ? null : new DirectoryEntry(entry);
     }
 
@@ -782,7 +846,12 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public void clearParameters() {
-        this.parameters.clear();
+        if (this.parametersShared) {
+            this.parameters = new ParameterStore();
+            this.parametersShared = false;
+        } else {
+            this.parameters.clear();
+        }
     }
 
     @Override
@@ -799,7 +868,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public void setParameters(final Map<? extends String, ? extends Object> map) {
-        this.parameters.clear();
+        clearParameters();
         putParameters(map);
     }
 
@@ -821,12 +890,13 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
         final String n = dict != null ? dict.map(key) : key;
 
-        this.parameters.removeAll(n);
+        final ParameterStore params = ownParameters();
+        params.removeAll(n);
 
         if (val instanceof Iterable) {
-            this.parameters.putAll(n, (Iterable<?>) val);
+            params.putAll(n, (Iterable<?>) val);
         } else {
-            this.parameters.put(n, val);
+            params.put(n, val);
         }
     }
 
@@ -884,14 +954,15 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
                 continue;
             }
 
+            final ParameterStore params = ownParameters();
             final Object value = entry.getValue();
             if (value instanceof Iterable) {
                 for (final Object v : (Iterable<?>) value) {
                     if (policy == MergePolicy.KEEP_ALL || policy == MergePolicy.KEEP_EXISTING) {
-                        this.parameters.put(name, v);
+                        params.put(name, v);
                     } else if (policy == MergePolicy.DISTINCT) {
-                        if (!this.parameters.containsEntry(name, v)) {
-                            this.parameters.put(name, v);
+                        if (!params.containsEntry(name, v)) {
+                            params.put(name, v);
                         }
                     } else {
                         throw new RuntimeException("Unhandled parameter merge policy " + policy + " for " + name);
@@ -899,10 +970,10 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
                 }
             } else {
                 if (policy == MergePolicy.KEEP_ALL || policy == MergePolicy.KEEP_EXISTING) {
-                    this.parameters.put(name, value);
+                    params.put(name, value);
                 } else if (policy == MergePolicy.DISTINCT) {
-                    if (!this.parameters.containsEntry(name, value)) {
-                        this.parameters.put(name, value);
+                    if (!params.containsEntry(name, value)) {
+                        params.put(name, value);
                     }
                 } else {
                     throw new RuntimeException("Unhandled parameter merge policy " + policy + " for " + name);
@@ -914,18 +985,18 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     @Override
     public List<Object> getParameter(final String key) {
         // Try remapping
-        List<Object> v = null;
+        String n = key;
         try {
             final MetadataDictionary dict = MetadataDictionary.lookup();
-            v = this.parameters.get(dict.map(key));
+            n = dict.map(key);
         } catch (NamespaceException ex) {
             // Remapping not enabled
-            v = this.parameters.get(key);
         }
+        final List<Object> v = this.parameters.get(n);
         if ((v == null) || v.isEmpty()) {
             return null;
         }
-        return v;
+        return new ParameterValues(n);
     }
 
     @Override
@@ -933,10 +1004,10 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         // Try remapping
         try {
             final MetadataDictionary dict = MetadataDictionary.lookup();
-            this.parameters.put(dict.map(key), value);
+            ownParameters().put(dict.map(key), value);
         } catch (NamespaceException ex) {
             // Remapping not enabled
-            this.parameters.put(key, value);
+            ownParameters().put(key, value);
         }
     }
 
@@ -951,7 +1022,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
             // Remapping not enabled
         }
 
-        this.parameters.putAll(pkey, values);
+        ownParameters().putAll(pkey, values);
     }
 
     /**
@@ -979,7 +1050,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
             return false;
         }
 
-        this.parameters.put(n, value);
+        ownParameters().put(n, value);
         return true;
     }
 
@@ -996,35 +1067,25 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public String getStringParameter(final String key, final String sep) {
-        final List<Object> obj = getParameter(key);
-        if (obj == null) {
-            return null;
-        } else if (obj.isEmpty()) {
-            return null;
-        } else if ((obj.size() == 1) && (obj.get(0) instanceof String)) {
-            return (String) obj.get(0);
-        } else if ((obj.size() == 1) && (obj.get(0) == null)) {
-            return null;
-        } else {
-            final StringBuilder sb = new StringBuilder();
-            for (final Object item : obj) {
-                if (sb.length() > 0) {
-                    sb.append(sep);
-                }
-                sb.append(item);
-            }
-            return sb.toString();
+        // Try remapping
+        try {
+            final MetadataDictionary dict = MetadataDictionary.lookup();
+            return this.parameters.getString(dict.map(key), sep);
+        } catch (NamespaceException ex) {
+            // Remapping not enabled
+            return this.parameters.getString(key, sep);
         }
     }
 
     /**
-     * Retrieve all the metadata elements of this object This method returns possibly mapped metadata element names
+     * Retrieve all the metadata elements of this object This method returns possibly mapped metadata element names. The map
+     * is live.
      *
      * @return map of metadata elements
      */
     @Override
     public Map<String, Collection<Object>> getParameters() {
-        return this.parameters.asMap();
+        return exposeParameters().asMap();
     }
 
     /**
@@ -1041,17 +1102,161 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public Set<String> getParameterKeys() {
-        return this.parameters.keySet();
+        return new ParameterKeys();
     }
 
     @Override
     public List<Object> deleteParameter(final String key) {
         try {
             final MetadataDictionary dict = MetadataDictionary.lookup();
-            return this.parameters.removeAll(dict.map(key));
+            return removeParameter(dict.map(key));
         } catch (NamespaceException ex) {
             // Renaming not enabled
-            return this.parameters.removeAll(key);
+            return removeParameter(key);
+        }
+    }
+
+    private List<Object> removeParameter(final String key) {
+        if (this.parametersShared && !this.parameters.containsKey(key)) {
+            return Collections.emptyList();
+        }
+        return ownParameters().removeAll(key);
+    }
+
+    /**
+     * Get the metadata for changing, copying it first if it is shared with a clone
+     */
+    private ParameterStore ownParameters() {
+        if (this.parametersShared) {
+            this.parameters = new ParameterStore(this.parameters);
+            this.parametersShared = false;
+        }
+        return this.parameters;
+    }
+
+    /**
+     * Get the metadata for handing out live views of it, after which it is copied rather than shared on clone
+     */
+    private ParameterStore exposeParameters() {
+        this.parametersExposed = true;
+        return ownParameters();
+    }
+
+    /**
+     * Live list of the values of one key. Reads go to whichever store this payload holds at the time and writes copy it
+     * first if it is shared, so handing one out does not stop the metadata being shared on a later clone.
+     */
+    private final class ParameterValues extends AbstractList<Object> {
+        private final String key;
+
+        ParameterValues(final String key) {
+            this.key = key;
+        }
+
+        @Override
+        public Object get(final int index) {
+            return values(index).get(index);
+        }
+
+        @Override
+        public int size() {
+            final List<Object> v = BaseDataObject.this.parameters.get(this.key);
+            return v == null ? 0 : v.size();
+        }
+
+        @Override
+        public Object set(final int index, @Nullable final Object element) {
+            values(index);
+            return ownParameters().get(this.key).set(index, element);
+        }
+
+        @Override
+        public void add(final int index, @Nullable final Object element) {
+            final ParameterStore store = ownParameters();
+            final List<Object> v = store.get(this.key);
+            if (v != null) {
+                v.add(index, element);
+            } else if (index == 0) {
+                store.put(this.key, element);
+            } else {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+            }
+            this.modCount++;
+        }
+
+        @Override
+        public Object remove(final int index) {
+            values(index);
+            final Object old = ownParameters().get(this.key).remove(index);
+            this.modCount++;
+            return old;
+        }
+
+        private List<Object> values(final int index) {
+            final List<Object> v = BaseDataObject.this.parameters.get(this.key);
+            if (v == null) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+            }
+            return v;
+        }
+    }
+
+    /**
+     * Live set of the metadata keys, sharing the store on clone in the same way as {@link ParameterValues}
+     */
+    private final class ParameterKeys extends AbstractSet<String> {
+        @Override
+        public int size() {
+            return BaseDataObject.this.parameters.keySet().size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return BaseDataObject.this.parameters.keySet().contains(o);
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            ownParameters().removeAll((String) o);
+            return true;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            final ParameterStore store = BaseDataObject.this.parameters;
+            final Iterator<String> it = store.keySet().iterator();
+            return new Iterator<String>() {
+                @Nullable
+                private String last;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    this.last = it.next();
+                    return this.last;
+                }
+
+                @Override
+                public void remove() {
+                    if (this.last == null) {
+                        throw new IllegalStateException();
+                    }
+                    if (store == BaseDataObject.this.parameters && !BaseDataObject.this.parametersShared) {
+                        it.remove();
+                    } else {
+                        // the store being walked is shared, so the key goes from our own copy instead
+                        ownParameters().removeAll(this.last);
+                    }
+                    this.last = null;
+                }
+            };
         }
     }
 
@@ -1266,9 +1471,9 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         }
 
         if (data == null) {
-            this.multipartAlternative.remove(mappedName);
+            ownAlternateViews().remove(mappedName);
         } else {
-            this.multipartAlternative.put(mappedName, data);
+            ownAlternateViews().put(mappedName, data);
         }
     }
 
@@ -1283,11 +1488,11 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         }
 
         if (data == null || length <= 0) {
-            this.multipartAlternative.remove(mappedName);
+            ownAlternateViews().remove(mappedName);
         } else {
             final byte[] mpa = new byte[length];
             System.arraycopy(data, offset, mpa, 0, length);
-            this.multipartAlternative.put(mappedName, mpa);
+            ownAlternateViews().put(mappedName, mpa);
         }
     }
 
@@ -1309,6 +1514,18 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      */
     @Override
     public Map<String, byte[]> getAlternateViews() {
+        this.alternateViewsExposed = true;
+        return ownAlternateViews();
+    }
+
+    /**
+     * Get the alternate view map for changing, copying it first if it is shared with a clone
+     */
+    private Map<String, byte[]> ownAlternateViews() {
+        if (this.alternateViewsShared) {
+            this.multipartAlternative = new TreeMap<>(this.multipartAlternative);
+            this.alternateViewsShared = false;
+        }
         return this.multipartAlternative;
     }
 
@@ -1361,7 +1578,9 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     }
 
     /**
-     * Clone this payload
+     * Clone this payload. The current forms, metadata and alternate views are shared with the clone and copied by whichever
+     * side changes them first, so the cost of a clone does not grow with the amount of metadata. Metadata or views already
+     * handed out as live maps are copied at once.
      */
     @Override
     public IBaseDataObject clone() throws CloneNotSupportedException {
@@ -1374,9 +1593,8 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
             c.setChannelFactory(this.seekableByteChannelFactory);
         }
 
-        c.currentForm = new ArrayList<>(this.currentForm);
+        shareMetadataWith(c);
         c.history = new TransformHistory(this.history);
-        c.multipartAlternative = new HashMap<>(this.multipartAlternative);
         c.priority = this.priority;
         c.creationTimestamp = this.creationTimestamp;
 
@@ -1386,12 +1604,42 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
                 c.addExtractedRecord(r.clone());
             }
         }
-        // This creates a deep copy Guava style
-        c.parameters = LinkedListMultimap.create(this.parameters);
 
         return c;
     }
 
+    /**
+     * Hand the current forms, metadata and alternate views to another payload, marking both sides to copy before changing
+     * them. Metadata or views that a caller may still be changing through a live map are copied instead of shared.
+     *
+     * @param target the payload to share with
+     */
+    void shareMetadataWith(final BaseDataObject target) {
+        this.currentFormShared = true;
+        target.currentForm = this.currentForm;
+        target.currentFormShared = true;
+
+        if (this.parametersExposed) {
+            target.parameters = new ParameterStore(this.parameters);
+            target.parametersShared = false;
+        } else {
+            this.parametersShared = true;
+            target.parameters = this.parameters;
+            target.parametersShared = true;
+        }
+        target.parametersExposed = false;
+
+        if (this.alternateViewsExposed) {
+            target.multipartAlternative = new TreeMap<>(this.multipartAlternative);
+            target.alternateViewsShared = false;
+        } else {
+            this.alternateViewsShared = true;
+            target.multipartAlternative = this.multipartAlternative;
+            target.alternateViewsShared = true;
+        }
+        target.alternateViewsExposed = false;
+    }
+
     @Override
     public Date getCreationTimestamp() {
         return this.creationTimestamp;
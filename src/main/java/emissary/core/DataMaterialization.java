@@ -0,0 +1,116 @@
+package emissary.core;
+
+import emissary.directory.DirectoryKey;
+
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps count of the places that pull channel backed data onto the heap by calling {@link IBaseDataObject#data()}, and
+ * how many bytes they pull. Places near the top of the list are the ones to move to
+ * {@link IBaseDataObject#newDataInputStream()}, {@link IBaseDataObject#readData(long, java.nio.ByteBuffer)} or
+ * {@link IBaseDataObject#getDataWindow(long, int)}.
+ *
+ * <p>
+ * The place is taken from the last entry of the transform history, which is the place being visited while it runs.
+ */
+public final class DataMaterialization {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataMaterialization.class);
+
+    /** Prefix of the metrics kept per place when a registry is set */
+    public static final String METRIC_PREFIX = "DataMaterialization.";
+
+    /** Name used when the data is pulled outside of any place */
+    public static final String NO_PLACE = "none";
+
+    private static final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    @Nullable
+    private static volatile MetricRegistry registry;
+
+    private DataMaterialization() {}
+
+    /**
+     * Also report to a metric registry, as <code>DataMaterialization.&lt;place&gt;.bytes</code> and <code>.count</code>
+     *
+     * @param metricRegistry the registry to report to
+     */
+    public static void registerMetrics(final MetricRegistry metricRegistry) {
+        registry = metricRegistry;
+    }
+
+    /**
+     * Note that a payload's data was pulled onto the heap
+     *
+     * @param ibdo the payload, used to find the place doing it
+     * @param bytes the number of bytes pulled
+     */
+    public static void record(final IBaseDataObject ibdo, final long bytes) {
+        final DirectoryKey place = ibdo.getTransformHistory().lastVisitKey();
+        final String placeName = place == null ? NO_PLACE : place.getServiceClassname();
+        record(placeName, bytes);
+        logger.debug("{} materialized {} bytes of {}", placeName, bytes, ibdo.shortName());
+    }
+
+    /**
+     * Note that a place pulled data onto the heap
+     *
+     * @param placeName the place that did it
+     * @param bytes the number of bytes pulled
+     */
+    public static void record(final String placeName, final long bytes) {
+        stats.computeIfAbsent(placeName, k -> new Stats()).add(bytes);
+        final MetricRegistry metrics = registry;
+        if (metrics != null) {
+            metrics.counter(METRIC_PREFIX + placeName + ".count").inc();
+            metrics.counter(METRIC_PREFIX + placeName + ".bytes").inc(bytes);
+        }
+    }
+
+    /**
+     * Get the number of times each place pulled data onto the heap
+     *
+     * @return place name to count, ordered by place name
+     */
+    public static Map<String, Long> getCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        stats.forEach((k, v) -> counts.put(k, v.count.sum()));
+        return counts;
+    }
+
+    /**
+     * Get the number of bytes each place pulled onto the heap
+     *
+     * @return place name to bytes, ordered by place name
+     */
+    public static Map<String, Long> getBytes() {
+        final Map<String, Long> bytes = new TreeMap<>();
+        stats.forEach((k, v) -> bytes.put(k, v.bytes.sum()));
+        return bytes;
+    }
+
+    /**
+     * Forget everything counted so far
+     */
+    public static void reset() {
+        stats.clear();
+    }
+
+    private static final class Stats {
+        final LongAdder count = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+
+        void add(final long n) {
+            count.increment();
+            bytes.add(n);
+        }
+    }
+}
@@ -13,8 +13,13 @@ import org.slf4j.MDC;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
 /**
@@ -32,6 +37,19 @@ public class HDMobileAgent extends MobileAgent {
     // What we carry around with us
     protected List<IBaseDataObject> payloadList = Collections.synchronizedList(new ArrayList<IBaseDataObject>());
 
+    // Runs sprouted siblings in parallel when set
+    protected transient SiblingProcessor siblingProcessor = null;
+
+    // True for a worker carrying siblings for another agent, it stops short of drop off
+    private boolean holdForDropOff = false;
+
+    // The agent a sibling worker carries siblings for
+    @Nullable
+    private transient HDMobileAgent siblingParent = null;
+
+    // Numbers the sibling workers so each has a name of its own
+    private final transient AtomicInteger siblingWorkers = new AtomicInteger();
+
     /**
      * Still have the uncaught exception handler but not really in a true ThreadGroup
      */
@@ -47,6 +65,55 @@ public class HDMobileAgent extends MobileAgent {
         logger.debug("Constructed HD agent {}", threadName);
     }
 
+    /**
+     * Constructor for the factory, a reusable HD Agent that runs on the executor
+     */
+    public HDMobileAgent(final String agentName, final Executor executor) {
+        super(agentName, executor);
+        logger.debug("Constructed HD agent {} on an executor", agentName);
+    }
+
+    /**
+     * Constructor for a worker that carries a batch of siblings for another agent
+     *
+     * @param parent the agent that sprouted the siblings
+     */
+    protected HDMobileAgent(final HDMobileAgent parent) {
+        super(parent, parent.getName() + "-sibling-" + parent.siblingWorkers.incrementAndGet());
+        this.siblingProcessor = parent.siblingProcessor;
+        this.siblingParent = parent;
+        this.holdForDropOff = true;
+    }
+
+    /**
+     * Get the agent this one carries siblings for
+     *
+     * @return the agent being helped or null if this is not a sibling worker
+     */
+    @Nullable
+    public HDMobileAgent getSiblingParent() {
+        return this.siblingParent;
+    }
+
+    /**
+     * Set the processor used to run sprouted siblings in parallel
+     *
+     * @param processor the processor or null to process siblings one after another
+     */
+    public void setSiblingProcessor(@Nullable final SiblingProcessor processor) {
+        this.siblingProcessor = processor;
+    }
+
+    /**
+     * Get the processor used to run sprouted siblings in parallel
+     *
+     * @return the processor or null if siblings are processed one after another
+     */
+    @Nullable
+    public SiblingProcessor getSiblingProcessor() {
+        return this.siblingProcessor;
+    }
+
     /**
      * Override getPayload to just return the first on list or null
      */
@@ -260,7 +327,11 @@ public class HDMobileAgent extends MobileAgent {
 
                     // Add any sprouts collected from the payloads
                     if (sprouts.size() > 0) {
-                        addPayload(sprouts);
+                        if (this.siblingProcessor != null && this.siblingProcessor.shouldFork(sprouts.size())) {
+                            addPayload(processSiblings(currentPlace, sprouts));
+                        } else {
+                            addPayload(sprouts);
+                        }
                     }
                 }
             }
@@ -271,8 +342,9 @@ public class HDMobileAgent extends MobileAgent {
             nextKeyRecorded = false;
 
             // Defer IO phase for now if there are attachments to process
-            // and we aren't already in the io phase
-            if ((newEntry != null) && (payloadCount() > 1) && "IO".equals(newEntry.getServiceType())
+            // and we aren't already in the io phase. A sibling worker always
+            // defers, the agent it works for does the drop off for everyone
+            if ((newEntry != null) && (payloadCount() > 1 || this.holdForDropOff) && "IO".equals(newEntry.getServiceType())
                     && !"IO".equals(currentPlace.getDirectoryEntry().getServiceType())) {
                 logger.debug("Deferring IO Phase place for {}", newEntry);
                 newEntry = null;
@@ -325,7 +397,7 @@ public class HDMobileAgent extends MobileAgent {
             }
 
             // Reset drop off if we deferred it above and found nothing better
-            if (newEntry == null && haveDropOffFor > -1) {
+            if (newEntry == null && haveDropOffFor > -1 && !this.holdForDropOff) {
                 // Pull entry to top
                 if (haveDropOffFor != 0) {
                     switchPrimaryPayload(haveDropOffFor);
@@ -371,11 +443,84 @@ public class HDMobileAgent extends MobileAgent {
 
         // If null we are completely finished, otherwise we
         // should just be moving to another machine
-        if (newEntry == null) {
+        if (newEntry == null && !this.holdForDropOff) {
             logAgentCompletion();
         }
     }
 
+    /**
+     * Carry sprouted siblings through their itineraries in parallel, in batches, each batch on its own worker agent. The
+     * workers stop when only drop off is left, so the whole family still arrives at the IO place together.
+     *
+     * @param place the place that sprouted them
+     * @param sprouts the new payloads
+     * @return the sprouts and anything they sprouted, in sprout order
+     */
+    protected List<IBaseDataObject> processSiblings(final IServiceProviderPlace place, final List<IBaseDataObject> sprouts) {
+        logger.debug("Processing {} siblings from {} in parallel", sprouts.size(), place);
+        return this.siblingProcessor.process(sprouts, batch -> createSiblingWorker().carrySiblings(place, batch));
+    }
+
+    /**
+     * Create the worker agent that carries a batch of siblings for this one. Subclasses that change how the itinerary is
+     * run should return one of their own.
+     *
+     * @return the new worker
+     */
+    protected HDMobileAgent createSiblingWorker() {
+        return new HDMobileAgent(this);
+    }
+
+    /**
+     * Carry a batch of siblings through their itineraries on the current thread, up to drop off. The worker is bound in the
+     * namespace and the thread takes its name while doing so, since places look up the agent they are working for by thread
+     * name.
+     *
+     * @param place the place that sprouted them
+     * @param batch the siblings to work on
+     * @return the batch in its original order followed by anything sprouted along the way
+     */
+    protected List<IBaseDataObject> carrySiblings(final IServiceProviderPlace place, final List<IBaseDataObject> batch) {
+        final Thread current = Thread.currentThread();
+        final String threadName = current.getName();
+        final Map<String, String> context = MDC.getCopyOfContextMap();
+        this.thread = current;
+        current.setName(getName());
+        Namespace.bind(getName(), this);
+        try {
+            addPayload(batch);
+            final IBaseDataObject first = getPayload();
+            MDC.put(MDCConstants.SHORT_NAME, first.shortName());
+            setParallelTrackingInfoFor(first);
+            agentControl(place);
+        } catch (Throwable problem) {
+            logger.error("Problem carrying {} siblings from {}", batch.size(), place, problem);
+        } finally {
+            Namespace.unbind(getName());
+            this.thread = null;
+            current.setName(threadName);
+            Thread.interrupted();
+            if (context == null) {
+                MDC.clear();
+            } else {
+                MDC.setContextMap(context);
+            }
+        }
+
+        // the places may have reordered the list, put the siblings back in sprout order
+        final Set<IBaseDataObject> seen = Collections.newSetFromMap(new IdentityHashMap<IBaseDataObject, Boolean>());
+        seen.addAll(batch);
+        final List<IBaseDataObject> result = new ArrayList<>(batch);
+        synchronized (this) {
+            for (final IBaseDataObject p : this.payloadList) {
+                if (!seen.contains(p)) {
+                    result.add(p);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Make the payload at the specified index the new primary one and reset the logger context to the new value
      * 
@@ -582,7 +727,7 @@ public class HDMobileAgent extends MobileAgent {
      */
     @Override
     public void interrupt() {
-        this.thread.interrupt();
+        interruptThread(false);
     }
 
     /**
@@ -1,9 +1,12 @@
 package emissary.core;
 
 import emissary.core.channels.SeekableByteChannelFactory;
+import emissary.core.channels.SeekableByteChannelHelper;
 import emissary.directory.DirectoryEntry;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Date;
@@ -82,6 +85,44 @@ public interface IBaseDataObject {
      */
     int dataLength();
 
+    /**
+     * Read from a position in the data without bringing the rest of it onto the heap
+     * 
+     * @param position where in the data to start reading
+     * @param dst buffer to fill with as much data as fits
+     * @return the number of bytes read, or -1 if the position is at or past the end of the data
+     * @throws IOException if the data could not be read
+     */
+    default int readData(final long position, final ByteBuffer dst) throws IOException {
+        final SeekableByteChannelFactory sbcf = getChannelFactory();
+        return sbcf == null ? -1 : SeekableByteChannelHelper.read(sbcf, position, dst);
+    }
+
+    /**
+     * Get a read only view of a range of the data, copying only that range at most
+     * 
+     * @param position where in the data the window starts
+     * @param length most bytes the window holds, fewer if the data ends first
+     * @return the window, positioned at zero
+     * @throws IOException if the data could not be read
+     */
+    default ByteBuffer getDataWindow(final long position, final int length) throws IOException {
+        final SeekableByteChannelFactory sbcf = getChannelFactory();
+        return sbcf == null ? ByteBuffer.allocate(0) : SeekableByteChannelHelper.window(sbcf, position, length);
+    }
+
+    /**
+     * Open a stream over the data that reads ahead from the channel, the preferred way to scan data from start to end
+     * instead of calling {@link #data()}
+     * 
+     * @return the stream, which the caller must close
+     * @throws IOException if the data could not be opened
+     */
+    default InputStream newDataInputStream() throws IOException {
+        final SeekableByteChannelFactory sbcf = getChannelFactory();
+        return sbcf == null ? new ByteArrayInputStream(new byte[0]) : SeekableByteChannelHelper.newInputStream(sbcf);
+    }
+
     /**
      * Set the header byte array
      * 
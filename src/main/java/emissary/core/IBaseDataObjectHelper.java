@@ -48,16 +48,21 @@ public final class IBaseDataObjectHelper {
             bdo.setChannelFactory(sbcf);
         }
 
-        bdo.replaceCurrentForm(null);
-        final List<String> allCurrentForms = iBaseDataObject.getAllCurrentForms();
-        for (int i = 0; i < allCurrentForms.size(); i++) {
-            bdo.enqueueCurrentForm(allCurrentForms.get(i));
+        if (iBaseDataObject instanceof BaseDataObject) {
+            // copied when either side changes them
+            ((BaseDataObject) iBaseDataObject).shareMetadataWith(bdo);
+        } else {
+            bdo.replaceCurrentForm(null);
+            final List<String> allCurrentForms = iBaseDataObject.getAllCurrentForms();
+            for (int i = 0; i < allCurrentForms.size(); i++) {
+                bdo.enqueueCurrentForm(allCurrentForms.get(i));
+            }
+            bdo.putParameters(iBaseDataObject.getParameters());
+            for (final Map.Entry<String, byte[]> entry : iBaseDataObject.getAlternateViews().entrySet()) {
+                bdo.addAlternateView(entry.getKey(), entry.getValue());
+            }
         }
         bdo.setHistory(iBaseDataObject.getTransformHistory());
-        bdo.putParameters(iBaseDataObject.getParameters());
-        for (final Map.Entry<String, byte[]> entry : iBaseDataObject.getAlternateViews().entrySet()) {
-            bdo.addAlternateView(entry.getKey(), entry.getValue());
-        }
         bdo.setPriority(iBaseDataObject.getPriority());
         bdo.setCreationTimestamp((Date) iBaseDataObject.getCreationTimestamp().clone());
         if (iBaseDataObject.getExtractedRecords() != null) {
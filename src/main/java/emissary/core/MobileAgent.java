@@ -1,6 +1,7 @@
 package emissary.core;
 
 import emissary.directory.DirectoryEntry;
+import emissary.directory.DirectoryKey;
 import emissary.directory.DirectoryPlace;
 import emissary.directory.KeyManipulator;
 import emissary.log.MDCConstants;
@@ -20,6 +21,8 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 
@@ -38,7 +41,14 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
     protected static final Logger probeLogger = LoggerFactory.getLogger(MobileAgent.class.getPackage().toString() + ".PROBE");
 
     // The thread we plan to run on (we are autonomous, in a limited sense)
-    protected transient Thread thread = null;
+    // or the thread we borrowed from the executor while running on one
+    protected transient volatile Thread thread = null;
+
+    // Where we run our itinerary when we do not own a thread
+    protected transient Executor executor = null;
+
+    // Our name, matches the name of our own thread if we have one
+    private final String agentName;
 
     // Name for our threads
     public static final String AGENT_THREAD = "MobileAgent-";
@@ -97,6 +107,7 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
      */
     public MobileAgent(final ThreadGroup threadGroup, final String threadName) {
         logger.debug("Constructing agent {}", threadName);
+        this.agentName = threadName;
         this.thread = new Thread(threadGroup, this, threadName);
         this.thread.setPriority(Thread.NORM_PRIORITY);
         this.thread.setDaemon(true);
@@ -105,21 +116,57 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
         JMXUtil.registerMBean(this);
     }
 
+    /**
+     * Create a new reusable Agent that does not own a thread. Each payload handed over with <em>go</em> or <em>arrive</em>
+     * is processed as a task on the executor.
+     *
+     * @param agentName symbolic name for this agent
+     * @param executor where the itinerary is run
+     */
+    public MobileAgent(final String agentName, final Executor executor) {
+        logger.debug("Constructing agent {} on {}", agentName, executor);
+        this.agentName = agentName;
+        this.executor = executor;
+
+        JMXUtil.registerMBean(this);
+    }
+
+    /**
+     * Create a helper that works on part of another agent's payload from whatever thread calls it. It takes the ID and
+     * limits of the agent it helps, and is never pooled.
+     *
+     * @param parent the agent being helped
+     * @param agentName a name of its own, so the helper can be told apart from the agent it helps
+     */
+    protected MobileAgent(final MobileAgent parent, final String agentName) {
+        this.agentName = agentName;
+        this.agentID = parent.agentID;
+        this.MAX_MOVE_ERRORS = parent.MAX_MOVE_ERRORS;
+        this.MAX_ITINERARY_STEPS = parent.MAX_ITINERARY_STEPS;
+        this.moveErrorsOccurred = parent.moveErrorsOccurred;
+    }
+
     /**
      * Report this agents name for logging purposes
      */
     @Override
     public String getName() {
-        return this.thread.getName();
+        return this.agentName;
     }
 
     /**
      * Runnable interface, starts this agent running on it's own thread. It will wait unless it has a payload and a place to
      * start with. You can set both of these items at once using the <em>go</em> method, which will then notify us to come
-     * out of the wait state and process the payload
+     * out of the wait state and process the payload.
+     *
+     * When the agent runs on an executor this is the task that processes the current payload, there is no waiting.
      */
     @Override
     public void run() {
+        if (this.executor != null) {
+            runTask();
+            return;
+        }
         logger.debug("Starting the 'run' loop");
         synchronized (this) {
             while (!this.timeToQuit) {
@@ -139,24 +186,70 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
                 // Thread.yield();
 
                 if (isInUse()) {
-                    logger.debug("Starting work for {}", agentID());
-                    MDC.put(MDCConstants.SHORT_NAME, getPayload().shortName());
-                    try {
-                        agentControl(this.arrivalPlace);
-                    } catch (Throwable throwable) {
-                        logger.error("Problem with agent", throwable);
-                    } finally {
-                        // prevent an interrupted thread from returning the agent
-                        if (!this.timeToQuit) {
-                            agentReturn();
-                            MDC.clear(); // clear all MDC context
-                        }
-                    }
+                    runItinerary();
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the itinerary of one payload on a thread borrowed from the executor. The thread is only ours until the payload is
+     * done, so leave it the way we found it. Places find their agent by thread name, so the thread carries our name while
+     * it works for us.
+     */
+    private void runTask() {
+        final Thread current = Thread.currentThread();
+        final String threadName = current.getName();
+        synchronized (this) {
+            this.thread = current;
+        }
+        current.setName(this.agentName);
+        try {
+            if (isInUse() && !this.timeToQuit) {
+                runItinerary();
+            }
+        } finally {
+            synchronized (this) {
+                // we may already be running the next payload elsewhere
+                if (this.thread == current) {
+                    this.thread = null;
                 }
             }
+            // don't leave an interrupt, name or logging context on the pooled thread
+            current.setName(threadName);
+            Thread.interrupted();
+            MDC.clear();
         }
     }
 
+    /**
+     * Process the current payload and return to the pool
+     */
+    protected void runItinerary() {
+        logger.debug("Starting work for {}", agentID());
+        MDC.put(MDCConstants.SHORT_NAME, getPayload().shortName());
+        try {
+            agentControl(this.arrivalPlace);
+        } catch (Throwable throwable) {
+            logger.error("Problem with agent", throwable);
+        } finally {
+            // prevent an interrupted thread from returning the agent
+            if (!this.timeToQuit) {
+                agentReturn();
+                MDC.clear(); // clear all MDC context
+            }
+        }
+    }
+
+    /**
+     * Report whether this agent runs its itinerary on an executor rather than on its own thread
+     *
+     * @return true if there is an executor
+     */
+    public boolean isExecutorBacked() {
+        return this.executor != null;
+    }
+
     /**
      * Call this method to permanently stop the running thread when we finish what we are doing
      */
@@ -177,13 +270,29 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
         logger.debug("killAgentAsync called on {}", getName());
         this.timeToQuit = true;
         try {
-            this.thread.setPriority(Thread.MIN_PRIORITY);
-            this.thread.interrupt();
+            interruptThread(true);
         } catch (Exception ignored) {
             // empty catch block
         }
     }
 
+    /**
+     * Interrupt the thread the agent is running on, if any. A thread borrowed from an executor is interrupted only while it
+     * is working for us.
+     *
+     * @param lowerPriority true to also drop the priority of a thread we own
+     */
+    protected void interruptThread(final boolean lowerPriority) {
+        final Thread t = this.thread;
+        if (t == null) {
+            return;
+        }
+        if (lowerPriority && this.executor == null) {
+            t.setPriority(Thread.MIN_PRIORITY);
+        }
+        t.interrupt();
+    }
+
     /**
      * Report whether we are busy or not
      */
@@ -515,8 +624,9 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
             for (String form : dataForms) {
 
                 // Test a full key form to see if it is the correct stage to be chosen
-                if (KeyManipulator.isKeyComplete(form)) {
-                    if (KeyManipulator.getServiceType(form).equals(stageName)) {
+                final DirectoryKey formKey = DirectoryKey.of(form);
+                if (formKey.isComplete()) {
+                    if (formKey.getServiceType().equals(stageName)) {
                         logger.debug("Choosing cur form {} in stage {}", form, stageName);
                         payloadArg.pullFormToTop(form);
                         return new DirectoryEntry(form);
@@ -730,7 +840,17 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
 
         // the run() loop now takes over on the agent's thread and we return
         // control of the currentThread to the caller of this method
-        notifyAll();
+        if (this.executor == null) {
+            notifyAll();
+            return;
+        }
+
+        try {
+            this.executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            this.idle.set(true);
+            throw e;
+        }
     }
 
     /**
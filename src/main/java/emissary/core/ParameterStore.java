@@ -0,0 +1,438 @@
+package emissary.core;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Metadata container for {@link BaseDataObject}. Keys keep the order they were first added in and may hold several
+ * values each.
+ *
+ * <p>
+ * Values for a key are held in a small array rather than a node per value, and key strings are interned so the many
+ * payloads that carry the same metadata names share one copy. The joined string form of the values is kept until the
+ * values change, so repeated calls to {@link BaseDataObject#getStringParameter(String)} do not rebuild it.
+ *
+ * <p>
+ * Like the multimap it replaces, the value lists handed out are live: changing them changes the store.
+ */
+public final class ParameterStore implements Serializable {
+
+    private static final long serialVersionUID = -3367440651658437720L;
+
+    private static final Interner<String> keyInterner = Interners.newWeakInterner();
+
+    private final LinkedHashMap<String, Values> entries;
+
+    /**
+     * Create an empty store
+     */
+    public ParameterStore() {
+        this.entries = new LinkedHashMap<>();
+    }
+
+    /**
+     * Create a store holding a copy of the keys and values of another. The values themselves are not copied.
+     *
+     * @param other the store to copy
+     */
+    public ParameterStore(final ParameterStore other) {
+        this.entries = Maps.newLinkedHashMapWithExpectedSize(other.entries.size());
+        for (final Map.Entry<String, Values> e : other.entries.entrySet()) {
+            this.entries.put(e.getKey(), new Values(this, e.getKey(), e.getValue()));
+        }
+    }
+
+    /**
+     * Report whether the key has any values
+     */
+    public boolean containsKey(final String key) {
+        return this.entries.containsKey(key);
+    }
+
+    /**
+     * Report whether the key has the value
+     */
+    public boolean containsEntry(final String key, @Nullable final Object value) {
+        final Values v = this.entries.get(key);
+        return v != null && v.contains(value);
+    }
+
+    /**
+     * Get the values of a key
+     *
+     * @param key the key to look up
+     * @return the live list of values or null if there are none
+     */
+    @Nullable
+    public List<Object> get(final String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * Get the values of a key joined into a string
+     *
+     * @param key the key to look up
+     * @param sep what to put between values
+     * @return the joined values, the only value if it is a string, or null if there are none
+     */
+    @Nullable
+    public String getString(final String key, final String sep) {
+        final Values v = this.entries.get(key);
+        return v == null ? null : v.join(sep);
+    }
+
+    /**
+     * Add a value to a key
+     */
+    public void put(final String key, @Nullable final Object value) {
+        valuesFor(key).add(value);
+    }
+
+    /**
+     * Add several values to a key
+     */
+    public void putAll(final String key, final Iterable<?> values) {
+        final Values v = values.iterator().hasNext() ? valuesFor(key) : null;
+        if (v != null) {
+            for (final Object value : values) {
+                v.add(value);
+            }
+        }
+    }
+
+    /**
+     * Remove every value of a key
+     *
+     * @param key the key to remove
+     * @return a read only list of the values removed, empty if there were none
+     */
+    public List<Object> removeAll(final String key) {
+        final Values v = this.entries.remove(key);
+        if (v == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(v.toArray()));
+    }
+
+    /**
+     * Remove everything
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Report whether there are no keys
+     */
+    public boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    /**
+     * The keys in the order they were added. Removing a key from the set removes its values.
+     */
+    public Set<String> keySet() {
+        return this.entries.keySet();
+    }
+
+    /**
+     * View the store as a map from key to values. Like the multimap it replaces, keys can be removed through the map but
+     * not added, and the value lists are live.
+     */
+    public Map<String, Collection<Object>> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * View the store as a map from key to values that cannot be changed through the map or the lists
+     */
+    public Map<String, Collection<Object>> asReadOnlyMap() {
+        return Collections.unmodifiableMap(Maps.transformValues(this.entries, Collections::unmodifiableList));
+    }
+
+    private Values valuesFor(final String key) {
+        Values v = this.entries.get(key);
+        if (v == null) {
+            final String interned = keyInterner.intern(key);
+            v = new Values(this, interned);
+            this.entries.put(interned, v);
+        }
+        return v;
+    }
+
+    /**
+     * Map view of the store that can remove keys but not add them
+     */
+    private final class MapView extends AbstractMap<String, Collection<Object>> {
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        @Nullable
+        public Collection<Object> get(final Object key) {
+            return entries.get(key);
+        }
+
+        @Override
+        @Nullable
+        public Collection<Object> remove(final Object key) {
+            return entries.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            entries.clear();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return entries.keySet();
+        }
+
+        @Override
+        public Set<Map.Entry<String, Collection<Object>>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Collection<Object>>>() {
+                @Override
+                public Iterator<Map.Entry<String, Collection<Object>>> iterator() {
+                    final Iterator<Map.Entry<String, Values>> i = entries.entrySet().iterator();
+                    return new Iterator<Map.Entry<String, Collection<Object>>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return i.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, Collection<Object>> next() {
+                            final Map.Entry<String, Values> e = i.next();
+                            return Maps.immutableEntry(e.getKey(), e.getValue());
+                        }
+
+                        @Override
+                        public void remove() {
+                            i.remove();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return (o instanceof ParameterStore) && this.entries.equals(((ParameterStore) o).entries);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.entries.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.entries.toString();
+    }
+
+    /**
+     * The values of one key, kept in an array and removed from the store when the last one goes. Not marked RandomAccess,
+     * like the multimap lists it replaces, since serializers pick list handling from that and then reuse it for the other
+     * collection types that JsonOutputFilter puts in its place.
+     */
+    static final class Values extends AbstractList<Object> implements Serializable {
+
+        private static final long serialVersionUID = 3106526391569466123L;
+
+        private static final Object[] EMPTY = new Object[0];
+
+        private final ParameterStore owner;
+        private final String key;
+        private Object[] items;
+        private int size;
+
+        @Nullable
+        private transient String joined;
+        @Nullable
+        private transient String joinedSep;
+
+        Values(final ParameterStore owner, final String key) {
+            this.owner = owner;
+            this.key = key;
+            this.items = EMPTY;
+        }
+
+        Values(final ParameterStore owner, final String key, final Values other) {
+            this.owner = owner;
+            this.key = key;
+            this.items = Arrays.copyOf(other.items, other.size);
+            this.size = other.size;
+            this.joined = other.joined;
+            this.joinedSep = other.joinedSep;
+        }
+
+        @Override
+        public Object get(final int index) {
+            checkIndex(index);
+            return this.items[index];
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public Object set(final int index, @Nullable final Object element) {
+            checkIndex(index);
+            final Object old = this.items[index];
+            this.items[index] = element;
+            changed();
+            return old;
+        }
+
+        @Override
+        public boolean add(@Nullable final Object element) {
+            final Values target = attached();
+            target.insert(target.size, element);
+            return true;
+        }
+
+        @Override
+        public void add(final int index, @Nullable final Object element) {
+            final boolean detached = this.owner.entries.get(this.key) != this;
+            final Values target = attached();
+            // a list handed out before its key was removed has no position to keep, so it appends
+            target.insert(detached ? target.size : index, element);
+        }
+
+        /**
+         * Get the list that additions to this one belong in. A list handed out before its key was removed goes back in the
+         * store, starting empty, unless the key has values again in which case those are added to instead.
+         */
+        private Values attached() {
+            final Values current = this.owner.entries.get(this.key);
+            if (current == this) {
+                return this;
+            }
+            if (current != null) {
+                return current;
+            }
+            if (this.size > 0) {
+                Arrays.fill(this.items, 0, this.size, null);
+                this.size = 0;
+                this.modCount++;
+                changed();
+            }
+            this.owner.entries.put(this.key, this);
+            return this;
+        }
+
+        private void insert(final int index, @Nullable final Object element) {
+            if (index < 0 || index > this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            }
+            if (this.size == this.items.length) {
+                this.items = Arrays.copyOf(this.items, this.size < 2 ? this.size + 1 : this.size + (this.size >> 1));
+            }
+            System.arraycopy(this.items, index, this.items, index + 1, this.size - index);
+            this.items[index] = element;
+            this.size++;
+            this.modCount++;
+            changed();
+        }
+
+        @Override
+        public Object remove(final int index) {
+            checkIndex(index);
+            final Object old = this.items[index];
+            System.arraycopy(this.items, index + 1, this.items, index, this.size - index - 1);
+            this.items[--this.size] = null;
+            this.modCount++;
+            changed();
+            if (this.size == 0) {
+                this.owner.entries.remove(this.key, this);
+            }
+            return old;
+        }
+
+        private void checkIndex(final int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            }
+        }
+
+        private void changed() {
+            this.joined = null;
+            this.joinedSep = null;
+        }
+
+        /**
+         * Join the values with a separator, reusing the last result when the separator and values are unchanged
+         */
+        @Nullable
+        String join(final String sep) {
+            if (this.size == 0) {
+                return null;
+            }
+            if (this.size == 1) {
+                final Object only = this.items[0];
+                if (only == null || only instanceof String) {
+                    return (String) only;
+                }
+            }
+            if (this.joined != null && sep.equals(this.joinedSep)) {
+                return this.joined;
+            }
+
+            final StringBuilder sb = new StringBuilder();
+            boolean immutable = true;
+            for (int i = 0; i < this.size; i++) {
+                final Object item = this.items[i];
+                if (sb.length() > 0) {
+                    sb.append(sep);
+                }
+                sb.append(item);
+                immutable &= isImmutable(item);
+            }
+            final String result = sb.toString();
+            // a mutable value such as a StringBuilder could change without us knowing
+            if (immutable) {
+                this.joined = result;
+                this.joinedSep = sep;
+            }
+            return result;
+        }
+
+        private static boolean isImmutable(@Nullable final Object item) {
+            return item == null || item instanceof String || item instanceof Integer || item instanceof Long || item instanceof Boolean
+                    || item instanceof Double || item instanceof Float || item instanceof Short || item instanceof Byte
+                    || item instanceof Character;
+        }
+    }
+}
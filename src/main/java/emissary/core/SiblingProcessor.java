@@ -0,0 +1,151 @@
+package emissary.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs batches of sibling payloads at the same time on a fork join pool. An {@link HDMobileAgent} that has one hands
+ * the children sprouted at a place to it, and each batch is carried through its itinerary by a worker agent, up to the
+ * point of drop off. The results come back in the order the batches were handed over, so the family still reaches
+ * {@link emissary.place.IServiceProviderPlace#agentProcessHeavyDuty(List)} at drop off together and in the order the
+ * children were sprouted.
+ *
+ * <p>
+ * Configured in AgentPool.cfg with <code>agent.sibling.parallel</code>, <code>agent.sibling.parallelism</code>,
+ * <code>agent.sibling.threshold</code> and <code>agent.sibling.batch</code>.
+ */
+public class SiblingProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiblingProcessor.class);
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    private final ForkJoinPool pool;
+
+    private final int threshold;
+
+    private final int batchSize;
+
+    /**
+     * Create a processor with its own pool of worker threads
+     *
+     * @param parallelism number of sibling batches run at once, 0 or less for the number of processors
+     * @param threshold smallest number of siblings worth running in parallel
+     * @param batchSize number of siblings carried by each worker
+     */
+    public SiblingProcessor(final int parallelism, final int threshold, final int batchSize) {
+        this.threshold = Math.max(2, threshold);
+        this.batchSize = Math.max(1, batchSize);
+        final int size = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        final String prefix = "SiblingWorker-" + POOL_COUNTER.getAndIncrement() + "-";
+        final AtomicInteger counter = new AtomicInteger();
+        final ForkJoinPool.ForkJoinWorkerThreadFactory factory = p -> {
+            final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName(prefix + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+        this.pool = new ForkJoinPool(size, factory, null, false);
+        logger.info("Running sibling payloads in parallel with parallelism {}, threshold {} and batch size {}", size, this.threshold,
+                this.batchSize);
+    }
+
+    /**
+     * Report whether this many siblings should be split up
+     *
+     * @param count the number of siblings
+     * @return true if there are enough to make more than one batch and at least the threshold
+     */
+    public boolean shouldFork(final int count) {
+        return count >= this.threshold && count > this.batchSize;
+    }
+
+    /**
+     * Split the siblings into batches and run each one
+     *
+     * @param siblings the payloads to process
+     * @param worker processes one batch and returns the payloads it ends up with
+     * @return the results of each batch, in batch order
+     */
+    public List<IBaseDataObject> process(final List<IBaseDataObject> siblings,
+            final Function<List<IBaseDataObject>, List<IBaseDataObject>> worker) {
+        final List<BatchTask> tasks = new ArrayList<>();
+        for (int i = 0; i < siblings.size(); i += this.batchSize) {
+            tasks.add(new BatchTask(siblings.subList(i, Math.min(siblings.size(), i + this.batchSize)), worker));
+        }
+        final RecursiveTask<List<IBaseDataObject>> all = new RecursiveTask<List<IBaseDataObject>>() {
+            private static final long serialVersionUID = 4618374417021624367L;
+
+            @Override
+            protected List<IBaseDataObject> compute() {
+                ForkJoinTask.invokeAll(tasks);
+                final List<IBaseDataObject> results = new ArrayList<>(siblings.size());
+                for (final BatchTask task : tasks) {
+                    results.addAll(task.join());
+                }
+                return results;
+            }
+        };
+        // a worker forking its own children stays on the pool rather than blocking a thread on it
+        if (ForkJoinTask.getPool() == this.pool) {
+            return all.invoke();
+        }
+        return this.pool.invoke(all);
+    }
+
+    /**
+     * Get the number of batches that can run at once
+     */
+    public int getParallelism() {
+        return this.pool.getParallelism();
+    }
+
+    /**
+     * Get the smallest number of siblings that are run in parallel
+     */
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    /**
+     * Get the number of siblings carried by each worker
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Stop the worker threads, batches already running are interrupted
+     */
+    public void shutdown() {
+        this.pool.shutdownNow();
+    }
+
+    private static final class BatchTask extends RecursiveTask<List<IBaseDataObject>> {
+        private static final long serialVersionUID = -2021905166432913866L;
+
+        private final transient List<IBaseDataObject> batch;
+        private final transient Function<List<IBaseDataObject>, List<IBaseDataObject>> worker;
+
+        BatchTask(final List<IBaseDataObject> batch, final Function<List<IBaseDataObject>, List<IBaseDataObject>> worker) {
+            this.batch = batch;
+            this.worker = worker;
+        }
+
+        @Override
+        protected List<IBaseDataObject> compute() {
+            final List<IBaseDataObject> result = this.worker.apply(new ArrayList<>(this.batch));
+            return result == null ? Collections.<IBaseDataObject>emptyList() : result;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package emissary.core;
 
+import emissary.directory.DirectoryEntry;
+import emissary.directory.PlaceLoad;
 import emissary.place.IServiceProviderPlace;
 
 import com.codahale.metrics.Timer;
@@ -22,6 +24,9 @@ public class TimedResource implements AutoCloseable {
     private final long allowedDuration;
     private final String placeName;
     private final long started;
+    private final long startedNanos;
+    // service location the place load is recorded under, null if none
+    private final String loadKey;
 
     private final Timer.Context timerContext;
 
@@ -32,6 +37,8 @@ public class TimedResource implements AutoCloseable {
     private TimedResource() {
         isClosed = true;
         started = -1;
+        startedNanos = -1;
+        loadKey = null;
         allowedDuration = -1;
         agent = null;
         payloadCount = -1;
@@ -46,7 +53,12 @@ public class TimedResource implements AutoCloseable {
         this.placeName = place.getPlaceName();
         this.timerContext = timer.time();
         this.allowedDuration = allowedDuration;
-
+        final DirectoryEntry entry = place.getDirectoryEntry();
+        this.loadKey = entry == null ? null : entry.getServiceLocation();
+        this.startedNanos = System.nanoTime();
+        if (this.loadKey != null) {
+            PlaceLoad.started(this.loadKey);
+        }
     }
 
     // checks the state of the current place, returns true if it's closed
@@ -84,6 +96,9 @@ public class TimedResource implements AutoCloseable {
                 return;
             }
             timerContext.stop();
+            if (loadKey != null) {
+                PlaceLoad.finished(loadKey, System.nanoTime() - startedNanos);
+            }
             isClosed = true;
         } finally {
             lock.unlock();
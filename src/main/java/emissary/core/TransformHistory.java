@@ -1,5 +1,6 @@
 package emissary.core;
 
+import emissary.directory.DirectoryKey;
 import emissary.directory.KeyManipulator;
 import emissary.place.IServiceProviderPlace;
 
@@ -114,12 +115,18 @@ public class TransformHistory {
      * @return last place visited
      */
     public String lastVisit() {
-        List<String> historyList = get();
-        final int sz = historyList.size();
-        if (sz == 0) {
-            return null;
-        }
-        return historyList.get(sz - 1);
+        final History h = visit(0);
+        return h == null ? null : h.getKey();
+    }
+
+    /**
+     * Get the parsed key of the last place visited (does not include places visited during coordination)
+     *
+     * @return parsed key of the last place visited
+     */
+    public DirectoryKey lastVisitKey() {
+        final History h = visit(0);
+        return h == null ? null : h.getDirectoryKey();
     }
 
     /**
@@ -128,12 +135,35 @@ public class TransformHistory {
      * @return second-to-last place visited
      */
     public String penultimateVisit() {
-        List<String> historyList = get();
-        final int sz = historyList.size();
-        if (sz < 2) {
-            return null;
+        final History h = visit(1);
+        return h == null ? null : h.getKey();
+    }
+
+    /**
+     * Get the parsed key of the second-to-last place visited (does not include places visited during coordination)
+     *
+     * @return parsed key of the second-to-last place visited
+     */
+    public DirectoryKey penultimateVisitKey() {
+        final History h = visit(1);
+        return h == null ? null : h.getDirectoryKey();
+    }
+
+    /**
+     * Walk back from the most recent visit skipping coordinated places
+     *
+     * @param back how many non-coordinated visits to step back over, 0 for the last visit
+     * @return the history entry or null if there are not enough visits
+     */
+    private History visit(final int back) {
+        int remaining = back;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            final History h = history.get(i);
+            if (!h.wasCoordinated() && remaining-- == 0) {
+                return h;
+            }
         }
-        return historyList.get(sz - 2);
+        return null;
     }
 
     /**
@@ -142,8 +172,8 @@ public class TransformHistory {
      * @return true is place has been visited
      */
     public boolean hasVisited(final String pattern) {
-        for (final String historyValue : get()) {
-            if (KeyManipulator.gmatch(historyValue, pattern)) {
+        for (final History h : history) {
+            if (!h.wasCoordinated() && KeyManipulator.gmatch(h.getKey(), pattern)) {
                 return true;
             }
         }
@@ -156,12 +186,11 @@ public class TransformHistory {
      * @return true if not yet started
      */
     public boolean beforeStart() {
-        List<String> historyList = get();
-        if (historyList.isEmpty()) {
+        final History h = visit(0);
+        if (h == null) {
             return true;
         }
-        final String s = historyList.get(historyList.size() - 1);
-        return s.contains(IServiceProviderPlace.SPROUT_KEY);
+        return h.getKey().contains(IServiceProviderPlace.SPROUT_KEY);
     }
 
     @Override
@@ -176,6 +205,7 @@ public class TransformHistory {
     public static class History {
         String key;
         boolean coordinated;
+        transient DirectoryKey directoryKey;
 
         /**
          * Needed to support Kryo deserialization
@@ -195,6 +225,18 @@ public class TransformHistory {
             return key;
         }
 
+        /**
+         * Get the parsed form of the history key
+         *
+         * @return the parsed key
+         */
+        public DirectoryKey getDirectoryKey() {
+            if (directoryKey == null) {
+                directoryKey = DirectoryKey.of(key);
+            }
+            return directoryKey;
+        }
+
         public String getKeyNoUrl() {
             return StringUtils.substringBefore(key, ".http");
         }
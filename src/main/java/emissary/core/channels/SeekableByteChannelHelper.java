@@ -7,9 +7,11 @@ import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Path;
 
@@ -19,6 +21,11 @@ import java.nio.file.Path;
 public final class SeekableByteChannelHelper {
     private static final Logger logger = LoggerFactory.getLogger(SeekableByteChannelHelper.class);
 
+    /**
+     * Default number of bytes read ahead by streams from {@link #newInputStream(SeekableByteChannelFactory)}
+     */
+    public static final int DEFAULT_READ_AHEAD = 64 * 1024;
+
     private SeekableByteChannelHelper() {}
 
     /**
@@ -114,6 +121,82 @@ public final class SeekableByteChannelHelper {
         }
     }
 
+    /**
+     * Read from a position in the data into a buffer, filling as much of the buffer as the data allows.
+     * 
+     * @param sbcf to get the data from
+     * @param position where in the data to start reading
+     * @param dst buffer to read into
+     * @return the number of bytes read, or -1 if the position is at or past the end of the data
+     * @throws IOException if the data could not be read
+     */
+    public static int read(final SeekableByteChannelFactory sbcf, final long position, final ByteBuffer dst) throws IOException {
+        Validate.notNull(sbcf, "Required: sbcf not null");
+        Validate.notNull(dst, "Required: dst not null");
+        Validate.isTrue(position >= 0, "Required: position >= 0");
+
+        try (final SeekableByteChannel sbc = sbcf.create()) {
+            if (position >= sbc.size()) {
+                return -1;
+            }
+            sbc.position(position);
+            return IOUtils.read(sbc, dst);
+        }
+    }
+
+    /**
+     * Get a read only copy of a range of the data in a heap buffer
+     * 
+     * @param sbcf to get the data from
+     * @param position where in the data the window starts
+     * @param length most bytes the window holds, fewer if the data ends first
+     * @return the window, positioned at zero
+     * @throws IOException if the data could not be read
+     */
+    public static ByteBuffer window(final SeekableByteChannelFactory sbcf, final long position, final int length) throws IOException {
+        Validate.notNull(sbcf, "Required: sbcf not null");
+        Validate.isTrue(position >= 0, "Required: position >= 0");
+        Validate.isTrue(length >= 0, "Required: length >= 0");
+
+        try (final SeekableByteChannel sbc = sbcf.create()) {
+            final int available = (int) Math.max(0L, Math.min(length, sbc.size() - position));
+            final ByteBuffer buff = ByteBuffer.allocate(available);
+            if (available > 0) {
+                sbc.position(position);
+                IOUtils.readFully(sbc, buff);
+            }
+            buff.flip();
+            return buff.asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Open a stream to read the data from start to end, reading ahead by {@link #DEFAULT_READ_AHEAD} bytes.
+     * 
+     * @param sbcf to get the data from
+     * @return the stream, which the caller must close
+     * @throws IOException if the data could not be opened
+     */
+    public static InputStream newInputStream(final SeekableByteChannelFactory sbcf) throws IOException {
+        return newInputStream(sbcf, DEFAULT_READ_AHEAD);
+    }
+
+    /**
+     * Open a stream to read the data from start to end. Each read from the channel fetches the given number of bytes so
+     * small reads by the caller do not each go to the underlying storage.
+     * 
+     * @param sbcf to get the data from
+     * @param readAhead number of bytes to fetch at a time
+     * @return the stream, which the caller must close
+     * @throws IOException if the data could not be opened
+     */
+    public static InputStream newInputStream(final SeekableByteChannelFactory sbcf, final int readAhead) throws IOException {
+        Validate.notNull(sbcf, "Required: sbcf not null");
+        Validate.isTrue(readAhead > 0, "Required: readAhead > 0");
+
+        return new BufferedInputStream(Channels.newInputStream(sbcf.create()), readAhead);
+    }
+
     /**
      * Provided with an existing input stream, check how far we can read into it.
      * 
@@ -130,6 +130,15 @@ public class DirectoryEntry implements Serializable {
         setKey(key);
     }
 
+    /**
+     * Create an entry from an already parsed key
+     *
+     * @param key the parsed key to use
+     */
+    public DirectoryEntry(final DirectoryKey key) {
+        setKey(key);
+    }
+
     /**
      * Make an entry from parts, specifying expense
      * 
@@ -319,14 +328,23 @@ public class DirectoryEntry implements Serializable {
      * @param key the key
      */
     protected void setKey(final String key) {
-        this.theKey = KeyManipulator.removeExpense(key);
-        this.serviceType = KeyManipulator.getServiceType(this.theKey);
-        this.serviceName = KeyManipulator.getServiceName(this.theKey);
-        this.dataType = KeyManipulator.getDataType(key);
-        this.dataID = this.dataType + KeyManipulator.DATAIDSEPARATOR + this.serviceType;
-        this.serviceLocation = KeyManipulator.getServiceLocation(key);
-        this.serviceHostURL = KeyManipulator.getServiceHostURL(key);
-        final int exp = KeyManipulator.getExpense(key, -1);
+        setKey(DirectoryKey.of(key));
+    }
+
+    /**
+     * Set key from the already parsed form and precompute stuff we need
+     *
+     * @param key the parsed key
+     */
+    protected void setKey(final DirectoryKey key) {
+        this.theKey = key.getKey();
+        this.serviceType = key.getServiceType();
+        this.serviceName = key.getServiceName();
+        this.dataType = key.getDataType();
+        this.dataID = key.getDataID();
+        this.serviceLocation = key.getServiceLocation();
+        this.serviceHostURL = key.getServiceHostURL();
+        final int exp = key.getExpense(-1);
         if (exp > -1) {
             setCQEFromExp(exp);
         }
@@ -4,15 +4,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 
 /**
  * Keep a map of DataID to DirectoryEntryList for the Directory Extensible to use other things for the key if desired,
  * just override the methods that figure out the key automatically from the DirectoryEntry or DirectoryEntryList.
+ *
+ * <p>
+ * Wildcard queries are narrowed with secondary indexes from service host, service type and service name to the DataIDs
+ * that have entries with them, so a query such as all the entries on one host only looks at the lists that can hold a
+ * match. The indexes are kept up when entries come and go through this map, and a DataID leaves an index when its last
+ * entry with that host, type or name does.
  */
 public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryList> {
 
@@ -27,6 +40,22 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
     /** Value of SHALLOW_COPY flag */
     public static final boolean SHALLOW_COPY = false;
 
+    /** DataIDs by the service host of their entries */
+    private final ConcurrentHashMap<String, Set<String>> hostIndex = new ConcurrentHashMap<>();
+
+    /** DataIDs by the service type of their entries */
+    private final ConcurrentHashMap<String, Set<String>> typeIndex = new ConcurrentHashMap<>();
+
+    /** DataIDs by the service name of their entries */
+    private final ConcurrentHashMap<String, Set<String>> nameIndex = new ConcurrentHashMap<>();
+
+    /** Moves on with every change made through the map */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** Wildcard results built from this map, see {@link WildcardEntry#getWildcardedEntry(String, DirectoryEntryMap)} */
+    @Nullable
+    private transient volatile WildcardCache wildcardCache;
+
     /**
      * No arg ctor supplies our tuned defaults to the super ctor
      */
@@ -101,15 +130,21 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      * @param d the entry to add
      */
     protected void addEntry(final String key, final DirectoryEntry d) {
-        DirectoryEntryList list = get(key);
-
-        if (list == null) {
-            list = new DirectoryEntryList();
-            put(key, list);
+        final int beforeSize;
+        final int afterSize;
+        synchronized (this.hostIndex) {
+            index(key, d);
+            DirectoryEntryList list = get(key);
+
+            if (list == null) {
+                list = new DirectoryEntryList();
+                put(key, list);
+            }
+            beforeSize = list.size();
+            list.add(d);
+            afterSize = list.size();
         }
-        final int beforeSize = list.size();
-        list.add(d);
-        final int afterSize = list.size();
+        markChanged();
 
         if (logger.isDebugEnabled()) {
             // This check could be wrong since nothing is synchronized.
@@ -185,24 +220,32 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      */
     protected DirectoryEntry removeEntry(final String key, final String entryKey) {
         DirectoryEntry removed = null;
-        final DirectoryEntryList list = get(key);
-        if (list != null) {
-            // NB: cannot remove from DirectoryEntryList through iterator
-            for (int i = 0; i < list.size(); i++) {
-                final DirectoryEntry entry = list.get(i);
-                if (entry.getKey().equals(entryKey)) {
-                    removed = entry;
-                    list.remove(i);
-                    break;
+        synchronized (this.hostIndex) {
+            final DirectoryEntryList list = get(key);
+            if (list != null) {
+                // NB: cannot remove from DirectoryEntryList through iterator
+                for (int i = 0; i < list.size(); i++) {
+                    final DirectoryEntry entry = list.get(i);
+                    if (entry.getKey().equals(entryKey)) {
+                        removed = entry;
+                        list.remove(i);
+                        break;
+                    }
                 }
-            }
 
-            // Remove the mapping if it is empty
-            if (list.size() == 0) {
-                this.remove(key);
+                // Remove the mapping if it is empty
+                if (list.size() == 0) {
+                    this.remove(key);
+                }
+            }
+            if (removed != null) {
+                unindex(key, Collections.singletonList(removed));
             }
         }
 
+        if (removed != null) {
+            markChanged();
+        }
         return removed;
     }
 
@@ -226,13 +269,14 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      */
     public List<DirectoryEntry> removeAllMatching(final String key, final long checkpoint) {
         final List<DirectoryEntry> removed = new ArrayList<>();
+        final GlobMatcher matcher = GlobMatcher.compile(key);
 
-        for (final DirectoryEntryList list : values()) {
+        for (final DirectoryEntryList list : candidateLists(key)) {
             // NB: cannot remove from DirectoryEntryList through iterator
             // Need to mark and sweep
             for (int i = 0; i < list.size(); i++) {
                 final DirectoryEntry entry = list.get(i);
-                if (KeyManipulator.gmatch(entry.getKey(), key) && entry.getAge() < checkpoint) {
+                if (matcher.matches(entry.getKey()) && entry.getAge() < checkpoint) {
                     removed.add(entry);
                 }
             }
@@ -252,7 +296,7 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      * @return list of all entries removed
      */
     public List<DirectoryEntry> removeAllOnDirectory(final String key) {
-        // Wildcard the key so we can just use gmatch
+        // Wildcard the key so we can just pattern match
         final String wckey = KeyManipulator.getHostMatchKey(key);
         return removeAllMatching(wckey);
     }
@@ -265,7 +309,7 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      * @return list of all entries removed
      */
     public List<DirectoryEntry> removeAllOnDirectory(final String key, final long checkpoint) {
-        // Wildcard the key so we can just use gmatch
+        // Wildcard the key so we can just pattern match
         final String wckey = KeyManipulator.getHostMatchKey(key);
         return removeAllMatching(wckey, checkpoint);
     }
@@ -278,23 +322,12 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      */
     public List<DirectoryEntry> collectAllMatching(final String key) {
         final List<DirectoryEntry> match = new ArrayList<>();
+        final GlobMatcher matcher = GlobMatcher.compile(key);
 
-        final String dataId = KeyManipulator.getDataID(key);
-        if (dataId.contains("*") || dataId.contains("?")) {
-            for (final DirectoryEntryList list : values()) {
-                for (final DirectoryEntry entry : list) {
-                    if (KeyManipulator.gmatch(entry.getKey(), key)) {
-                        match.add(entry);
-                    }
-                }
-            }
-        } else {
-            final DirectoryEntryList list = this.get(dataId);
-            if (list != null) {
-                for (final DirectoryEntry entry : list) {
-                    if (KeyManipulator.gmatch(entry.getKey(), key)) {
-                        match.add(entry);
-                    }
+        for (final DirectoryEntryList list : candidateLists(key)) {
+            for (final DirectoryEntry entry : list) {
+                if (matcher.matches(entry.getKey())) {
+                    match.add(entry);
                 }
             }
         }
@@ -308,7 +341,7 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      * @return list of all entries matched, still live in directory map
      */
     public List<DirectoryEntry> collectAllOnDirectory(final String key) {
-        // Wildcard the key so we can just use gmatch
+        // Wildcard the key so we can just pattern match
         final String wckey = KeyManipulator.getHostMatchKey(key);
         return collectAllMatching(wckey);
     }
@@ -321,11 +354,11 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      */
     public int countAllMatching(final String key) {
         int count = 0;
+        final GlobMatcher matcher = GlobMatcher.compile(key);
 
-        for (final DirectoryEntryList list : values()) {
-            for (final Iterator<DirectoryEntry> i = list.iterator(); i.hasNext();) {
-                final DirectoryEntry entry = i.next();
-                if (KeyManipulator.gmatch(entry.getKey(), key)) {
+        for (final DirectoryEntryList list : candidateLists(key)) {
+            for (final DirectoryEntry entry : list) {
+                if (matcher.matches(entry.getKey())) {
                     count++;
                 }
             }
@@ -340,7 +373,7 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      * @return count of all entries matched
      */
     public int countAllOnDirectory(final String key) {
-        // Wildcard the key so we can just use gmatch
+        // Wildcard the key so we can just pattern match
         final String wckey = KeyManipulator.getHostMatchKey(key);
         return countAllMatching(wckey);
     }
@@ -367,13 +400,17 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
         if (that != null) {
             for (final Map.Entry<String, DirectoryEntryList> entry : that.entrySet()) {
                 // Optimized add since already grouped by same key
-                DirectoryEntryList list = this.get(entry.getKey());
-                if (list == null) {
-                    list = new DirectoryEntryList();
-                    put(entry.getKey(), list);
+                synchronized (this.hostIndex) {
+                    index(entry.getKey(), entry.getValue());
+                    DirectoryEntryList list = this.get(entry.getKey());
+                    if (list == null) {
+                        list = new DirectoryEntryList();
+                        put(entry.getKey(), list);
+                    }
+                    list.addAll(entry.getValue());
                 }
-                list.addAll(entry.getValue());
             }
+            markChanged();
         }
     }
 
@@ -407,5 +444,420 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
         for (final DirectoryEntryList list : values()) {
             list.sort();
         }
+        markChanged();
+    }
+
+    /**
+     * Put a list in the map, indexing its entries
+     */
+    @Override
+    public DirectoryEntryList put(final String key, final DirectoryEntryList value) {
+        final DirectoryEntryList old;
+        synchronized (this.hostIndex) {
+            index(key, value);
+            old = super.put(key, value);
+            if (old != null && old != value) {
+                unindex(key, old);
+            }
+        }
+        markChanged();
+        return old;
+    }
+
+    /**
+     * Put a list in the map if there is none for the key, indexing its entries
+     */
+    @Override
+    public DirectoryEntryList putIfAbsent(final String key, final DirectoryEntryList value) {
+        final DirectoryEntryList old;
+        synchronized (this.hostIndex) {
+            old = super.putIfAbsent(key, value);
+            if (old == null) {
+                index(key, value);
+            }
+        }
+        if (old == null) {
+            markChanged();
+        }
+        return old;
+    }
+
+    /**
+     * Remove a list from the map, and its entries from the indexes
+     */
+    @Override
+    public DirectoryEntryList remove(final Object key) {
+        final DirectoryEntryList old;
+        synchronized (this.hostIndex) {
+            old = super.remove(key);
+            if (old != null) {
+                unindex((String) key, old);
+            }
+        }
+        if (old != null) {
+            markChanged();
+        }
+        return old;
+    }
+
+    /**
+     * Remove a list from the map if it is still the one given, and its entries from the indexes
+     */
+    @Override
+    public boolean remove(final Object key, final Object value) {
+        final boolean removed;
+        synchronized (this.hostIndex) {
+            removed = super.remove(key, value);
+            if (removed) {
+                unindex((String) key, (DirectoryEntryList) value);
+            }
+        }
+        if (removed) {
+            markChanged();
+        }
+        return removed;
+    }
+
+    /**
+     * Compute the list for a key, indexing the entries of the new list and unindexing those that left. The function is
+     * called holding the index lock.
+     */
+    @Override
+    @Nullable
+    public DirectoryEntryList compute(final String key,
+            final BiFunction<? super String, ? super DirectoryEntryList, ? extends DirectoryEntryList> remappingFunction) {
+        synchronized (this.hostIndex) {
+            final DirectoryEntryList old = get(key);
+            final List<DirectoryEntry> before = entriesOf(old);
+            return update(key, old, before, remappingFunction.apply(key, old));
+        }
+    }
+
+    /**
+     * Compute the list for a key that has none, indexing its entries. The function is called holding the index lock.
+     */
+    @Override
+    @Nullable
+    public DirectoryEntryList computeIfAbsent(final String key, final Function<? super String, ? extends DirectoryEntryList> mappingFunction) {
+        synchronized (this.hostIndex) {
+            final DirectoryEntryList old = get(key);
+            if (old != null) {
+                return old;
+            }
+            return update(key, null, Collections.emptyList(), mappingFunction.apply(key));
+        }
+    }
+
+    /**
+     * Compute a new list for a key that has one, indexing the entries of the new list and unindexing those that left. The
+     * function is called holding the index lock.
+     */
+    @Override
+    @Nullable
+    public DirectoryEntryList computeIfPresent(final String key,
+            final BiFunction<? super String, ? super DirectoryEntryList, ? extends DirectoryEntryList> remappingFunction) {
+        synchronized (this.hostIndex) {
+            final DirectoryEntryList old = get(key);
+            if (old == null) {
+                return null;
+            }
+            final List<DirectoryEntry> before = entriesOf(old);
+            return update(key, old, before, remappingFunction.apply(key, old));
+        }
+    }
+
+    /**
+     * Put a list for a key, or merge it with the one there, indexing the entries of the new list and unindexing those that
+     * left. The function is called holding the index lock.
+     */
+    @Override
+    @Nullable
+    public DirectoryEntryList merge(final String key, final DirectoryEntryList value,
+            final BiFunction<? super DirectoryEntryList, ? super DirectoryEntryList, ? extends DirectoryEntryList> remappingFunction) {
+        Objects.requireNonNull(value);
+        synchronized (this.hostIndex) {
+            final DirectoryEntryList old = get(key);
+            if (old == null) {
+                return update(key, null, Collections.emptyList(), value);
+            }
+            final List<DirectoryEntry> before = entriesOf(old);
+            return update(key, old, before, remappingFunction.apply(old, value));
+        }
+    }
+
+    /**
+     * Replace the list for a key that has one, indexing the entries of the new list and unindexing those that left
+     */
+    @Override
+    @Nullable
+    public DirectoryEntryList replace(final String key, final DirectoryEntryList value) {
+        Objects.requireNonNull(value);
+        synchronized (this.hostIndex) {
+            final DirectoryEntryList old = get(key);
+            if (old != null) {
+                update(key, old, entriesOf(old), value);
+            }
+            return old;
+        }
+    }
+
+    /**
+     * Replace the list for a key if it is still the one given, indexing the entries of the new list and unindexing those
+     * that left
+     */
+    @Override
+    public boolean replace(final String key, final DirectoryEntryList oldValue, final DirectoryEntryList newValue) {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        synchronized (this.hostIndex) {
+            final DirectoryEntryList old = get(key);
+            if (old == null || (old != oldValue && !old.equals(oldValue))) {
+                return false;
+            }
+            update(key, old, entriesOf(old), newValue);
+            return true;
+        }
+    }
+
+    /**
+     * Replace every list, indexing the entries of the new lists and unindexing those that left. The function is called
+     * holding the index lock.
+     */
+    @Override
+    public void replaceAll(final BiFunction<? super String, ? super DirectoryEntryList, ? extends DirectoryEntryList> function) {
+        synchronized (this.hostIndex) {
+            for (final String key : keySet()) {
+                final DirectoryEntryList old = get(key);
+                if (old != null) {
+                    final List<DirectoryEntry> before = entriesOf(old);
+                    update(key, old, before, Objects.requireNonNull(function.apply(key, old)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Put all the lists of another map in this one, indexing their entries
+     */
+    @Override
+    public void putAll(final Map<? extends String, ? extends DirectoryEntryList> m) {
+        for (final Map.Entry<? extends String, ? extends DirectoryEntryList> e : m.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Remove everything, including the indexes
+     */
+    @Override
+    public void clear() {
+        synchronized (this.hostIndex) {
+            super.clear();
+            this.hostIndex.clear();
+            this.typeIndex.clear();
+            this.nameIndex.clear();
+        }
+        markChanged();
+    }
+
+    /**
+     * Get the generation of the map. It moves on whenever the map is changed through its own methods, or when
+     * {@link #markChanged()} is called after changing a list or entry some other way.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Note that the map has changed, making any results built from it stale
+     */
+    public void markChanged() {
+        this.generation.incrementAndGet();
+    }
+
+    /**
+     * Get the cache of wildcard results built from this map
+     *
+     * @return the cache, created on first use
+     */
+    public WildcardCache getWildcardCache() {
+        WildcardCache cache = this.wildcardCache;
+        if (cache == null) {
+            synchronized (this.generation) {
+                cache = this.wildcardCache;
+                if (cache == null) {
+                    cache = new WildcardCache();
+                    this.wildcardCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Put the result of a compute, merge or replace in the map and bring the indexes up to date. Must be called holding the
+     * index lock.
+     *
+     * @param key the key to this map
+     * @param old the list that was there, or null
+     * @param before the entries that were on the old list before the function ran, which may have changed it
+     * @param value the new list, or null to remove the key
+     * @return the new list
+     */
+    @Nullable
+    private DirectoryEntryList update(final String key, @Nullable final DirectoryEntryList old, final List<DirectoryEntry> before,
+            @Nullable final DirectoryEntryList value) {
+        if (value == null) {
+            if (old != null) {
+                super.remove(key);
+                unindex(key, before);
+                markChanged();
+            }
+            return null;
+        }
+        index(key, value);
+        super.put(key, value);
+        unindex(key, before);
+        markChanged();
+        return value;
+    }
+
+    private static List<DirectoryEntry> entriesOf(@Nullable final DirectoryEntryList list) {
+        return list == null ? Collections.emptyList() : new ArrayList<>(list);
+    }
+
+    /**
+     * Record the entries of a list in the secondary indexes
+     *
+     * @param dataId the key to this map
+     * @param list the entries
+     */
+    protected void index(final String dataId, @Nullable final List<DirectoryEntry> list) {
+        if (list != null) {
+            for (final DirectoryEntry d : list) {
+                index(dataId, d);
+            }
+        }
+    }
+
+    /**
+     * Record an entry in the secondary indexes. Done before the entry is added so that a query never finds an entry its
+     * index does not lead to.
+     *
+     * @param dataId the key to this map
+     * @param d the entry
+     */
+    protected void index(final String dataId, final DirectoryEntry d) {
+        final DirectoryKey k = DirectoryKey.of(d.getKey());
+        synchronized (this.hostIndex) {
+            index(this.hostIndex, k.getServiceHost(), dataId);
+            index(this.typeIndex, k.getServiceType(), dataId);
+            index(this.nameIndex, k.getServiceName(), dataId);
+        }
+    }
+
+    private static void index(final ConcurrentHashMap<String, Set<String>> index, final String value, final String dataId) {
+        Set<String> dataIds = index.get(value);
+        if (dataIds == null) {
+            dataIds = index.computeIfAbsent(value, v -> ConcurrentHashMap.newKeySet());
+        }
+        dataIds.add(dataId);
+    }
+
+    /**
+     * Take a DataID out of the secondary indexes for the host, type and name of entries that have left its list, where no
+     * entry still in the list has them. Must be called holding the index lock, after the entries are gone.
+     *
+     * @param dataId the key to this map
+     * @param gone the entries that were removed
+     */
+    protected void unindex(final String dataId, final List<DirectoryEntry> gone) {
+        if (gone.isEmpty()) {
+            return;
+        }
+        final Set<String> hosts = new HashSet<>();
+        final Set<String> types = new HashSet<>();
+        final Set<String> names = new HashSet<>();
+        for (final DirectoryEntry d : gone) {
+            final DirectoryKey k = DirectoryKey.of(d.getKey());
+            hosts.add(k.getServiceHost());
+            types.add(k.getServiceType());
+            names.add(k.getServiceName());
+        }
+        final DirectoryEntryList remaining = get(dataId);
+        if (remaining != null) {
+            for (final DirectoryEntry d : remaining) {
+                final DirectoryKey k = DirectoryKey.of(d.getKey());
+                hosts.remove(k.getServiceHost());
+                types.remove(k.getServiceType());
+                names.remove(k.getServiceName());
+            }
+        }
+        unindex(this.hostIndex, hosts, dataId);
+        unindex(this.typeIndex, types, dataId);
+        unindex(this.nameIndex, names, dataId);
+    }
+
+    private static void unindex(final ConcurrentHashMap<String, Set<String>> index, final Set<String> values, final String dataId) {
+        for (final String value : values) {
+            index.computeIfPresent(value, (v, dataIds) -> {
+                dataIds.remove(dataId);
+                return dataIds.isEmpty() ? null : dataIds;
+            });
+        }
+    }
+
+    /**
+     * Find the lists that can hold entries matching a key. A key with a complete DataID has just the one list, otherwise
+     * the smallest set of DataIDs indexed under a service host, type or name that the key spells out is used. Keys that
+     * spell out none of them get every list.
+     *
+     * @param key the key that must be matched (can be wildcarded)
+     * @return the lists to look through
+     */
+    protected Collection<DirectoryEntryList> candidateLists(final String key) {
+        final DirectoryKey pattern = DirectoryKey.of(key);
+        if (pattern.getTupleCount() < 4) {
+            // only part of a key, wildcards may stretch across any of the fields
+            return values();
+        }
+
+        final String dataId = pattern.getDataID();
+        if (!GlobMatcher.hasWildcard(dataId)) {
+            final DirectoryEntryList list = get(dataId);
+            return list == null ? Collections.emptyList() : Collections.singletonList(list);
+        }
+
+        Set<String> dataIds = narrow(null, this.hostIndex, pattern.getServiceHost());
+        dataIds = narrow(dataIds, this.typeIndex, pattern.getServiceType());
+        dataIds = narrow(dataIds, this.nameIndex, pattern.getServiceName());
+        if (dataIds == null) {
+            return values();
+        }
+
+        final List<DirectoryEntryList> lists = new ArrayList<>(dataIds.size());
+        for (final String id : dataIds) {
+            final DirectoryEntryList list = get(id);
+            if (list != null) {
+                lists.add(list);
+            }
+        }
+        logger.debug("Narrowed {} to {} of {} entry lists", key, lists.size(), size());
+        return lists;
+    }
+
+    /**
+     * Pick the smaller of the current candidates and the DataIDs indexed under a field of the key, if the field has no
+     * wildcards
+     */
+    @Nullable
+    private static Set<String> narrow(@Nullable final Set<String> current, final Map<String, Set<String>> index, final String field) {
+        if (field.isEmpty() || GlobMatcher.hasWildcard(field)) {
+            return current;
+        }
+        final Set<String> dataIds = index.getOrDefault(field, Collections.emptySet());
+        return current == null || dataIds.size() < current.size() ? dataIds : current;
     }
 }
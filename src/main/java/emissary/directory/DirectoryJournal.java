@@ -0,0 +1,128 @@
+package emissary.directory;
+
+import emissary.client.response.DirectoryChange;
+import emissary.client.response.DirectoryDeltaResponseEntity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * Numbers the changes made to the entries of a directory and remembers the most recent ones so that a peer can ask for
+ * just the changes made since it last looked instead of transferring the whole directory again. Each journal has an
+ * epoch that is new every time the directory starts, so a peer holding a sequence number from before a restart is
+ * always told to reload.
+ */
+public class DirectoryJournal {
+
+    /** Number of changes remembered by default */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final String epoch = UUID.randomUUID().toString();
+
+    private final int capacity;
+
+    private final Deque<Change> changes = new ArrayDeque<>();
+
+    private long sequence = 0L;
+
+    /**
+     * Create a journal remembering the default number of changes
+     */
+    public DirectoryJournal() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a journal
+     *
+     * @param capacity number of changes to remember
+     */
+    public DirectoryJournal(final int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Record entries that were added or had their cost changed
+     *
+     * @param entries the entries as they are now
+     */
+    public void recordAdded(final Collection<DirectoryEntry> entries) {
+        record(DirectoryChange.ADD, entries);
+    }
+
+    /**
+     * Record entries that were removed
+     *
+     * @param entries the entries removed
+     */
+    public void recordRemoved(final Collection<DirectoryEntry> entries) {
+        record(DirectoryChange.REMOVE, entries);
+    }
+
+    private synchronized void record(final String op, final Collection<DirectoryEntry> entries) {
+        for (final DirectoryEntry e : entries) {
+            this.sequence++;
+            this.changes.addLast(new Change(this.sequence, new DirectoryChange(op, e)));
+            if (this.changes.size() > this.capacity) {
+                this.changes.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Get the changes made since a point in this journal
+     *
+     * @param fromEpoch the epoch the caller last saw or null if it has seen none
+     * @param fromSequence the sequence number of the last change the caller saw
+     * @return the changes in the order they were made, not complete if some of them are no longer remembered or the point
+     *         is not from this epoch
+     */
+    public synchronized DirectoryDeltaResponseEntity since(@Nullable final String fromEpoch, final long fromSequence) {
+        final List<DirectoryChange> list = new ArrayList<>();
+        final long oldest = this.sequence - this.changes.size();
+        if (!this.epoch.equals(fromEpoch) || fromSequence < oldest || fromSequence > this.sequence) {
+            return new DirectoryDeltaResponseEntity(this.epoch, this.sequence, false, list);
+        }
+        final Iterator<Change> it = this.changes.descendingIterator();
+        while (it.hasNext()) {
+            final Change c = it.next();
+            if (c.sequence <= fromSequence) {
+                break;
+            }
+            list.add(c.change);
+        }
+        Collections.reverse(list);
+        return new DirectoryDeltaResponseEntity(this.epoch, this.sequence, true, list);
+    }
+
+    /**
+     * Get the epoch of this journal
+     */
+    public String getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Get the sequence number of the last change recorded
+     */
+    public synchronized long getSequence() {
+        return this.sequence;
+    }
+
+    private static final class Change {
+        final long sequence;
+        final DirectoryChange change;
+
+        Change(final long sequence, final DirectoryChange change) {
+            this.sequence = sequence;
+            this.change = change;
+        }
+    }
+}
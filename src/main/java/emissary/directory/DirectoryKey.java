@@ -0,0 +1,311 @@
+package emissary.directory;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.annotation.Nullable;
+
+import static emissary.directory.KeyManipulator.CLASSSEPARATOR;
+import static emissary.directory.KeyManipulator.DATAIDSEPARATOR;
+import static emissary.directory.KeyManipulator.DOLLAR;
+import static emissary.directory.KeyManipulator.SEPARATOR;
+
+/**
+ * An immutable, pre-parsed directory key. The key string is scanned once and every field that {@link KeyManipulator}
+ * can report on is kept, so repeated questions about the same key do not have to search and copy the string again.
+ *
+ * <p>
+ * Instances are shared through {@link #of(String)}, which keeps a bounded cache of parsed keys. When the cache is full
+ * a key is evicted with the second chance rule: keys asked for since the last sweep are passed over once, so the keys
+ * in steady use stay parsed while ones seen once make way. The fields follow the same rules as the matching
+ * {@link KeyManipulator} methods, including for partial keys and patterns such as a bare data type, so any string can
+ * be parsed.
+ *
+ * <code>dataType.serviceName.serviceType.location$expense</code>
+ */
+public final class DirectoryKey {
+
+    /** Number of parsed keys to hold before keys are evicted */
+    public static final int MAX_CACHED_KEYS = 8192;
+
+    private static final Map<String, Cached> cache = new ConcurrentHashMap<>(MAX_CACHED_KEYS);
+
+    /** Cached keys in the order they are swept for eviction */
+    private static final Queue<Cached> sweep = new ConcurrentLinkedQueue<>();
+
+    private static final String DOUBLE_SLASH = "//";
+
+    private final String fullKey;
+    private final String key;
+    private final String dataType;
+    private final String serviceName;
+    private final String serviceType;
+    private final String serviceLocation;
+    private final String serviceHost;
+    private final String serviceHostURL;
+    private final String serviceClassname;
+    private final String dataID;
+    private final int tupleCount;
+    private final boolean hasExpense;
+    private final int expense;
+
+    /**
+     * Get the parsed form of a key, reusing a previous parse if there is one
+     *
+     * @param key the key or key fragment to parse
+     * @return the parsed key
+     */
+    public static DirectoryKey of(final String key) {
+        final DirectoryKey cached = cached(key);
+        if (cached != null) {
+            return cached;
+        }
+        final Cached parsed = new Cached(new DirectoryKey(key));
+        final Cached existing = cache.putIfAbsent(key, parsed);
+        if (existing != null) {
+            return existing.key;
+        }
+        sweep.offer(parsed);
+        if (cache.size() > MAX_CACHED_KEYS) {
+            evict();
+        }
+        return parsed.key;
+    }
+
+    /**
+     * Get the parsed form of a key only if it is already cached, so that callers wanting a single field of an uncached key
+     * can take it straight from the string
+     *
+     * @param key the key or key fragment
+     * @return the parsed key or null if it is not cached
+     */
+    @Nullable
+    public static DirectoryKey cached(final String key) {
+        final Cached cached = cache.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (!cached.referenced) {
+            cached.referenced = true;
+        }
+        return cached.key;
+    }
+
+    /**
+     * Evict keys until the cache is back within its bound, giving keys used since they were last swept a second chance
+     */
+    private static void evict() {
+        synchronized (sweep) {
+            while (cache.size() > MAX_CACHED_KEYS) {
+                final Cached oldest = sweep.poll();
+                if (oldest == null) {
+                    return;
+                }
+                if (oldest.referenced) {
+                    oldest.referenced = false;
+                    sweep.offer(oldest);
+                } else {
+                    cache.remove(oldest.key.fullKey, oldest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse a key without consulting the cache
+     *
+     * @param fullKey the key or key fragment to parse
+     */
+    DirectoryKey(final String fullKey) {
+        this.fullKey = fullKey;
+
+        final int first = fullKey.indexOf(SEPARATOR);
+        final int second = fullKey.indexOf(SEPARATOR, first + 1);
+        final int third = fullKey.indexOf(SEPARATOR, second + 1);
+        final int dollar = fullKey.indexOf(DOLLAR, third + 1);
+
+        this.dataType = first >= 0 ? fullKey.substring(0, first) : "";
+        this.serviceName = (first >= 0 && second >= 0) ? fullKey.substring(first + 1, second) : "";
+        this.serviceType = (second >= 0 && third >= 0) ? fullKey.substring(second + 1, third) : "";
+        this.dataID = this.dataType + DATAIDSEPARATOR + this.serviceType;
+
+        if (third >= 0) {
+            this.serviceLocation = dollar > 0 ? fullKey.substring(third + 1, dollar) : fullKey.substring(third + 1);
+        } else {
+            this.serviceLocation = "";
+        }
+
+        final int lastSlash = this.serviceLocation.lastIndexOf(CLASSSEPARATOR);
+        this.serviceHostURL = lastSlash > -1 ? this.serviceLocation.substring(0, lastSlash + 1) : "";
+        this.serviceClassname = lastSlash >= 0 ? this.serviceLocation.substring(lastSlash + 1) : "";
+
+        final int ds = this.serviceLocation.indexOf(DOUBLE_SLASH);
+        final int cs = ds > -1 ? this.serviceLocation.indexOf(CLASSSEPARATOR, ds + 2) : -1;
+        this.serviceHost = cs > -1 ? this.serviceLocation.substring(ds + 2, cs) : "";
+
+        final int firstDollar = fullKey.indexOf(DOLLAR);
+        this.key = firstDollar != -1 ? fullKey.substring(0, firstDollar) : fullKey;
+
+        int exp = 0;
+        boolean parsedExpense = false;
+        try {
+            exp = Integer.parseInt(fullKey.substring(fullKey.lastIndexOf(DOLLAR) + 1));
+            parsedExpense = true;
+        } catch (NumberFormatException e) {
+            // It's optional...
+        }
+        this.expense = exp;
+        this.hasExpense = parsedExpense;
+
+        this.tupleCount = countTuples(fullKey);
+    }
+
+    /**
+     * Count the separated portions of the key, not counting any separators in the hostname portion
+     */
+    static int countTuples(final String key) {
+        int count = 0;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c == SEPARATOR) {
+                count++;
+            }
+            if (i > 0 && c == CLASSSEPARATOR && key.charAt(i - 1) == CLASSSEPARATOR) {
+                break;
+            }
+        }
+        // There is one more tuple than separators x.x.x.x
+        return count + 1;
+    }
+
+    /**
+     * The string this key was parsed from, including any expense
+     */
+    public String getFullKey() {
+        return this.fullKey;
+    }
+
+    /**
+     * The key without any expense
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    public String getDataType() {
+        return this.dataType;
+    }
+
+    public String getServiceName() {
+        return this.serviceName;
+    }
+
+    public String getServiceType() {
+        return this.serviceType;
+    }
+
+    /**
+     * The DataType::ServiceType of the key
+     */
+    public String getDataID() {
+        return this.dataID;
+    }
+
+    /**
+     * The protocol://host:port/ClassName portion of the key
+     */
+    public String getServiceLocation() {
+        return this.serviceLocation;
+    }
+
+    /**
+     * The host:port portion of the key
+     */
+    public String getServiceHost() {
+        return this.serviceHost;
+    }
+
+    /**
+     * The protocol://host:port/ portion of the key
+     */
+    public String getServiceHostURL() {
+        return this.serviceHostURL;
+    }
+
+    public String getServiceClassname() {
+        return this.serviceClassname;
+    }
+
+    /**
+     * The number of separated portions of the key
+     */
+    public int getTupleCount() {
+        return this.tupleCount;
+    }
+
+    /**
+     * True if the key has all four portions and a host
+     */
+    public boolean isComplete() {
+        return this.tupleCount >= KeyManipulator.NUMTUPLES && !this.serviceHost.isEmpty();
+    }
+
+    /**
+     * True if the key has exactly four portions
+     */
+    public boolean isValid() {
+        return this.tupleCount == KeyManipulator.NUMTUPLES;
+    }
+
+    /**
+     * True if the key carried a readable expense
+     */
+    public boolean hasExpense() {
+        return this.hasExpense;
+    }
+
+    /**
+     * The expense of the key
+     *
+     * @param dflt value to use when the key has no expense
+     * @return the expense or the default
+     */
+    public int getExpense(final int dflt) {
+        return this.hasExpense ? this.expense : dflt;
+    }
+
+    /**
+     * True if the places represented by both keys are on the same host
+     */
+    public boolean isLocalTo(final DirectoryKey that) {
+        return this.serviceHostURL.equals(that.serviceHostURL);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return (o instanceof DirectoryKey) && this.fullKey.equals(((DirectoryKey) o).fullKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.fullKey.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.fullKey;
+    }
+
+    /**
+     * A cache slot, marked when the key is asked for
+     */
+    private static final class Cached {
+        final DirectoryKey key;
+        volatile boolean referenced;
+
+        Cached(final DirectoryKey key) {
+            this.key = key;
+        }
+    }
+}
@@ -3,13 +3,28 @@ package emissary.directory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * This class is used by DirectoryPlace to manage the interaction with the different types of observers that need to be
  * called on the various observable change events.
+ * <p>
+ * By default observers are called on the thread making the change. When created with a notification window the changes
+ * are instead queued for each observer, coalesced by place key over the window and delivered as one batch per observer
+ * on a small pool of notifier threads, see {@link PlaceObserver#placesChanged(String, Map)}. Each observer gets its
+ * batches one at a time and in order. An observer that falls more than the queue size of distinct places behind holds
+ * up the threads making changes until it catches up.
  */
 public class DirectoryObserverManager {
     /** Our logger */
@@ -21,18 +36,71 @@ public class DirectoryObserverManager {
     /** The observers that are registered */
     List<DirectoryObserver> observers = new CopyOnWriteArrayList<>();
 
+    /** Default number of distinct pending places queued for an observer */
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    private static final AtomicInteger NOTIFIER_COUNTER = new AtomicInteger();
+
+    /** Queued changes for each observer when notifying asynchronously */
+    private final Map<DirectoryObserver, ObserverQueue> queues = new ConcurrentHashMap<>();
+
+    /** Threads delivering the queued changes or null when notifying synchronously */
+    @Nullable
+    private final ScheduledThreadPoolExecutor notifier;
+
+    private final long windowMillis;
+
+    private final int queueSize;
+
+    /** Name prefix of the notifier threads, which never wait on a full queue */
+    private final String notifierPrefix;
+
     /** The types of actions that observers can register for */
     public enum Action {
         PEER_GROUP_CHANGE, PLACE_ADD, PLACE_REMOVE, PLACE_COST_CHANGE
     }
 
     /**
-     * Construct with key
+     * Construct with key, observers are notified synchronously
      * 
      * @param key the key of the directory we work on behalf of
      */
     public DirectoryObserverManager(final String key) {
+        this(key, 0L, DEFAULT_QUEUE_SIZE, 1);
+    }
+
+    /**
+     * Construct with key and a notification window
+     *
+     * @param key the key of the directory we work on behalf of
+     * @param windowMillis how long changes are collected before being delivered, 0 or less to notify synchronously
+     * @param queueSize number of distinct places that can be pending for one observer
+     * @param threads number of threads delivering changes
+     */
+    public DirectoryObserverManager(final String key, final long windowMillis, final int queueSize, final int threads) {
         this.directoryKey = key;
+        this.windowMillis = windowMillis;
+        this.queueSize = Math.max(1, queueSize);
+        if (windowMillis > 0) {
+            this.notifierPrefix = "DirectoryObserver-" + NOTIFIER_COUNTER.getAndIncrement() + "-";
+            final AtomicInteger counter = new AtomicInteger();
+            this.notifier = new ScheduledThreadPoolExecutor(Math.max(1, threads), r -> {
+                final Thread t = new Thread(r, this.notifierPrefix + counter.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            });
+            logger.debug("Notifying observers of {} every {}ms", key, windowMillis);
+        } else {
+            this.notifierPrefix = null;
+            this.notifier = null;
+        }
+    }
+
+    /**
+     * Report whether observers are notified on the notifier threads
+     */
+    public boolean isAsynchronous() {
+        return this.notifier != null;
     }
 
     /**
@@ -41,19 +109,46 @@ public class DirectoryObserverManager {
      * @param observer the new observer to add
      */
     public void addObserver(final DirectoryObserver observer) {
+        if (this.notifier != null) {
+            this.queues.put(observer, new ObserverQueue(observer));
+        }
         this.observers.add(observer);
     }
 
     /**
-     * Remove an observer
+     * Remove an observer, anything still queued for it is dropped
      * 
      * @param observer the object to remove
      * @return true if it was found on the list
      */
     public boolean deleteObserver(final DirectoryObserver observer) {
+        final ObserverQueue queue = this.queues.remove(observer);
+        if (queue != null) {
+            queue.close();
+        }
         return this.observers.remove(observer);
     }
 
+    /**
+     * Deliver everything queued so far on the calling thread
+     */
+    public void flush() {
+        for (final ObserverQueue queue : this.queues.values()) {
+            queue.deliver();
+        }
+    }
+
+    /**
+     * Deliver everything queued so far and stop the notifier threads. Changes after this are delivered synchronously.
+     */
+    public void shutDown() {
+        if (this.notifier != null) {
+            this.notifier.shutdown();
+            flush();
+            this.queues.clear();
+        }
+    }
+
     /**
      * Count the observers
      * 
@@ -102,7 +197,12 @@ public class DirectoryObserverManager {
         int count = 0;
         for (final DirectoryObserver d : this.observers) {
             if (d instanceof PeerObserver) {
-                ((PeerObserver) d).peerUpdate(this.directoryKey, peers);
+                final ObserverQueue queue = queueFor(d);
+                if (queue != null) {
+                    queue.offerPeers(peers);
+                } else {
+                    ((PeerObserver) d).peerUpdate(this.directoryKey, peers);
+                }
                 count++;
             }
         }
@@ -231,7 +331,10 @@ public class DirectoryObserverManager {
                 if (KeyManipulator.gmatch(placeKey, p.getPattern())) {
                     matchcount++;
                     logger.debug("Match! Doing {} for {}", action, placeKey);
-                    if (action == Action.PLACE_ADD) {
+                    final ObserverQueue queue = queueFor(d);
+                    if (queue != null) {
+                        queue.offer(action, placeKey);
+                    } else if (action == Action.PLACE_ADD) {
                         p.placeRegistered(this.directoryKey, placeKey);
                     } else if (action == Action.PLACE_REMOVE) {
                         p.placeDeregistered(this.directoryKey, placeKey);
@@ -247,4 +350,137 @@ public class DirectoryObserverManager {
             logger.debug("Notified {} of {} place observers of place {} -- {} #all={}", matchcount, obcount, placeKey, action, this.observers.size());
         }
     }
+
+    @Nullable
+    private ObserverQueue queueFor(final DirectoryObserver observer) {
+        if (this.notifier == null || this.notifier.isShutdown()) {
+            return null;
+        }
+        return this.queues.get(observer);
+    }
+
+    /**
+     * Merge a change into the one already pending for the same place. A place added and then changed again is still an add
+     * to an observer that has not heard of it yet, otherwise the latest change wins.
+     */
+    static Action coalesce(@Nullable final Action pending, final Action next) {
+        if (pending == Action.PLACE_ADD && next == Action.PLACE_COST_CHANGE) {
+            return Action.PLACE_ADD;
+        }
+        return next;
+    }
+
+    /**
+     * The changes waiting to be delivered to one observer
+     */
+    private final class ObserverQueue implements Runnable {
+        private final DirectoryObserver observer;
+
+        /** Pending place changes by place key without the expense, in the order they last changed */
+        private final LinkedHashMap<String, Map.Entry<String, Action>> pending = new LinkedHashMap<>();
+
+        @Nullable
+        private Set<DirectoryEntry> pendingPeers;
+
+        /** True from scheduling a delivery until it has run */
+        private boolean scheduled = false;
+
+        /** Held while delivering so batches reach the observer one at a time and in order */
+        private final Object deliveryLock = new Object();
+
+        private boolean closed = false;
+
+        ObserverQueue(final DirectoryObserver observer) {
+            this.observer = observer;
+        }
+
+        synchronized void offer(final Action action, final String placeKey) {
+            final String key = KeyManipulator.removeExpense(placeKey);
+            // an observer changing the directory from its own notification is not held up
+            final boolean mayWait = !Thread.currentThread().getName().startsWith(notifierPrefix);
+            while (mayWait && !this.closed && this.pending.size() >= queueSize && !this.pending.containsKey(key)) {
+                logger.debug("Observer {} is {} places behind, waiting", this.observer, this.pending.size());
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (this.closed) {
+                return;
+            }
+            final Map.Entry<String, Action> previous = this.pending.remove(key);
+            this.pending.put(key, new AbstractMap.SimpleImmutableEntry<>(placeKey,
+                    coalesce(previous == null ? null : previous.getValue(), action)));
+            schedule();
+        }
+
+        synchronized void offerPeers(final Set<DirectoryEntry> peers) {
+            if (!this.closed) {
+                this.pendingPeers = peers;
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (!this.scheduled) {
+                this.scheduled = true;
+                try {
+                    notifier.schedule(this, windowMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // shutting down, flush picks it up
+                    this.scheduled = false;
+                }
+            }
+        }
+
+        synchronized void close() {
+            this.closed = true;
+            this.pending.clear();
+            this.pendingPeers = null;
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            deliver();
+            synchronized (this) {
+                this.scheduled = false;
+                if (!this.pending.isEmpty() || this.pendingPeers != null) {
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * Hand everything pending to the observer in one batch
+         */
+        void deliver() {
+            synchronized (this.deliveryLock) {
+                final Map<String, Action> batch = new LinkedHashMap<>();
+                final Set<DirectoryEntry> peers;
+                synchronized (this) {
+                    for (final Map.Entry<String, Action> change : this.pending.values()) {
+                        batch.put(change.getKey(), change.getValue());
+                    }
+                    this.pending.clear();
+                    peers = this.pendingPeers;
+                    this.pendingPeers = null;
+                    notifyAll();
+                }
+                try {
+                    if (!batch.isEmpty()) {
+                        logger.debug("Delivering {} place changes to {}", batch.size(), this.observer);
+                        ((PlaceObserver) this.observer).placesChanged(directoryKey, batch);
+                    }
+                    if (peers != null) {
+                        ((PeerObserver) this.observer).peerUpdate(directoryKey, peers);
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Observer {} failed handling directory changes", this.observer, e);
+                }
+            }
+        }
+    }
 }
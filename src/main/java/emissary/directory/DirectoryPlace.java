@@ -1,5 +1,7 @@
 package emissary.directory;
 
+import emissary.client.response.DirectoryChange;
+import emissary.client.response.DirectoryDeltaResponseEntity;
 import emissary.config.Configurator;
 import emissary.core.EmissaryException;
 import emissary.core.IBaseDataObject;
@@ -16,9 +18,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.annotation.Nullable;
 
 /**
@@ -83,6 +88,18 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
      */
     protected long zoneSlopWindowMillis = 30000; // 30 sec
 
+    /** Numbered record of the recent changes to the entryMap, handed to peers asking for a delta */
+    protected DirectoryJournal journal;
+
+    /** True if peers are asked for the changes since the last transfer before falling back to a full zone transfer */
+    protected boolean deltaSync = true;
+
+    /** True if the choice between equivalent places is weighed by their observed load, see {@link PlaceLoad} */
+    protected boolean adaptiveRouting = false;
+
+    /** Point in each peer's journal that has been loaded here, by peer key */
+    protected final Map<String, SyncPoint> peerSyncPoints = new ConcurrentHashMap<>();
+
     /**
      * Create a new empty directory using this location and no parent
      *
@@ -212,9 +229,22 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
      * <li>HEARTBEAT_INTERVAL_SECONDS, default is 30</li>
      * <li>HEARTBEAT_FAILURE_THRESHOLD, set transient failure count, default owned by HeartbeatManager</li>
      * <li>HEARTBEAT_PERMANENT_FAILURE_THRESHOLD, set permanent failure count, default owned by HeartbeatManager</li>
+     * <li>HEARTBEAT_TIMEOUT_SECONDS, time allowed for each heartbeat answer, default owned by HeartbeatManager</li>
+     * <li>HEARTBEAT_THREADS, number of heartbeats sent at once, default owned by HeartbeatManager</li>
+     * <li>DELTA_SYNC, ask peers for just their changes since the last transfer, default is true</li>
+     * <li>DELTA_JOURNAL_SIZE, number of changes remembered for peers asking for a delta, default is 4096</li>
+     * <li>OBSERVER_NOTIFY_WINDOW_MILLIS, collect observer notifications this long and deliver them in batches on their own
+     * threads, default is 0 to notify observers as changes are made</li>
+     * <li>OBSERVER_QUEUE_SIZE, number of distinct places that can be pending for one observer, default is 10000</li>
+     * <li>OBSERVER_NOTIFY_THREADS, number of threads delivering batched notifications, default is 2</li>
+     * <li>ADAPTIVE_ROUTING, choose between equivalent places by their observed load, default is false</li>
      * </ul>
      */
     private void setupDirectory() {
+        this.deltaSync = configG.findBooleanEntry("DELTA_SYNC", true);
+        this.adaptiveRouting = configG.findBooleanEntry("ADAPTIVE_ROUTING", false);
+        this.journal = new DirectoryJournal(configG.findIntEntry("DELTA_JOURNAL_SIZE", DirectoryJournal.DEFAULT_CAPACITY));
+
         if (this.emissaryNode.isValid() && !this.emissaryNode.isStandalone()) {
             // Start a heart beat manager with initial and interval seconds
             final int initialSeconds = configG.findIntEntry("HEARTBEAT_DELAY_SECONDS", 30);
@@ -231,6 +261,16 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
             if (heartbeatPermanentFailure > 0) {
                 this.heartbeat.setPermanentFailThreshold(heartbeatPermanentFailure);
             }
+
+            final int heartbeatTimeout = configG.findIntEntry("HEARTBEAT_TIMEOUT_SECONDS", -1);
+            if (heartbeatTimeout > 0) {
+                this.heartbeat.setTimeoutSeconds(heartbeatTimeout);
+            }
+
+            final int heartbeatThreads = configG.findIntEntry("HEARTBEAT_THREADS", -1);
+            if (heartbeatThreads > 0) {
+                this.heartbeat.setThreads(heartbeatThreads);
+            }
         }
 
         // Set up deferred stuff from ServiceProviderPlace
@@ -240,7 +280,9 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
         dirPlace = myKey;
 
         // Start an observer manager
-        this.observerManager = new DirectoryObserverManager(myKey);
+        this.observerManager = new DirectoryObserverManager(myKey, configG.findLongEntry("OBSERVER_NOTIFY_WINDOW_MILLIS", 0L),
+                configG.findIntEntry("OBSERVER_QUEUE_SIZE", DirectoryObserverManager.DEFAULT_QUEUE_SIZE),
+                configG.findIntEntry("OBSERVER_NOTIFY_THREADS", 2));
 
         // Configure my initial rendezvous peers
         configureNetworkTopology();
@@ -467,6 +509,22 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
             return null;
         }
 
+        // Try for just the changes since the last transfer from this peer,
+        // the answer also says where to pick up from after a full transfer
+        SyncPoint next = null;
+        if (this.deltaSync && loadMap == this.entryMap) {
+            final DirectoryDeltaResponseEntity delta = loadRemoteDelta(key);
+            if (delta != null) {
+                next = new SyncPoint(delta.getEpoch(), delta.getSequence());
+                if (delta.isComplete()) {
+                    final DirectoryEntryMap changes = applyRemoteDelta(key, delta, loadMap);
+                    this.peerSyncPoints.put(key, next);
+                    return changes;
+                }
+                logger.debug("Delta from {} is not complete, doing a full zone transfer", key);
+            }
+        }
+
         // Track how long the zone transfer takes and use that
         // info along with the slop window to help determine if
         // there are stale entries and what they might be.
@@ -484,6 +542,12 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
                         (System.currentTimeMillis() - startZone));
             }
 
+            // Changes made after the delta was answered are in the
+            // transfer and are applied again, harmlessly, by the next delta
+            if (next != null) {
+                this.peerSyncPoints.put(key, next);
+            }
+
             // No entries mean we got the remote message,
             // and they just don't have any places registered yet
             if (map.isEmpty()) {
@@ -499,6 +563,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
                 // so that they don't get double notified to observers
                 // do the load and notify all observers
                 cleanLoadNotifyEntries(map, loadMap, myKey, REMOTE_COST_OVERHEAD);
+                entryMapChanged();
             } else {
                 logger.debug("Skipping load of {} new entries from {} returning list to caller", map.entryCount(), key);
             }
@@ -508,6 +573,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
             } else {
                 logger.info("Unable to zone transfer with {}", key);
             }
+            this.peerSyncPoints.remove(key);
             // Failure condition. Trigger state change in heartbeat manager
             this.heartbeat.setHealthStatus(key, HeartbeatManager.NO_CONTACT, "Remote directory failed zone transfer");
         }
@@ -515,6 +581,77 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
         return map;
     }
 
+    /**
+     * Ask a peer for the changes made to its directory since the last transfer from it. Any failure is left to the full
+     * zone transfer that follows to report.
+     *
+     * @param key key of the remote directory to ask
+     * @return the changes or null if the peer could not answer
+     */
+    @Nullable
+    private DirectoryDeltaResponseEntity loadRemoteDelta(final String key) {
+        final SyncPoint since = this.peerSyncPoints.remove(key);
+        try {
+            // Also registers as a peer with them
+            final DirectoryDeltaResponseEntity delta =
+                    new DirectoryAdapter().outboundDirectoryDelta(key, myKey, since == null ? null : since.epoch,
+                            since == null ? 0L : since.sequence);
+            logger.debug("Retrieved {} changes from {}, complete={}", delta.getChanges().size(), key, delta.isComplete());
+            return delta;
+        } catch (Exception ex) {
+            logger.debug("Unable to get directory delta from {}", key, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Apply the changes from a peer's directory to the specified map and notify any observers. Entries on this directory
+     * are left alone, and only entries on the peer's own host are removed, as they are for a full zone transfer.
+     *
+     * @param key key of the remote directory the changes came from
+     * @param delta the changes in the order they were made
+     * @param loadMap the map to apply them to
+     * @return the new and cost changed entries
+     */
+    DirectoryEntryMap applyRemoteDelta(final String key, final DirectoryDeltaResponseEntity delta, final DirectoryEntryMap loadMap) {
+        final String peerHost = KeyManipulator.getHostMatchKey(key);
+        final DirectoryEntryMap added = new DirectoryEntryMap();
+        final List<DirectoryEntry> removed = new ArrayList<>();
+        for (final DirectoryChange change : delta.getChanges()) {
+            if (isLocal(change.getKey())) {
+                continue;
+            }
+            // a later change to the same entry replaces an earlier one
+            added.removeEntry(change.getKey());
+            if (change.isAdd()) {
+                added.addEntry(change.toEntry());
+            } else if (change.isRemove()) {
+                if (!KeyManipulator.gmatch(change.getKey(), peerHost)) {
+                    // entries on other hosts are theirs to remove
+                    logger.debug("Ignoring removal of {} in delta from {}", change.getKey(), key);
+                    continue;
+                }
+                final DirectoryEntry gone = loadMap.removeEntry(change.getKey());
+                if (gone != null) {
+                    removed.add(gone);
+                }
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            logger.debug("Removed {} entries in delta from {}", removed.size(), key);
+            this.journal.recordRemoved(removed);
+            this.observerManager.placeRemoveEntries(removed);
+        }
+        if (!added.isEmpty()) {
+            cleanLoadNotifyEntries(added, loadMap, myKey, REMOTE_COST_OVERHEAD);
+        }
+        if (!removed.isEmpty() || !added.isEmpty()) {
+            entryMapChanged();
+        }
+        return added;
+    }
+
     /**
      * Remove stale entries from the specified map and notify any observers Nothing older than checkpoint time can be
      * considered stale and nothing that is on the incming newEntries list can be considered stale since we would just be
@@ -570,6 +707,9 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
                 logger.debug("Removing stale entry {}", stale.getKey());
                 loadMap.removeEntry(stale.getKey());
             }
+            if (loadMap == this.entryMap) {
+                this.journal.recordRemoved(staleEntries);
+            }
 
             if (performNotification) {
                 logger.debug("Notifying observers of {} stale entry removals", staleEntries.size());
@@ -624,6 +764,9 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
             if (newCount > 0) {
                 logger.debug("Loading {} new entries", newCount);
                 loadMap.addEntries(newEntries);
+                if (loadMap == this.entryMap) {
+                    this.journal.recordAdded(newEntries.allEntries());
+                }
                 this.observerManager.placeAdd(newEntries.allEntryKeys());
             } else {
                 logger.debug("Nothing truly new from {} entries", map.entryCount());
@@ -633,6 +776,9 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
             if (cceCount > 0) {
                 logger.debug("Loading {} better cost entries", cceCount);
                 loadMap.addEntries(costChangeEntries);
+                if (loadMap == this.entryMap) {
+                    this.journal.recordAdded(costChangeEntries.allEntries());
+                }
                 this.observerManager.placeCostChange(costChangeEntries.allEntryKeys());
             } else {
                 logger.debug("No cost change entries from {} entries", map.entryCount());
@@ -677,6 +823,8 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
 
         // add them
         this.entryMap.addEntries(entryList);
+        this.journal.recordAdded(entryList);
+        entryMapChanged();
 
         // notify all observers
         this.observerManager.placeAddEntries(entryList);
@@ -813,6 +961,9 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
 
         logger.debug("irdFailDirectory {} {} permanent", key, (permanent ? "is" : "is not"));
 
+        // Entries from it are changed here, so the next load from it has to be a full one
+        this.peerSyncPoints.remove(dirKey);
+
         // Modify local entries for the failed remote directory
         // Permanent failure removes entries on failed directory.
         // Transient failure adjusts weight of entries on failed directory.
@@ -827,6 +978,8 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
             for (final DirectoryEntry e : list) {
                 e.addPathWeight(-20);
             }
+            this.journal.recordAdded(list);
+            entryMapChanged();
             this.observerManager.placeCostChangeEntries(list);
         }
 
@@ -1032,9 +1185,21 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
      */
     protected List<DirectoryEntry> nextKeys(final String dataID, final IBaseDataObject payload, @Nullable final DirectoryEntry lastPlace,
             final DirectoryEntryMap entries) {
-        // Find the entry list for the type being requested
+        // Find the entry list for the type being requested, remembered by the map's WildcardCache
         final DirectoryEntryList currentList = getWildcardedEntryList(dataID, entries);
+        return selectNextKeys(dataID, lastPlace, currentList);
+    }
 
+    /**
+     * Choose the next logical entry from the list of candidates for the current dataid based on the last place visited
+     *
+     * @param dataID key to entryMap, dataType::serviceType, e.g. UNKNOWN::ID
+     * @param lastPlace place agent visited last, this is not stateless
+     * @param currentList expense sorted candidates for the dataID with wildcards already resolved
+     * @return List of DirectoryEntry with next place to go or empty list if none
+     */
+    protected List<DirectoryEntry> selectNextKeys(final String dataID, @Nullable final DirectoryEntry lastPlace,
+            @Nullable final DirectoryEntryList currentList) {
         // Nothing for the dataID or any wildcarded versions, we are done
         if ((currentList == null) || currentList.isEmpty()) {
             logger.debug("nextKey - nothing found here for {}", dataID);
@@ -1050,7 +1215,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
         DirectoryEntry trialEntry = currentList.getEntry(0);
         if (lastPlace == null || (!lastPlace.getDataID().equals(dataID) && !trialEntry.getServiceLocation().equals(lastPlace.getServiceLocation()))) {
             logger.debug("doing first in list for {}", trialEntry);
-            keyList.add(currentList.pickOneOf(trialEntry.getExpense()));
+            keyList.add(this.adaptiveRouting ? pickByLoad(currentList, trialEntry) : currentList.pickOneOf(trialEntry.getExpense()));
         } else {
             // Trying a particular "dataType::serviceType" pair again
             for (int i = 0; i < currentList.size(); i++) {
@@ -1094,6 +1259,54 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
         return keyList;
     }
 
+    /**
+     * Choose between the places equivalent to the cheapest one by their load. Places are equivalent when they have the same
+     * service name and type and the same cost and quality, whether local or remote, and none of them carries a lower
+     * {@link DirectoryEntry#getPathWeight()} penalty. Only places whose load has been observed in this JVM are compared,
+     * see {@link PlaceLoad#isObserved(String)}, since an unknown load is not the same as no load. Two of them are picked at
+     * random and the one with the lower {@link PlaceLoad#getScore(String)} wins, the cheaper one on a tie, so a busy place
+     * sheds work to an idle replica without every agent piling onto the same idle one. With fewer than two to compare the
+     * choice is left to {@link DirectoryEntryList#pickOneOf(int)}.
+     *
+     * @param currentList expense sorted candidates
+     * @param best the cheapest candidate
+     * @return the chosen entry
+     */
+    protected DirectoryEntry pickByLoad(final DirectoryEntryList currentList, final DirectoryEntry best) {
+        final int bestExpense = best.getExpense() % REMOTE_EXPENSE_OVERHEAD;
+        final List<DirectoryEntry> equivalents = new ArrayList<>();
+        int topWeight = Integer.MIN_VALUE;
+        for (final DirectoryEntry e : currentList) {
+            if (e.getExpense() % REMOTE_EXPENSE_OVERHEAD == bestExpense && e.getServiceName().equals(best.getServiceName())
+                    && e.getServiceType().equals(best.getServiceType())) {
+                equivalents.add(e);
+                topWeight = Math.max(topWeight, e.getPathWeight());
+            }
+        }
+        // A place with a lowered path weight, e.g. on a failing directory, is not a replica to shed to
+        final int weight = topWeight;
+        equivalents.removeIf(e -> e.getPathWeight() < weight || !PlaceLoad.isObserved(e.getServiceLocation()));
+        if (equivalents.size() < 2) {
+            return currentList.pickOneOf(best.getExpense());
+        }
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int first = random.nextInt(equivalents.size());
+        int second = random.nextInt(equivalents.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        final DirectoryEntry a = equivalents.get(Math.min(first, second));
+        final DirectoryEntry b = equivalents.get(Math.max(first, second));
+        final double aScore = PlaceLoad.getScore(a.getServiceLocation());
+        final double bScore = PlaceLoad.getScore(b.getServiceLocation());
+        // equivalents are in expense order so a is the cheaper on a tie
+        final DirectoryEntry choice = bScore < aScore ? b : a;
+        logger.debug("Adaptive routing chose {} ({}ms) over {} ({}ms)", choice.getKey(), Math.min(aScore, bScore),
+                (choice == a ? b : a).getKey(), Math.max(aScore, bScore));
+        return choice;
+    }
+
     /**
      * Get the possibly wildcarded DirectoryEntryList for the dataId
      *
@@ -1111,6 +1324,13 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
         return WildcardEntry.getWildcardedEntry(dataID, entries);
     }
 
+    /**
+     * Record that the contents of the entryMap have changed so that routing decisions are redone on next use
+     */
+    protected void entryMapChanged() {
+        this.entryMap.markChanged();
+    }
+
     /**
      * Payloads that need to traverse the relay gateway can visit here to be forwarded on to the correct destination
      * <p>
@@ -1273,6 +1493,10 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
         }
 
         final int count = matches.size();
+        if (count > 0) {
+            this.journal.recordRemoved(matches);
+            entryMapChanged();
+        }
         if (logger.isDebugEnabled()) {
             logger.debug("Found {} entries for removal matching {} keys={}", count, keys.size(), keys);
         }
@@ -1366,10 +1590,13 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
 
         // Nuke em
         this.entryMap.clear();
+        this.journal.recordRemoved(matches);
+        entryMapChanged();
 
         // Remove peers and Notify all observers that we are leaving the group
         this.peerDirectories.clear();
         this.observerManager.peerUpdate(this.peerDirectories);
+        this.observerManager.shutDown();
 
         unbindFromNamespace();
         logger.info("Done shutting down DirectoryPlace");
@@ -1467,4 +1694,28 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
     public boolean isShutdownInitiated() {
         return this.shutdownInitiated;
     }
+
+    /**
+     * Get the changes made to the entries of this directory since a point in its journal, for a peer keeping up to date
+     *
+     * @param epoch the journal epoch the peer last saw or null if none
+     * @param sequence the sequence number of the last change the peer saw
+     * @return the changes, not complete if the peer must do a full zone transfer
+     */
+    public DirectoryDeltaResponseEntity getChangesSince(@Nullable final String epoch, final long sequence) {
+        return this.journal.since(epoch, sequence);
+    }
+
+    /**
+     * A point in the journal of a peer directory
+     */
+    protected static final class SyncPoint {
+        final String epoch;
+        final long sequence;
+
+        SyncPoint(final String epoch, final long sequence) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+        }
+    }
 }
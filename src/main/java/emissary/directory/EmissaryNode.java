@@ -4,9 +4,11 @@ import emissary.admin.Startup;
 import emissary.config.ConfigUtil;
 import emissary.config.Configurator;
 import emissary.config.ServiceConfigGuide;
+import emissary.core.DataMaterialization;
 import emissary.core.EmissaryException;
 import emissary.core.MetricsManager;
 import emissary.core.ResourceWatcher;
+import emissary.kff.KffBloomFilter;
 import emissary.pool.AgentPool;
 import emissary.pool.MobileAgentFactory;
 import emissary.pool.MoveSpool;
@@ -242,14 +244,19 @@ public class EmissaryNode {
         AgentPool pool = new AgentPool(new MobileAgentFactory());
         logger.debug("Setup AgentPool with {} agents...", pool.getNumIdle());
 
-        // The MoveSpool
-        MoveSpool spool = new MoveSpool();
-        logger.debug("Started MoveSpool...{}", spool);
-
         // The metrics manager
         MetricsManager metricsManager = new MetricsManager();
+        pool.registerMetrics(metricsManager.getMetricRegistry());
+        DataMaterialization.registerMetrics(metricsManager.getMetricRegistry());
+        WildcardCache.registerMetrics(metricsManager.getMetricRegistry());
+        HeartbeatManager.registerMetrics(metricsManager.getMetricRegistry());
+        KffBloomFilter.registerMetrics(metricsManager.getMetricRegistry());
         logger.debug("Started metrics manager...{}", metricsManager);
 
+        // The MoveSpool
+        MoveSpool spool = new MoveSpool(metricsManager);
+        logger.debug("Started MoveSpool...{}", spool);
+
         // The resource watcher
         ResourceWatcher watcher = new ResourceWatcher(metricsManager);
         logger.debug("Started resource watcher...{}", watcher);
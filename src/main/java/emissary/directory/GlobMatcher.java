@@ -0,0 +1,132 @@
+package emissary.directory;
+
+/**
+ * A wildcard pattern prepared once for matching against many directory keys, with the same rules as
+ * {@link KeyManipulator#gmatch(String, String)}: <code>?</code> matches any one character and <code>*</code> matches
+ * one or more characters.
+ *
+ * <p>
+ * The literal text before the first wildcard and after the last one, and the shortest string the pattern can match, are
+ * worked out up front so most keys are turned away without walking the pattern. The keys are not copied into arrays and
+ * the pattern is only walked recursively at each <code>*</code>.
+ */
+public final class GlobMatcher {
+
+    private final String pattern;
+    private final char[] chars;
+    private final boolean wildcard;
+    private final String prefix;
+    private final String suffix;
+    private final int minLength;
+
+    private GlobMatcher(final String pattern) {
+        this.pattern = pattern;
+        this.chars = pattern.toCharArray();
+
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < this.chars.length; i++) {
+            final char c = this.chars[i];
+            if (c == '*' || c == '?') {
+                if (first == -1) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+        this.wildcard = first > -1;
+        this.prefix = this.wildcard ? pattern.substring(0, first) : pattern;
+        this.suffix = this.wildcard ? pattern.substring(last + 1) : "";
+        // every pattern character takes at least one character of the key
+        this.minLength = this.chars.length;
+    }
+
+    /**
+     * Prepare a pattern for matching
+     *
+     * @param pattern the pattern, may hold <code>*</code> and <code>?</code>
+     * @return the prepared pattern
+     */
+    public static GlobMatcher compile(final String pattern) {
+        return new GlobMatcher(pattern);
+    }
+
+    /**
+     * Report whether a string has any wildcard characters in it
+     *
+     * @param s the string to check
+     * @return true if it has a <code>*</code> or a <code>?</code>
+     */
+    public static boolean hasWildcard(final String s) {
+        return s.indexOf('*') > -1 || s.indexOf('?') > -1;
+    }
+
+    /**
+     * Get the pattern this was prepared from
+     */
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * Report whether the pattern has any wildcards, if not it only matches itself
+     */
+    public boolean isWildcard() {
+        return this.wildcard;
+    }
+
+    /**
+     * Match a string against the pattern
+     *
+     * @param s the string to match
+     * @return true if the whole string matches
+     */
+    public boolean matches(final String s) {
+        if (!this.wildcard) {
+            return this.pattern.equals(s);
+        }
+        if (s.length() < this.minLength || !s.startsWith(this.prefix) || !s.endsWith(this.suffix)) {
+            return false;
+        }
+        return match(s, this.prefix.length(), this.prefix.length());
+    }
+
+    private boolean match(final String s, final int startS, final int startP) {
+        int spos = startS;
+        int ppos = startP;
+        while (true) {
+            if (ppos == this.chars.length) {
+                return spos == s.length();
+            }
+            if (spos == s.length()) {
+                return false;
+            }
+            final char c = this.chars[ppos];
+            final char sc = s.charAt(spos);
+            if (c == '*') {
+                final int nextP = ppos + 1;
+                if (nextP == this.chars.length) {
+                    return true;
+                }
+                // like gmatch the star takes at least one character and the next pattern character is compared as is
+                final char next = this.chars[nextP];
+                for (int nextS = spos + 1; nextS < s.length(); nextS++) {
+                    if (s.charAt(nextS) == next && match(s, nextS, nextP)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (c == '?' ? sc == 0 : c != sc) {
+                return false;
+            }
+            spos++;
+            ppos++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern;
+    }
+}
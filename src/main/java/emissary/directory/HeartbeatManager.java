@@ -6,7 +6,9 @@ import emissary.core.Namespace;
 import emissary.core.NamespaceException;
 import emissary.server.mvc.adapters.HeartbeatAdapter;
 
+import com.codahale.metrics.MetricRegistry;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.message.BasicNameValuePair;
@@ -20,11 +22,28 @@ import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
 /**
  * Facility for directory instances to check up on each other by sending a heartbeat message
+ * <p>
+ * Each round of heartbeats is sent to all the remote directories at once from a small pool of worker threads, over the
+ * shared pooled http client, with a deadline for each one that starts when a worker picks it up. A remote that has not
+ * answered by its deadline counts as a failure for that round and its heartbeat is cancelled, so one hung remote does
+ * not hold up the checks on the others. A heartbeat no worker picked up before the next round is due is dropped without
+ * counting against the remote. Round trip times are reported as <code>HeartbeatManager.roundTrip</code> once a metric
+ * registry is set.
  */
 public class HeartbeatManager {
     // Our logger
@@ -73,6 +92,32 @@ public class HeartbeatManager {
     /** The remote directories we are checking on and their health */
     protected Map<String, Health> directories = new ConcurrentHashMap<>(100, 0.8f, 3);
 
+    /** Default number of heartbeats in flight at once {@value} */
+    public static final int DEFAULT_THREADS = 8;
+
+    /** Default seconds to wait for a heartbeat answer {@value} */
+    public static final int DEFAULT_TIMEOUT_SECONDS = 10;
+
+    /** Prefix of the reported metrics */
+    public static final String METRIC_PREFIX = "HeartbeatManager.";
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    @Nullable
+    private static volatile MetricRegistry registry;
+
+    /** Threads sending the heartbeats */
+    protected ThreadPoolExecutor workers;
+
+    /** Configured seconds to wait for a heartbeat answer, default is {@value #DEFAULT_TIMEOUT_SECONDS} */
+    protected int timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+
+    /** Client sending the heartbeats, on the shared connection pool with timeouts to match the deadline */
+    protected EmissaryClient client;
+
+    /** Heartbeats sent by the timer that have not finished, by directory key */
+    protected final Map<String, Probe> inFlight = new ConcurrentHashMap<>();
+
     /**
      * Setup to manage heartbeats to remote directories
      *
@@ -102,6 +147,17 @@ public class HeartbeatManager {
         // new daemon timer
         this.timer = new Timer("HeartbeatManager", true);
 
+        // and the workers it hands the heartbeats to
+        final String prefix = "HeartbeatWorker-" + POOL_COUNTER.getAndIncrement() + "-";
+        final AtomicInteger counter = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            final Thread t = new Thread(r, prefix + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        this.workers.allowCoreThreadTimeOut(true);
+        this.client = createClient(this.timeoutSeconds);
+
         // Save directory key
         this.thisDirectory = directoryKey;
 
@@ -134,11 +190,58 @@ public class HeartbeatManager {
         logger.debug("Set new permanent fail threshold to {}", t);
     }
 
+    /**
+     * Set the number of heartbeats sent at once
+     */
+    public void setThreads(final int threads) {
+        final int n = Math.max(1, threads);
+        if (n > this.workers.getMaximumPoolSize()) {
+            this.workers.setMaximumPoolSize(n);
+            this.workers.setCorePoolSize(n);
+        } else {
+            this.workers.setCorePoolSize(n);
+            this.workers.setMaximumPoolSize(n);
+        }
+        logger.debug("Set heartbeat threads to {}", n);
+    }
+
+    /**
+     * Set the seconds to wait for each heartbeat answer
+     */
+    public void setTimeoutSeconds(final int t) {
+        this.timeoutSeconds = Math.max(1, t);
+        this.client = createClient(this.timeoutSeconds);
+        logger.debug("Set heartbeat timeout to {}s", this.timeoutSeconds);
+    }
+
+    /**
+     * Get the seconds to wait for each heartbeat answer
+     */
+    public int getTimeoutSeconds() {
+        return this.timeoutSeconds;
+    }
+
+    private static EmissaryClient createClient(final int timeoutSeconds) {
+        final int millis = (int) TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        return new EmissaryClient(RequestConfig.custom().setConnectTimeout(millis).setConnectionRequestTimeout(millis).setSocketTimeout(millis)
+                .build());
+    }
+
+    /**
+     * Also report heartbeat round trip times to a metric registry
+     *
+     * @param metricRegistry the registry to report to
+     */
+    public static void registerMetrics(final MetricRegistry metricRegistry) {
+        registry = metricRegistry;
+    }
+
     /**
      * Shutdown processing
      */
     public void shutDown() {
         this.timer.cancel();
+        this.workers.shutdownNow();
     }
 
     /**
@@ -309,9 +412,7 @@ public class HeartbeatManager {
         public void run() {
             try {
                 logger.debug("Running timer task on {} directories", HeartbeatManager.this.directories.size());
-                for (final String dir : HeartbeatManager.this.directories.keySet()) {
-                    heartbeat(dir);
-                }
+                heartbeatAll();
                 logger.debug("Ending the HeartbeatTask run method");
             } catch (Exception e) {
                 logger.error("Unexpected problem in heartbeat timer", e);
@@ -319,6 +420,59 @@ public class HeartbeatManager {
         }
     }
 
+    /**
+     * Send a heartbeat to every remote directory at once and take follow-on actions as each answer, or its deadline, comes
+     * in. A remote whose heartbeat from the last round is still running is not sent another one and is counted as failed.
+     */
+    protected void heartbeatAll() {
+        final List<String> sent = new ArrayList<>();
+        for (final String dir : this.directories.keySet()) {
+            final Probe pending = this.inFlight.get(dir);
+            if (pending != null && pending.isRunning()) {
+                healthReport(dir, false, "Still waiting for the last heartbeat");
+                continue;
+            }
+            final Probe probe = new Probe(() -> probe(dir));
+            try {
+                this.workers.execute(probe);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Heartbeat workers are shut down");
+                return;
+            }
+            this.inFlight.put(dir, probe);
+            sent.add(dir);
+        }
+
+        final long timeout = TimeUnit.SECONDS.toNanos(this.timeoutSeconds);
+        final long nextRound = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.intervalSeconds);
+        for (final String dir : sent) {
+            final Probe probe = this.inFlight.get(dir);
+            if (probe == null) {
+                continue;
+            }
+            final Report report;
+            try {
+                report = probe.await(timeout, nextRound);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (report == null) {
+                this.inFlight.remove(dir, probe);
+                logger.debug("No heartbeat worker free for {} this round", dir);
+                count("skipped");
+                continue;
+            }
+            if (probe.isCancelled()) {
+                // left in flight so the next round knows if it is still out
+                count("timeouts");
+            } else {
+                this.inFlight.remove(dir, probe);
+            }
+            healthReport(dir, report.up, report.message);
+        }
+    }
+
     /**
      * Send a heartbeat message to the directory represented by key and take follow-on actions as appropriate Called from
      * the timer task normally, but can be called externally by the impatient
@@ -328,23 +482,122 @@ public class HeartbeatManager {
      * @return true if the directory referenced by key is up
      */
     public final boolean heartbeat(final String key) {
-        boolean isup = false;
+        final Report report = probe(key);
+        healthReport(key, report.up, report.message);
+        return report.up;
+    }
+
+    /**
+     * Send a heartbeat message to the directory represented by key without acting on the answer
+     *
+     * @param key key representing the directory to heartbeat
+     * @return the answer
+     */
+    protected Report probe(final String key) {
+        final long start = System.nanoTime();
         try {
             logger.debug("Sending heartbeat msg to {}", key);
-            EmissaryResponse response = getHeartbeat(this.thisDirectory, key);
-            if (response.getStatus() == 200) {
-                healthReport(key, true, response.getContentString());
-                isup = true;
-            } else {
-                healthReport(key, false, response.getContentString());
-                isup = false;
-            }
+            final EmissaryResponse response = getHeartbeat(this.thisDirectory, key, this.client);
+            return new Report(response.getStatus() == 200, response.getContentString());
         } catch (Exception e) {
             logger.error("Cannot perform heartbeat", e);
-            healthReport(key, false, e.getMessage());
-            isup = false;
+            return new Report(false, e.getMessage());
+        } finally {
+            final MetricRegistry metrics = registry;
+            if (metrics != null) {
+                metrics.timer(METRIC_PREFIX + "roundTrip").update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static void count(final String what) {
+        final MetricRegistry metrics = registry;
+        if (metrics != null) {
+            metrics.counter(METRIC_PREFIX + what).inc();
+        }
+    }
+
+    /**
+     * A heartbeat handed to the workers, timed from when a worker starts on it rather than from when it was sent
+     */
+    protected static final class Probe extends FutureTask<Report> {
+        private volatile long startedNanos;
+        private volatile boolean started;
+        private volatile boolean running;
+
+        Probe(final Callable<Report> heartbeat) {
+            super(heartbeat);
+        }
+
+        @Override
+        public void run() {
+            this.startedNanos = System.nanoTime();
+            this.started = true;
+            this.running = true;
+            try {
+                super.run();
+            } finally {
+                this.running = false;
+            }
+        }
+
+        /**
+         * Report whether a worker is still on this heartbeat, which it may be for a while after it is cancelled
+         */
+        boolean isRunning() {
+            return this.running;
+        }
+
+        /**
+         * Wait for the answer, cancelling the heartbeat if it does not come within the timeout of a worker starting on it
+         *
+         * @param timeoutNanos how long the remote has to answer
+         * @param giveUpNanos when to stop waiting for a worker to start on it, from {@link System#nanoTime()}
+         * @return the answer, a failure if there was none in time, or null if no worker started on it in time
+         */
+        @Nullable
+        Report await(final long timeoutNanos, final long giveUpNanos) throws InterruptedException {
+            while (true) {
+                final long now = System.nanoTime();
+                final long wait;
+                if (this.started) {
+                    wait = this.startedNanos + timeoutNanos - now;
+                    if (wait <= 0) {
+                        cancel(true);
+                        return new Report(false, "No heartbeat answer within " + TimeUnit.NANOSECONDS.toSeconds(timeoutNanos) + "s");
+                    }
+                } else {
+                    if (giveUpNanos - now <= 0) {
+                        cancel(false);
+                        return null;
+                    }
+                    // look again soon since the deadline starts when a worker does
+                    wait = Math.min(giveUpNanos - now, TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                try {
+                    return get(wait, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // check the deadline again
+                } catch (ExecutionException e) {
+                    return new Report(false, String.valueOf(e.getCause()));
+                } catch (CancellationException e) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * The answer to one heartbeat
+     */
+    protected static final class Report {
+        final boolean up;
+        final String message;
+
+        Report(final boolean up, final String message) {
+            this.up = up;
+            this.message = message;
         }
-        return isup;
     }
 
     public static EmissaryResponse getHeartbeat(String fromPlace, String toPlace) {
@@ -433,6 +686,13 @@ public class HeartbeatManager {
             return this.failCounter < HeartbeatManager.this.permanentFailThreshold;
         }
 
+        /**
+         * Count the consecutive failures
+         */
+        int failCount() {
+            return this.failCounter;
+        }
+
         /**
          * Access to the last saved message
          */
@@ -6,8 +6,9 @@ import java.io.Serializable;
 import javax.annotation.Nullable;
 
 /**
- * A class of utility methods for manipulating dictionary keys. Keys are stored in the dictionary with the following
- * format:
+ * A class of utility methods for manipulating dictionary keys. The parsing methods answer from the shared
+ * {@link DirectoryKey} form of a key that is already cached, and otherwise pull just the field asked for out of the
+ * string. Keys are stored in the dictionary with the following format:
  *
  * <code>dataType.serviceName.serviceType.location$expense</code>
  * 
@@ -100,6 +101,10 @@ public class KeyManipulator implements Serializable {
      * Return the data type field from a dictionary formatted key.
      */
     public static String getDataType(final String key) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getDataType();
+        }
         final int firstSeparator = key.indexOf(SEPARATOR);
 
         if (firstSeparator >= 0) {
@@ -109,6 +114,10 @@ public class KeyManipulator implements Serializable {
     }
 
     public static String getDataID(final String key) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getDataID();
+        }
         return getDataType(key) + DATAIDSEPARATOR + getServiceType(key);
     }
 
@@ -177,34 +186,22 @@ public class KeyManipulator implements Serializable {
      * @param key the key to check
      */
     public static boolean isKeyComplete(final String key) {
-        if (numTuplesInKey(key) < KeyManipulator.NUMTUPLES) {
-            return false;
-        }
-        if (getServiceHost(key).length() == 0) {
-            return false;
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.isComplete();
         }
-        return true;
+        return numTuplesInKey(key) >= KeyManipulator.NUMTUPLES && getServiceHost(key).length() > 0;
     }
 
     /**
      * Return the number of tuples in the Key passed in
      */
     public static int numTuplesInKey(final String key) {
-        int count = 0;
-        final byte[] keyBytes = key.getBytes();
-
-        for (int i = 0; i < keyBytes.length; i++) {
-            if (keyBytes[i] == KeyManipulator.SEPARATOR) {
-                count++;
-            }
-            // Dont count separators in the hostname portion
-            if ((i > 0) && (keyBytes[i] == CLASSSEPARATOR) && (keyBytes[i - 1] == CLASSSEPARATOR)) {
-                break;
-            }
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getTupleCount();
         }
-
-        // There is one more tuple than separators x.x.x.x
-        return count + 1;
+        return DirectoryKey.countTuples(key);
     }
 
     /**
@@ -214,13 +211,17 @@ public class KeyManipulator implements Serializable {
      * @return true if key is valid
      */
     public static boolean isValid(@Nullable final String key) {
-        return (key != null) && (numTuplesInKey(key) == 4);
+        return (key != null) && (numTuplesInKey(key) == NUMTUPLES);
     }
 
     /**
      * Returns the class name from a dictionary formatted key
      */
     public static String getServiceClassname(final String key) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getServiceClassname();
+        }
         final String location = getServiceLocation(key);
         final int sep = location.lastIndexOf(CLASSSEPARATOR);
 
@@ -234,6 +235,10 @@ public class KeyManipulator implements Serializable {
      * Returns the hostname:port from a dictionary formatted key
      */
     public static String getServiceHost(final String key) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getServiceHost();
+        }
         final String location = getServiceLocation(key);
         final int ds = location.indexOf(doubleSlash);
 
@@ -252,6 +257,10 @@ public class KeyManipulator implements Serializable {
      * Returns the protocol://hostname:port/ from a dictionary formatted key
      */
     public static String getServiceHostURL(final String key) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getServiceHostURL();
+        }
         final String location = getServiceLocation(key);
         final int ds = location.lastIndexOf(CLASSSEPARATOR);
 
@@ -276,6 +285,10 @@ public class KeyManipulator implements Serializable {
      * Returns the service location (host:port/className) field from a dictionary formatted key.
      */
     public static String getServiceLocation(final String key) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getServiceLocation();
+        }
         final int firstSeparator = key.indexOf(SEPARATOR);
         final int secondSeparator = key.indexOf(SEPARATOR, firstSeparator + 1);
         final int thirdSeparator = key.indexOf(SEPARATOR, secondSeparator + 1);
@@ -298,6 +311,10 @@ public class KeyManipulator implements Serializable {
     }
 
     public static int getExpense(final String key, final int dflt) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getExpense(dflt);
+        }
         final int pos = key.lastIndexOf(DOLLAR);
         int expense = dflt;
         try {
@@ -330,6 +347,10 @@ public class KeyManipulator implements Serializable {
      * @return the modified key
      */
     public static String removeExpense(final String key) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getKey();
+        }
         final int pos = key.indexOf(DOLLAR);
         if (pos != -1) {
             return key.substring(0, pos);
@@ -341,6 +362,10 @@ public class KeyManipulator implements Serializable {
      * Returns the service name field from a dictionary formatted key.
      */
     public static String getServiceName(final String key) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getServiceName();
+        }
         final int firstSeparator = key.indexOf(SEPARATOR);
         final int secondSeparator = key.indexOf(SEPARATOR, firstSeparator + 1);
 
@@ -354,6 +379,10 @@ public class KeyManipulator implements Serializable {
      * Returns the service type field from a dictionary formatted key.
      */
     public static String getServiceType(final String key) {
+        final DirectoryKey parsed = DirectoryKey.cached(key);
+        if (parsed != null) {
+            return parsed.getServiceType();
+        }
         final int firstSeparator = key.indexOf(SEPARATOR);
         final int secondSeparator = key.indexOf(SEPARATOR, firstSeparator + 1);
         final int thirdSeparator = key.indexOf(SEPARATOR, secondSeparator + 1);
@@ -0,0 +1,118 @@
+package emissary.directory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rolling load of the places in this JVM, fed by {@link emissary.core.TimedResource} as agents start and finish work at
+ * each place. For each place service location it keeps the number of payloads in the place right now and a moving
+ * average of how long the place takes, and from those an estimate of how long new work would wait there. Used by
+ * {@link DirectoryPlace} when adaptive routing is turned on to choose between equivalent places.
+ */
+public final class PlaceLoad {
+
+    /** Weight of the latest service time in the moving average */
+    static final double SMOOTHING = 0.2;
+
+    private static final Map<String, Load> loads = new ConcurrentHashMap<>();
+
+    private PlaceLoad() {}
+
+    /**
+     * Note that work has started at a place
+     *
+     * @param serviceLocation the service location of the place
+     */
+    public static void started(final String serviceLocation) {
+        loads.computeIfAbsent(serviceLocation, k -> new Load()).inFlight.incrementAndGet();
+    }
+
+    /**
+     * Note that work has finished at a place
+     *
+     * @param serviceLocation the service location of the place
+     * @param nanos how long the work took
+     */
+    public static void finished(final String serviceLocation, final long nanos) {
+        final Load load = loads.computeIfAbsent(serviceLocation, k -> new Load());
+        load.inFlight.decrementAndGet();
+        load.addServiceTime(nanos);
+    }
+
+    /**
+     * Tell whether any work has been recorded at a place. Only places in this JVM are ever recorded, so nothing is known
+     * about the load of a place that is not.
+     *
+     * @param serviceLocation the service location of the place
+     * @return true if the load of the place is known
+     */
+    public static boolean isObserved(final String serviceLocation) {
+        return loads.containsKey(serviceLocation);
+    }
+
+    /**
+     * Get the number of payloads being worked on at a place
+     *
+     * @param serviceLocation the service location of the place
+     * @return the count, 0 for a place with nothing recorded
+     */
+    public static int getInFlight(final String serviceLocation) {
+        final Load load = loads.get(serviceLocation);
+        return load == null ? 0 : Math.max(0, load.inFlight.get());
+    }
+
+    /**
+     * Get the moving average of how long work at a place takes
+     *
+     * @param serviceLocation the service location of the place
+     * @return the average in milliseconds, 0 for a place with nothing recorded
+     */
+    public static double getServiceMillis(final String serviceLocation) {
+        final Load load = loads.get(serviceLocation);
+        return load == null ? 0.0 : load.getServiceNanos() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Estimate how long new work would wait at a place before being started, the work in flight times the average service
+     * time. A place that is idle scores 0, and so does one with nothing recorded, such as one in another JVM, so check
+     * {@link #isObserved(String)} before comparing scores.
+     *
+     * @param serviceLocation the service location of the place
+     * @return the estimate in milliseconds
+     */
+    public static double getScore(final String serviceLocation) {
+        return getInFlight(serviceLocation) * getServiceMillis(serviceLocation);
+    }
+
+    /**
+     * Forget everything recorded
+     */
+    public static void reset() {
+        loads.clear();
+    }
+
+    private static final class Load {
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        /** Bits of the double moving average, 0 until the first sample */
+        final AtomicLong serviceNanos = new AtomicLong(Double.doubleToLongBits(0.0));
+
+        void addServiceTime(final long nanos) {
+            while (true) {
+                final long bits = this.serviceNanos.get();
+                final double current = Double.longBitsToDouble(bits);
+                final double next = current == 0.0 ? nanos : current + SMOOTHING * (nanos - current);
+                if (this.serviceNanos.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                    return;
+                }
+            }
+        }
+
+        double getServiceNanos() {
+            return Double.longBitsToDouble(this.serviceNanos.get());
+        }
+    }
+}
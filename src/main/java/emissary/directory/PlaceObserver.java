@@ -1,5 +1,7 @@
 package emissary.directory;
 
+import java.util.Map;
+
 /**
  * This interface can be implemented by any class wishing to subscribe to place changes in an emissary DirectoryPlace.
  * These methods are called for the appropriate actions that match the pattern supplied to the observable.
@@ -29,6 +31,32 @@ public interface PlaceObserver extends DirectoryObserver {
      */
     void placeCostChanged(String observableKey, String placeKey);
 
+    /**
+     * Called with the changes collected over a notification window when the directory notifies its observers
+     * asynchronously. Each place appears once with the latest change to it, in the order the places last changed. By
+     * default each change is handed to the matching single change method.
+     *
+     * @param observableKey key of the directory reporting the changes
+     * @param changes the action for each place key
+     */
+    default void placesChanged(String observableKey, Map<String, DirectoryObserverManager.Action> changes) {
+        for (final Map.Entry<String, DirectoryObserverManager.Action> change : changes.entrySet()) {
+            switch (change.getValue()) {
+                case PLACE_ADD:
+                    placeRegistered(observableKey, change.getKey());
+                    break;
+                case PLACE_REMOVE:
+                    placeDeregistered(observableKey, change.getKey());
+                    break;
+                case PLACE_COST_CHANGE:
+                    placeCostChanged(observableKey, change.getKey());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
     /**
      * The pattern for this observers subscription,
      * 
@@ -0,0 +1,172 @@
+package emissary.directory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Remembers the merged, expense sorted result of wildcarding a dataID against a {@link DirectoryEntryMap}, see
+ * {@link WildcardEntry#getWildcardedEntry(String, DirectoryEntryMap)}. Each result is stamped with the generation of
+ * the map it was built from and is only handed out while the map is still on that generation, so any change to the map
+ * makes every result stale. The number of results kept is bounded, when it is reached they are all dropped.
+ *
+ * <p>
+ * Hits and misses are counted over all caches and reported as <code>WildcardCache.hits</code>,
+ * <code>WildcardCache.misses</code> and <code>WildcardCache.hitRate</code> once a metric registry is set.
+ */
+public class WildcardCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(WildcardCache.class);
+
+    /** Number of results held by default */
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    /** Prefix of the reported metrics */
+    public static final String METRIC_PREFIX = "WildcardCache.";
+
+    private static final LongAdder hits = new LongAdder();
+
+    private static final LongAdder misses = new LongAdder();
+
+    @Nullable
+    private static volatile Counter hitCounter;
+
+    @Nullable
+    private static volatile Counter missCounter;
+
+    private final int maxEntries;
+
+    private final Map<String, Stamped> results;
+
+    /**
+     * Create a cache holding the default number of results
+     */
+    public WildcardCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Create a cache
+     *
+     * @param maxEntries number of results to hold before they are all dropped
+     */
+    public WildcardCache(final int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.results = new ConcurrentHashMap<>(Math.min(this.maxEntries, DEFAULT_MAX_ENTRIES));
+    }
+
+    /**
+     * Get the result for a dataID, building it if there is none for the generation
+     *
+     * @param dataID the dataID being routed
+     * @param generation the generation of the map, read before the map is looked at
+     * @param resolver builds the result from the map
+     * @return the result, shared with other callers so do not modify it
+     */
+    public DirectoryEntryList get(final String dataID, final long generation, final Function<String, DirectoryEntryList> resolver) {
+        final Stamped stamped = this.results.get(dataID);
+        if (stamped != null && stamped.generation == generation) {
+            hits.increment();
+            count(hitCounter);
+            return stamped.list;
+        }
+
+        misses.increment();
+        count(missCounter);
+        final DirectoryEntryList list = resolver.apply(dataID);
+        if (this.results.size() >= this.maxEntries) {
+            logger.debug("Wildcard cache is full at {} results, flushing", this.maxEntries);
+            this.results.clear();
+        }
+        // a result built while the map changed carries the old generation and is replaced on the next call
+        this.results.put(dataID, new Stamped(generation, list));
+        return list;
+    }
+
+    /**
+     * Count the results held, including stale ones
+     */
+    public int size() {
+        return this.results.size();
+    }
+
+    /**
+     * Drop every result
+     */
+    public void clear() {
+        this.results.clear();
+    }
+
+    private static void count(@Nullable final Counter counter) {
+        if (counter != null) {
+            counter.inc();
+        }
+    }
+
+    /**
+     * Also report to a metric registry
+     *
+     * @param metricRegistry the registry to report to
+     */
+    public static void registerMetrics(final MetricRegistry metricRegistry) {
+        metricRegistry.gauge(METRIC_PREFIX + "hitRate", () -> new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.sum(), hits.sum() + misses.sum());
+            }
+        });
+        missCounter = metricRegistry.counter(METRIC_PREFIX + "misses");
+        hitCounter = metricRegistry.counter(METRIC_PREFIX + "hits");
+    }
+
+    /**
+     * Get the number of lookups answered from a cache
+     */
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups that had to build the result
+     */
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the share of lookups answered from a cache
+     *
+     * @return between 0 and 1, or 0 if nothing has been looked up
+     */
+    public static double getHitRate() {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Forget the hits and misses counted so far
+     */
+    public static void resetStats() {
+        hits.reset();
+        misses.reset();
+    }
+
+    private static final class Stamped {
+        final long generation;
+        final DirectoryEntryList list;
+
+        Stamped(final long generation, final DirectoryEntryList list) {
+            this.generation = generation;
+            this.list = list;
+        }
+    }
+}
@@ -149,20 +149,34 @@ public class WildcardEntry {
     }
 
     /**
-     * Select an entry from the map
+     * Select an entry from the map. The result is remembered by the map's {@link WildcardCache} until the map changes.
      *
      * @param dataID the string to wildcard
      * @param map the map to choose from
-     * @return the found entry
+     * @return the found entry, shared with other callers so do not modify it
      */
     public static DirectoryEntryList getWildcardedEntry(final String dataID, final DirectoryEntryMap map) {
+        // The generation is read before the map so that a change made while
+        // merging leaves the result stale instead of silently wrong
+        final long generation = map.getGeneration();
+        return map.getWildcardCache().get(dataID, generation, id -> mergeWildcardedEntry(id, map));
+    }
+
+    /**
+     * Merge the lists of every wildcard form of a dataID found in the map
+     *
+     * @param dataID the string to wildcard
+     * @param map the map to choose from
+     * @return a new expense sorted list
+     */
+    static DirectoryEntryList mergeWildcardedEntry(final String dataID, final DirectoryEntryMap map) {
 
         final DirectoryEntryList matches = new DirectoryEntryList();
 
-        final WildcardEntry we = new WildcardEntry(dataID);
-        logger.debug("Got a set of size {} from {}", we.size(), dataID);
+        final List<String> forms = expand(dataID);
+        logger.debug("Got a set of size {} from {}", forms.size(), dataID);
 
-        for (final String w : we.asSet()) {
+        for (final String w : forms) {
             final DirectoryEntryList found = map.get(w);
             if (found != null) {
                 logger.debug("Found a wildcard match on {} size={}", w, found.size());
@@ -174,6 +188,17 @@ public class WildcardEntry {
         return matches;
     }
 
+    /**
+     * Get the wildcard forms of a dataID, in the order {@link #asSet()} gives them. Not remembered here, the merged result
+     * is already kept by the map's {@link WildcardCache}.
+     *
+     * @param dataID the string to wildcard
+     * @return the wildcard forms
+     */
+    static List<String> expand(final String dataID) {
+        return new ArrayList<>(new WildcardEntry(dataID).asSet());
+    }
+
     /**
      * Size of this wildcard entry set
      */
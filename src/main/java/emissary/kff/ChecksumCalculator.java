@@ -5,13 +5,15 @@ import emissary.core.channels.SeekableByteChannelFactory;
 import org.apache.commons.collections4.CollectionUtils;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.zip.CRC32;
 import javax.annotation.Nullable;
 
@@ -22,6 +24,11 @@ import javax.annotation.Nullable;
  * @see java.security.MessageDigest java.security.MessageDigest
  */
 public class ChecksumCalculator {
+    /** Largest piece of channel data read at a time */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    /** Smallest buffer used to read channel data */
+    private static final int MIN_BUFFER_SIZE = 8192;
+
     /** Used for CRC32 calculations */
     private CRC32 crc = null;
     /** Used for SSDEEP calculations */
@@ -30,6 +37,9 @@ public class ChecksumCalculator {
     /** Used for hash calculations */
     private List<MessageDigest> digest = new ArrayList<>();
 
+    /** Hash channel data with all the algorithms at once */
+    private boolean parallel = false;
+
     /**
      * Constructor initializes SHA-1 generator and turns on the CRC32 processing as well
      * 
@@ -164,50 +174,130 @@ public class ChecksumCalculator {
         return res;
     }
 
+    /**
+     * Turn on or off hashing each piece of channel data with all the algorithms at once
+     *
+     * @param use true to run the digests, CRC and ssdeep on separate threads
+     * @see #digest(SeekableByteChannelFactory)
+     */
+    public void setParallel(boolean use) {
+        parallel = use;
+    }
+
+    /**
+     * Determine if channel data is hashed with all the algorithms at once
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
     /**
      * Calculates a CRC32 and a digest on a {@link java.nio.channels.SeekableByteChannel} of data.
      *
+     * <p>
+     * The data is read once, in pieces of up to {@link #BUFFER_SIZE} bytes, and each piece is handed to every digest, the
+     * CRC and ssdeep in turn. When running in parallel the algorithms work on a piece on the common fork join pool while
+     * the next piece is read.
+     *
      * @param sbcf Provider of data to compute results for
      * @return results of computing the requested hashes on the data
      */
     public ChecksumResults digest(final SeekableByteChannelFactory sbcf) {
         final ChecksumResults res = new ChecksumResults();
-        final byte[] b = new byte[1024];
 
-        for (final MessageDigest d : digest) {
-            try (final InputStream is = Channels.newInputStream(sbcf.create());) {
+        try (final SeekableByteChannel sbc = sbcf.create()) {
+            final long size = sbc.size();
+            final List<Hasher> hashers = new ArrayList<>();
+            for (final MessageDigest d : digest) {
                 d.reset();
+                hashers.add((b, len) -> d.update(b, 0, len));
+            }
+            if (crc != null) {
+                crc.reset();
+                final CRC32 c = crc;
+                hashers.add((b, len) -> c.update(b, 0, len));
+            }
+            final Ssdeep.FuzzyHasher fuzzy = ssdeep != null ? new Ssdeep.FuzzyHasher(size) : null;
+            if (fuzzy != null) {
+                hashers.add((b, len) -> fuzzy.update(b, 0, len));
+            }
 
-                int bytesRead;
-                while ((bytesRead = is.read(b)) != -1) {
-                    d.update(b, 0, bytesRead);
+            final int bufferSize = (int) Math.min(BUFFER_SIZE, Math.max(MIN_BUFFER_SIZE, size));
+            if (parallel && hashers.size() > 1 && size > bufferSize) {
+                digestParallel(sbc, hashers, bufferSize);
+            } else {
+                final byte[] b = new byte[bufferSize];
+                int len;
+                while ((len = fill(sbc, b)) > 0) {
+                    for (final Hasher h : hashers) {
+                        h.update(b, len);
+                    }
                 }
+            }
 
+            for (final MessageDigest d : digest) {
                 res.setHash(d.getAlgorithm(), d.digest());
-            } catch (final IOException ioe) {
-                // Ignore
             }
+            if (crc != null) {
+                res.setCrc(crc.getValue());
+            }
+            if (fuzzy != null) {
+                res.setSsdeep(fuzzy.getHash(sbcf));
+            }
+        } catch (final IOException ioe) {
+            // Ignore
         }
 
-        if (crc != null) {
-            try (final InputStream is = Channels.newInputStream(sbcf.create());) {
-                crc.reset();
+        return res;
+    }
 
-                int bytesRead;
-                while ((bytesRead = is.read(b)) != -1) {
-                    crc.update(b, 0, bytesRead);
+    /**
+     * Hash each piece with every algorithm on the common pool while the next piece is read
+     */
+    private static void digestParallel(final SeekableByteChannel sbc, final List<Hasher> hashers, final int bufferSize) throws IOException {
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>(hashers.size());
+        byte[] current = new byte[bufferSize];
+        byte[] next = new byte[bufferSize];
+        int len = fill(sbc, current);
+        while (len > 0) {
+            final byte[] b = current;
+            final int n = len;
+            for (final Hasher h : hashers) {
+                tasks.add(ForkJoinPool.commonPool().submit(() -> h.update(b, n)));
+            }
+            try {
+                len = fill(sbc, next);
+            } finally {
+                for (final ForkJoinTask<?> task : tasks) {
+                    task.join();
                 }
-
-                res.setCrc(crc.getValue());
-            } catch (final IOException ioe) {
-                // Ignore
+                tasks.clear();
             }
+            current = next;
+            next = b;
         }
+    }
 
-        if (ssdeep != null) {
-            res.setSsdeep(ssdeep.fuzzy_hash(sbcf));
+    /**
+     * Read from a channel until the buffer is full or the channel is exhausted
+     *
+     * @return the number of bytes read, 0 at the end of the channel
+     */
+    private static int fill(final SeekableByteChannel sbc, final byte[] b) throws IOException {
+        final ByteBuffer buf = ByteBuffer.wrap(b);
+        while (buf.hasRemaining()) {
+            if (sbc.read(buf) < 0) {
+                break;
+            }
         }
+        return buf.position();
+    }
 
-        return res;
+    /**
+     * Takes one piece of the data for an algorithm
+     */
+    @FunctionalInterface
+    private interface Hasher {
+        void update(byte[] b, int len);
     }
 }
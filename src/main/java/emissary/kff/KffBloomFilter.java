@@ -0,0 +1,311 @@
+package emissary.kff;
+
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * A bloom filter over the records of a sorted KFF file, used by {@link KffFile} and {@link KffMappedFile} to turn away
+ * hashes that are certainly not in the file without reading it. It is keyed on the leading {@link #KEY_LENGTH} bytes of
+ * each record, which are hash bytes for both SHA-1 and MD5 files, so it answers for lookups with or without a CRC. The
+ * hashes are already uniform so the bit positions are taken straight from the key bytes.
+ *
+ * <p>
+ * The filter is built by reading the data file once and is saved next to it as <code>&lt;file&gt;.bloom</code>. Later
+ * loads use the saved copy as long as the data file has the same length and modification time.
+ *
+ * <p>
+ * Over all filters, lookups turned away are reported as <code>KffBloomFilter.misses</code>, lookups passed on that were
+ * found as <code>KffBloomFilter.hits</code> and lookups passed on that were not found as
+ * <code>KffBloomFilter.falsePositives</code> once a metric registry is set.
+ */
+public class KffBloomFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(KffBloomFilter.class);
+
+    /** Share of absent hashes let through when none is configured */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    /** Suffix added to the data file name for the saved filter */
+    public static final String SUFFIX = ".bloom";
+
+    /** Prefix of the reported metrics */
+    public static final String METRIC_PREFIX = "KffBloomFilter.";
+
+    /** Number of leading record bytes the filter is keyed on */
+    static final int KEY_LENGTH = 16;
+
+    private static final int MAGIC = 0x4b424c4d;
+
+    private static final int VERSION = 1;
+
+    private static final LongAdder hits = new LongAdder();
+
+    private static final LongAdder misses = new LongAdder();
+
+    private static final LongAdder falsePositives = new LongAdder();
+
+    @Nullable
+    private static volatile MetricRegistry registry;
+
+    private final long[] bits;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    private final int keyLength;
+
+    private KffBloomFilter(final long[] bits, final int hashCount, final int keyLength) {
+        this.bits = bits;
+        this.bitCount = (long) bits.length * Long.SIZE;
+        this.hashCount = hashCount;
+        this.keyLength = keyLength;
+    }
+
+    /**
+     * Load the saved filter for a data file, or build and save it if there is none or it is out of date
+     *
+     * @param filename the sorted record file
+     * @param recordLength fixed record length in the file
+     * @param falsePositiveRate share of absent hashes the filter may let through, used when building
+     * @return the filter
+     * @throws IOException if the data file cannot be read
+     */
+    public static KffBloomFilter load(final String filename, final int recordLength, final double falsePositiveRate) throws IOException {
+        final Path data = Paths.get(filename);
+        final Path saved = Paths.get(filename + SUFFIX);
+        final long length = Files.size(data);
+        final long modified = Files.getLastModifiedTime(data).toMillis();
+
+        if (Files.exists(saved)) {
+            try {
+                final KffBloomFilter filter = read(saved, recordLength, length, modified);
+                if (filter != null) {
+                    logger.debug("Loaded KFF bloom filter {}", saved);
+                    return filter;
+                }
+                logger.info("KFF bloom filter {} is out of date, rebuilding", saved);
+            } catch (IOException e) {
+                logger.warn("Cannot read KFF bloom filter {}, rebuilding: {}", saved, e.getMessage());
+            }
+        }
+
+        final KffBloomFilter filter = build(data, recordLength, falsePositiveRate);
+        try {
+            filter.write(saved, recordLength, length, modified);
+        } catch (IOException e) {
+            logger.warn("Cannot save KFF bloom filter {}, it will be rebuilt next time: {}", saved, e.getMessage());
+        }
+        return filter;
+    }
+
+    /**
+     * Build a filter by reading every record of a data file
+     *
+     * @param data the sorted record file
+     * @param recordLength fixed record length in the file
+     * @param falsePositiveRate share of absent hashes the filter may let through
+     * @return the filter
+     * @throws IOException if the data file cannot be read
+     */
+    static KffBloomFilter build(final Path data, final int recordLength, final double falsePositiveRate) throws IOException {
+        final long records = Files.size(data) / recordLength;
+        final double rate = falsePositiveRate > 0.0 && falsePositiveRate < 1.0 ? falsePositiveRate : DEFAULT_FALSE_POSITIVE_RATE;
+        final double ln2 = Math.log(2);
+        final long wantedBits = (long) Math.ceil(-Math.max(1, records) * Math.log(rate) / (ln2 * ln2));
+        final long words = Math.min(Integer.MAX_VALUE - 8L, Math.max(1L, (wantedBits + Long.SIZE - 1) / Long.SIZE));
+        final int hashCount = (int) Math.max(1, Math.min(16, Math.round((double) words * Long.SIZE / Math.max(1, records) * ln2)));
+        final KffBloomFilter filter = new KffBloomFilter(new long[(int) words], hashCount, Math.min(KEY_LENGTH, recordLength));
+
+        final long start = System.currentTimeMillis();
+        final byte[] rec = new byte[recordLength];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(data), 1 << 16))) {
+            for (long r = 0; r < records; r++) {
+                in.readFully(rec);
+                filter.add(rec);
+            }
+        }
+        logger.info("Built KFF bloom filter for {} with {} records, {} bits and {} hashes in {} ms", data, records, filter.bitCount,
+                hashCount, System.currentTimeMillis() - start);
+        return filter;
+    }
+
+    @Nullable
+    private static KffBloomFilter read(final Path saved, final int recordLength, final long length, final long modified) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(saved), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a KFF bloom filter");
+            }
+            if (in.readInt() != recordLength || in.readLong() != length || in.readLong() != modified) {
+                return null;
+            }
+            final int hashCount = in.readInt();
+            final int keyLength = in.readInt();
+            final int words = in.readInt();
+            if (hashCount <= 0 || keyLength <= 0 || words <= 0) {
+                throw new IOException("corrupt KFF bloom filter header");
+            }
+            final long[] bits = new long[words];
+            for (int i = 0; i < words; i++) {
+                bits[i] = in.readLong();
+            }
+            return new KffBloomFilter(bits, hashCount, keyLength);
+        } catch (EOFException e) {
+            throw new IOException("truncated KFF bloom filter", e);
+        }
+    }
+
+    private void write(final Path saved, final int recordLength, final long length, final long modified) throws IOException {
+        // write to the side and move into place so a reader never sees half a filter
+        final Path tmp = Paths.get(saved + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(recordLength);
+            out.writeLong(length);
+            out.writeLong(modified);
+            out.writeInt(this.hashCount);
+            out.writeInt(this.keyLength);
+            out.writeInt(this.bits.length);
+            for (final long word : this.bits) {
+                out.writeLong(word);
+            }
+        }
+        Files.move(tmp, saved, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void add(final byte[] key) {
+        final long h1 = word(key, 0);
+        final long h2 = word(key, 8) | 1L;
+        for (int i = 0; i < this.hashCount; i++) {
+            final long bit = Long.remainderUnsigned(h1 + i * h2, this.bitCount);
+            this.bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Report whether a hash may be in the file, counting it as a miss if it certainly is not
+     *
+     * @param hash the hash being looked up
+     * @return false if the hash is certainly not in the file
+     */
+    public boolean mightContain(final byte[] hash) {
+        if (hash.length < this.keyLength) {
+            // too short to screen, let the file decide
+            return true;
+        }
+        final long h1 = word(hash, 0);
+        final long h2 = word(hash, 8) | 1L;
+        for (int i = 0; i < this.hashCount; i++) {
+            final long bit = Long.remainderUnsigned(h1 + i * h2, this.bitCount);
+            if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0L) {
+                misses.increment();
+                count("misses");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count the outcome of looking up a hash the filter let through
+     *
+     * @param found true if the file had it
+     */
+    public void confirm(final boolean found) {
+        if (found) {
+            hits.increment();
+            count("hits");
+        } else {
+            falsePositives.increment();
+            count("falsePositives");
+        }
+    }
+
+    /**
+     * Read up to eight key bytes as a big endian long, bytes past the key length read as zero
+     */
+    private long word(final byte[] key, final int offset) {
+        long w = 0L;
+        for (int i = offset; i < offset + 8; i++) {
+            w = (w << 8) | (i < this.keyLength ? key[i] & 0xffL : 0L);
+        }
+        return w;
+    }
+
+    /**
+     * Get the number of bits in the filter
+     */
+    public long getBitCount() {
+        return this.bitCount;
+    }
+
+    /**
+     * Get the number of bits set for each record
+     */
+    public int getHashCount() {
+        return this.hashCount;
+    }
+
+    private static void count(final String what) {
+        final MetricRegistry metrics = registry;
+        if (metrics != null) {
+            metrics.counter(METRIC_PREFIX + what).inc();
+        }
+    }
+
+    /**
+     * Also report to a metric registry
+     *
+     * @param metricRegistry the registry to report to
+     */
+    public static void registerMetrics(final MetricRegistry metricRegistry) {
+        registry = metricRegistry;
+    }
+
+    /**
+     * Get the number of lookups let through that were found
+     */
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups turned away
+     */
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of lookups let through that were not found
+     */
+    public static long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Forget the lookups counted so far
+     */
+    public static void resetStats() {
+        hits.reset();
+        misses.reset();
+        falsePositives.reset();
+    }
+}
@@ -28,6 +28,9 @@ public class KffChain {
     // The algorithms to compute
     protected List<String> algorithms = new ArrayList<String>();
 
+    // Hash channel data with all the algorithms at once
+    protected boolean parallelDigest = false;
+
     /**
      * Construct an empty KFF Chain
      */
@@ -61,6 +64,23 @@ public class KffChain {
         KFF_MIN_DATA_SIZE = i;
     }
 
+    /**
+     * Hash channel backed data with all the algorithms at once instead of one after the other
+     *
+     * @param parallel true to run the algorithms on separate threads
+     * @see ChecksumCalculator#setParallel(boolean)
+     */
+    public void setParallelDigest(boolean parallel) {
+        parallelDigest = parallel;
+    }
+
+    /**
+     * Determine if channel backed data is hashed with all the algorithms at once
+     */
+    public boolean isParallelDigest() {
+        return parallelDigest;
+    }
+
     /**
      * Add the specified algorithms
      *
@@ -217,6 +237,7 @@ public class KffChain {
      */
     public ChecksumResults computeSums(final SeekableByteChannelFactory sbcf) throws NoSuchAlgorithmException {
         final ChecksumCalculator calc = new ChecksumCalculator(algorithms);
+        calc.setParallel(parallelDigest);
         return calc.digest(sbcf);
     }
 }
@@ -29,6 +29,8 @@ public class KffChainLoader {
 
     private static KffChain theInstance = null;
     private static Map<String, String> classes;
+    private static boolean bloomFilter = false;
+    private static double bloomFalsePositiveRate = KffBloomFilter.DEFAULT_FALSE_POSITIVE_RATE;
 
     /**
      * Take away the public constructor
@@ -44,10 +46,13 @@ public class KffChainLoader {
             try {
                 Configurator configG = ConfigUtil.getConfigInfo(KffChain.class);
                 classes = configG.findStringMatchMap("KFF_IMPL_");
+                bloomFilter = configG.findBooleanEntry("KFF_BLOOM_FILTER", false);
+                bloomFalsePositiveRate = configG.findDoubleEntry("KFF_BLOOM_FALSE_POSITIVE_RATE", KffBloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
                 loadFrom(chain, configG.findStringMatchMap("KFF_FILE_KNOWN_"), FilterType.Ignore);
                 loadFrom(chain, configG.findStringMatchMap("KFF_FILE_DUPE_"), FilterType.Duplicate);
 
                 chain.setMinDataSize(configG.findIntEntry("KFF_MIN_SIZE", 0));
+                chain.setParallelDigest(configG.findBooleanEntry("KFF_PARALLEL_DIGEST", false));
                 Set<String> algs = configG.findEntriesAsSet("KFF_ALG");
                 chain.setAlgorithms(algs);
             } catch (IOException iox) {
@@ -91,6 +96,10 @@ public class KffChainLoader {
                     k = new KffFile(name, key, filterType);
                 }
 
+                if (bloomFilter) {
+                    enableBloomFilter(k);
+                }
+
                 chain.addFilter(k);
                 countLoaded++;
             } catch (IOException e) {
@@ -100,6 +109,23 @@ public class KffChainLoader {
         return countLoaded;
     }
 
+    /**
+     * Put a bloom filter in front of a file backed filter, if it cannot be loaded the filter is used without one
+     *
+     * @param k the filter
+     */
+    private static void enableBloomFilter(KffFilter k) {
+        try {
+            if (k instanceof KffFile) {
+                ((KffFile) k).enableBloomFilter(bloomFalsePositiveRate);
+            } else if (k instanceof KffMappedFile) {
+                ((KffMappedFile) k).enableBloomFilter(bloomFalsePositiveRate);
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot load bloom filter for {}, checking without one", k.getName(), e);
+        }
+    }
+
     /**
      * Load the configured chain and run some data
      */
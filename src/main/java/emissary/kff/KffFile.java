@@ -11,6 +11,7 @@ import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * KffFile provides access to the known file filter data. The NIST/NSRL data is a CSV file with other information. It
@@ -49,6 +50,13 @@ public class KffFile implements KffFilter {
 
     protected String myPreferredAlgorithm = "SHA-1";
 
+    /** Name of the file containing the records */
+    protected String filename;
+
+    /** Optional pre-screen that answers definite misses without reading the file */
+    @Nullable
+    protected volatile KffBloomFilter bloomFilter;
+
     /**
      * Creates a new instance of KffFile
      *
@@ -77,6 +85,7 @@ public class KffFile implements KffFilter {
         this.ftype = ftype;
         this.filterName = filterName;
         this.recordLength = recordLength;
+        this.filename = filename;
 
         // Set logger to run time class
         logger = LoggerFactory.getLogger(this.getClass());
@@ -132,6 +141,24 @@ public class KffFile implements KffFilter {
         return myPreferredAlgorithm;
     }
 
+    /**
+     * Screen lookups with a bloom filter over the records, loading it from next to the file or building it there
+     *
+     * @param falsePositiveRate share of absent hashes the filter may let through when it has to be built
+     * @throws IOException if the file cannot be read
+     * @see KffBloomFilter#load(String, int, double)
+     */
+    public void enableBloomFilter(double falsePositiveRate) throws IOException {
+        bloomFilter = KffBloomFilter.load(filename, recordLength, falsePositiveRate);
+    }
+
+    /**
+     * Report whether lookups are screened with a bloom filter
+     */
+    public boolean isBloomFilterEnabled() {
+        return bloomFilter != null;
+    }
+
     /**
      * Performs a binary search on the file to see if a given HASH/CRC is in the list.
      *
@@ -227,7 +254,16 @@ public class KffFile implements KffFilter {
             logger.warn("Filter cannot be used, {} not computed on {}", myPreferredAlgorithm, fname);
             return false;
         }
-        return binaryFileSearch(hash, csum.getCrc());
+        final KffBloomFilter bloom = bloomFilter;
+        if (bloom == null) {
+            return binaryFileSearch(hash, csum.getCrc());
+        }
+        if (!bloom.mightContain(hash)) {
+            return false;
+        }
+        boolean found = binaryFileSearch(hash, csum.getCrc());
+        bloom.confirm(found);
+        return found;
     }
 
     public static void main(String[] args) throws Exception {
@@ -0,0 +1,477 @@
+package emissary.kff;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * KffMappedFile reads the same sorted, fixed length record files as {@link KffFile} but memory maps them instead of
+ * seeking through a RandomAccessFile. The file is mapped in segments that each hold a whole number of records, so it is
+ * not limited to the 2 GB a single mapped buffer can hold.
+ *
+ * <p>
+ * The records are split into pages of about {@link #PAGE_SIZE} bytes and the first eight bytes of the first record of
+ * each page are kept in memory. A lookup searches that index first and then only the one or two pages the hash can be
+ * on, reading the mapped buffers with absolute gets, so it makes no system calls, allocates nothing and can be called
+ * from many threads at once.
+ *
+ * <p>
+ * Use it in KffChain.cfg with <code>KFF_IMPL_&lt;name&gt; = "emissary.kff.KffMappedFile"</code>. Run {@link #main} with
+ * <code>-bench</code> to compare it with {@link KffFile} on a given file.
+ */
+public class KffMappedFile implements KffFilter {
+    private static final Logger logger = LoggerFactory.getLogger(KffMappedFile.class);
+
+    /** Approximate number of bytes covered by each entry of the index */
+    public static final int PAGE_SIZE = 4096;
+
+    /** Largest number of bytes mapped in one segment */
+    static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    /** Number of leading record bytes held in the index */
+    private static final int KEY_LENGTH = 8;
+
+    private final MappedByteBuffer[] segments;
+
+    private final int recordLength;
+
+    private final long recordCount;
+
+    private final int recordsPerSegment;
+
+    private final int recordsPerPage;
+
+    /** Leading bytes of the first record of each page, compared unsigned */
+    private final long[] pageKeys;
+
+    private final int keyLength;
+
+    private final String filename;
+
+    @Nullable
+    private volatile KffBloomFilter bloomFilter;
+
+    /** String logical name for this filter */
+    protected String filterName = "UNKNOWN";
+
+    protected FilterType ftype = FilterType.Unknown;
+
+    protected String myPreferredAlgorithm = "SHA-1";
+
+    /**
+     * Creates a new instance of KffMappedFile with 24 byte SHA-1 and CRC32 records
+     *
+     * @param filename Name of binary file containing sorted records that are the hash codes possibly concatenated with the
+     *        CRC-32
+     * @param filterName the name of this filter
+     * @param ftype type of this filter
+     * @throws IOException if thrown by file I/O
+     */
+    public KffMappedFile(String filename, String filterName, FilterType ftype) throws IOException {
+        this(filename, filterName, ftype, 24);
+    }
+
+    /**
+     * Creates a new instance of KffMappedFile
+     *
+     * @param filename Name of binary file containing sorted records that are the hash codes possibly concatenated with the
+     *        CRC-32
+     * @param filterName the name of this filter
+     * @param ftype type of this filter
+     * @param recordLength fixed record length in file
+     * @throws IOException if thrown by file I/O
+     */
+    public KffMappedFile(String filename, String filterName, FilterType ftype, int recordLength) throws IOException {
+        this(filename, filterName, ftype, recordLength, Math.max(1, PAGE_SIZE / recordLength));
+    }
+
+    /**
+     * Creates a new instance of KffMappedFile with the given page size
+     *
+     * @param filename Name of binary file containing sorted records
+     * @param filterName the name of this filter
+     * @param ftype type of this filter
+     * @param recordLength fixed record length in file
+     * @param recordsPerPage number of records covered by each index entry
+     * @throws IOException if thrown by file I/O
+     */
+    KffMappedFile(String filename, String filterName, FilterType ftype, int recordLength, int recordsPerPage) throws IOException {
+        if (recordLength <= 0 || recordsPerPage <= 0) {
+            throw new IllegalArgumentException("Record length and records per page must be positive");
+        }
+        this.ftype = ftype;
+        this.filterName = filterName;
+        this.recordLength = recordLength;
+        this.recordsPerPage = recordsPerPage;
+        this.recordsPerSegment = MAX_SEGMENT_SIZE / recordLength;
+        this.keyLength = Math.min(KEY_LENGTH, recordLength);
+        this.filename = filename;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            this.recordCount = channel.size() / recordLength;
+            final int segmentCount = (int) ((this.recordCount + this.recordsPerSegment - 1) / this.recordsPerSegment);
+            this.segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                final long first = (long) i * this.recordsPerSegment;
+                final long records = Math.min(this.recordsPerSegment, this.recordCount - first);
+                // the mapping stays valid once the channel is closed
+                this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * recordLength, records * recordLength);
+            }
+        }
+
+        final long pageCount = (this.recordCount + recordsPerPage - 1) / recordsPerPage;
+        if (pageCount > Integer.MAX_VALUE) {
+            throw new IOException("KFF file " + filename + " has too many records to index");
+        }
+        this.pageKeys = new long[(int) pageCount];
+        for (int p = 0; p < this.pageKeys.length; p++) {
+            this.pageKeys[p] = recordKey((long) p * recordsPerPage);
+        }
+
+        logger.debug("KFF File {} has {} records mapped in {} segments with {} index pages", filename, this.recordCount, this.segments.length,
+                this.pageKeys.length);
+    }
+
+    /**
+     * Return the filter name
+     */
+    @Override
+    public String getName() {
+        return filterName;
+    }
+
+    /**
+     * Return the filter type
+     */
+    @Override
+    public FilterType getFilterType() {
+        return ftype;
+    }
+
+    /**
+     * Set the filter type
+     *
+     * @param f the new type
+     */
+    public void setFilterType(FilterType f) {
+        ftype = f;
+    }
+
+    /**
+     * Set the preferred algorithm to match what is in the mmaped file
+     *
+     * @param alg the new algorithm to use
+     */
+    public void setPreferredAlgorithm(String alg) {
+        myPreferredAlgorithm = alg;
+    }
+
+    /**
+     * Return the algorithm being used
+     */
+    public String getPreferredAlgorithm() {
+        return myPreferredAlgorithm;
+    }
+
+    /**
+     * Return the number of records in the file
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Return the number of entries in the page index
+     */
+    public int getPageCount() {
+        return pageKeys.length;
+    }
+
+    /**
+     * Screen lookups with a bloom filter over the records, loading it from next to the file or building it there
+     *
+     * @param falsePositiveRate share of absent hashes the filter may let through when it has to be built
+     * @throws IOException if the file cannot be read
+     * @see KffBloomFilter#load(String, int, double)
+     */
+    public void enableBloomFilter(double falsePositiveRate) throws IOException {
+        bloomFilter = KffBloomFilter.load(filename, recordLength, falsePositiveRate);
+    }
+
+    /**
+     * Report whether lookups are screened with a bloom filter
+     */
+    public boolean isBloomFilterEnabled() {
+        return bloomFilter != null;
+    }
+
+    @Override
+    public boolean check(String fname, ChecksumResults csum) throws Exception {
+        byte[] hash = csum.getHash(myPreferredAlgorithm);
+        if (hash == null) {
+            logger.warn("Filter cannot be used, {} not computed on {}", myPreferredAlgorithm, fname);
+            return false;
+        }
+        final KffBloomFilter bloom = bloomFilter;
+        if (bloom == null) {
+            return search(hash, csum.getCrc());
+        }
+        if (!bloom.mightContain(hash)) {
+            return false;
+        }
+        boolean found = search(hash, csum.getCrc());
+        bloom.confirm(found);
+        return found;
+    }
+
+    /**
+     * Look for a HASH/CRC in the file
+     *
+     * @param hash Result of HASH calculation
+     * @param crc Result of CRC calculation, or -1 to match on the hash alone
+     * @return true if the record is in the list, false if it isn't
+     */
+    boolean search(@Nonnull byte[] hash, long crc) {
+        if (recordCount == 0) {
+            return false;
+        }
+
+        // records sharing the leading bytes of the hash may start on the page before the first one keyed with them
+        final long key = hashKey(hash);
+        final int firstPage = Math.max(0, lastPageBelow(key, false));
+        final int lastPage = lastPageBelow(key, true);
+        if (lastPage < 0) {
+            return false;
+        }
+
+        long low = (long) firstPage * recordsPerPage;
+        long high = Math.min(recordCount, (long) (lastPage + 1) * recordsPerPage) - 1;
+        while (low <= high) {
+            final long mid = (low + high) >>> 1;
+            final int c = compare(mid, hash, crc);
+            if (c < 0) {
+                high = mid - 1;
+            } else if (c > 0) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the last page whose first key is below, or also equal to, the given key
+     *
+     * @return the page or -1 if there is none
+     */
+    private int lastPageBelow(long key, boolean inclusive) {
+        int low = 0;
+        int high = pageKeys.length - 1;
+        int found = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int c = Long.compareUnsigned(pageKeys[mid], key);
+            if (c < 0 || (inclusive && c == 0)) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Compares the given hash/crc to the one in a record, the same way as {@link KffFile}
+     *
+     * @param record index of the record in the file
+     * @param hash HASH to compare to record
+     * @param crc CRC to compare to record
+     * @return &lt;0 if given value is less than record, &gt;0 if given value is greater than record, 0 if they match
+     */
+    private int compare(long record, @Nonnull byte[] hash, long crc) {
+        final MappedByteBuffer segment = segments[(int) (record / recordsPerSegment)];
+        final int offset = (int) (record % recordsPerSegment) * recordLength;
+        final int hashLength = Math.min(hash.length, recordLength);
+
+        int i;
+        for (i = 0; i < hashLength; i++) {
+            int ihash = hash[i] & 0xff;
+            int irec = segment.get(offset + i) & 0xff;
+            if (ihash < irec) {
+                return -1;
+            } else if (ihash > irec) {
+                return 1;
+            }
+        }
+
+        if (crc != -1L) {
+            for (int j = 24; i < recordLength; i++, j -= 8) {
+                int icrc = ((int) crc >> j) & 0xff;
+                int irec = segment.get(offset + i) & 0xff;
+                if (icrc < irec) {
+                    return -1;
+                } else if (icrc > irec) {
+                    return 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private long recordKey(long record) {
+        final MappedByteBuffer segment = segments[(int) (record / recordsPerSegment)];
+        final int offset = (int) (record % recordsPerSegment) * recordLength;
+        long key = 0L;
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            key = (key << 8) | (i < keyLength ? segment.get(offset + i) & 0xffL : 0L);
+        }
+        return key;
+    }
+
+    private long hashKey(byte[] hash) {
+        long key = 0L;
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            key = (key << 8) | (i < keyLength && i < hash.length ? hash[i] & 0xffL : 0L);
+        }
+        return key;
+    }
+
+    /**
+     * Copy a record out of the file
+     *
+     * @param record index of the record
+     * @return the record bytes
+     */
+    byte[] getRecord(long record) {
+        final MappedByteBuffer segment = segments[(int) (record / recordsPerSegment)];
+        final int offset = (int) (record % recordsPerSegment) * recordLength;
+        final byte[] rec = new byte[recordLength];
+        for (int i = 0; i < recordLength; i++) {
+            rec[i] = segment.get(offset + i);
+        }
+        return rec;
+    }
+
+    /**
+     * Check files against a KFF file, or with <code>-bench &lt;file&gt; [lookups] [threads]</code> time lookups of records
+     * from the file and of random hashes against {@link KffFile}
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1 && "-bench".equals(args[0])) {
+            benchmark(args[1], args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000, args.length > 3 ? Integer.parseInt(args[3]) : 4);
+            return;
+        }
+
+        KffChain kff = new KffChain();
+        KffMappedFile kfile = new KffMappedFile(args[0], "TEST", FilterType.Ignore);
+        kfile.setPreferredAlgorithm("SHA-1");
+        kff.addFilter(kfile);
+        kff.addAlgorithm("CRC32");
+        kff.addAlgorithm("SSDEEP");
+        kff.addAlgorithm("MD5");
+        kff.addAlgorithm("SHA-1");
+        kff.addAlgorithm("SHA-256");
+
+        for (int i = 1; i < args.length; i++) {
+            try (InputStream is = Files.newInputStream(Paths.get(args[i]))) {
+                byte[] buffer = IOUtils.toByteArray(is);
+
+                KffResult r = kff.check(args[i], buffer);
+                System.out.println(args[i] + ": " + r.isKnown() + " - " + r.getShaString() + " - " + r.getCrc32());
+            }
+        }
+    }
+
+    private static void benchmark(String filename, int lookups, int threads) throws Exception {
+        final KffMappedFile mapped = new KffMappedFile(filename, "BENCH", FilterType.Ignore);
+        final KffFile file = new KffFile(filename, "BENCH", FilterType.Ignore);
+        if (mapped.getRecordCount() == 0) {
+            System.out.println(filename + " has no records");
+            return;
+        }
+
+        // half the lookups are records from the file and half are random hashes that should miss
+        final Random random = new Random(42);
+        final ChecksumResults[] probes = new ChecksumResults[Math.max(1, Math.min(lookups, 1 << 16))];
+        for (int i = 0; i < probes.length; i++) {
+            final byte[] rec;
+            if ((i & 1) == 0) {
+                rec = mapped.getRecord((long) (random.nextDouble() * mapped.getRecordCount()));
+            } else {
+                rec = new byte[24];
+                random.nextBytes(rec);
+            }
+            final ChecksumResults csum = new ChecksumResults();
+            csum.setHash("SHA-1", Arrays.copyOf(rec, 20));
+            csum.setCrc(((rec[20] & 0xffL) << 24) | ((rec[21] & 0xffL) << 16) | ((rec[22] & 0xffL) << 8) | (rec[23] & 0xffL));
+            probes[i] = csum;
+        }
+
+        System.out.println(filename + ": " + mapped.getRecordCount() + " records, " + mapped.getPageCount() + " index pages, " + lookups
+                + " lookups");
+        report("KffFile", lookups, time(file, probes, lookups));
+        report("KffMappedFile", lookups, time(mapped, probes, lookups));
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final long start = System.nanoTime();
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    int hits = 0;
+                    for (int i = 0; i < lookups; i++) {
+                        if (mapped.check("bench", probes[ThreadLocalRandom.current().nextInt(probes.length)])) {
+                            hits++;
+                        }
+                    }
+                    return hits;
+                }));
+            }
+            for (Future<Integer> f : results) {
+                f.get();
+            }
+            report("KffMappedFile x " + threads + " threads", (long) lookups * threads, System.nanoTime() - start);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static long time(KffFilter filter, ChecksumResults[] probes, int lookups) throws Exception {
+        int hits = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            if (filter.check("bench", probes[i % probes.length])) {
+                hits++;
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        logger.debug("{} found {} of {}", filter.getClass().getSimpleName(), hits, lookups);
+        return elapsed;
+    }
+
+    private static void report(String what, long lookups, long nanos) {
+        System.out.printf("  %-30s %8d ms %10.0f lookups/s%n", what, TimeUnit.NANOSECONDS.toMillis(nanos),
+                lookups / Math.max(1e-9, nanos / 1e9));
+    }
+}
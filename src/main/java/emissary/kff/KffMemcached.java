@@ -13,8 +13,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +42,11 @@ import javax.annotation.Nullable;
  * MEMCACHED_IGNORE_VALUE_PATTERN: do not store values that contain this pattern (non-regexO MEMCACHED_FAILURE_MODE:
  * what to do in case of server failure MEMCACHED_STORE_ID_DUPE: boolean to store the id if it's hash is already
  * contained in memcached PREF_ALG: Which Emissary hash to use as the key stored in memcached
+ *
+ * MEMCACHED_BATCH: boolean to gather the lookups of concurrent checks into multi-key gets
+ * MEMCACHED_BATCH_LINGER_MILLIS: how long a lookup waits for others to join its get MEMCACHED_BATCH_MAX_KEYS: most keys
+ * in one get MEMCACHED_BATCH_MAX_IN_FLIGHT: most gets waited on at once MEMCACHED_RECENT_SIZE: number of recent results
+ * kept locally, 0 to always ask memcached MEMCACHED_RECENT_SECONDS: how long a recent result is trusted
  */
 public class KffMemcached implements KffFilter {
 
@@ -68,6 +75,11 @@ public class KffMemcached implements KffFilter {
      */
     protected int ageoff = 86400;
 
+    /**
+     * Longest age-off memcached takes as seconds from now rather than as a unix time
+     */
+    private static final int MAX_RELATIVE_AGEOFF = 60 * 60 * 24 * 30;
+
     /**
      * The timeout on any given network operation in milliseconds
      */
@@ -100,6 +112,18 @@ public class KffMemcached implements KffFilter {
      */
     protected MemcachedClient client;
 
+    /**
+     * Gathers lookups into multi-key gets, null to look each one up on its own
+     */
+    @Nullable
+    protected MemcachedBatcher batcher;
+
+    /**
+     * Keys recently found or stored, with their values, null to always ask memcached
+     */
+    @Nullable
+    protected RecentResults recent;
+
     /**
      *
      * @param filename Unused
@@ -216,6 +240,12 @@ public class KffMemcached implements KffFilter {
             client = testClient;
         }
 
+        if (configG.findBooleanEntry("MEMCACHED_BATCH", false)) {
+            enableBatching(configG.findLongEntry("MEMCACHED_BATCH_LINGER_MILLIS", 2L), configG.findIntEntry("MEMCACHED_BATCH_MAX_KEYS", 64),
+                    configG.findIntEntry("MEMCACHED_BATCH_MAX_IN_FLIGHT", 4));
+        }
+        setRecentResults(configG.findIntEntry("MEMCACHED_RECENT_SIZE", 0), configG.findLongEntry("MEMCACHED_RECENT_SECONDS", 300L));
+
         // logger.debug(client.toString());
     }
 
@@ -253,14 +283,26 @@ public class KffMemcached implements KffFilter {
 
         String key = Hexl.toUnformattedHexString(hash);
 
-        // Send the query
-        Future<Object> future = client.asyncGet(key);
-        Object result;
+        final RecentResults recentResults = recent;
+        Object result = recentResults != null ? recentResults.get(key) : null;
+        if (result == null) {
+            final MemcachedBatcher b = batcher;
+            if (b != null) {
+                // Let the TimeoutException propagate up
+                result = b.lookup(key, opTimeoutMillis + b.getLingerMillis());
+            } else {
+                // Send the query
+                Future<Object> future = client.asyncGet(key);
 
-        // Let the TimeoutException propagate up
-        result = future.get(opTimeoutMillis, TimeUnit.MILLISECONDS);
+                // Let the TimeoutException propagate up
+                result = future.get(opTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
 
         if (result != null) {
+            if (recentResults != null) {
+                recentResults.put(key, result);
+            }
             if (storeIdDupe) {
                 if (!((String) result).equals(id)) {
                     // As long as the id is not the same as what was already stored, then
@@ -276,9 +318,59 @@ public class KffMemcached implements KffFilter {
         // logger.debug("Did not find key: {}", key);
         // Did not find the key...store it and move on
         client.set(key, ageoff, id);
+        if (recentResults != null) {
+            recentResults.put(key, id);
+        }
         return false;
+    }
 
+    /**
+     * Gather the lookups of concurrent checks into multi-key gets
+     *
+     * @param lingerMillis how long a lookup waits for others to join its get
+     * @param maxKeys most keys in one get
+     * @param maxInFlight most gets waited on at once
+     */
+    public void enableBatching(long lingerMillis, int maxKeys, int maxInFlight) {
+        MemcachedBatcher old = batcher;
+        batcher = new MemcachedBatcher(client, lingerMillis, maxKeys, maxInFlight, opTimeoutMillis);
+        if (old != null) {
+            old.shutdown();
+        }
+        logger.debug("Batching memcached lookups, linger {}ms, {} keys per get, {} gets in flight", lingerMillis, maxKeys, maxInFlight);
+    }
 
+    /**
+     * Report whether lookups are gathered into multi-key gets
+     */
+    public boolean isBatching() {
+        return batcher != null;
+    }
+
+    /**
+     * Keep recent results locally so repeated hashes do not go to memcached
+     *
+     * @param size number of results to keep, 0 or less to always ask memcached
+     * @param seconds how long a result is trusted, it is never trusted longer than an age-off given in seconds
+     */
+    public void setRecentResults(int size, long seconds) {
+        long ttl = Math.max(1L, seconds);
+        // memcached takes 0 as never expiring and anything over 30 days as a point in time, neither is a shorter limit
+        if (ageoff > 0 && ageoff <= MAX_RELATIVE_AGEOFF) {
+            ttl = Math.min(ttl, ageoff);
+        }
+        recent = size > 0 ? new RecentResults(size, TimeUnit.SECONDS.toMillis(ttl)) : null;
+    }
+
+    /**
+     * Stop batching lookups, checks still waiting fail
+     */
+    public void shutdown() {
+        MemcachedBatcher b = batcher;
+        batcher = null;
+        if (b != null) {
+            b.shutdown();
+        }
     }
 
     public String getPreferredAlgorithm() {
@@ -299,4 +391,56 @@ public class KffMemcached implements KffFilter {
         return ftype;
     }
 
+    /**
+     * Least recently used memcached values with the time they were seen
+     */
+    protected static final class RecentResults {
+        private final int size;
+        private final long ttlMillis;
+        private final Map<String, Stamped> values;
+
+        RecentResults(int size, long ttlMillis) {
+            this.size = size;
+            this.ttlMillis = ttlMillis;
+            this.values = new LinkedHashMap<String, Stamped>(Math.min(size, 1024), 0.75f, true) {
+                private static final long serialVersionUID = -3816434652183404711L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Stamped> eldest) {
+                    return size() > RecentResults.this.size;
+                }
+            };
+        }
+
+        @Nullable
+        synchronized Object get(String key) {
+            Stamped stamped = values.get(key);
+            if (stamped == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - stamped.when > ttlMillis) {
+                values.remove(key);
+                return null;
+            }
+            return stamped.value;
+        }
+
+        synchronized void put(String key, Object value) {
+            values.put(key, new Stamped(value, System.currentTimeMillis()));
+        }
+
+        synchronized int size() {
+            return values.size();
+        }
+
+        private static final class Stamped {
+            final Object value;
+            final long when;
+
+            Stamped(Object value, long when) {
+                this.value = value;
+                this.when = when;
+            }
+        }
+    }
 }
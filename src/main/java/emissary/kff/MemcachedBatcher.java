@@ -0,0 +1,235 @@
+package emissary.kff;
+
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.BulkFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gathers the memcached lookups of concurrent {@link KffMemcached#check(String, ChecksumResults)} calls into multi-key
+ * gets. A batch is sent once it holds the most keys allowed or once its first key has waited for the linger time, and
+ * only a bounded number of batches are waited on at a time. Callers looking up a key that is already waiting share the
+ * one lookup.
+ */
+final class MemcachedBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemcachedBatcher.class);
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final MemcachedClient client;
+
+    private final long lingerNanos;
+
+    private final int maxKeys;
+
+    private final long timeoutMillis;
+
+    private final Semaphore inFlight;
+
+    private final ExecutorService completers;
+
+    private final Thread dispatcher;
+
+    /** Keys waiting to be sent, guarded by itself */
+    private final Map<String, CompletableFuture<Object>> pending = new LinkedHashMap<>();
+
+    /** When the oldest waiting key arrived */
+    private long firstPendingNanos;
+
+    private volatile boolean running = true;
+
+    /**
+     * Start batching lookups
+     *
+     * @param client the memcached client to send the gets through
+     * @param lingerMillis longest time a key waits for others to join its batch
+     * @param maxKeys most keys sent in one get
+     * @param maxInFlight most gets waited on at once
+     * @param timeoutMillis how long to wait for a get to answer
+     */
+    MemcachedBatcher(final MemcachedClient client, final long lingerMillis, final int maxKeys, final int maxInFlight, final long timeoutMillis) {
+        this.client = client;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, lingerMillis));
+        this.maxKeys = Math.max(1, maxKeys);
+        this.timeoutMillis = timeoutMillis;
+        final int slots = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(slots);
+
+        final String prefix = "KffMemcachedBatch-" + COUNTER.getAndIncrement();
+        final AtomicInteger threads = new AtomicInteger();
+        this.completers = Executors.newFixedThreadPool(slots, r -> {
+            final Thread t = new Thread(r, prefix + "-" + threads.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = new Thread(this::dispatch, prefix);
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queue a key to be looked up
+     *
+     * @param key the memcached key
+     * @return completed with the stored value, or null if there is none
+     */
+    CompletableFuture<Object> get(final String key) {
+        synchronized (this.pending) {
+            if (!this.running) {
+                final CompletableFuture<Object> closed = new CompletableFuture<>();
+                closed.completeExceptionally(new IllegalStateException("Memcached batching is shut down"));
+                return closed;
+            }
+            CompletableFuture<Object> future = this.pending.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                if (this.pending.isEmpty()) {
+                    this.firstPendingNanos = System.nanoTime();
+                }
+                this.pending.put(key, future);
+                if (this.pending.size() == 1 || this.pending.size() >= this.maxKeys) {
+                    this.pending.notifyAll();
+                }
+            }
+            return future;
+        }
+    }
+
+    /**
+     * Look up a key, waiting for its batch to come back
+     *
+     * @param key the memcached key
+     * @param waitMillis how long to wait
+     * @return the stored value, or null if there is none
+     * @throws Exception if the get failed or timed out
+     */
+    Object lookup(final String key, final long waitMillis) throws Exception {
+        try {
+            return get(key).get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get the longest time a key waits for others to join its batch
+     */
+    long getLingerMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.lingerNanos);
+    }
+
+    private void dispatch() {
+        while (this.running) {
+            final Map<String, CompletableFuture<Object>> batch;
+            try {
+                batch = nextBatch();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                this.inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            send(batch);
+        }
+        failPending(new IllegalStateException("Memcached batching is shut down"));
+    }
+
+    private Map<String, CompletableFuture<Object>> nextBatch() throws InterruptedException {
+        synchronized (this.pending) {
+            while (this.running && this.pending.isEmpty()) {
+                this.pending.wait();
+            }
+            long left;
+            while (this.running && this.pending.size() < this.maxKeys
+                    && (left = this.firstPendingNanos + this.lingerNanos - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this.pending, left);
+            }
+            final Map<String, CompletableFuture<Object>> batch = new LinkedHashMap<>();
+            final Iterator<Map.Entry<String, CompletableFuture<Object>>> it = this.pending.entrySet().iterator();
+            while (it.hasNext() && batch.size() < this.maxKeys) {
+                final Map.Entry<String, CompletableFuture<Object>> entry = it.next();
+                batch.put(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+            // keys left behind have already waited their linger time and go out with the next batch
+            return batch;
+        }
+    }
+
+    private void send(final Map<String, CompletableFuture<Object>> batch) {
+        final BulkFuture<Map<String, Object>> future;
+        try {
+            future = this.client.asyncGetBulk(batch.keySet());
+        } catch (RuntimeException e) {
+            this.inFlight.release();
+            fail(batch, e);
+            return;
+        }
+        logger.trace("Sent memcached get for {} keys", batch.size());
+        this.completers.execute(() -> {
+            try {
+                final Map<String, Object> values = future.get(this.timeoutMillis, TimeUnit.MILLISECONDS);
+                for (final Map.Entry<String, CompletableFuture<Object>> entry : batch.entrySet()) {
+                    entry.getValue().complete(values.get(entry.getKey()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+                fail(batch, e);
+            } catch (TimeoutException e) {
+                future.cancel(false);
+                fail(batch, e);
+            } catch (ExecutionException | RuntimeException e) {
+                fail(batch, e);
+            } finally {
+                this.inFlight.release();
+            }
+        });
+    }
+
+    private static void fail(final Map<String, CompletableFuture<Object>> batch, final Throwable t) {
+        for (final CompletableFuture<Object> future : batch.values()) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    private void failPending(final Throwable t) {
+        final Map<String, CompletableFuture<Object>> left;
+        synchronized (this.pending) {
+            left = new LinkedHashMap<>(this.pending);
+            this.pending.clear();
+        }
+        fail(left, t);
+    }
+
+    /**
+     * Stop sending gets, lookups still waiting to be sent fail
+     */
+    void shutdown() {
+        synchronized (this.pending) {
+            this.running = false;
+            this.pending.notifyAll();
+        }
+        this.dispatcher.interrupt();
+        this.completers.shutdown();
+        failPending(new IllegalStateException("Memcached batching is shut down"));
+    }
+}
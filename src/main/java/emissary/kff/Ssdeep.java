@@ -108,6 +108,15 @@ public final class Ssdeep {
             this.blockSize = estimateBlockSize(expectedInputLength);
         }
 
+        /**
+         * Construct a spam sum context for a given block size.
+         *
+         * @param blockSize The block size to hash with.
+         */
+        private SsContext(final long blockSize) {
+            this.blockSize = blockSize;
+        }
+
         /**
          * Construct a spam sum context to process a byte array.
          *
@@ -164,49 +173,57 @@ public final class Ssdeep {
             for (int i = start; i < end; i++) {
                 // Get the next input byte and normalize to 0..255.
                 final int nextByte = ((int) buffer[i]) & 0xff;
+                applyByte(nextByte, rollState.roll(nextByte));
+            }
+        }
 
-                // Apply the next byte to the hashes.
-                this.sumHash1 = updateSumHash(nextByte, this.sumHash1);
-                this.sumHash2 = updateSumHash(nextByte, this.sumHash2);
-                final long rollingHash = rollState.roll(nextByte);
-
-                if ((rollingHash % this.blockSize) == (this.blockSize - 1)) {
-                    // We have hit a reset point. We now emit a hash
-                    // which is based on all bytes in the input
-                    // between the last reset point and this one.
-                    if (this.fuzzLen1 < (SPAMSUM_LENGTH - 1)) {
-                        // We can have a problem with the tail
-                        // overflowing. The easiest way to cope with
-                        // this is to only reset the second hash if we
-                        // have room for more characters in our
-                        // signature. This has the effect of combining
-                        // the last few pieces of the message into a
-                        // single piece
-                        this.fuzzHash1[this.fuzzLen1++] = b64EncodeLowBits(this.sumHash1);
-                        this.sumHash1 = HASH_INIT;
-                    }
+        /**
+         * Apply one byte to a SpamSum context after it has been rolled into the rolling hash.
+         *
+         * @param nextByte The input byte, in the range 0..255.
+         * @param rollingHash The rolling hash including {@code nextByte}.
+         */
+        private void applyByte(final int nextByte, final long rollingHash) {
+            // Apply the next byte to the hashes.
+            this.sumHash1 = updateSumHash(nextByte, this.sumHash1);
+            this.sumHash2 = updateSumHash(nextByte, this.sumHash2);
+
+            if ((rollingHash % this.blockSize) == (this.blockSize - 1)) {
+                // We have hit a reset point. We now emit a hash
+                // which is based on all bytes in the input
+                // between the last reset point and this one.
+                if (this.fuzzLen1 < (SPAMSUM_LENGTH - 1)) {
+                    // We can have a problem with the tail
+                    // overflowing. The easiest way to cope with
+                    // this is to only reset the second hash if we
+                    // have room for more characters in our
+                    // signature. This has the effect of combining
+                    // the last few pieces of the message into a
+                    // single piece
+                    this.fuzzHash1[this.fuzzLen1++] = b64EncodeLowBits(this.sumHash1);
+                    this.sumHash1 = HASH_INIT;
+                }
 
-                    // This produces a second signature with a block size
-                    // of blockSize*2. By producing dual signatures in
-                    // this way the effect of small changes in the message
-                    // size near a block size boundary is greatly reduced.
-                    //
-                    // NOTE: we only have to check this when the main
-                    // signature has hit a reset point, because
-                    // mathematically:
-                    //
-                    // [ h === -1 (mod 2*bs) ] --implies--> [ h === -1 (mod bs) ]
-                    //
-                    // In other words, if this condition is true then the
-                    // main signature condition must always also be true.
-                    // Therefore this secondary signature condition can
-                    // only potentially be true if the main signature
-                    // condition (which we've already checked) is true.
-                    if ((rollingHash % (this.blockSize * 2)) == ((this.blockSize * 2) - 1)) {
-                        if (this.fuzzLen2 < (SPAMSUM_LENGTH / 2 - 1)) {
-                            this.fuzzHash2[this.fuzzLen2++] = b64EncodeLowBits(this.sumHash2);
-                            this.sumHash2 = HASH_INIT;
-                        }
+                // This produces a second signature with a block size
+                // of blockSize*2. By producing dual signatures in
+                // this way the effect of small changes in the message
+                // size near a block size boundary is greatly reduced.
+                //
+                // NOTE: we only have to check this when the main
+                // signature has hit a reset point, because
+                // mathematically:
+                //
+                // [ h === -1 (mod 2*bs) ] --implies--> [ h === -1 (mod bs) ]
+                //
+                // In other words, if this condition is true then the
+                // main signature condition must always also be true.
+                // Therefore this secondary signature condition can
+                // only potentially be true if the main signature
+                // condition (which we've already checked) is true.
+                if ((rollingHash % (this.blockSize * 2)) == ((this.blockSize * 2) - 1)) {
+                    if (this.fuzzLen2 < (SPAMSUM_LENGTH / 2 - 1)) {
+                        this.fuzzHash2[this.fuzzLen2++] = b64EncodeLowBits(this.sumHash2);
+                        this.sumHash2 = HASH_INIT;
                     }
                 }
             }
@@ -392,6 +409,91 @@ public final class Ssdeep {
         }
     }
 
+    /**
+     * Computes a SpamSum signature over data that is handed over in pieces. Where
+     * {@link #fuzzy_hash(SeekableByteChannelFactory)} hashes the data again at half the block size whenever its guess was
+     * too large, this hashes at the guessed block size and at half of it at the same time, which is as far as the guess is
+     * usually off, and picks the same one at the end, so the signature is identical. Only when both are too large is the
+     * data read again, from half the smaller block size down. The smaller block size is dropped as soon as the larger one
+     * is known to be used.
+     */
+    public static final class FuzzyHasher {
+
+        /** Most block sizes hashed at once, each one costs about as much as a pass of fuzzy_hash */
+        private static final int MAX_CONTEXTS = 2;
+
+        private final RollingState rollState = new RollingState();
+
+        /** One context per candidate block size, largest first */
+        private final SsContext[] contexts;
+
+        /** Number of contexts, from the front, still being hashed */
+        private int active;
+
+        /**
+         * Prepare to hash data
+         *
+         * @param expectedInputLength The number of bytes that will be handed over, used to guess the block size.
+         */
+        public FuzzyHasher(final long expectedInputLength) {
+            final long guess = SsContext.estimateBlockSize(expectedInputLength);
+            final int count = guess > MIN_BLOCKSIZE ? MAX_CONTEXTS : 1;
+            this.contexts = new SsContext[count];
+            long bs = guess;
+            for (int i = 0; i < count; i++, bs /= 2) {
+                this.contexts[i] = new SsContext(bs);
+                this.contexts[i].beginHashing();
+            }
+            this.active = count;
+        }
+
+        /**
+         * Hash some more of the data
+         *
+         * @param buffer A buffer containing the input bytes.
+         * @param start The starting offset in {@code buffer}, inclusive.
+         * @param end The ending offset in {@code buffer}, exclusive.
+         */
+        public void update(final byte[] buffer, final int start, final int end) {
+            final SsContext[] ctxs = this.contexts;
+            final int count = this.active;
+            for (int i = start; i < end; i++) {
+                final int nextByte = ((int) buffer[i]) & 0xff;
+                final long rollingHash = this.rollState.roll(nextByte);
+                for (int c = 0; c < count; c++) {
+                    ctxs[c].applyByte(nextByte, rollingHash);
+                }
+            }
+
+            // once a block size has enough pieces none of the smaller ones can be picked
+            for (int c = 0; c < this.active - 1; c++) {
+                if (ctxs[c].fuzzLen1 >= (SPAMSUM_LENGTH / 2)) {
+                    this.active = c + 1;
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Finish hashing and get the signature. Nothing more can be hashed afterwards.
+         *
+         * @param sbcf The data that was handed over, read again if the block size has to be smaller than any hashed so far.
+         * @return The SpamSum signature for all the data handed over.
+         */
+        public String getHash(final SeekableByteChannelFactory sbcf) {
+            for (int c = 0; c < this.active; c++) {
+                final SsContext ctx = this.contexts[c];
+                final SpamSumSignature signature = ctx.finishHashing(this.rollState);
+                if (ctx.blockSize <= MIN_BLOCKSIZE || ctx.fuzzLen1 >= (SPAMSUM_LENGTH / 2)) {
+                    return signature.toString();
+                }
+            }
+            final SsContext ctx = this.contexts[this.active - 1];
+            ctx.blockSize = ctx.blockSize / 2;
+            return fuzzy_hash(ctx, sbcf);
+        }
+    }
+
     public Ssdeep() {}
 
     /**
@@ -416,7 +518,10 @@ public final class Ssdeep {
     }
 
     public String fuzzy_hash(final SeekableByteChannelFactory sbcf) {
-        final SsContext ctx = new SsContext(sbcf);
+        return fuzzy_hash(new SsContext(sbcf), sbcf);
+    }
+
+    private static String fuzzy_hash(final SsContext ctx, final SeekableByteChannelFactory sbcf) {
         while (true) {
             final SpamSumSignature signature = ctx.generateHash(sbcf);
 
@@ -1,6 +1,7 @@
 package emissary.parser;
 
 import emissary.core.IBaseDataObject;
+import emissary.core.channels.SeekableByteChannelFactory;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
@@ -30,6 +31,7 @@ public class DecomposedSession {
     protected byte[] header = null;
     protected byte[] footer = null;
     protected byte[] data = null;
+    protected SeekableByteChannelFactory dataChannelFactory = null;
     protected String classification = null;
     protected List<String> initialForms = new ArrayList<>();
     protected ArrayListMultimap<String, Object> metadata = ArrayListMultimap.create(100, 1);
@@ -89,6 +91,7 @@ public class DecomposedSession {
     public void setData(@Nullable byte[] d, boolean copy) {
         if (d == null || !copy) {
             data = d;
+            dataChannelFactory = null;
         } else {
             setData(d, 0, d.length);
         }
@@ -104,6 +107,7 @@ public class DecomposedSession {
     public void setData(byte[] d, int start, int end) {
         data = new byte[end - start];
         System.arraycopy(d, start, data, 0, data.length);
+        dataChannelFactory = null;
     }
 
     /**
@@ -115,6 +119,26 @@ public class DecomposedSession {
         return data;
     }
 
+    /**
+     * Set the data entry as a channel factory, for data that is not to be copied into an array. Previously existing data is
+     * lost
+     *
+     * @param sbcf the data to set
+     */
+    public void setDataChannelFactory(@Nullable SeekableByteChannelFactory sbcf) {
+        dataChannelFactory = sbcf;
+        data = null;
+    }
+
+    /**
+     * Get the data entry when it was set as a channel factory
+     *
+     * @return the data channel factory or null if none
+     */
+    public SeekableByteChannelFactory getDataChannelFactory() {
+        return dataChannelFactory;
+    }
+
     /**
      * Set the classification
      *
@@ -194,10 +218,10 @@ public class DecomposedSession {
     /**
      * Test for data presence
      *
-     * @return true if there is a data entry
+     * @return true if there is a data entry, as bytes or as a channel factory
      */
     public boolean hasData() {
-        return data != null;
+        return data != null || dataChannelFactory != null;
     }
 
     /**
@@ -1,5 +1,8 @@
 package emissary.parser;
 
+import emissary.core.channels.SeekableByteChannelFactory;
+import emissary.core.channels.SegmentChannelFactory;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -8,6 +11,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.util.Arrays;
+import java.util.List;
 import javax.annotation.Nullable;
 
 /**
@@ -25,6 +29,10 @@ public abstract class NIOSessionParser extends SessionParser {
     /** The data source for this parser */
     protected SeekableByteChannel channel;
 
+    /** Where session data can be handed out from without copying it, if anywhere */
+    @Nullable
+    protected SeekableByteChannelFactory channelSource = null;
+
     /** The start position of the current chunk relative to the data source */
     protected int chunkStart = 0;
 
@@ -78,6 +86,38 @@ public abstract class NIOSessionParser extends SessionParser {
         }
     }
 
+    /**
+     * Session data is handed out as segments of the source from now on, where its position records are one run of bytes
+     */
+    @Override
+    public boolean useChannelSource(@Nullable SeekableByteChannelFactory source) {
+        channelSource = source;
+        return source != null;
+    }
+
+    /**
+     * Make a view of the channel source covering the data of some position records
+     * 
+     * @param records the position records of the data
+     * @param offset added to each record position, e.g. chunkStart for records relative to the current chunk
+     * @return the view, or null if there is no channel source or the records are not one run of bytes
+     */
+    @Nullable
+    protected SeekableByteChannelFactory makeDataChannelFactory(@Nullable List<PositionRecord> records, long offset) {
+        if (channelSource == null || records == null || records.isEmpty()) {
+            return null;
+        }
+        long start = records.get(0).getPosition();
+        long end = start;
+        for (PositionRecord r : records) {
+            if (r.getPosition() != end) {
+                return null;
+            }
+            end += r.getLength();
+        }
+        return SegmentChannelFactory.create(channelSource, offset + start, end - start);
+    }
+
     /**
      * Read more data, starting where the last read left off. Read in <code>chunksize</code> bytes.
      *
@@ -1,5 +1,9 @@
 package emissary.parser;
 
+import emissary.core.channels.SeekableByteChannelFactory;
+
+import javax.annotation.Nullable;
+
 /**
  * Base for all session parsers returned from ParserFactory
  */
@@ -38,6 +42,17 @@ public abstract class SessionParser {
         return null;
     }
 
+    /**
+     * Offer the parser the data it is parsing as a channel factory, so that session data can be handed out as segments of
+     * it instead of being copied into arrays. Parsers that cannot do that ignore the offer, which is the default.
+     * 
+     * @param source the same data the parser reads, from its start
+     * @return true if session data will be set with {@link DecomposedSession#setDataChannelFactory}
+     */
+    public boolean useChannelSource(@Nullable SeekableByteChannelFactory source) {
+        return false;
+    }
+
     /**
      * Creates a hashtable of elements from the session: header, footer, body, and other meta data values extracted from the
      * session data for the next session in the data
@@ -1,5 +1,7 @@
 package emissary.parser;
 
+import emissary.core.channels.SeekableByteChannelFactory;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,8 +47,18 @@ public class SimpleNioParser extends NIOSessionParser {
 
                 d.setFooter(makeDataSlice(session.getFooter()));
 
-                d.setData(makeDataSlice(session.getData()));
-                long length = d.getData() == null ? -1L : d.getData().length;
+                long length;
+                SeekableByteChannelFactory dataChannelFactory = makeDataChannelFactory(session.getData(), 0);
+                if (dataChannelFactory != null) {
+                    d.setDataChannelFactory(dataChannelFactory);
+                    length = 0;
+                    for (PositionRecord r : session.getData()) {
+                        length += r.getLength();
+                    }
+                } else {
+                    d.setData(makeDataSlice(session.getData()));
+                    length = d.getData() == null ? -1L : d.getData().length;
+                }
 
                 // Cook the raw metadata and transfer to DecomposedSession
                 Map<String, Object> md = session.getMetaData();
@@ -6,7 +6,11 @@ import emissary.core.Form;
 import emissary.core.IBaseDataObject;
 import emissary.core.IMobileAgent;
 import emissary.core.NamespaceException;
+import emissary.core.channels.AbstractSeekableByteChannel;
+import emissary.core.channels.ImmutableChannelFactory;
+import emissary.core.channels.SeekableByteChannelFactory;
 import emissary.log.MDCConstants;
+import emissary.parser.DecomposedSession;
 import emissary.parser.ParserEOFException;
 import emissary.parser.ParserException;
 import emissary.parser.ParserFactory;
@@ -26,10 +30,26 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
 import static emissary.core.constants.Parameters.FILE_DATE;
@@ -66,6 +86,14 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
     // the simple parsers
     protected boolean simpleMode = false;
 
+    // True hands session data out of files as views of the
+    // file instead of copying it into each payload
+    protected boolean channelSessions = false;
+
+    // Files payloads read session data from, by the file
+    // they were parsed from, until the file is moved on
+    private final Map<File, SessionFile> sessionFiles = new ConcurrentHashMap<>();
+
     // Reference to global agent pool for out payloads
     protected AgentPool agentPool;
 
@@ -77,6 +105,19 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
     // Metadata items that should always be copied to children
     protected Set<String> ALWAYS_COPY_METADATA_VALS = new HashSet<>();
 
+    // Parameter recording the position of a payload's session in its file when SESSION_WORKERS is more than one
+    public static final String SESSION_NUMBER = "SESSION_NUMBER";
+
+    // Threads building payloads from parsed sessions, one means
+    // each session is built and dispatched before the next is parsed
+    protected int sessionWorkers = 1;
+
+    // Most sessions parsed ahead of the one waiting for an agent
+    protected int sessionQueueSize = 8;
+
+    @Nullable
+    protected ExecutorService sessionWorkerPool = null;
+
     public PickUpPlace() throws IOException {
         super();
         configurePickUpPlace();
@@ -148,6 +189,11 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
      * <li>DONE_DATA: where it goes when done</li>
      * <li>SIMPLE_MODE: boolean when true turns off DataIdentification engine</li>
      * <li>INITIAL_FORM: one or more forms for new payloads</li>
+     * <li>CHANNEL_SESSIONS: boolean when true session data parsed from a file is not copied, payloads read it from the
+     * file, which is then moved to the done area rather than deleted, so DONE_DATA must be set</li>
+     * <li>SESSION_WORKERS: threads building payloads from the sessions of a file, more than one parses sessions ahead of
+     * dispatching them</li>
+     * <li>SESSION_QUEUE_SIZE: most sessions parsed ahead of the one waiting for an agent</li>
      * </ul>
      */
     protected void configurePickUpPlace() {
@@ -156,6 +202,18 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
         oversizeArea = configG.findStringEntry("OVERSIZE_DATA_HOLDING_AREA", oversizeArea);
 
         simpleMode = configG.findBooleanEntry("SIMPLE_MODE", false);
+        channelSessions = configG.findBooleanEntry("CHANNEL_SESSIONS", channelSessions);
+        sessionWorkers = configG.findIntEntry("SESSION_WORKERS", sessionWorkers);
+        sessionQueueSize = Math.max(1, configG.findIntEntry("SESSION_QUEUE_SIZE", sessionQueueSize));
+        if (sessionWorkers > 1 && sessionWorkerPool == null) {
+            AtomicInteger threads = new AtomicInteger();
+            String prefix = getClass().getSimpleName() + "-SessionWorker-";
+            sessionWorkerPool = Executors.newFixedThreadPool(sessionWorkers, r -> {
+                Thread t = new Thread(r, prefix + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
         holdingArea = configG.findCanonicalFileNameEntry("HOLDING_AREA", null);
         doneArea = configG.findCanonicalFileNameEntry("DONE_DATA", doneArea);
         errorArea = configG.findCanonicalFileNameEntry("ERROR_DATA", "errorArea");
@@ -164,6 +222,9 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
             doneArea = null;
             logger.info("Alert: Completed data will be deleted from the system due to DONE_AREA setting");
         }
+        if (channelSessions && doneArea == null) {
+            throw new IllegalArgumentException("CHANNEL_SESSIONS requires DONE_DATA, payloads read from the file after it is processed");
+        }
 
         logger.debug("Pickup Canonical HOLD => {}, Pickup Canonical DONE => {}, Pickup Canonical ERROR => {}" + holdingArea, doneArea, errorArea);
 
@@ -182,6 +243,17 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
         ALWAYS_COPY_METADATA_VALS = configG.findEntriesAsSet("ALWAYS_COPY_METADATA");
     }
 
+    /**
+     * Stop the session workers as well as deregistering the place
+     */
+    @Override
+    public void shutDown() {
+        if (sessionWorkerPool != null) {
+            sessionWorkerPool.shutdownNow();
+        }
+        super.shutDown();
+    }
+
     /**
      * Return the value of the inprocess area, usually a directory path
      * 
@@ -335,7 +407,7 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
         if (outputRoot != null) {
             File dest = new File(outputRoot + "/" + base);
             dest.getParentFile().mkdirs();
-            renamed = theFile.renameTo(dest);
+            renamed = moveFile(theFile, dest);
             if (renamed) {
                 logger.info("{} processed and moved to done area {}", theFile.getName(), outputRoot);
             } else {
@@ -401,7 +473,7 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
      * @return true if the rename was successful
      */
     protected boolean renameFileToErrorArea(File theFile) {
-        boolean renamed = theFile.renameTo(new File(errorArea, theFile.getName()));
+        boolean renamed = moveFile(theFile, new File(errorArea, theFile.getName()));
         if (renamed) {
             logger.warn("{} failed and is moved to the error area", theFile.getName());
         } else {
@@ -416,6 +488,11 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
      * @param theFile file to delete
      */
     protected void deleteFileFromHoldingArea(File theFile) {
+        if (doneArea != null && sessionFiles.containsKey(theFile)) {
+            // payloads still read their data from it
+            renameFileToDoneArea(theFile, doneArea);
+            return;
+        }
         boolean deleted = theFile.delete();
         if (deleted) {
             logger.info("{} processed and deleted", theFile.getName());
@@ -424,6 +501,18 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
         }
     }
 
+    /**
+     * Move a file, taking along any payloads reading their session data from it
+     * 
+     * @param theFile the file to move
+     * @param dest where to move it
+     * @return true if the file was moved
+     */
+    private boolean moveFile(File theFile, File dest) {
+        SessionFile source = sessionFiles.remove(theFile);
+        return source != null ? source.moveTo(theFile, dest) : theFile.renameTo(dest);
+    }
+
     /**
      * File was successfully processed, take appropriate action
      * 
@@ -509,6 +598,8 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
         } else {
             handleFileError(theFile);
         }
+        // the file stays where it is from now on
+        sessionFiles.remove(theFile);
 
         logger.debug("Ending processDataFile {} {} {}", theFile, (success ? "success" : "failure"), (simpleMode ? "simple" : ""));
         return success;
@@ -574,6 +665,13 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
             // Get the right type of session parser
             SessionParser sp = parserFactory.makeSessionParser(raf.getChannel());
             logger.debug("Using session parser from raf ident {}", sp.getClass().getName());
+            if (channelSessions) {
+                useChannelSource(sp, theFile);
+            }
+
+            if (sessionWorkerPool != null) {
+                return processSessionsPipelined(sp, theFile, fixedName);
+            }
 
             // .. and a session producer to crank out the data objects...
             SessionProducer dof = new SessionProducer(sp, myKey, null);
@@ -591,9 +689,10 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
                     logger.debug("Pulled session {} from {} shortName={}", sessionName, theFile.getName(), dataObject.shortName());
                     sessionNum++;
                     long sessionEnd = System.currentTimeMillis();
-                    totalSize += dataObject.data().length;
+                    long sessionSize = dataObject.getChannelSize();
+                    totalSize += sessionSize;
                     logger.info("sessionParseMetric:{},{},{},{},{},{}", sessionEnd - sessionStart, sp.getClass().getName(), theFile, sessionName,
-                            sessionNum, dataObject.data().length);
+                            sessionNum, sessionSize);
                     processDataObject(dataObject, sessionName, theFile, false);
                 } catch (ParserEOFException eof) {
                     // expected at end of file
@@ -612,6 +711,216 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
         return sessionNum;
     }
 
+    /**
+     * Parse out sessions and process data from a file in stages. This thread dispatches payloads to agents while another
+     * finds the sessions, handing each to the session worker pool to be made into a payload. Sessions are dispatched in the
+     * order they are found and each payload records its place in that order as {@link #SESSION_NUMBER}.
+     * 
+     * @param sp the parser of the file
+     * @param theFile file to process
+     * @param fixedName the good short name of the file
+     * @return count of sessions parsed
+     * @throws ParserException if a session cannot be parsed or dispatched
+     */
+    protected int processSessionsPipelined(SessionParser sp, File theFile, String fixedName) throws ParserException {
+        // Sessions in order, bounded so parsing stays only a little ahead of the agents
+        BlockingQueue<Future<ParsedSession>> queue = new ArrayBlockingQueue<>(sessionQueueSize);
+        // Payloads are built without the parser, which is only used by the boundary thread
+        SessionProducer dof = new SessionProducer(null, myKey, null);
+        Thread boundaries = new Thread(() -> findSessions(sp, dof, fixedName, queue), Thread.currentThread().getName() + "-sessions");
+        boundaries.setDaemon(true);
+        boundaries.start();
+
+        long fileStart = System.currentTimeMillis();
+        long totalSize = 0;
+        int sessionNum = 0;
+        try {
+            while (true) {
+                ParsedSession session = queue.take().get();
+                if (session == null) {
+                    break;
+                }
+                sessionNum++;
+                long sessionSize = session.dataObject.getChannelSize();
+                totalSize += sessionSize;
+                logger.info("sessionParseMetric:{},{},{},{},{},{}", session.buildMillis, sp.getClass().getName(), theFile, session.name, sessionNum,
+                        sessionSize);
+                processDataObject(session.dataObject, session.name, theFile, false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ParserException("Interrupted processing " + theFile.getName(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ParserException) {
+                throw (ParserException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new ParserException("Could not process " + theFile.getName(), e.getCause());
+        } catch (IOException | EmissaryException ex) {
+            logger.error("Could not dispatch {}", theFile.getName(), ex);
+            throw new ParserException("Could not process" + theFile.getName(), ex);
+        } finally {
+            boundaries.interrupt();
+            try {
+                boundaries.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long fileEnd = System.currentTimeMillis();
+        logger.info("fileParseMetric:{},{},{},{},{}", fileEnd - fileStart, sp.getClass().getName(), theFile, sessionNum, totalSize);
+        logger.debug("Done processing {} sessions from {}", sessionNum, theFile.getName());
+        return sessionNum;
+    }
+
+    /**
+     * Find the sessions of a file, queueing each to be made into a payload on the session worker pool. The queue ends with
+     * a null session, or with the parse failure.
+     */
+    private void findSessions(SessionParser sp, SessionProducer dof, String fixedName, BlockingQueue<Future<ParsedSession>> queue) {
+        try {
+            int sessionNum = 0;
+            while (true) {
+                DecomposedSession session;
+                try {
+                    session = sp.getNextSession();
+                } catch (ParserEOFException eof) {
+                    // expected at end of file
+                    queue.put(CompletableFuture.completedFuture(null));
+                    return;
+                } catch (Throwable t) {
+                    // anything else must still end the queue or the dispatcher waits for ever
+                    CompletableFuture<ParsedSession> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(t);
+                    queue.put(failed);
+                    return;
+                }
+                sessionNum++;
+                // Use filename-xx for default name, as processSessions does
+                ParsedSession parsed = new ParsedSession(fixedName + "-" + sessionNum, sp.getSessionName(session), sessionNum);
+                queue.put(CompletableFuture.supplyAsync(() -> parsed.build(dof, session), sessionWorkerPool));
+            }
+        } catch (InterruptedException e) {
+            // the dispatcher has stopped
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A payload made from a parsed session, with where it came in the file
+     */
+    private static final class ParsedSession {
+        final String name;
+        @Nullable
+        final String parsedName;
+        final int number;
+        IBaseDataObject dataObject;
+        long buildMillis;
+
+        ParsedSession(String name, @Nullable String parsedName, int number) {
+            this.name = name;
+            this.parsedName = parsedName;
+            this.number = number;
+        }
+
+        ParsedSession build(SessionProducer dof, DecomposedSession session) {
+            long start = System.currentTimeMillis();
+            // named by the parser where it can, like SessionProducer does with a parser
+            dataObject = dof.createAndLoadDataObject(session, parsedName != null ? parsedName : name);
+            dataObject.setParameter(SESSION_NUMBER, Integer.toString(number));
+            buildMillis = System.currentTimeMillis() - start;
+            return this;
+        }
+    }
+
+    /**
+     * Offer a session parser the file it is parsing as a channel source, so that session data is not copied. No handle on
+     * the file is held here: each channel payloads read through opens the file when first read and closes it when the
+     * channel is closed. Channels opened after the file is moved to the done or error area open it there, see
+     * {@link #moveFile(File, File)}.
+     * 
+     * @param sp the parser of the file
+     * @param theFile the file being parsed
+     */
+    protected void useChannelSource(SessionParser sp, File theFile) {
+        SessionFile source = new SessionFile(theFile.toPath());
+        if (sp.useChannelSource(ImmutableChannelFactory.create(source))) {
+            sessionFiles.put(theFile, source);
+            logger.debug("Session data from {} will be read from the file", theFile.getName());
+        }
+    }
+
+    /**
+     * A file session data is read from, wherever it has been moved to
+     */
+    private static final class SessionFile implements SeekableByteChannelFactory {
+        private Path path;
+
+        SessionFile(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Move the file, so that channels not yet reading from it find it at its new place
+         */
+        synchronized boolean moveTo(File from, File dest) {
+            boolean renamed = from.renameTo(dest);
+            if (renamed) {
+                path = dest.toPath();
+            }
+            return renamed;
+        }
+
+        synchronized FileChannel open() throws IOException {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        @Override
+        public SeekableByteChannel create() {
+            return new SessionFileChannel(this);
+        }
+    }
+
+    /**
+     * Reads a session file through a handle of its own, opened on first use
+     */
+    private static final class SessionFileChannel extends AbstractSeekableByteChannel {
+        private final SessionFile file;
+        @Nullable
+        private FileChannel channel;
+
+        SessionFileChannel(SessionFile file) {
+            this.file = file;
+        }
+
+        private FileChannel channel() throws IOException {
+            if (channel == null) {
+                channel = file.open();
+            }
+            return channel;
+        }
+
+        @Override
+        protected void closeImpl() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        @Override
+        protected int readImpl(ByteBuffer byteBuffer) throws IOException {
+            return channel().read(byteBuffer, position());
+        }
+
+        @Override
+        protected long sizeImpl() throws IOException {
+            return channel().size();
+        }
+    }
+
     /**
      * Parse out sessions and process data from a byte array
      * 
@@ -695,9 +1004,7 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
      * Retrieve and agent from the pool and assign the payload to it
      * 
      * @param payload the payload for the agent
-     * @param timeoutMs maximum time in millis to wait for an agent from the pool. Set to -1 to wait forever. The specified
-     *        time will not be strictly observed because the pool itself blocks for a configurable amount of time when
-     *        requesting an agent. We will wait no more than the specified timeoutMs + the configured pool timeout value.
+     * @param timeoutMs maximum time in millis to wait for an agent from the pool. Set to -1 to wait forever.
      * @throws EmissaryException when an agent cannot be obtained
      */
     public void assignToPooledAgent(IBaseDataObject payload, long timeoutMs) throws EmissaryException {
@@ -705,23 +1012,19 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
     }
 
     /**
-     * Retrieve and agent from the specified pool and assign the payload to it
+     * Retrieve and agent from the specified pool and assign the payload to it. The caller waits in line with everyone else
+     * asking the pool for an agent, without using any cpu.
      * 
      * @param payload the payload for the agent
      * @param agentPool the pool of agents
      * @param startingLocation the agent launch point
-     * @param timeoutMs maximum time in millis to wait for an agent from the pool. Set to -1 to wait forever. The specified
-     *        time will not be strictly observed because the pool itself blocks for a configurable amount of time when
-     *        requesting an agent. We will wait no more than the specified timeoutMs + the configured pool timeout value.
+     * @param timeoutMs maximum time in millis to wait for an agent from the pool. Set to -1 to wait forever.
      * @return mobile agent assigned to pool
      * @throws EmissaryException when an agent cannot be obtained
      */
     public static IMobileAgent assignToPooledAgent(IBaseDataObject payload, @Nullable AgentPool agentPool, IServiceProviderPlace startingLocation,
             long timeoutMs) throws EmissaryException {
         IMobileAgent agent = null;
-        long startTime = System.currentTimeMillis();
-        boolean warningGiven = false;
-        int loopCount = 0;
 
         MDC.put(MDCConstants.SHORT_NAME, payload.shortName());
         try {
@@ -730,26 +1033,17 @@ public abstract class PickUpPlace extends ServiceProviderPlace implements IPickU
                 agentPool = AgentPool.lookup();
             }
 
-            do {
-                loopCount++;
-                try {
-                    agent = agentPool.borrowAgent();
-                } catch (Exception e) {
-                    if (!warningGiven) {
-                        slogger.debug("Cannot get agent from pool, trying again ", e);
-                        warningGiven = true;
-                    }
-                }
-            } while (agent == null && (timeoutMs < 0 || (startTime + timeoutMs) < System.currentTimeMillis()));
-
-            if (agent == null) {
-                throw new EmissaryException("No agent found for " + payload.shortName() + " after " + loopCount + " tries.");
-            } else if (loopCount > 1) {
-                slogger.info("Found agent after {} tries", loopCount);
+            try {
+                agent = agentPool.borrowAgent(Duration.ofMillis(timeoutMs < 0 ? -1L : timeoutMs));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EmissaryException("Interrupted waiting for an agent for " + payload.shortName(), e);
+            } catch (Exception e) {
+                slogger.debug("Cannot get agent from pool", e);
+                throw new EmissaryException("No agent found for " + payload.shortName() + ": " + e.getMessage(), e);
             }
 
             agent.go(payload, startingLocation);
-            Thread.yield();
         } finally {
             MDC.remove(MDCConstants.SHORT_NAME);
         }
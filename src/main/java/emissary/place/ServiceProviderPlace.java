@@ -1096,6 +1096,10 @@ public abstract class ServiceProviderPlace implements emissary.place.IServicePro
     protected IBaseDataObject getTLD() {
         try {
             MobileAgent agent = getAgent();
+            // a sibling worker only carries part of the family
+            while (agent instanceof HDMobileAgent && ((HDMobileAgent) agent).getSiblingParent() != null) {
+                agent = ((HDMobileAgent) agent).getSiblingParent();
+            }
 
             if (agent instanceof HDMobileAgent) {
                 Object payload = ((HDMobileAgent) agent).getPayloadForTransport();
@@ -0,0 +1,103 @@
+package emissary.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * How pooled agents get a thread to run their itinerary on. Configured with <code>agent.execution.mode</code> in
+ * AgentPool.cfg or as a system property.
+ */
+public enum AgentExecutionMode {
+
+    /** Each agent owns a dedicated platform thread that waits for work */
+    THREAD,
+
+    /**
+     * Agents are tasks on a shared work stealing pool. Itineraries block in places, so the pool has a thread for every
+     * agent in the agent pool unless a smaller parallelism is configured.
+     */
+    WORK_STEALING,
+
+    /** Agents are tasks on their own virtual thread, needs JDK 21 or later and uses WORK_STEALING otherwise */
+    VIRTUAL;
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentExecutionMode.class);
+
+    private static final AgentThreadGroup threadGroup = new AgentThreadGroup("Agent Executor Threads");
+
+    /**
+     * Look up a mode by name, ignoring case
+     *
+     * @param name the name of the mode
+     * @param dflt mode to use if the name is null or not recognized
+     * @return the matching mode or the default
+     */
+    public static AgentExecutionMode fromString(@Nullable final String name, final AgentExecutionMode dflt) {
+        if (name == null) {
+            return dflt;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown agent execution mode {}, using {}", name, dflt);
+            return dflt;
+        }
+    }
+
+    /**
+     * Create the executor that agents will run on in this mode
+     *
+     * @param parallelism the number of agents allowed to run at once on the work stealing pool, normally the size of the
+     *        agent pool
+     * @return the executor or null when each agent runs on its own thread
+     */
+    @Nullable
+    public ExecutorService createExecutor(final int parallelism) {
+        switch (this) {
+            case VIRTUAL:
+                final ExecutorService virtual = createVirtualThreadExecutor();
+                if (virtual != null) {
+                    return virtual;
+                }
+                logger.warn("Virtual threads are not available on this JVM, using a work stealing pool for agents");
+                return createWorkStealingExecutor(parallelism);
+            case WORK_STEALING:
+                return createWorkStealingExecutor(parallelism);
+            default:
+                return null;
+        }
+    }
+
+    private static ExecutorService createWorkStealingExecutor(final int parallelism) {
+        final AtomicInteger counter = new AtomicInteger();
+        final ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("AgentExecutor-" + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+        logger.info("Running agents on a work stealing pool with parallelism {}", parallelism);
+        // async mode, agents are never joined
+        return new ForkJoinPool(Math.max(1, parallelism), factory, threadGroup, true);
+    }
+
+    @Nullable
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            final ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Running agents on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("No virtual thread executor", e);
+            return null;
+        }
+    }
+}
@@ -4,15 +4,30 @@ import emissary.core.IMobileAgent;
 import emissary.core.Namespace;
 import emissary.core.NamespaceException;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nullable;
 
 /**
- * Extends the GenericObjectPool to hold MobileAgents, each on it's own thread.
+ * Extends the GenericObjectPool to hold MobileAgents, each on it's own thread or sharing the executor of the factory,
+ * see {@link AgentExecutionMode}.
+ *
+ * Callers that cannot get an agent right away wait their turn in a single first come, first served line, whether they
+ * block in {@link #borrowAgent()} or take a future from {@link #borrowAgentAsync()}. Agents are handed to the line as
+ * they are returned.
  */
 public class AgentPool extends GenericObjectPool<IMobileAgent> {
 
@@ -41,6 +56,16 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
 
     private final int initialPoolSize;
 
+    /**
+     * Callers waiting for an agent, oldest first
+     */
+    private final Deque<AgentRequest> waiters = new ArrayDeque<>();
+
+    /**
+     * Time from asking for an agent until getting one
+     */
+    private final Timer waitTimer = new Timer();
+
     /**
      * Compute the default size for the pool
      * 
@@ -77,13 +102,28 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
         return computePoolSize(maxMemoryInBytes, poolSizeProperty);
     }
 
+    /**
+     * Compute the default size for the pool of agents made by the factory. Agents that run on an executor don't each hold a
+     * thread, so the pool is sized by the number of payloads allowed in flight when that is configured.
+     *
+     * @param factory the agent producer
+     */
+    public static int computePoolSize(final MobileAgentFactory factory) {
+        if (factory.getExecutionMode() != AgentExecutionMode.THREAD && factory.getMaxInFlight() > 0
+                && Integer.getInteger("agent.poolsize", null) == null) {
+            logger.debug("Pool size from in flight limit {}", factory.getMaxInFlight());
+            return factory.getMaxInFlight();
+        }
+        return computePoolSize();
+    }
+
     /**
      * Create and configure the pool using the default name and size
      * 
      * @param factory pool object producer
      */
     public AgentPool(MobileAgentFactory factory) {
-        this(factory, AgentPool.computePoolSize(), DEFAULT_NAMESPACE_NAME);
+        this(factory, AgentPool.computePoolSize(factory), DEFAULT_NAMESPACE_NAME);
     }
 
     /**
@@ -130,13 +170,14 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
         setMaxTotal(initialPoolSize);
         setMinIdle(initialPoolSize);
         setMaxIdle(initialPoolSize);
+        factory.agentPoolSize = Math.max(1, initialPoolSize);
 
         bindPool();
         fillPool();
     }
 
     /**
-     * Ensure the pool is full
+     * Ensure the pool is full and hand the new agents to anyone already waiting in line
      */
     protected void fillPool() {
         int level = getMaxTotal();
@@ -148,6 +189,7 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
                 logger.error("Cannot fill AgentPool", e);
             }
         }
+        admitWaiters();
     }
 
     /**
@@ -164,8 +206,13 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
         // close(); // shutdown and unbind
         // logger.info("AgentPool#resetFactory caused Namespace registered instance to change");
         // new AgentPool(factory, getMaxActive(), getPoolName()); // reload and bind
+        MobileAgentFactory oldFactory = this.factory;
         this.factory = factory;
+        factory.agentPoolSize = Math.max(1, getMaxTotal());
         emptyPool();
+        if (oldFactory != factory) {
+            oldFactory.shutdownExecutor();
+        }
         fillPool();
     }
 
@@ -185,19 +232,147 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
     }
 
     /**
-     * Get an agent from the pool
+     * Get an agent from the pool, waiting in line up to the configured max wait time if none are available
      */
     public IMobileAgent borrowAgent() throws Exception {
+        return borrowAgent(getMaxWaitDuration());
+    }
+
+    /**
+     * Get an agent from the pool, waiting in line if none are available
+     *
+     * @param maxWait how long to wait for an agent, negative to wait forever
+     * @return the agent
+     * @throws NoSuchElementException if no agent was available in time
+     */
+    public IMobileAgent borrowAgent(Duration maxWait) throws Exception {
+        CompletableFuture<IMobileAgent> request = borrowAgentAsync();
         try {
-            IMobileAgent a = borrowObject();
+            IMobileAgent a = maxWait.isNegative() ? request.get() : request.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
             logger.trace("POOL borrow active={}", getNumActive());
             return a;
-        } catch (Exception e) {
+        } catch (TimeoutException e) {
+            if (!request.cancel(false)) {
+                // got one just as time ran out
+                return request.get();
+            }
             logger.info("AgentPool.borrowAgent did not work, stats={}", this);
+            throw new NoSuchElementException("Timeout waiting for an agent after " + maxWait.toMillis() + "ms");
+        } catch (InterruptedException e) {
+            if (!request.cancel(false) && !request.isCompletedExceptionally()) {
+                returnAgent(request.join());
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            logger.info("AgentPool.borrowAgent did not work, stats={}", this);
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
             throw e;
         }
     }
 
+    /**
+     * Ask for an agent from the pool without blocking. The future completes when it is this caller's turn and an agent is
+     * free, which may happen on the thread returning an agent, so use the async variants for anything lengthy. Cancel the
+     * future to leave the line.
+     *
+     * @return a future agent, completed exceptionally if the pool cannot provide one
+     */
+    public CompletableFuture<IMobileAgent> borrowAgentAsync() {
+        AgentRequest request = new AgentRequest();
+        synchronized (waiters) {
+            waiters.addLast(request);
+        }
+        request.whenComplete((agent, t) -> {
+            if (request.isCancelled()) {
+                synchronized (waiters) {
+                    waiters.remove(request);
+                }
+            }
+        });
+        admitWaiters();
+        return request;
+    }
+
+    /**
+     * Hand available agents to the callers at the front of the line
+     */
+    protected void admitWaiters() {
+        while (true) {
+            AgentRequest next;
+            IMobileAgent agent = null;
+            Exception failure = null;
+            synchronized (waiters) {
+                next = waiters.peekFirst();
+                if (next == null) {
+                    return;
+                }
+                if (!next.isDone()) {
+                    try {
+                        agent = borrowObject(Duration.ZERO);
+                    } catch (NoSuchElementException e) {
+                        // all agents busy, wait for a return
+                        return;
+                    } catch (Exception e) {
+                        failure = e;
+                    }
+                }
+                waiters.pollFirst();
+            }
+
+            if (failure != null) {
+                next.completeExceptionally(failure);
+            } else if (agent != null && !next.complete(agent)) {
+                // caller gave up while we were getting the agent
+                returnObject(agent);
+            } else if (agent != null) {
+                waitTimer.update(System.nanoTime() - next.startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Fail everyone still waiting for an agent
+     */
+    private void failWaiters(String reason) {
+        synchronized (waiters) {
+            for (AgentRequest request : waiters) {
+                request.completeExceptionally(new IllegalStateException(reason));
+            }
+            waiters.clear();
+        }
+    }
+
+    /**
+     * Get the number of callers waiting for an agent
+     */
+    public int getWaitingCount() {
+        synchronized (waiters) {
+            return waiters.size();
+        }
+    }
+
+    /**
+     * Get the timer of how long callers wait for an agent
+     */
+    public Timer getWaitTimer() {
+        return waitTimer;
+    }
+
+    /**
+     * Report the agent wait time and the number of waiting callers in the registry, as &lt;poolName&gt;.wait and
+     * &lt;poolName&gt;.waiting
+     *
+     * @param registry the metric registry
+     */
+    public void registerMetrics(MetricRegistry registry) {
+        registry.remove(namespaceName + ".wait");
+        registry.register(namespaceName + ".wait", waitTimer);
+        registry.remove(namespaceName + ".waiting");
+        registry.register(namespaceName + ".waiting", (Gauge<Integer>) this::getWaitingCount);
+    }
+
     /*
      * Get the total current agents in the pool
      */
@@ -223,7 +398,10 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
                 for (int i = 0; i < currentIdle; i++) {
                     IMobileAgent a;
                     try {
-                        a = borrowAgent();
+                        // straight from the idle agents, not behind the callers waiting in line
+                        a = borrowObject(Duration.ZERO);
+                    } catch (NoSuchElementException e) {
+                        break;
                     } catch (Exception e) {
                         logger.error("Error trying to borrowAgent", e);
                         continue;
@@ -235,7 +413,7 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
 
                     try {
                         // destroys the object, needed to decrement the numIdle
-                        returnAgent(a);
+                        returnObject(a);
                     } catch (Exception e) {
                         logger.error("Error trying to returnAgent: {}", a.getName(), e);
                     }
@@ -263,6 +441,8 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
         setMaxTotal(0);
         emptyPool();
         super.close();
+        failWaiters("Agent pool is closed");
+        factory.shutdownExecutor();
         Namespace.unbind(getPoolName());
         logger.info("Done closing the agent pool");
     }
@@ -273,6 +453,8 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
     public void kill() {
         logger.info("Killing the agent pool");
         super.close();
+        failWaiters("Agent pool is killed");
+        factory.shutdownExecutor();
         Namespace.unbind(getPoolName());
         logger.info("Done killing the agent pool");
     }
@@ -284,6 +466,7 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
         logger.trace("Returning {}", agent.getName());
         returnObject(agent);
         logger.trace("POOL return active={}", getNumActive());
+        admitWaiters();
     }
 
     /**
@@ -305,7 +488,7 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
      */
     @Override
     public synchronized String toString() {
-        return "Poolsize active/idle = " + getNumActive() + "/" + getNumIdle() + " - " + getPoolName();
+        return "Poolsize active/idle/waiting = " + getNumActive() + "/" + getNumIdle() + "/" + getWaitingCount() + " - " + getPoolName();
     }
 
     /**
@@ -323,4 +506,11 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
     public boolean isAgentAvailable() {
         return getNumIdle() > 0;
     }
+
+    /**
+     * A caller waiting in line for an agent
+     */
+    private static final class AgentRequest extends CompletableFuture<IMobileAgent> {
+        final long startNanos = System.nanoTime();
+    }
 }
@@ -3,8 +3,10 @@ package emissary.pool;
 import emissary.config.ConfigUtil;
 import emissary.config.Configurator;
 import emissary.core.Factory;
+import emissary.core.HDMobileAgent;
 import emissary.core.IMobileAgent;
 import emissary.core.Namespace;
+import emissary.core.SiblingProcessor;
 
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
@@ -13,6 +15,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import javax.annotation.Nullable;
 
 public class MobileAgentFactory implements PooledObjectFactory<IMobileAgent> {
 
@@ -32,6 +36,36 @@ public class MobileAgentFactory implements PooledObjectFactory<IMobileAgent> {
 
     int maxAgentItinerary = 100;
 
+    // How the agents get a thread to run on
+    AgentExecutionMode executionMode = AgentExecutionMode.THREAD;
+
+    // Number of agents running at once on a work stealing executor, 0 for the size of the agent pool
+    int executionParallelism = 0;
+
+    // Size of the pool the agents are made for, set by the pool
+    int agentPoolSize = Runtime.getRuntime().availableProcessors();
+
+    // Number of payloads allowed in flight when agents run on an executor, 0 to size the pool as usual
+    int maxInFlight = 0;
+
+    // Run sprouted siblings in parallel on HD agents
+    boolean siblingParallel = false;
+
+    // Number of sibling batches run at once, 0 for the number of processors
+    int siblingParallelism = 0;
+
+    // Smallest number of siblings worth running in parallel
+    int siblingThreshold = 8;
+
+    // Number of siblings carried by each sibling worker
+    int siblingBatchSize = 4;
+
+    // Shared by all HD agents from this factory when siblings run in parallel
+    private SiblingProcessor siblingProcessor = null;
+
+    // Shared by all agents from this factory when they don't own a thread
+    private ExecutorService executor = null;
+
     private static final Logger logger = LoggerFactory.getLogger(MobileAgentFactory.class);
 
     // Thread group for every agent produced by this factory
@@ -51,9 +85,19 @@ public class MobileAgentFactory implements PooledObjectFactory<IMobileAgent> {
 
             maxAgentMoveErrors = conf.findIntEntry("agent.move.errors", maxAgentMoveErrors);
             maxAgentItinerary = conf.findIntEntry("agent.max.itinerary", maxAgentItinerary);
+
+            executionMode = AgentExecutionMode.fromString(conf.findStringEntry("agent.execution.mode", executionMode.name()), executionMode);
+            executionParallelism = conf.findIntEntry("agent.execution.parallelism", executionParallelism);
+            maxInFlight = conf.findIntEntry("agent.execution.max.inflight", maxInFlight);
+
+            siblingParallel = conf.findBooleanEntry("agent.sibling.parallel", siblingParallel);
+            siblingParallelism = conf.findIntEntry("agent.sibling.parallelism", siblingParallelism);
+            siblingThreshold = conf.findIntEntry("agent.sibling.threshold", siblingThreshold);
+            siblingBatchSize = conf.findIntEntry("agent.sibling.batch", siblingBatchSize);
         } catch (IOException e) {
             logger.debug("Cannot read AgentPool.cfg, taking default values");
         }
+        executionMode = AgentExecutionMode.fromString(System.getProperty("agent.execution.mode"), executionMode);
     }
 
     /**
@@ -97,15 +141,25 @@ public class MobileAgentFactory implements PooledObjectFactory<IMobileAgent> {
         IMobileAgent agent;
         String aname = AGENT_NAME + "-" + (objectsCreated < 10 ? "0" : "") + objectsCreated;
         try {
-            if (useNamespace) {
+            final ExecutorService agentExecutor = getExecutor();
+            if (agentExecutor != null) {
+                if (useNamespace) {
+                    agent = (IMobileAgent) Factory.createV(getClassString(), aname, aname, agentExecutor);
+                } else {
+                    agent = (IMobileAgent) Factory.create(getClassString(), aname, agentExecutor);
+                }
+            } else if (useNamespace) {
                 agent = (IMobileAgent) Factory.createV(getClassString(), aname, threadGroup, aname);
             } else {
                 agent = (IMobileAgent) Factory.create(getClassString(), threadGroup, aname);
             }
             agent.setMaxItinerarySteps(maxAgentItinerary);
             agent.setMaxMoveErrors(maxAgentMoveErrors);
+            if (agent instanceof HDMobileAgent) {
+                ((HDMobileAgent) agent).setSiblingProcessor(getSiblingProcessor());
+            }
         } catch (Throwable t) {
-            logger.error("Unable to Factory.create(" + getClassString() + ") with a threadGroup argument", t);
+            logger.error("Unable to Factory.create(" + getClassString() + ") with a threadGroup or executor argument", t);
             if (useNamespace) {
                 agent = (IMobileAgent) Factory.createV(getClassString(), aname);
             } else {
@@ -175,6 +229,83 @@ public class MobileAgentFactory implements PooledObjectFactory<IMobileAgent> {
         classString = s;
     }
 
+    /**
+     * Get the way agents from this factory get a thread to run on
+     *
+     * @return the execution mode
+     */
+    public AgentExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Set the way agents get a thread to run on, affects agents made after the call
+     *
+     * @param mode the execution mode
+     */
+    public synchronized void setExecutionMode(AgentExecutionMode mode) {
+        if (mode != executionMode) {
+            stopAgentExecutor();
+            executionMode = mode;
+        }
+    }
+
+    /**
+     * Get the number of payloads allowed in flight when agents run on an executor
+     *
+     * @return the limit or 0 if there is none
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Get the executor shared by the agents, creating it on first use
+     *
+     * @return the executor or null when each agent owns a thread
+     */
+    @Nullable
+    protected synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            // Itineraries block in places, so every agent the pool can hand out gets a thread unless told otherwise
+            executor = executionMode.createExecutor(executionParallelism > 0 ? executionParallelism : agentPoolSize);
+        }
+        return executor;
+    }
+
+    /**
+     * Stop the executor shared by the agents and the sibling processor, if any. Running itineraries are interrupted.
+     */
+    public synchronized void shutdownExecutor() {
+        stopAgentExecutor();
+        if (siblingProcessor != null) {
+            logger.info("Shutting down the sibling processor");
+            siblingProcessor.shutdown();
+            siblingProcessor = null;
+        }
+    }
+
+    private void stopAgentExecutor() {
+        if (executor != null) {
+            logger.info("Shutting down the {} agent executor", executionMode);
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Get the processor HD agents use to run sprouted siblings in parallel, creating it on first use
+     *
+     * @return the processor or null when siblings are processed one after another
+     */
+    @Nullable
+    protected synchronized SiblingProcessor getSiblingProcessor() {
+        if (siblingProcessor == null && siblingParallel) {
+            siblingProcessor = new SiblingProcessor(siblingParallelism, siblingThreshold, siblingBatchSize);
+        }
+        return siblingProcessor;
+    }
+
     /**
      * Get the current class for IMobileAgent we are using
      * 
@@ -189,6 +320,6 @@ public class MobileAgentFactory implements PooledObjectFactory<IMobileAgent> {
      */
     @Override
     public String toString() {
-        return "MobileAgentFactory created " + objectsCreated + " " + getClassString() + " instances";
+        return "MobileAgentFactory created " + objectsCreated + " " + getClassString() + " instances running in " + executionMode + " mode";
     }
 }
@@ -1,6 +1,9 @@
 package emissary.pool;
 
+import emissary.config.ConfigUtil;
+import emissary.config.Configurator;
 import emissary.core.IMobileAgent;
+import emissary.core.MetricsManager;
 import emissary.core.Namespace;
 import emissary.core.NamespaceException;
 import emissary.directory.DirectoryEntry;
@@ -9,19 +12,35 @@ import emissary.directory.KeyManipulator;
 import emissary.place.IServiceProviderPlace;
 import emissary.util.PayloadUtil;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
 
 /**
  * Provide a storage area for incoming "moveTo(here)" payloads so that the http transfer can become more asnychronous.
- * This class provides a FIFO for payloads that are arriving and a thread that will put them into agents from the pool
- * as agents become available
+ * This class provides a bounded FIFO for payloads that are arriving and several dispatcher threads that will put them
+ * into agents from the pool as agents become available.
+ *
+ * When the spool is full a sender waits a short time for room and is then told the payload was not spooled, so it can
+ * handle the payload itself instead of piling more onto the spool. The time each payload spends on the spool is
+ * recorded in the {@link MetricsManager} registry when there is one.
  */
 
 public class MoveSpool implements Runnable {
@@ -29,32 +48,53 @@ public class MoveSpool implements Runnable {
     // Our logger
     private static final Logger logger = LoggerFactory.getLogger(MoveSpool.class);
 
+    // Defaults that can be overridden in MoveSpool.cfg
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int DEFAULT_DISPATCHERS = 2;
+    public static final long DEFAULT_OFFER_TIMEOUT_MILLIS = 1000L;
+
+    // Returned from enqueue when the spool stayed full
+    public static final int SPOOL_FULL = -1;
+
+    // Names of the metrics we report
+    public static final String LATENCY_METRIC_PREFIX = "MoveSpool.latency.";
+    public static final String REJECTED_METRIC = "MoveSpool.rejected";
+
     // The payload FIFO
-    protected final LinkedList<SpoolItem> spool = new LinkedList<SpoolItem>();
+    protected final BlockingQueue<SpoolItem> spool;
 
     // Reference to the agent pool
-    protected AgentPool pool;
+    protected volatile AgentPool pool;
 
-    // The thread that stuffs payloads into pool agents
-    Thread watcher;
+    // The threads that stuff payloads into pool agents
+    final List<Thread> dispatchers = new ArrayList<>();
 
     // thread quit control
-    boolean timeToQuit = false;
+    volatile boolean timeToQuit = false;
+
+    // How long a sender waits for room on a full spool
+    protected final long offerTimeoutMillis;
 
     // How we want to be registerd in the namespace
     public static final String NAMESPACE_NAME = "ArrivalSpool";
 
     // Stats on how many moves and for what types arrived here
-    public final Map<String, Integer> moveCountMap = new HashMap<String, Integer>();
+    public final Map<String, Integer> moveCountMap = new ConcurrentHashMap<String, Integer>();
 
     // Stats collection
-    private int highWaterMark = 0;
+    private final AtomicInteger highWaterMark = new AtomicInteger();
     private static long lookupCount = 0;
-    private long enqueCount = 0;
-    private long dequeCount = 0;
+    private final LongAdder enqueCount = new LongAdder();
+    private final LongAdder dequeCount = new LongAdder();
+
+    // Enqueue to dispatch latency by method, and backpressure count
+    @Nullable
+    private final Map<Method, Timer> latencyTimers;
+    @Nullable
+    private final Counter rejectedCounter;
 
     // Cached ref to my local directory
-    IDirectoryPlace localDirectory = null;
+    volatile IDirectoryPlace localDirectory = null;
 
     // Methods for using the spool to dispatch
     public static enum Method {
@@ -62,27 +102,93 @@ public class MoveSpool implements Runnable {
     }
 
     /**
-     * Make one and bind it in the namespace
+     * Make one and bind it in the namespace, reporting to the MetricsManager in the namespace if there is one
      */
     public MoveSpool() {
-        configure();
+        this(lookupMetricsManager());
+    }
+
+    /**
+     * Make one using the settings in MoveSpool.cfg and bind it in the namespace
+     *
+     * @param metricsManager where to report spool latency, may be null
+     */
+    public MoveSpool(@Nullable MetricsManager metricsManager) {
+        this(getConfigurator(), metricsManager);
+    }
+
+    private MoveSpool(@Nullable Configurator conf, @Nullable MetricsManager metricsManager) {
+        this(conf == null ? DEFAULT_CAPACITY : conf.findIntEntry("spool.capacity", DEFAULT_CAPACITY),
+                conf == null ? DEFAULT_DISPATCHERS : conf.findIntEntry("spool.dispatchers", DEFAULT_DISPATCHERS),
+                conf == null ? DEFAULT_OFFER_TIMEOUT_MILLIS : conf.findLongEntry("spool.offer.timeout.millis", DEFAULT_OFFER_TIMEOUT_MILLIS),
+                metricsManager == null ? null : metricsManager.getMetricRegistry());
+    }
+
+    /**
+     * Make one with the specified settings and bind it in the namespace
+     *
+     * @param capacity the most payloads that can wait on the spool
+     * @param dispatcherCount number of threads handing payloads to agents
+     * @param offerTimeoutMillis how long a sender waits for room on a full spool
+     * @param metrics registry for the spool metrics, may be null
+     */
+    MoveSpool(int capacity, int dispatcherCount, long offerTimeoutMillis, @Nullable MetricRegistry metrics) {
+        this.spool = new LinkedBlockingQueue<>(Math.max(1, capacity));
+        this.offerTimeoutMillis = Math.max(0L, offerTimeoutMillis);
+
+        if (metrics != null) {
+            this.latencyTimers = new EnumMap<>(Method.class);
+            for (Method m : Method.values()) {
+                this.latencyTimers.put(m, metrics.timer(LATENCY_METRIC_PREFIX + m.name()));
+            }
+            this.rejectedCounter = metrics.counter(REJECTED_METRIC);
+        } else {
+            this.latencyTimers = null;
+            this.rejectedCounter = null;
+        }
+
+        configure(Math.max(1, dispatcherCount));
 
         // register this pool in the namespace
         Namespace.bind(NAMESPACE_NAME, this);
     }
 
+    @Nullable
+    private static Configurator getConfigurator() {
+        try {
+            return ConfigUtil.getConfigInfo(MoveSpool.class);
+        } catch (IOException e) {
+            logger.debug("Cannot read MoveSpool.cfg, taking default values");
+            return null;
+        }
+    }
+
+    @Nullable
+    private static MetricsManager lookupMetricsManager() {
+        try {
+            return MetricsManager.lookup();
+        } catch (NamespaceException e) {
+            logger.debug("No MetricsManager, spool latency will not be reported");
+            return null;
+        }
+    }
+
     /**
      * Configure stuff
      */
-    private void configure() {
+    private void configure(int dispatcherCount) {
         // Get the agent pool
         resetPool();
 
-        // start the watcher thread
-        watcher = new Thread(this, "MoveSpool");
-        watcher.setPriority(Thread.MAX_PRIORITY - 2);
-        watcher.setDaemon(true);
-        watcher.start();
+        // start the dispatcher threads
+        logger.debug("Starting {} MoveSpool dispatchers for a spool of {}", dispatcherCount, spool.remainingCapacity());
+        for (int i = 0; i < dispatcherCount; i++) {
+            Thread t = new Thread(this, "MoveSpool-" + i);
+            t.setPriority(Thread.MAX_PRIORITY - 2);
+            t.setDaemon(true);
+            dispatchers.add(t);
+            t.start();
+        }
     }
 
     public void resetPool() {
@@ -100,13 +206,11 @@ public class MoveSpool implements Runnable {
      */
     public void quit() {
         logger.warn("Purging the spool...");
-        synchronized (spool) {
-            if (spool.size() > 0) {
-                spool.clear();
-            }
-            spool.notifyAll();
-        }
         timeToQuit = true;
+        spool.clear();
+        for (Thread t : dispatchers) {
+            t.interrupt();
+        }
         Namespace.unbind(NAMESPACE_NAME);
         logger.info("Done stopping the move spool");
     }
@@ -135,42 +239,38 @@ public class MoveSpool implements Runnable {
     }
 
     /**
-     * Run the thread to watch the spool
+     * Run a dispatcher thread to watch the spool
      */
     @Override
     public void run() {
-        int consecutiveSendCounter = 0;
-
         // Run until we are told to quit
         while (!timeToQuit) {
-            // Check the spool for work to be done
-            int sz = 0;
-            synchronized (spool) {
-                sz = spool.size();
+            SpoolItem item = null;
+            try {
+                // Get the oldest payload from the spool
+                item = spool.poll(60, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+                break;
             }
-
-            if (sz == 0) {
-                // No payloads to look at. Sleep a while
-                consecutiveSendCounter = 0;
-                try {
-                    logger.debug("Nothing in spool, time to wait...");
-                    Thread.yield();
-                    synchronized (spool) {
-                        if (spool.size() == 0) {
-                            spool.wait(60000);
-                        }
-                    }
-                } catch (InterruptedException ignore) {
-                    Thread.currentThread().interrupt();
-                }
+            if (item == null) {
+                logger.debug("Nothing in spool, time to wait...");
                 continue;
             }
+            dequeCount.increment();
+            dispatch(item);
+        }
+        logger.debug("MoveSpool dispatcher {} is done", Thread.currentThread().getName());
+    }
 
-            // Get an agent and a sool item
-            IMobileAgent agent = null;
-            SpoolItem item = null;
-            String itemName = null;
-
+    /**
+     * Hand a spooled payload to an agent from the pool, waiting for an agent if none are available
+     *
+     * @param item the payload and place to start with
+     */
+    protected void dispatch(SpoolItem item) {
+        IMobileAgent agent = null;
+        while (agent == null && !timeToQuit && !Thread.currentThread().isInterrupted()) {
             try {
                 // This may block for the max time the
                 // pool is configured to use if no
@@ -178,158 +278,208 @@ public class MoveSpool implements Runnable {
                 agent = pool.borrowAgent();
                 if (agent == null) {
                     logger.debug("Got a null agent from pool!");
-                    continue;
                 }
-
-                // Get the oldest payload from the spool
-                item = removeFirstPayload();
-                if (item == null) {
-                    logger.debug("Got a null item from move spool!");
-                    pool.returnAgent(agent);
-                    continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.debug("Cannot get agent from pool, trying again", e);
+                if (pool == null) {
+                    waitForPool();
                 }
+            }
+        }
 
-                // We have both an agent and a spool item
-                // so hook em up and send it on the way
-                itemName = PayloadUtil.getName(item.getPayload());
-
-                logger.debug("Handing over " + itemName + " to an agent, method=" + item.getMethod());
+        String itemName = PayloadUtil.getName(item.getPayload());
+        if (agent == null) {
+            logger.warn("MoveSpool stopped before an agent was found, payload {} is irretrievably lost", itemName);
+            return;
+        }
 
-                if (item.getMethod() == Method.GO) {
-                    IServiceProviderPlace place = item.getPlace();
-                    if (place == null) {
-                        place = getLocalDirectory();
-                    }
+        recordLatency(item);
 
-                    Object payload = item.getPayload();
-                    agent.go(payload, place);
-                    consecutiveSendCounter++;
-                } else if (item.getMethod() == Method.ARRIVE) {
-                    agent.arrive(item.getPayload(), item.getPlace(), item.getErrorCount(), item.getItineraryItems());
-                    consecutiveSendCounter++;
-                } else {
-                    logger.error("Illegal spooler method specified " + item.getMethod() + ", payload=" + item.getPayload()
-                            + " will be irretreivably lost");
-                }
+        // We have both an agent and a spool item
+        // so hook em up and send it on the way
+        try {
+            logger.debug("Handing over {} to an agent, method={}", itemName, item.getMethod());
 
-                if (consecutiveSendCounter % 10 == 0) {
-                    logger.debug("Sent 10 consecutive entries, " + "time to yield the MoveSpool");
-                    Thread.yield();
+            if (item.getMethod() == Method.GO) {
+                IServiceProviderPlace place = item.getPlace();
+                if (place == null) {
+                    place = getLocalDirectory();
                 }
-            } catch (Throwable t) {
-                if (agent != null) {
-                    logger.error("Unable to start agent, payload " + itemName + " is irretrievably lost", t);
-                    try {
-                        pool.returnAgent(agent);
-                    } catch (Exception ex) {
-                        logger.error("Unable to return agent to the pool", ex);
-                    }
-                } else {
-                    logger.debug("Cannot get agent from pool, trying again", t);
-                }
-            } finally {
-                // hold no references to this stuff
-                agent = null;
-                item = null;
+                agent.go(item.getPayload(), place);
+            } else if (item.getMethod() == Method.ARRIVE) {
+                agent.arrive(item.getPayload(), item.getPlace(), item.getErrorCount(), item.getItineraryItems());
+            } else {
+                logger.error("Illegal spooler method specified {}, payload={} will be irretreivably lost", item.getMethod(), item.getPayload());
+                pool.returnAgent(agent);
             }
+        } catch (Throwable t) {
+            logger.error("Unable to start agent, payload " + itemName + " is irretrievably lost", t);
+            try {
+                pool.returnAgent(agent);
+            } catch (Exception ex) {
+                logger.error("Unable to return agent to the pool", ex);
+            }
+        }
+    }
+
+    private void waitForPool() {
+        try {
+            TimeUnit.SECONDS.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        resetPool();
+    }
+
+    private void recordLatency(SpoolItem item) {
+        if (latencyTimers != null) {
+            latencyTimers.get(item.getMethod()).update(System.nanoTime() - item.getEnqueueNanos(), TimeUnit.NANOSECONDS);
         }
     }
 
     /**
      * Remove the oldest payload item on the spool
      *
-     * @return SpoolItem from the spool
+     * @return SpoolItem from the spool or null if it is empty
      */
+    @Nullable
     protected SpoolItem removeFirstPayload() {
-        SpoolItem s = null;
-        synchronized (spool) {
-            // Do some stats
-            if (spool.size() > highWaterMark) {
-                highWaterMark = spool.size();
-            }
-
-            s = spool.removeFirst();
-            dequeCount++;
+        SpoolItem s = spool.poll();
+        if (s != null) {
+            dequeCount.increment();
         }
         return s;
     }
 
     /**
      * Add an item to the spool for sending. Can be the result of a sprout or a new item being ingested into the system. The
-     * arrivalPlace is null so we call MobileAgent.go rather than MobileAgent.arrive
+     * arrivalPlace is null so we call MobileAgent.go rather than MobileAgent.arrive. Waits for room if the spool is full.
      *
      * @param payload the dataObject or Collection to save
-     * @return number of items on the queue
+     * @return number of items on the queue or {@link #SPOOL_FULL} if interrupted while waiting
      */
     public int send(Object payload) {
-        return enqueue(Method.GO, payload, null, 0, (List<DirectoryEntry>) null);
+        return enqueue(Method.GO, payload, null, 0, null, true);
     }
 
     /**
      * Add an item to the spool for sending. Can be the result of a sprout or a new item being ingested into the system. We
-     * call MobileAgent.go rather than MobileAgent.arrive
+     * call MobileAgent.go rather than MobileAgent.arrive. Waits for room if the spool is full.
      *
      * @param payload the dataObject or Collection to save
      * @param place the sending or sprouting place reference
-     * @return number of items on the queue
+     * @return number of items on the queue or {@link #SPOOL_FULL} if interrupted while waiting
      */
     public int send(Object payload, IServiceProviderPlace place) {
-        return enqueue(Method.GO, payload, place, 0, (List<DirectoryEntry>) null);
+        return enqueue(Method.GO, payload, place, 0, null, true);
     }
 
     /**
-     * Add an arriving payload and associated state transfer info to the spool Calls MobileAgent.arrive in this case
+     * Try to add an item to the spool for sending, waiting no longer than the configured offer timeout for room
+     *
+     * @param payload the dataObject or Collection to save
+     * @param place the sending or sprouting place reference, possibly null
+     * @return number of items on the queue or {@link #SPOOL_FULL} if it was not spooled and remains the caller's
+     *         responsibility
+     */
+    public int trySend(Object payload, @Nullable IServiceProviderPlace place) {
+        return enqueue(Method.GO, payload, place, 0, null, false);
+    }
+
+    /**
+     * Add an arriving payload and associated state transfer info to the spool Calls MobileAgent.arrive in this case. Waits
+     * for room if the spool is full.
      *
      * @param payload the data object or Collection to save
      * @param place IServiceProviderPlace ref for the agent to visit
      * @param errorCount state from the transferred MobileAgent
      * @param itineraryItems state from the transferred MobileAgent
-     * @return number of items in the queue
+     * @return number of items in the queue or {@link #SPOOL_FULL} if interrupted while waiting
      */
     public int arrive(Object payload, IServiceProviderPlace place, int errorCount, List<DirectoryEntry> itineraryItems) {
-        return enqueue(Method.ARRIVE, payload, place, errorCount, itineraryItems);
+        return enqueue(Method.ARRIVE, payload, place, errorCount, itineraryItems, true);
+    }
+
+    /**
+     * Try to add an arriving payload to the spool, waiting no longer than the configured offer timeout for room
+     *
+     * @param payload the data object or Collection to save
+     * @param place IServiceProviderPlace ref for the agent to visit
+     * @param errorCount state from the transferred MobileAgent
+     * @param itineraryItems state from the transferred MobileAgent
+     * @return number of items in the queue or {@link #SPOOL_FULL} if it was not spooled and remains the caller's
+     *         responsibility
+     */
+    public int tryArrive(Object payload, IServiceProviderPlace place, int errorCount, List<DirectoryEntry> itineraryItems) {
+        return enqueue(Method.ARRIVE, payload, place, errorCount, itineraryItems, false);
     }
 
     /**
      * Add an item to the spool. When an agent becomes available it is assigned to this payload in turn. We call
-     * MobileAgent.go or MobileAgent.arrive depending on the Method requested
+     * MobileAgent.go or MobileAgent.arrive depending on the Method requested. If the spool is full the caller either waits
+     * for room or, when not blocking, waits up to the configured offer timeout after which the payload is not spooled and
+     * remains the caller's responsibility.
      *
      * @param method ARRIVE or GO
      * @param payload the data object or Collection to save
      * @param place IServiceProviderPlace ref for the agent to visit, possibly null
      * @param errorCount state from the transferred MobileAgent or null for GO
      * @param itineraryItems state from the transferred MobileAgent or empty for GO
-     * @return number of items on the queue
+     * @param block true to wait as long as it takes for room on the spool
+     * @return number of items on the queue or {@link #SPOOL_FULL} if it was not spooled
      */
-    protected int enqueue(Method method, Object payload, IServiceProviderPlace place, int errorCount, List<DirectoryEntry> itineraryItems) {
+    protected int enqueue(Method method, Object payload, @Nullable IServiceProviderPlace place, int errorCount,
+            @Nullable List<DirectoryEntry> itineraryItems, boolean block) {
 
         String itemName = PayloadUtil.getName(payload);
-        logger.debug("Enqueue item " + itemName + " for place " + place + ", method=" + method);
+        logger.debug("Enqueue item {} for place {}, method={}", itemName, place, method);
         SpoolItem s = new SpoolItem(method, payload, place, errorCount, itineraryItems);
-        int size = 0;
 
-        synchronized (spool) {
-            spool.addLast(s);
-            enqueCount++;
-            size = spool.size();
-            spool.notifyAll();
+        boolean spooled;
+        try {
+            spooled = spool.offer(s) || spool.offer(s, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (!spooled && block) {
+                spool.put(s);
+                spooled = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            spooled = false;
         }
-
-        // Collect the stats
-        synchronized (moveCountMap) {
-            String serviceName = s.getServiceName();
-            if (moveCountMap.containsKey(serviceName)) {
-                Integer count = moveCountMap.get(serviceName);
-                moveCountMap.put(serviceName, Integer.valueOf(count.intValue() + 1));
+        if (!spooled) {
+            if (block) {
+                logger.error("Interrupted waiting for room on the MoveSpool, dropping {}", itemName);
             } else {
-                moveCountMap.put(serviceName, Integer.valueOf(1));
+                logger.warn("MoveSpool is full, not spooling {}", itemName);
+            }
+            if (rejectedCounter != null) {
+                rejectedCounter.inc();
             }
+            return SPOOL_FULL;
         }
+        enqueCount.increment();
+        int size = spool.size();
+        highWaterMark.accumulateAndGet(size, Math::max);
 
-        logger.debug("Done enqueue of " + itemName + ", size=" + size);
+        // Collect the stats
+        moveCountMap.merge(s.getServiceName(), 1, Integer::sum);
+
+        logger.debug("Done enqueue of {}, size={}", itemName, size);
         return size;
     }
 
+    /**
+     * Report whether there is room on the spool
+     *
+     * @return true if a payload sent now would have to wait
+     */
+    public boolean isFull() {
+        return spool.remainingCapacity() == 0;
+    }
 
     /**
      * Look up the instance in the namespace
@@ -344,9 +494,7 @@ public class MoveSpool implements Runnable {
      * on this node
      */
     public Map<String, Integer> getMoveCountMap() {
-        synchronized (moveCountMap) {
-            return new HashMap<String, Integer>(moveCountMap);
-        }
+        return new HashMap<String, Integer>(moveCountMap);
     }
 
     /**
@@ -357,13 +505,11 @@ public class MoveSpool implements Runnable {
     public String getStatPairs() {
         StringBuilder sb = new StringBuilder();
         sb.append("{");
-        synchronized (moveCountMap) {
-            for (String key : moveCountMap.keySet()) {
-                if (sb.length() > 1) {
-                    sb.append(",");
-                }
-                sb.append(key).append("=").append(moveCountMap.get(key));
+        for (Map.Entry<String, Integer> e : moveCountMap.entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(",");
             }
+            sb.append(e.getKey()).append("=").append(e.getValue());
         }
         sb.append("}");
         return sb.toString();
@@ -375,9 +521,8 @@ public class MoveSpool implements Runnable {
      */
     @Override
     public String toString() {
-        // Spool size is deliberately not synchronized
-        return "MoveSpool current/high " + spool.size() + "/" + highWaterMark + ", en/dequeue " + enqueCount + "/" + dequeCount + ", serviceNames="
-                + getStatPairs();
+        return "MoveSpool current/high " + spool.size() + "/" + highWaterMark.get() + ", en/dequeue " + enqueCount.sum() + "/" + dequeCount.sum()
+                + ", dispatchers=" + dispatchers.size() + ", serviceNames=" + getStatPairs();
     }
 
     /**
@@ -390,6 +535,7 @@ public class MoveSpool implements Runnable {
         final IServiceProviderPlace place;
         final int errorCount;
         final List<DirectoryEntry> itineraryItems;
+        final long enqueueNanos = System.nanoTime();
 
         public SpoolItem(Method method, Object payload, IServiceProviderPlace place, int errorCount, List<DirectoryEntry> itineraryItems) {
             this.method = method;
@@ -399,6 +545,13 @@ public class MoveSpool implements Runnable {
             this.itineraryItems = itineraryItems;
         }
 
+        /**
+         * Get the time the item was made, from System.nanoTime()
+         */
+        public long getEnqueueNanos() {
+            return enqueueNanos;
+        }
+
         /**
          * Get the payload
          */
@@ -460,21 +613,21 @@ public class MoveSpool implements Runnable {
      * @return the dequeCount
      */
     public long getDequeCount() {
-        return dequeCount;
+        return dequeCount.sum();
     }
 
     /**
      * @return the enqueCount
      */
     public long getEnqueCount() {
-        return enqueCount;
+        return enqueCount.sum();
     }
 
     /**
      * @return the highWaterMark
      */
     public int getHighWaterMark() {
-        return highWaterMark;
+        return highWaterMark.get();
     }
 
     public int getCurrentSpoolSize() {
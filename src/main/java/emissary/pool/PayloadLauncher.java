@@ -37,10 +37,12 @@ public class PayloadLauncher {
             }
 
             if (spool != null) {
-                int sz = spool.arrive(payload, place, errorCount, itineraryItems);
-                logger.debug("Payload " + payloadName + " spooled out, " + sz + " on the spool");
-
-                return true;
+                int sz = spool.tryArrive(payload, place, errorCount, itineraryItems);
+                if (sz != MoveSpool.SPOOL_FULL) {
+                    logger.debug("Payload " + payloadName + " spooled out, " + sz + " on the spool");
+                    return true;
+                }
+                logger.debug("Spool is full, launching " + payloadName + " directly");
             }
             // Use the agent pool directly, this may block the caller
             AgentPool pool = null;
@@ -2,6 +2,7 @@ package emissary.server.mvc.adapters;
 
 import emissary.client.EmissaryClient;
 import emissary.client.EmissaryResponse;
+import emissary.client.response.DirectoryDeltaResponseEntity;
 import emissary.config.ConfigUtil;
 import emissary.config.Configurator;
 import emissary.core.EmissaryException;
@@ -54,6 +55,8 @@ public class DirectoryAdapter extends EmissaryClient {
     public static final String FAILED_DIRECTORY_NAME = "dirFailName";
     public static final String DIRECTORY_NAME = "directoryName";
     public static final String ADD_ENTRIES = "dirAddEntries";
+    public static final String DELTA_EPOCH = "deltaEpoch";
+    public static final String DELTA_SEQUENCE = "deltaSequence";
     public static final String DIRECTORY_KEY = "EMISSARY_DIRECTORY_SERVICES::STUDY";
     public static final String FILE_PICKUP_KEY = "INITIAL::INPUT";
     // These two parameters will cause each node to only have copies of its own places.
@@ -233,6 +236,51 @@ public class DirectoryAdapter extends EmissaryClient {
         return zoneTransfer(key, peerKey, "/RegisterPeer.action");
     }
 
+    /**
+     * Request the changes made to a remote directory peer since a point in its journal. Register the caller as a peer of
+     * the destination as part of the request.
+     *
+     * @param key the key of the remote directory to request the changes from
+     * @param peerKey the key of the peer requesting the changes
+     * @param epoch the journal epoch last seen from the remote directory or null if none
+     * @param sequence the sequence number of the last change seen from the remote directory
+     * @return the changes, when not complete a full zone transfer is needed
+     * @throws EmissaryException if remote returns an error
+     */
+    public DirectoryDeltaResponseEntity outboundDirectoryDelta(final String key, final String peerKey, @Nullable final String epoch,
+            final long sequence) throws EmissaryException {
+        final HttpPost method = createHttpPost(KeyManipulator.getServiceHostURL(key), CONTEXT, "/DirectoryDelta.action");
+
+        final List<NameValuePair> nvps = new ArrayList<>();
+        nvps.add(new BasicNameValuePair(TARGET_DIRECTORY, KeyManipulator.getServiceLocation(key)));
+        nvps.add(new BasicNameValuePair(DIRECTORY_NAME, peerKey));
+        if (epoch != null) {
+            nvps.add(new BasicNameValuePair(DELTA_EPOCH, epoch));
+        }
+        nvps.add(new BasicNameValuePair(DELTA_SEQUENCE, Long.toString(sequence)));
+        method.setEntity(new UrlEncodedFormEntity(nvps, Charset.defaultCharset()));
+
+        final EmissaryResponse ws = send(method);
+        if (ws.getStatus() != HttpStatus.SC_OK) {
+            throw new EmissaryException("Unable to get directory delta from " + key + ", isError=" + ws.getStatus() + ", msgBody="
+                    + ws.getContentString());
+        }
+        final DirectoryDeltaResponseEntity delta = ws.getContent(DirectoryDeltaResponseEntity.class);
+        if (delta == null || delta.getEpoch() == null || !delta.getErrors().isEmpty()) {
+            throw new EmissaryException("Unable to read directory delta from " + key);
+        }
+
+        // Same filtering as a zone transfer
+        if (filterDirectoryEntryMap) {
+            delta.getChanges().removeIf(c -> c.isAdd() && !isKeptByFilter(KeyManipulator.getDataID(c.getKey())));
+        }
+        return delta;
+    }
+
+    private static boolean isKeptByFilter(final String dataId) {
+        return DIRECTORY_KEY.equals(dataId) || FILE_PICKUP_KEY.equals(dataId);
+    }
+
     /**
      * Request the XML directory entry markup from a remote directory peer and turn the response XML into a Map of
      * String,DirectoryEntryList for return.
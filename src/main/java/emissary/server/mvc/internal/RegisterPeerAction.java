@@ -1,5 +1,6 @@
 package emissary.server.mvc.internal;
 
+import emissary.client.response.DirectoryDeltaResponseEntity;
 import emissary.core.Namespace;
 import emissary.core.NamespaceException;
 import emissary.directory.DirectoryPlace;
@@ -17,6 +18,7 @@ import org.slf4j.MDC;
 
 import java.util.HashSet;
 import java.util.Set;
+import javax.annotation.Nullable;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.POST;
@@ -25,6 +27,8 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import static emissary.server.mvc.adapters.DirectoryAdapter.DELTA_EPOCH;
+import static emissary.server.mvc.adapters.DirectoryAdapter.DELTA_SEQUENCE;
 import static emissary.server.mvc.adapters.DirectoryAdapter.DIRECTORY_NAME;
 import static emissary.server.mvc.adapters.DirectoryAdapter.TARGET_DIRECTORY;
 
@@ -56,7 +60,60 @@ public class RegisterPeerAction {
         return processRegisterPeer(cleanDirectoryName, cleanTargetDirectory);
     }
 
+    /**
+     * Register a peer with the local directory and return the changes made to the directory since the point the peer last
+     * saw, or an incomplete answer if the peer has to do a full zone transfer
+     */
+    @POST
+    @Path("/DirectoryDelta.action")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response directoryDeltaPost(@FormParam(DIRECTORY_NAME) String directoryName, @FormParam(TARGET_DIRECTORY) String targetDirectory,
+            @FormParam(DELTA_EPOCH) String epoch, @FormParam(DELTA_SEQUENCE) String sequence) {
+        String cleanDirectoryName = RequestUtil.sanitizeParameter(directoryName);
+        String cleanTargetDirectory = RequestUtil.sanitizeParameter(targetDirectory);
+        if (StringUtils.isBlank(cleanDirectoryName) || StringUtils.isBlank(cleanTargetDirectory)) {
+            return Response.serverError().entity(HtmlEscaper.escapeHtml(
+                    "Bad Params: " + DIRECTORY_NAME + " - " + cleanDirectoryName + ", " + TARGET_DIRECTORY + " - " + cleanTargetDirectory)).build();
+        }
+        final long since;
+        try {
+            since = StringUtils.isBlank(sequence) ? 0L : Long.parseLong(sequence.trim());
+        } catch (NumberFormatException e) {
+            return Response.serverError().entity(HtmlEscaper.escapeHtml("Bad Params: " + DELTA_SEQUENCE + " - " + sequence)).build();
+        }
+
+        final Response failure = registerPeer(cleanDirectoryName, cleanTargetDirectory);
+        if (failure != null) {
+            return failure;
+        }
+        try {
+            final DirectoryPlace d = (DirectoryPlace) Namespace.lookup(cleanTargetDirectory);
+            final DirectoryDeltaResponseEntity delta = d.getChangesSince(RequestUtil.sanitizeParameter(epoch), since);
+            logger.debug("Sending {} changes to peer {}, complete={}", delta.getChanges().size(), cleanDirectoryName, delta.isComplete());
+            return Response.ok().entity(delta).build();
+        } catch (NamespaceException e) {
+            logger.warn("Problem performing namespace lookup for {}", cleanTargetDirectory);
+            return Response.serverError().entity("Delta failed for peer: " + HtmlEscaper.escapeHtml(cleanDirectoryName)).build();
+        }
+    }
+
     private Response processRegisterPeer(String peerKey, String dirName) {
+        final Response failure = registerPeer(peerKey, dirName);
+        if (failure != null) {
+            return failure;
+        }
+        final IRemoteDirectory dir = new IRemoteDirectory.Lookup().getLocalDirectory(dirName);
+        return Response.ok().entity(DirectoryXmlContainer.toXmlString(dir)).build();
+    }
+
+    /**
+     * Register the peer with the local directory
+     *
+     * @return null if registered, otherwise the error response
+     */
+    @Nullable
+    private Response registerPeer(String peerKey, String dirName) {
         final IRemoteDirectory dir = new IRemoteDirectory.Lookup().getLocalDirectory(dirName);
         if (dir == null) {
             // If we get here, there was a problem looking up the IRemoteDirectory
@@ -89,7 +146,6 @@ public class RegisterPeerAction {
         }
 
         logger.info("Registered peer {}", peerKey);
-
-        return Response.ok().entity(DirectoryXmlContainer.toXmlString(dir)).build();
+        return null;
     }
 }
@@ -0,0 +1,193 @@
+package emissary.util.search;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link IMultiKeywordScanner} on a shared {@link KeywordAutomaton}. Unlike {@link MultiKeywordScanner} nothing is
+ * locked while scanning. The automaton can be built once and handed to a scanner per thread, each of which only holds
+ * where its own {@link #findNext()} got to.
+ *
+ * <p>
+ * Hits are keywords lying wholly between the start and stop offsets, reported in the order they end and, for keywords
+ * ending at the same offset, shortest first. {@link #findNext()} carries on from just after the last keyword it found,
+ * so overlapping keywords are all found in turn.
+ *
+ * <p>
+ * Keywords loaded through {@link #loadKeywords(String[])} can be found regardless of ASCII case and in several
+ * charsets, see {@link KeywordAutomaton#build(String[], boolean, Charset...)}.
+ */
+public class AhoCorasickScanner implements IMultiKeywordScanner {
+
+    @Nullable
+    private KeywordAutomaton automaton;
+
+    @Nullable
+    private KeywordAutomaton.Cursor cursor;
+
+    @Nullable
+    private byte[] data;
+
+    private int stop;
+
+    private final boolean caseSensitive;
+
+    private final Charset[] charsets;
+
+    /**
+     * Create a case sensitive scanner for UTF-8 keywords, see {@link #loadKeywords(String[])}
+     */
+    public AhoCorasickScanner() {
+        this(true, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a scanner with no keywords, see {@link #loadKeywords(String[])}
+     *
+     * @param caseSensitive false to ignore the case of ASCII letters in keywords loaded later
+     * @param charsets the encodings of keywords loaded later to find, UTF-8 if none are given
+     */
+    public AhoCorasickScanner(final boolean caseSensitive, final Charset... charsets) {
+        this.caseSensitive = caseSensitive;
+        this.charsets = charsets.clone();
+    }
+
+    /**
+     * Create a scanner on an automaton that may be shared with other scanners
+     *
+     * @param automaton the keywords to look for
+     */
+    public AhoCorasickScanner(final KeywordAutomaton automaton) {
+        this(automaton.isCaseSensitive());
+        setAutomaton(automaton);
+    }
+
+    /**
+     * Build an automaton for the keywords, with the case sensitivity and charsets this scanner was created with, and use it
+     * from now on
+     */
+    @Override
+    public void loadKeywords(final String[] keywords) {
+        setAutomaton(KeywordAutomaton.build(keywords, this.caseSensitive, this.charsets));
+    }
+
+    /**
+     * Use an automaton from now on, forgetting where {@link #findNext()} got to
+     *
+     * @param automaton the keywords to look for
+     */
+    public void setAutomaton(final KeywordAutomaton automaton) {
+        this.automaton = automaton;
+        this.cursor = automaton.newCursor();
+        this.data = null;
+    }
+
+    /**
+     * Get the automaton being used
+     */
+    @Nullable
+    public KeywordAutomaton getAutomaton() {
+        return this.automaton;
+    }
+
+    @Override
+    public HitList findAll(@Nullable final byte[] dataArg) {
+        if (dataArg != null) {
+            return findAll(dataArg, 0, dataArg.length);
+        }
+        return new HitList();
+    }
+
+    @Override
+    public HitList findAll(@Nullable final byte[] dataArg, final int start) {
+        if (dataArg != null) {
+            return findAll(dataArg, start, dataArg.length);
+        }
+        return new HitList();
+    }
+
+    @Override
+    public HitList findAll(@Nullable final byte[] dataArg, final int start, final int stopArg) {
+        final HitList hits = new HitList();
+        if (dataArg == null || this.automaton == null) {
+            return hits;
+        }
+        this.automaton.scan(dataArg, Math.max(0, start), Math.min(stopArg, dataArg.length), (offset, id) -> hits.add(new Hit((int) offset, id)));
+        return hits;
+    }
+
+    /**
+     * Find every keyword wholly inside a range of bytes without making a {@link HitList}
+     *
+     * @param dataArg the bytes to scan
+     * @param start first offset to scan
+     * @param stopArg offset to stop before
+     * @param sink told about each hit, offsets are into the data
+     * @return the number of hits
+     */
+    public int findAll(@Nullable final byte[] dataArg, final int start, final int stopArg, final KeywordAutomaton.HitSink sink) {
+        if (dataArg == null || this.automaton == null) {
+            return 0;
+        }
+        return this.automaton.scan(dataArg, Math.max(0, start), Math.min(stopArg, dataArg.length), sink);
+    }
+
+    /**
+     * Carry on from just after the last keyword found
+     */
+    @Override
+    public HitList findNext() {
+        if (this.data != null) {
+            return next(new HitList());
+        }
+        return new HitList();
+    }
+
+    /**
+     * Carry on from just after the last keyword found. For new data the scan starts over at that offset.
+     */
+    @Override
+    public HitList findNext(@Nullable final byte[] dataArg) {
+        if (dataArg == null || this.cursor == null) {
+            return new HitList();
+        }
+        if (dataArg != this.data) {
+            return findNext(dataArg, (int) this.cursor.getPosition(), dataArg.length);
+        }
+        this.stop = dataArg.length;
+        return next(new HitList());
+    }
+
+    @Override
+    public HitList findNext(@Nullable final byte[] dataArg, final int start) {
+        if (dataArg != null) {
+            return findNext(dataArg, start, dataArg.length);
+        }
+        return new HitList();
+    }
+
+    @Override
+    public HitList findNext(@Nullable final byte[] dataArg, final int start, final int stopArg) {
+        if (dataArg == null || this.cursor == null) {
+            return new HitList();
+        }
+        this.data = dataArg;
+        this.stop = Math.min(stopArg, dataArg.length);
+        this.cursor.reset(Math.max(0, start));
+        return next(new HitList());
+    }
+
+    private HitList next(final HitList hits) {
+        final KeywordAutomaton.Cursor c = this.cursor;
+        final byte[] d = this.data;
+        if (c == null || d == null) {
+            return hits;
+        }
+        final int from = (int) c.getPosition();
+        if (from < this.stop) {
+            c.scanToNext(d, from, this.stop, (offset, id) -> hits.add(new Hit((int) offset, id)));
+        }
+        return hits;
+    }
+}
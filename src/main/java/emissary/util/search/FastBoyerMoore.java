@@ -4,18 +4,38 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-
+import javax.annotation.Nullable;
+
+/**
+ * Finds many keywords at once with Boyer-Moore-Horspool skips, checking each place a keyword could end against a tree
+ * of the keywords written backwards. Only the low seven bits of each data byte are looked at.
+ * <p>
+ * When the shortest keyword is short the skips are short too. If the keywords then end in no more than
+ * {@link #WORD_SCAN_END_BYTES} different bytes, {@link #scan(int, int, Collection)} goes from one byte that could end a
+ * keyword to the next eight bytes at a time instead, see {@link WordScan}. It finds the same hits.
+ */
 public class FastBoyerMoore {
     private static Logger logger = LoggerFactory.getLogger(FastBoyerMoore.class);
+
+    /** Most different keyword end bytes the word at a time scan is used for */
+    public static final int WORD_SCAN_END_BYTES = 4;
+
+    /** The word at a time scan is used when the shortest keyword is shorter than this */
+    public static final int WORD_SCAN_KEYWORD_LENGTH = 5;
+
     public byte[][] keywords;
     int minKeywordLength;
     int[] lookup = new int[259];
     transient BackwardsTreeScanner scanner;
     byte[] data = null;
     BackwardsTreeScanner.State root;
+    /** Bytes that can end a keyword, null when the word at a time scan is not used */
+    byte[] endBytes;
 
     // copy constructor
 
@@ -27,6 +47,7 @@ public class FastBoyerMoore {
         this.minKeywordLength = original.minKeywordLength;
         this.lookup = original.lookup;
         this.root = original.root;
+        this.endBytes = original.endBytes;
         this.scanner = new BackwardsTreeScanner(original.scanner);
     }
 
@@ -51,6 +72,7 @@ public class FastBoyerMoore {
         this.data = null;
         this.scanner = new BackwardsTreeScanner(keywordStrings);
         this.root = this.scanner.getRoot();
+        this.endBytes = findEndBytes();
     }
 
     public FastBoyerMoore(final String[][] keywordStrings) throws Exception {
@@ -76,6 +98,30 @@ public class FastBoyerMoore {
         this.data = null;
         this.scanner = new BackwardsTreeScanner(keywordStrings);
         this.root = this.scanner.getRoot();
+        this.endBytes = findEndBytes();
+    }
+
+    /**
+     * Get the bytes a keyword can end with, as seen through the low seven bits, if the word at a time scan pays
+     *
+     * @return the bytes or null
+     */
+    @Nullable
+    private byte[] findEndBytes() {
+        if (this.minKeywordLength >= WORD_SCAN_KEYWORD_LENGTH) {
+            return null;
+        }
+        final byte[] ends = new byte[WORD_SCAN_END_BYTES];
+        int count = 0;
+        for (int ch = 0; ch < 0x80; ch++) {
+            if (this.root.nextStates[ch] != null) {
+                if (count == ends.length) {
+                    return null;
+                }
+                ends[count++] = (byte) ch;
+            }
+        }
+        return count == 0 ? null : Arrays.copyOf(ends, count);
     }
 
     public void setData(final byte[] dataArg) {
@@ -91,11 +137,21 @@ public class FastBoyerMoore {
 
     public void scan(final int start, final int end, final Collection<int[]> result) {
         final int actualEnd = Math.min(end, this.data.length);
+        final byte[] ends = this.endBytes;
+        final ByteBuffer words = ends == null ? null : WordScan.wrap(this.data);
         int pos = start;
         while (pos < actualEnd) {
             final int ch = this.data[pos] & 0x7f;
             final int jump = this.lookup[ch];
             BackwardsTreeScanner.State state = this.root.nextStates[ch];
+            if (state == null && words != null) {
+                // no keyword ends here, go straight to the next byte that could end one
+                pos = WordScan.indexOfAnyLow7(words, this.data, pos + 1, actualEnd, ends);
+                if (pos < 0) {
+                    break;
+                }
+                continue;
+            }
             int curPos = pos - 1;
             while ((state != null) && (curPos >= 0)) {
                 if (state.matches != null) {
@@ -112,7 +168,7 @@ public class FastBoyerMoore {
                 state = state.nextStates[ch2];
                 curPos--;
             }
-            if ((state != null) && (curPos == -1)) {
+            if ((state != null) && (state.matches != null) && (curPos == -1)) {
                 for (int i = 0; i < state.matches.length; i++) {
                     final int id = state.matches[i];
                     final int[] tmp = new int[3];
@@ -0,0 +1,798 @@
+package emissary.util.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An Aho-Corasick automaton over a set of byte keywords. It is built once and never changes, so one instance can be
+ * shared by any number of threads, each scanning with its own {@link Cursor} or through an {@link AhoCorasickScanner}.
+ *
+ * <p>
+ * The trie is held in a few flat arrays rather than a table of 256 transitions per state. The transitions out of each
+ * state are stored together, sorted by byte. Only the states nearest the root, which most bytes go through, have a full
+ * table, with the failure transitions already followed, up to {@link #DENSE_STATES} of them. Each state also has the
+ * ids of every keyword that ends there, its own and those of its suffixes, shortest first.
+ *
+ * <p>
+ * Hits are handed to a {@link HitSink} as the keyword start offset and keyword id, where the id is the index of the
+ * keyword in the list it was built from. {@link HitArray} collects them into primitive arrays that can be reused.
+ *
+ * <p>
+ * An automaton can also be built to ignore ASCII case and to find keywords in several charsets at once, for example
+ * UTF-8, UTF-16LE and UTF-16BE. Every encoding of a keyword is added to the trie under the keyword's id, and when case
+ * is ignored the keywords are lower cased and each transition on a lower case letter is also made on its upper case
+ * letter. Either way the data is scanned once, as it is, with no copy. Case is folded byte by byte, so only ASCII
+ * letters are folded, and in a UTF-16 keyword a non-ASCII character whose byte happens to be a letter may match the
+ * character that differs from it only in that byte's case.
+ */
+public final class KeywordAutomaton {
+
+    /** Size of the pieces read when scanning a channel */
+    public static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
+
+    /** Most states given a full table, nearest the root first */
+    static final int DENSE_STATES = 1024;
+
+    private static final int ROOT = 0;
+
+    private static final int CASE_DIFFERENCE = 'a' - 'A';
+
+    private final int keywordCount;
+
+    private final boolean caseSensitive;
+
+    /** Length in bytes of each keyword, in the first charset it was encoded with */
+    private final int[] keywordLength;
+
+    /** The keyword each encoded pattern came from */
+    private final int[] patternKeyword;
+
+    /** Length in bytes of each encoded pattern */
+    private final int[] patternLength;
+
+
+    /** Where the transitions of each state start in {@link #edgeLabel} and {@link #edgeTarget}, one more than states */
+    private final int[] edgeOffset;
+
+    private final byte[] edgeLabel;
+
+    private final int[] edgeTarget;
+
+    /** State of the longest proper suffix of each state that is also in the trie */
+    private final int[] fail;
+
+    /** Where the full table of each state starts in {@link #dense}, -1 for states without one */
+    private final int[] denseOffset;
+
+    /** Next state for each byte from the states with full tables, 256 entries per state */
+    private final int[] dense;
+
+    /** Where the patterns ending at each state start in {@link #outIds}, one more than states */
+    private final int[] outOffset;
+
+    private final int[] outIds;
+
+    private KeywordAutomaton(final Builder b) {
+        this.keywordCount = b.keywordCount;
+        this.caseSensitive = b.caseSensitive;
+        this.keywordLength = Arrays.copyOf(b.keywordLength, b.keywordCount);
+        this.patternKeyword = Arrays.copyOf(b.patternKeyword.data, b.patternKeyword.size);
+        this.patternLength = Arrays.copyOf(b.patternLength.data, b.patternLength.size);
+        final int states = b.states;
+
+        // gather the transitions of each state together, sorted by byte, adding upper case copies of those on lower case
+        // letters when case is ignored. The keywords were lower cased so the copies never clash with a transition.
+        this.edgeOffset = new int[states + 1];
+        for (int s = 1; s < states; s++) {
+            this.edgeOffset[b.parent[s] + 1] += this.caseSensitive || !isLower(b.label[s]) ? 1 : 2;
+        }
+        for (int s = 0; s < states; s++) {
+            this.edgeOffset[s + 1] += this.edgeOffset[s];
+        }
+        this.edgeLabel = new byte[this.edgeOffset[states]];
+        this.edgeTarget = new int[this.edgeOffset[states]];
+        final int[] fill = Arrays.copyOf(this.edgeOffset, states);
+        for (int s = 1; s < states; s++) {
+            final int p = b.parent[s];
+            addEdge(p, fill[p]++, b.label[s], s);
+            if (!this.caseSensitive && isLower(b.label[s])) {
+                addEdge(p, fill[p]++, (byte) (b.label[s] - CASE_DIFFERENCE), s);
+            }
+        }
+
+        // breadth first so each state's suffix is finished before the state
+        this.fail = new int[states];
+        final int[] order = new int[states];
+        int head = 0;
+        int tail = 0;
+        order[tail++] = ROOT;
+        final int[] outStart = new int[states];
+        final int[] outCount = new int[states];
+        IntList outs = new IntList(Math.max(16, b.keywordCount));
+        while (head < tail) {
+            final int s = order[head++];
+            if (s != ROOT) {
+                // suffix keywords first, then the ones ending exactly here
+                final int f = this.fail[s];
+                outStart[s] = outs.size;
+                for (int i = 0; i < outCount[f]; i++) {
+                    outs.add(outs.data[outStart[f] + i]);
+                }
+                for (int p = b.firstOwn[s]; p != -1; p = b.nextOwn.data[p]) {
+                    outs.add(p);
+                }
+                outCount[s] = outs.size - outStart[s];
+            }
+            for (int i = this.edgeOffset[s]; i < this.edgeOffset[s + 1]; i++) {
+                final int t = this.edgeTarget[i];
+                final int c = this.edgeLabel[i] & 0xff;
+                if (!this.caseSensitive && c >= 'A' && c <= 'Z') {
+                    // an upper case copy, the state is reached on the lower case transition
+                    continue;
+                }
+                if (s == ROOT) {
+                    this.fail[t] = ROOT;
+                } else {
+                    int f = this.fail[s];
+                    int next = child(f, c);
+                    while (next < 0 && f != ROOT) {
+                        f = this.fail[f];
+                        next = child(f, c);
+                    }
+                    this.fail[t] = next < 0 ? ROOT : next;
+                }
+                order[tail++] = t;
+            }
+        }
+
+        this.outOffset = new int[states + 1];
+        this.outIds = new int[outs.size];
+        int at = 0;
+        for (int s = 0; s < states; s++) {
+            this.outOffset[s] = at;
+            System.arraycopy(outs.data, outStart[s], this.outIds, at, outCount[s]);
+            at += outCount[s];
+        }
+        this.outOffset[states] = at;
+
+        // full tables in breadth first order, so a state's suffix is already done when its failures are followed
+        this.denseOffset = new int[states];
+        final int denseStates = Math.min(states, DENSE_STATES);
+        this.dense = new int[denseStates * 256];
+        Arrays.fill(this.denseOffset, -1);
+        int row = 0;
+        for (int i = 0; i < denseStates; i++) {
+            final int s = order[i];
+            for (int c = 0; c < 256; c++) {
+                final int t = child(s, c);
+                this.dense[row + c] = t >= 0 ? t : s == ROOT ? ROOT : next(this.fail[s], c);
+            }
+            this.denseOffset[s] = row;
+            row += 256;
+        }
+    }
+
+    /**
+     * Insertion sort one transition in among those of its state, there are at most 256
+     */
+    private void addEdge(final int p, final int at, final byte label, final int target) {
+        int i = at;
+        while (i > this.edgeOffset[p] && (this.edgeLabel[i - 1] & 0xff) > (label & 0xff)) {
+            this.edgeLabel[i] = this.edgeLabel[i - 1];
+            this.edgeTarget[i] = this.edgeTarget[i - 1];
+            i--;
+        }
+        this.edgeLabel[i] = label;
+        this.edgeTarget[i] = target;
+    }
+
+    private static boolean isLower(final byte c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    /**
+     * Lower case the ASCII letters of some bytes in place
+     *
+     * @param bytes the bytes to fold
+     * @return the same bytes
+     */
+    static byte[] toLowerCase(final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] >= 'A' && bytes[i] <= 'Z') {
+                bytes[i] += CASE_DIFFERENCE;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Build an automaton for keywords given as strings, encoded as UTF-8
+     *
+     * @param keywords the keywords, a keyword's id is its index
+     * @return the automaton
+     */
+    public static KeywordAutomaton build(final String[] keywords) {
+        return build(keywords, true, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Build an automaton for keywords given as strings, finding each of them in every charset given
+     *
+     * @param keywords the keywords, a keyword's id is its index
+     * @param caseSensitive false to ignore the case of ASCII letters
+     * @param charsets the encodings to find, UTF-8 if none are given
+     * @return the automaton
+     */
+    public static KeywordAutomaton build(final String[] keywords, final boolean caseSensitive, final Charset... charsets) {
+        final Charset[] encodings = charsets.length == 0 ? new Charset[] {StandardCharsets.UTF_8} : charsets;
+        final Builder b = new Builder(keywords.length, caseSensitive);
+        for (int id = 0; id < keywords.length; id++) {
+            for (final Charset charset : encodings) {
+                b.add(keywords[id].getBytes(charset), id);
+            }
+        }
+        return new KeywordAutomaton(b);
+    }
+
+    /**
+     * Build an automaton for keywords given as bytes
+     *
+     * @param keywords the keywords, a keyword's id is its index, empty keywords never match
+     * @return the automaton
+     */
+    public static KeywordAutomaton build(final byte[][] keywords) {
+        return build(keywords, true);
+    }
+
+    /**
+     * Build an automaton for keywords given as bytes
+     *
+     * @param keywords the keywords, a keyword's id is its index, empty keywords never match
+     * @param caseSensitive false to ignore the case of ASCII letters
+     * @return the automaton
+     */
+    public static KeywordAutomaton build(final byte[][] keywords, final boolean caseSensitive) {
+        final Builder b = new Builder(keywords.length, caseSensitive);
+        for (int id = 0; id < keywords.length; id++) {
+            b.add(keywords[id], id);
+        }
+        return new KeywordAutomaton(b);
+    }
+
+    /**
+     * Get the number of keywords
+     */
+    public int getKeywordCount() {
+        return this.keywordCount;
+    }
+
+    /**
+     * Tell whether the case of ASCII letters matters
+     */
+    public boolean isCaseSensitive() {
+        return this.caseSensitive;
+    }
+
+    /**
+     * Get the number of keyword encodings in the trie
+     */
+    public int getPatternCount() {
+        return this.patternLength.length;
+    }
+
+    /**
+     * Get the number of states
+     */
+    public int getStateCount() {
+        return this.fail.length;
+    }
+
+    /**
+     * Get the length in bytes of a keyword, in the first charset it was encoded with
+     *
+     * @param id the keyword id
+     * @return the length
+     */
+    public int getKeywordLength(final int id) {
+        return this.keywordLength[id];
+    }
+
+    /**
+     * Start a new scan
+     *
+     * @return a cursor at offset 0
+     */
+    public Cursor newCursor() {
+        return new Cursor(this);
+    }
+
+    /**
+     * Find every keyword wholly inside a range of bytes
+     *
+     * @param data the bytes to scan
+     * @param start first offset to scan
+     * @param stop offset to stop before
+     * @param sink told about each hit, offsets are into data
+     * @return the number of hits
+     */
+    public int scan(final byte[] data, final int start, final int stop, final HitSink sink) {
+        int hits = 0;
+        int s = ROOT;
+        for (int i = start; i < stop; i++) {
+            s = next(s, data[i] & 0xff);
+            final int from = this.outOffset[s];
+            final int to = this.outOffset[s + 1];
+            for (int o = from; o < to; o++) {
+                final int p = this.outIds[o];
+                sink.hit(i + 1L - this.patternLength[p], this.patternKeyword[p]);
+            }
+            hits += to - from;
+        }
+        return hits;
+    }
+
+    /**
+     * Find every keyword in the rest of a channel, reading it in pieces
+     *
+     * @param channel the channel to read
+     * @param sink told about each hit, offsets count from where the channel was when this was called
+     * @return the number of hits
+     * @throws IOException if the channel cannot be read
+     */
+    public long scan(final ReadableByteChannel channel, final HitSink sink) throws IOException {
+        return newCursor().scan(channel, sink);
+    }
+
+    int next(int s, final int c) {
+        while (true) {
+            final int row = this.denseOffset[s];
+            if (row >= 0) {
+                return this.dense[row + c];
+            }
+            final int hi = this.edgeOffset[s + 1];
+            for (int i = this.edgeOffset[s]; i < hi; i++) {
+                if ((this.edgeLabel[i] & 0xff) == c) {
+                    return this.edgeTarget[i];
+                }
+            }
+            s = this.fail[s];
+        }
+    }
+
+    /**
+     * Transition out of a state on a byte without following failures, only used while building
+     */
+    private int child(final int s, final int c) {
+        int lo = this.edgeOffset[s];
+        int hi = this.edgeOffset[s + 1] - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int label = this.edgeLabel[mid] & 0xff;
+            if (label < c) {
+                lo = mid + 1;
+            } else if (label > c) {
+                hi = mid - 1;
+            } else {
+                return this.edgeTarget[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Told about each keyword found
+     */
+    @FunctionalInterface
+    public interface HitSink {
+        /**
+         * A keyword was found
+         *
+         * @param offset where the keyword starts
+         * @param id the keyword id
+         */
+        void hit(long offset, int id);
+    }
+
+    /**
+     * The position of one scan through data that may come in pieces. Hits that span the end of one piece and the start of
+     * the next are found. A cursor is used by one thread at a time.
+     */
+    public static final class Cursor {
+        private final KeywordAutomaton automaton;
+        private int state = ROOT;
+        private long position;
+
+        Cursor(final KeywordAutomaton automaton) {
+            this.automaton = automaton;
+        }
+
+        /**
+         * Get the offset of the next byte to scan
+         */
+        public long getPosition() {
+            return this.position;
+        }
+
+        /**
+         * Go back to offset 0 with nothing partly matched
+         */
+        public void reset() {
+            reset(0L);
+        }
+
+        /**
+         * Start again at an offset with nothing partly matched
+         *
+         * @param offset the offset given to the next byte scanned
+         */
+        public void reset(final long offset) {
+            this.state = ROOT;
+            this.position = offset;
+        }
+
+        /**
+         * Scan the next piece of data
+         *
+         * @param data holds the piece
+         * @param start where the piece starts in data
+         * @param stop where the piece ends in data
+         * @param sink told about each hit, offsets count from the start of the scan
+         * @return the number of hits
+         */
+        public int scan(final byte[] data, final int start, final int stop, final HitSink sink) {
+            final KeywordAutomaton a = this.automaton;
+            final long base = this.position - start;
+            int hits = 0;
+            int s = this.state;
+            for (int i = start; i < stop; i++) {
+                s = a.next(s, data[i] & 0xff);
+                final int from = a.outOffset[s];
+                final int to = a.outOffset[s + 1];
+                for (int o = from; o < to; o++) {
+                    final int p = a.outIds[o];
+                    sink.hit(base + i + 1L - a.patternLength[p], a.patternKeyword[p]);
+                }
+                hits += to - from;
+            }
+            this.state = s;
+            this.position = base + stop;
+            return hits;
+        }
+
+        /**
+         * Scan up to the first byte that ends a keyword, stopping after it
+         *
+         * @param data holds the piece
+         * @param start where the piece starts in data
+         * @param stop where the piece ends in data
+         * @param sink told about each keyword ending at that byte
+         * @return the number of hits, 0 if the piece had none
+         */
+        public int scanToNext(final byte[] data, final int start, final int stop, final HitSink sink) {
+            final KeywordAutomaton a = this.automaton;
+            final long base = this.position - start;
+            int s = this.state;
+            for (int i = start; i < stop; i++) {
+                s = a.next(s, data[i] & 0xff);
+                final int from = a.outOffset[s];
+                final int to = a.outOffset[s + 1];
+                if (to > from) {
+                    for (int o = from; o < to; o++) {
+                        final int p = a.outIds[o];
+                        sink.hit(base + i + 1L - a.patternLength[p], a.patternKeyword[p]);
+                    }
+                    this.state = s;
+                    this.position = base + i + 1;
+                    return to - from;
+                }
+            }
+            this.state = s;
+            this.position = base + stop;
+            return 0;
+        }
+
+        /**
+         * Scan the remaining bytes of a buffer, leaving its position at its limit
+         *
+         * @param buffer the piece
+         * @param sink told about each hit, offsets count from the start of the scan
+         * @return the number of hits
+         */
+        public int scan(final ByteBuffer buffer, final HitSink sink) {
+            if (buffer.hasArray()) {
+                final int start = buffer.arrayOffset() + buffer.position();
+                final int hits = scan(buffer.array(), start, start + buffer.remaining(), sink);
+                buffer.position(buffer.limit());
+                return hits;
+            }
+            final KeywordAutomaton a = this.automaton;
+            int hits = 0;
+            int s = this.state;
+            long pos = this.position;
+            while (buffer.hasRemaining()) {
+                s = a.next(s, buffer.get() & 0xff);
+                pos++;
+                final int from = a.outOffset[s];
+                final int to = a.outOffset[s + 1];
+                for (int o = from; o < to; o++) {
+                    final int p = a.outIds[o];
+                    sink.hit(pos - a.patternLength[p], a.patternKeyword[p]);
+                }
+                hits += to - from;
+            }
+            this.state = s;
+            this.position = pos;
+            return hits;
+        }
+
+        /**
+         * Scan the rest of a channel, reading it in pieces of {@link #CHANNEL_BUFFER_SIZE}
+         *
+         * @param channel the channel to read
+         * @param sink told about each hit, offsets count from the start of the scan
+         * @return the number of hits
+         * @throws IOException if the channel cannot be read
+         */
+        public long scan(final ReadableByteChannel channel, final HitSink sink) throws IOException {
+            final byte[] b = new byte[CHANNEL_BUFFER_SIZE];
+            final ByteBuffer buffer = ByteBuffer.wrap(b);
+            long hits = 0;
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                if (read > 0) {
+                    hits += scan(b, 0, buffer.position(), sink);
+                }
+                buffer.clear();
+            }
+            return hits;
+        }
+    }
+
+    /**
+     * Collects hits into primitive arrays that grow as needed and can be cleared and reused
+     */
+    public static final class HitArray implements HitSink {
+        private long[] offsets;
+        private int[] ids;
+        private int size;
+
+        /**
+         * Create an empty collection
+         */
+        public HitArray() {
+            this(16);
+        }
+
+        /**
+         * Create an empty collection with room for some hits
+         *
+         * @param capacity number of hits held before growing
+         */
+        public HitArray(final int capacity) {
+            this.offsets = new long[Math.max(1, capacity)];
+            this.ids = new int[Math.max(1, capacity)];
+        }
+
+        @Override
+        public void hit(final long offset, final int id) {
+            if (this.size == this.ids.length) {
+                this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            }
+            this.offsets[this.size] = offset;
+            this.ids[this.size] = id;
+            this.size++;
+        }
+
+        /**
+         * Get the number of hits held
+         */
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * Get where a hit starts
+         *
+         * @param i index of the hit
+         * @return the offset
+         */
+        public long getOffset(final int i) {
+            if (i >= this.size) {
+                throw new IndexOutOfBoundsException(i + " >= " + this.size);
+            }
+            return this.offsets[i];
+        }
+
+        /**
+         * Get the keyword of a hit
+         *
+         * @param i index of the hit
+         * @return the keyword id
+         */
+        public int getId(final int i) {
+            if (i >= this.size) {
+                throw new IndexOutOfBoundsException(i + " >= " + this.size);
+            }
+            return this.ids[i];
+        }
+
+        /**
+         * Forget the hits held, keeping the room for them
+         */
+        public void clear() {
+            this.size = 0;
+        }
+    }
+
+    /**
+     * The trie as it is built, one entry per state in the order states are made
+     */
+    private static final class Builder {
+        int states = 1;
+        int[] parent = new int[64];
+        byte[] label = new byte[64];
+        /** First pattern ending at each state, linked on through nextOwn, -1 for none */
+        int[] firstOwn = new int[64];
+        final IntList nextOwn;
+        int[] lastOwn = new int[64];
+        final int[] keywordLength;
+        final int keywordCount;
+        final boolean caseSensitive;
+        final IntList patternKeyword;
+        final IntList patternLength;
+        final EdgeMap edges = new EdgeMap();
+
+        Builder(final int keywords, final boolean caseSensitive) {
+            this.keywordCount = keywords;
+            this.caseSensitive = caseSensitive;
+            this.keywordLength = new int[Math.max(1, keywords)];
+            Arrays.fill(this.keywordLength, -1);
+            this.nextOwn = new IntList(Math.max(16, keywords));
+            this.patternKeyword = new IntList(Math.max(16, keywords));
+            this.patternLength = new IntList(Math.max(16, keywords));
+            Arrays.fill(this.firstOwn, -1);
+        }
+
+        /**
+         * Add one encoding of a keyword, skipping it if the keyword already has the same bytes
+         */
+        void add(final byte[] pattern, final int id) {
+            if (this.keywordLength[id] < 0) {
+                this.keywordLength[id] = pattern.length;
+            }
+            if (pattern.length == 0) {
+                return;
+            }
+            final byte[] bytes = this.caseSensitive ? pattern : toLowerCase(pattern.clone());
+            int s = ROOT;
+            for (final byte c : bytes) {
+                int t = this.edges.get(s, c);
+                if (t < 0) {
+                    t = newState(s, c);
+                    this.edges.put(s, c, t);
+                }
+                s = t;
+            }
+            for (int p = this.firstOwn[s]; p != -1; p = this.nextOwn.data[p]) {
+                if (this.patternKeyword.data[p] == id) {
+                    return;
+                }
+            }
+            final int p = this.patternKeyword.size;
+            this.patternKeyword.add(id);
+            this.patternLength.add(bytes.length);
+            this.nextOwn.add(-1);
+            if (this.firstOwn[s] == -1) {
+                this.firstOwn[s] = p;
+            } else {
+                this.nextOwn.data[this.lastOwn[s]] = p;
+            }
+            this.lastOwn[s] = p;
+        }
+
+        private int newState(final int p, final byte c) {
+            if (this.states == this.parent.length) {
+                final int n = this.states * 2;
+                this.parent = Arrays.copyOf(this.parent, n);
+                this.label = Arrays.copyOf(this.label, n);
+                this.lastOwn = Arrays.copyOf(this.lastOwn, n);
+                this.firstOwn = Arrays.copyOf(this.firstOwn, n);
+                Arrays.fill(this.firstOwn, this.states, n, -1);
+            }
+            final int s = this.states++;
+            this.parent[s] = p;
+            this.label[s] = c;
+            return s;
+        }
+    }
+
+    /**
+     * Open addressing map from a state and byte to the next state, only used while building
+     */
+    private static final class EdgeMap {
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private int size;
+
+        EdgeMap() {
+            Arrays.fill(this.keys, -1L);
+        }
+
+        private static long key(final int s, final byte c) {
+            return ((long) s << 8) | (c & 0xff);
+        }
+
+        private static int slot(final long key, final int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & mask;
+        }
+
+        int get(final int s, final byte c) {
+            final long k = key(s, c);
+            final int mask = this.keys.length - 1;
+            for (int i = slot(k, mask);; i = (i + 1) & mask) {
+                if (this.keys[i] == k) {
+                    return this.values[i];
+                }
+                if (this.keys[i] == -1L) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(final int s, final byte c, final int t) {
+            if ((this.size + 1) * 2 > this.keys.length) {
+                grow();
+            }
+            insert(key(s, c), t);
+            this.size++;
+        }
+
+        private void insert(final long k, final int t) {
+            final int mask = this.keys.length - 1;
+            int i = slot(k, mask);
+            while (this.keys[i] != -1L) {
+                i = (i + 1) & mask;
+            }
+            this.keys[i] = k;
+            this.values[i] = t;
+        }
+
+        private void grow() {
+            final long[] oldKeys = this.keys;
+            final int[] oldValues = this.values;
+            this.keys = new long[oldKeys.length * 2];
+            this.values = new int[oldKeys.length * 2];
+            Arrays.fill(this.keys, -1L);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1L) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable list of ints
+     */
+    private static final class IntList {
+        int[] data;
+        int size;
+
+        IntList(final int capacity) {
+            this.data = new int[capacity];
+        }
+
+        void add(final int v) {
+            if (this.size == this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.size * 2);
+            }
+            this.data[this.size++] = v;
+        }
+    }
+}
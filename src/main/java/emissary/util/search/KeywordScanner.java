@@ -1,15 +1,28 @@
 package emissary.util.search;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import javax.annotation.Nullable;
 
 /**
  * Provides the ability to find specified {@code byte[]} patterns inside a larger {@code byte[]}.
+ * <p>
+ * Patterns up to {@link #WORD_SCAN_LIMIT} bytes long are found by looking for their first and last bytes eight places
+ * at a time, see {@link WordScan}, and checking the rest wherever both turn up. Longer patterns use a
+ * Boyer-Moore-Horspool search, whose skips beat the word scan once the pattern is long enough. Both find the same first
+ * occurrence.
  */
 public class KeywordScanner {
+
+    /** Longest pattern found by the word at a time scan rather than Boyer-Moore-Horspool */
+    public static final int WORD_SCAN_LIMIT = 6;
+
     private int[] skip = new int[256];
     private int dataLength = -1;
     private byte[] data;
+    @Nullable
+    private ByteBuffer words;
+    private boolean analyzed = false;
     private byte[] pattern;
     private int patternLength = -1;
     private int lastByte = 0;
@@ -50,8 +63,10 @@ public class KeywordScanner {
         this.data = data;
         if (data != null) {
             this.dataLength = data.length;
+            this.words = WordScan.wrap(data);
         } else {
             this.dataLength = -1;
+            this.words = null;
         }
     }
 
@@ -104,7 +119,11 @@ public class KeywordScanner {
         final int actualStart = Math.max(start, 0);
         this.pattern = patternArg;
         this.patternLength = patternArg.length;
-        analyze();
+        this.analyzed = false;
+        if (this.patternLength == 0) {
+            // there is no last byte to find
+            analyze();
+        }
         final int position = match(actualStart, stop);
         this.lastPosition = position;
         return position;
@@ -185,6 +204,13 @@ public class KeywordScanner {
     }
 
     private int match(final int start, final int stop) {
+        if (this.patternLength <= WORD_SCAN_LIMIT) {
+            return wordMatch(start, stop);
+        }
+        if (!this.analyzed) {
+            analyze();
+            this.analyzed = true;
+        }
 
         int matchIndex = -1;
         int position = start + this.patternLength - 1;
@@ -201,6 +227,42 @@ public class KeywordScanner {
         return matchIndex;
     }
 
+    /**
+     * Find where both the first and the last byte of the pattern are in place, eight starting places at a time, and check
+     * the rest of the pattern at each.
+     */
+    private int wordMatch(final int start, final int stop) {
+        final int lastOffset = this.patternLength - 1;
+        final byte first = this.pattern[0];
+        final byte last = this.pattern[lastOffset];
+        final long firstFold = WordScan.foldBits(first, !this.caseSensitive);
+        final long firstWord = WordScan.repeat(first, firstFold);
+        final long lastFold = WordScan.foldBits(last, !this.caseSensitive);
+        final long lastWord = WordScan.repeat(last, lastFold);
+        // the pattern can start anywhere before end, each step reads as far as the last byte of the last start
+        final int end = stop - lastOffset;
+        int position = start;
+        for (; position + Long.BYTES <= end; position += Long.BYTES) {
+            long marks = WordScan.equalBytes(this.words.getLong(position), firstFold, firstWord);
+            if (lastOffset > 0 && marks != 0) {
+                marks &= WordScan.equalBytes(this.words.getLong(position + lastOffset), lastFold, lastWord);
+            }
+            while (marks != 0) {
+                final int candidate = position + WordScan.firstMarked(marks);
+                if (isSame(candidate + lastOffset)) {
+                    return candidate;
+                }
+                marks &= marks - 1;
+            }
+        }
+        for (; position < end; position++) {
+            if (isSame(position + lastOffset)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
     private int lowercase(final int i) {
         if ((i >= 'A') && (i <= 'Z')) {
             return i + 32;
@@ -16,20 +16,30 @@ public class MultiKeywordScanner implements IMultiKeywordScanner {
     private String[] keywords;
     private int lastPosition = -1;
 
+    /** Does the scanning when case is ignored */
+    @Nullable
+    private AhoCorasickScanner caseFolded;
+
     public MultiKeywordScanner() {}
 
     /**
-     * Case insensitive was never implemented
+     * Create a scanner that can ignore the case of ASCII letters. The data is scanned as it is, there is no need to lower
+     * case a copy of it first.
+     *
+     * @param caseSensitive false to ignore case
      */
-    @Deprecated
     public MultiKeywordScanner(final boolean caseSensitive) {
         if (!caseSensitive) {
-            logger.error("Case-insensitive MultiKeywordScanner is not implemented");
+            this.caseFolded = new AhoCorasickScanner(false);
         }
     }
 
     @Override
     public void loadKeywords(final String[] keywordsArg) {
+        if (this.caseFolded != null) {
+            this.caseFolded.loadKeywords(keywordsArg);
+            return;
+        }
         this.keywords = keywordsArg;
 
         try {
@@ -97,6 +107,9 @@ public class MultiKeywordScanner implements IMultiKeywordScanner {
 
     @Override
     public HitList findAll(final byte[] dataArg, final int start, final int stop) {
+        if (this.caseFolded != null) {
+            return this.caseFolded.findAll(dataArg, start, stop);
+        }
         this.data = dataArg;
         int position;
         final HitList hits = new HitList();
@@ -117,6 +130,9 @@ public class MultiKeywordScanner implements IMultiKeywordScanner {
 
     @Override
     public HitList findNext() {
+        if (this.caseFolded != null) {
+            return this.caseFolded.findNext();
+        }
         if (this.data != null) {
             return this.findNext(this.data, this.lastPosition + 1, this.data.length);
         }
@@ -125,6 +141,9 @@ public class MultiKeywordScanner implements IMultiKeywordScanner {
 
     @Override
     public HitList findNext(@Nullable final byte[] dataArg) {
+        if (this.caseFolded != null) {
+            return this.caseFolded.findNext(dataArg);
+        }
         if (dataArg != null) {
             return this.findNext(dataArg, this.lastPosition + 1, dataArg.length);
         }
@@ -141,6 +160,9 @@ public class MultiKeywordScanner implements IMultiKeywordScanner {
 
     @Override
     public HitList findNext(final byte[] dataArg, final int start, final int stop) {
+        if (this.caseFolded != null) {
+            return this.caseFolded.findNext(dataArg, start, stop);
+        }
         this.data = dataArg;
         int position;
         final HitList hits = new HitList();
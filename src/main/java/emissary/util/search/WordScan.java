@@ -0,0 +1,119 @@
+package emissary.util.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds bytes in an array eight at a time. Each step reads a {@code long} through a little endian {@link ByteBuffer}
+ * view of the array and tests all eight bytes at once with a few arithmetic operations, so the loop does an eighth of
+ * the branches of a byte by byte loop. On current JVMs the buffer reads compile down to single unaligned loads.
+ */
+final class WordScan {
+
+    private static final long ONES = 0x0101010101010101L;
+
+    private static final long LOWS = 0x7f7f7f7f7f7f7f7fL;
+
+    private static final long CASE_BITS = 0x2020202020202020L;
+
+    private WordScan() {}
+
+    /**
+     * Wrap an array for reading words from
+     *
+     * @param data the array
+     * @return a little endian buffer on the array
+     */
+    static ByteBuffer wrap(final byte[] data) {
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Make a word with every byte set to a value
+     */
+    static long repeat(final int b) {
+        return (b & 0xffL) * ONES;
+    }
+
+    /**
+     * Mark the bytes of a word that are zero
+     *
+     * @param x the word
+     * @return the high bit of each zero byte set and every other bit clear
+     */
+    static long zeroBytes(final long x) {
+        return ~(((x & LOWS) + LOWS) | x | LOWS);
+    }
+
+    /**
+     * Get the offset within a word of the first byte marked by {@link #zeroBytes(long)}, the word being read little endian
+     */
+    static int firstMarked(final long marks) {
+        return Long.numberOfTrailingZeros(marks) >>> 3;
+    }
+
+    /**
+     * Get the bits to set in each byte of a word before comparing it with a byte, so that case is ignored if asked and the
+     * byte is an ASCII letter
+     *
+     * @param b the byte to compare with
+     * @param ignoreCase whether to ignore case
+     * @return the case bit of every byte, or nothing
+     */
+    static long foldBits(final byte b, final boolean ignoreCase) {
+        final int lower = b | 0x20;
+        return ignoreCase && lower >= 'a' && lower <= 'z' ? CASE_BITS : 0L;
+    }
+
+    /**
+     * Make the word to compare with, a byte repeated with the bits from {@link #foldBits(byte, boolean)} set
+     */
+    static long repeat(final byte b, final long foldBits) {
+        return repeat(b) | foldBits;
+    }
+
+    /**
+     * Mark the bytes of a word that equal a byte. Setting the case bit of a letter only turns its other case into it.
+     *
+     * @param word the bytes to look at
+     * @param foldBits from {@link #foldBits(byte, boolean)}
+     * @param repeated from {@link #repeat(byte, long)}
+     * @return the high bit of each equal byte set and every other bit clear
+     */
+    static long equalBytes(final long word, final long foldBits, final long repeated) {
+        return zeroBytes((word | foldBits) ^ repeated);
+    }
+
+    /**
+     * Find the first byte that is one of a few values once its high bit is cleared
+     *
+     * @param words the data wrapped by {@link #wrap(byte[])}
+     * @param data the data
+     * @param from first index to look at
+     * @param to index to stop before
+     * @param values the values to find, each below 0x80
+     * @return the index of the byte or -1 if there is none
+     */
+    static int indexOfAnyLow7(final ByteBuffer words, final byte[] data, final int from, final int to, final byte[] values) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            final long word = words.getLong(i) & LOWS;
+            long marks = 0;
+            for (final byte value : values) {
+                marks |= zeroBytes(word ^ repeat(value));
+            }
+            if (marks != 0) {
+                return i + firstMarked(marks);
+            }
+        }
+        for (; i < to; i++) {
+            final int b = data[i] & 0x7f;
+            for (final byte value : values) {
+                if (b == value) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
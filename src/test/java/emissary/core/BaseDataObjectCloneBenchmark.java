@@ -0,0 +1,50 @@
+package emissary.core;
+
+/**
+ * Times {@link BaseDataObject#clone()} on payloads carrying more and more metadata. Not run as part of the tests.
+ */
+public final class BaseDataObjectCloneBenchmark {
+
+    private static final int VALUES_PER_KEY = 4;
+
+    private BaseDataObjectCloneBenchmark() {}
+
+    /**
+     * Time cloning payloads with several numbers of metadata keys. Each payload has a value read and its keys walked before
+     * it is cloned, as places do, so the time per clone should stay flat as the metadata grows. Takes an optional number of
+     * rounds.
+     */
+    public static void main(final String[] args) throws CloneNotSupportedException {
+        final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        final int[] sizes = {10, 100, 1000, 10000};
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("Round " + round);
+            System.out.printf("  %6s %10s %12s%n", "keys", "clones", "ns/clone");
+            for (final int size : sizes) {
+                final BaseDataObject payload = new BaseDataObject("data".getBytes(), "bench");
+                for (int k = 0; k < size; k++) {
+                    for (int v = 0; v < VALUES_PER_KEY; v++) {
+                        payload.appendParameter("KEY" + k, "VALUE" + v);
+                    }
+                }
+                final int clones = 100000;
+                System.out.printf("  %6d %10d %12.0f%n", size, clones, time(payload, clones));
+            }
+        }
+    }
+
+    private static double time(final BaseDataObject payload, final int clones) throws CloneNotSupportedException {
+        int found = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < clones; i++) {
+            found += payload.getParameter("KEY0").size();
+            found += payload.getParameterKeys().size();
+            found += payload.clone().getParameter("KEY0").size();
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (found == 0) {
+            throw new IllegalStateException("Metadata not found");
+        }
+        return (double) elapsed / clones;
+    }
+}
@@ -12,6 +12,7 @@ import emissary.test.core.junit5.UnitTest;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,15 +23,18 @@ import org.mockito.Mockito;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,7 +47,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -1108,6 +1114,163 @@ class BaseDataObjectTest extends UnitTest {
         }
     }
 
+    @Test
+    void testCloneSharesUntilChanged() throws CloneNotSupportedException {
+        for (int i = 0; i < 1000; i++) {
+            this.b.appendParameter("KEY" + (i % 10), "VALUE" + i);
+        }
+        this.b.addAlternateView("VIEW", "view".getBytes());
+
+        final BaseDataObject clone = (BaseDataObject) this.b.clone();
+        assertSame(this.b.parameters, clone.parameters, "Metadata must be shared after clone");
+        assertSame(this.b.multipartAlternative, clone.multipartAlternative, "Views must be shared after clone");
+        assertSame(this.b.currentForm, clone.currentForm, "Forms must be shared after clone");
+
+        // reads, including through the value lists and key set, do not copy
+        assertTrue(clone.hasParameter("KEY3"));
+        assertFalse(clone.getStringParameter("KEY3").isEmpty());
+        assertEquals(100, clone.getParameter("KEY3").size());
+        assertTrue(clone.getParameterKeys().contains("KEY4"));
+        assertEquals(1, clone.getNumAlternateViews());
+        assertSame(this.b.parameters, clone.parameters, "Reads must not copy metadata");
+
+        clone.appendParameter("KEY3", "NEW");
+        clone.deleteParameter("KEY4");
+        clone.addAlternateView("OTHER", "other".getBytes());
+        clone.pushCurrentForm("NEWFORM");
+        assertNotSame(this.b.parameters, clone.parameters, "Metadata must be copied on change");
+        assertEquals(101, clone.getParameter("KEY3").size());
+        assertEquals(100, this.b.getParameter("KEY3").size(), "Original metadata must not change");
+        assertNull(clone.getParameter("KEY4"));
+        assertEquals(100, this.b.getParameter("KEY4").size(), "Original metadata must not change");
+        assertEquals(2, clone.getNumAlternateViews());
+        assertEquals(1, this.b.getNumAlternateViews(), "Original views must not change");
+        assertEquals("NEWFORM", clone.currentForm());
+        assertEquals(this.b.currentFormSize() + 1, clone.currentFormSize(), "Original forms must not change");
+
+        // the original copies on its own first change and is writable through its views again
+        this.b.appendParameter("KEY5", "NEW");
+        this.b.getParameter("KEY5").add("LIVE");
+        assertEquals(102, this.b.getParameter("KEY5").size());
+        assertEquals(100, clone.getParameter("KEY5").size(), "Clone metadata must not change");
+    }
+
+    @Test
+    void testLiveViewsStayLiveWhileShared() throws CloneNotSupportedException {
+        this.b.putParameter("A", "1");
+        this.b.addAlternateView("VIEW", "view".getBytes());
+        final BaseDataObject clone = (BaseDataObject) this.b.clone();
+
+        clone.getParameter("A").add("2");
+        clone.getAlternateViews().remove("VIEW");
+        assertEquals(Arrays.asList("1", "2"), clone.getParameter("A"));
+        assertEquals(0, clone.getNumAlternateViews());
+        assertEquals(Collections.singletonList("1"), this.b.getParameter("A"), "Original metadata must not change");
+        assertEquals(1, this.b.getNumAlternateViews(), "Original views must not change");
+
+        clone.getParameters().remove("A");
+        assertFalse(clone.hasParameter("A"));
+        assertTrue(this.b.hasParameter("A"), "Original metadata must not change");
+    }
+
+    @Test
+    void testValueListsDoNotStopSharing() throws CloneNotSupportedException {
+        this.b.putParameter("A", "1");
+        this.b.putParameter("B", "2");
+        final List<Object> values = this.b.getParameter("A");
+        final Set<String> keys = this.b.getParameterKeys();
+
+        final BaseDataObject clone = (BaseDataObject) this.b.clone();
+        assertSame(this.b.parameters, clone.parameters, "Handing out value lists must not stop sharing");
+
+        values.add("3");
+        final Iterator<String> it = keys.iterator();
+        it.next();
+        it.next();
+        it.remove();
+        assertEquals(Arrays.asList("1", "3"), values);
+        assertEquals(Collections.singleton("A"), keys);
+        assertEquals(Collections.singletonList("1"), clone.getParameter("A"), "Clone metadata must not change");
+        assertTrue(clone.hasParameter("B"), "Clone metadata must not change");
+
+        final BaseDataObject second = (BaseDataObject) this.b.clone();
+        assertSame(this.b.parameters, second.parameters, "Changing through a value list must not stop sharing");
+    }
+
+    @Test
+    void testLiveViewsFromBeforeCloneDoNotReachClone() throws CloneNotSupportedException {
+        this.b.putParameter("A", "1");
+        this.b.addAlternateView("VIEW", "view".getBytes());
+        final List<Object> values = this.b.getParameter("A");
+        final Map<String, byte[]> views = this.b.getAlternateViews();
+
+        final BaseDataObject clone = (BaseDataObject) this.b.clone();
+        values.add("2");
+        views.remove("VIEW");
+
+        assertEquals(Arrays.asList("1", "2"), this.b.getParameter("A"));
+        assertEquals(Collections.singletonList("1"), clone.getParameter("A"), "Clone metadata must not change");
+        assertEquals(1, clone.getNumAlternateViews(), "Clone views must not change");
+    }
+
+    @Test
+    void testCloneAfterClearSharesNothing() throws CloneNotSupportedException {
+        this.b.putParameter("A", "1");
+        final BaseDataObject clone = (BaseDataObject) this.b.clone();
+        clone.clearParameters();
+        clone.replaceCurrentForm("ONLY");
+        assertFalse(clone.hasParameter("A"));
+        assertTrue(this.b.hasParameter("A"));
+        assertEquals(1, clone.currentFormSize());
+        assertEquals("ONLY", clone.currentForm());
+        assertNotEquals("ONLY", this.b.currentForm());
+    }
+
+    @Test
+    void testStreamingAccessToByteArray() throws IOException {
+        final ByteBuffer window = this.b.getDataWindow(5, 2);
+        assertEquals(2, window.remaining());
+        assertTrue(window.isReadOnly());
+        assertEquals('i', window.get());
+
+        final ByteBuffer buff = ByteBuffer.allocate(4);
+        assertEquals(4, this.b.readData(10, buff));
+        assertEquals("test", new String(buff.array()));
+
+        try (InputStream is = this.b.newDataInputStream()) {
+            assertEquals("This is a test", new String(IOUtils.toByteArray(is)));
+        }
+    }
+
+    @Test
+    void testStreamingAccessToChannel() throws IOException {
+        DataMaterialization.reset();
+        this.b.setChannelFactory(InMemoryChannelFactory.create("This is a test".getBytes()));
+        this.b.appendTransformHistory("UNKNOWN.STREAMING.TRANSFORM.http://localhost:8001/StreamingPlace");
+
+        assertEquals("test", StandardCharsets.US_ASCII.decode(this.b.getDataWindow(10, 100)).toString());
+        try (InputStream is = this.b.newDataInputStream()) {
+            assertEquals("This is a test", new String(IOUtils.toByteArray(is)));
+        }
+        assertTrue(DataMaterialization.getCounts().isEmpty(), "Streaming access must not count as materialization");
+
+        assertEquals("This is a test", new String(this.b.data()));
+        assertEquals(1L, DataMaterialization.getCounts().get("StreamingPlace"));
+        assertEquals(14L, DataMaterialization.getBytes().get("StreamingPlace"));
+        DataMaterialization.reset();
+    }
+
+    @Test
+    void testStreamingAccessWithNoData() throws IOException {
+        final BaseDataObject empty = new BaseDataObject();
+        empty.theData = null;
+        assertEquals(-1, empty.readData(0, ByteBuffer.allocate(1)));
+        assertEquals(0, empty.getDataWindow(0, 10).remaining());
+        try (InputStream is = empty.newDataInputStream()) {
+            assertEquals(-1, is.read());
+        }
+    }
+
     @Test
     void testHeaderEncoding() {
         this.b.setHeaderEncoding("foo");
@@ -1,5 +1,7 @@
 package emissary.core;
 
+import emissary.directory.DirectoryEntry;
+import emissary.place.IServiceProviderPlace;
 import emissary.place.ServiceProviderPlace;
 import emissary.test.core.junit5.UnitTest;
 
@@ -8,9 +10,16 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  *
@@ -38,6 +47,167 @@ class HDMobileAgentTest extends UnitTest {
         assertEquals(2, ret.size());
     }
 
+    @Test
+    void testSiblingsInParallelKeepFamilyTogether() throws Exception {
+        final List<String> inline = childNames(runFamily(null, 4, new CountDownLatch(0)));
+        final SiblingProcessor processor = new SiblingProcessor(2, 2, 2);
+        try {
+            final List<IBaseDataObject> dropped = runFamily(processor, 4, new CountDownLatch(2));
+            assertEquals(5, dropped.size(), "Whole family must be dropped off at once");
+            assertEquals(inline, childNames(dropped), "Children must reach drop off in the same order as without parallel siblings");
+            for (final IBaseDataObject p : dropped) {
+                if (!"parent".equals(p.shortName())) {
+                    assertTrue(p.hasVisited("*.WORK.ANALYZE.*"));
+                }
+            }
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    @Test
+    void testSiblingsBelowThresholdRunInline() throws Exception {
+        final SiblingProcessor processor = new SiblingProcessor(2, 8, 2);
+        try {
+            assertFalse(processor.shouldFork(4));
+            final List<IBaseDataObject> dropped = runFamily(processor, 4, new CountDownLatch(0));
+            assertEquals(5, dropped.size(), "Whole family must be dropped off at once");
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    private static List<String> childNames(final List<IBaseDataObject> payloads) {
+        final List<String> names = new ArrayList<>();
+        for (final IBaseDataObject p : payloads) {
+            if (p.shortName().contains(Family.SEP)) {
+                names.add(p.shortName());
+            }
+        }
+        return names;
+    }
+
+    private static List<IBaseDataObject> runFamily(@Nullable final SiblingProcessor processor, final int childCount, final CountDownLatch together)
+            throws Exception {
+        final FamilyPlace sprout = new FamilyPlace("*.SPROUT.TRANSFORM.http://localhost:8001/SproutPlace$5050", "CHILD", childCount);
+        final FamilyPlace work = new FamilyPlace("*.WORK.ANALYZE.http://localhost:8001/WorkPlace$5050", "FINISHED", 0);
+        final FamilyPlace drop = new FamilyPlace("*.DROP.IO.http://localhost:8001/DropPlace$5050", Form.DONE, 0);
+        work.together = together;
+        final long workers = together.getCount();
+        final FamilyAgent agent = new FamilyAgent(sprout, work, drop);
+        try {
+            agent.setSiblingProcessor(processor);
+            agent.addPayload(DataObjectFactory.getInstance(new byte[] {1}, "parent", "PARENT"));
+            agent.agentControl(sprout);
+
+            assertTrue(work.sawTogether, "Sibling batches must be at a place at the same time");
+            assertEquals(workers, work.agents.size(), "Each sibling worker must be found as an agent of its own");
+            for (final MobileAgent worker : work.agents) {
+                assertEquals(agent, ((HDMobileAgent) worker).getSiblingParent());
+                assertFalse(Namespace.exists(worker.getName()), "Worker must leave the namespace when done");
+            }
+            assertEquals(1, drop.received.size(), "Drop off must be called once");
+            return drop.received.get(0);
+        } finally {
+            agent.killAgent();
+            sprout.shutDown();
+            work.shutDown();
+            drop.shutDown();
+        }
+    }
+
+    /**
+     * Routes payloads by current form rather than through a directory
+     */
+    static class FamilyAgent extends HDMobileAgent {
+        private static final long serialVersionUID = -1734093186526637548L;
+
+        private final transient FamilyPlace sprout;
+        private final transient FamilyPlace work;
+        private final transient FamilyPlace drop;
+
+        FamilyAgent(FamilyPlace sprout, FamilyPlace work, FamilyPlace drop) {
+            super();
+            this.sprout = sprout;
+            this.work = work;
+            this.drop = drop;
+        }
+
+        FamilyAgent(FamilyAgent parent) {
+            super(parent);
+            this.sprout = parent.sprout;
+            this.work = parent.work;
+            this.drop = parent.drop;
+        }
+
+        @Override
+        protected HDMobileAgent createSiblingWorker() {
+            return new FamilyAgent(this);
+        }
+
+        @Override
+        protected DirectoryEntry getNextKey(@Nullable IServiceProviderPlace place, @Nullable IBaseDataObject payloadArg) {
+            if (payloadArg == null) {
+                return null;
+            }
+            switch (payloadArg.currentForm()) {
+                case "PARENT":
+                    return sprout.getDirectoryEntry();
+                case "CHILD":
+                    return work.getDirectoryEntry();
+                case "FINISHED":
+                    return drop.getDirectoryEntry();
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Moves everything it gets to the next form, sprouting children if asked to
+     */
+    static final class FamilyPlace extends ServiceProviderPlace {
+        final String nextForm;
+        final int childCount;
+        final List<List<IBaseDataObject>> received = Collections.synchronizedList(new ArrayList<>());
+        final Set<MobileAgent> agents = Collections.synchronizedSet(new HashSet<>());
+        CountDownLatch together = new CountDownLatch(0);
+        volatile boolean sawTogether = false;
+
+        FamilyPlace(String key, String nextForm, int childCount) throws IOException {
+            super("emissary.core.FakePlace.cfg", key);
+            this.nextForm = nextForm;
+            this.childCount = childCount;
+        }
+
+        @Override
+        public List<IBaseDataObject> agentProcessHeavyDuty(List<IBaseDataObject> payloadListArg) {
+            received.add(new ArrayList<>(payloadListArg));
+            try {
+                agents.add(getAgent());
+            } catch (NamespaceException e) {
+                // not working for a bound agent
+            }
+            together.countDown();
+            try {
+                if (together.await(10, TimeUnit.SECONDS)) {
+                    sawTogether = true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            final List<IBaseDataObject> children = new ArrayList<>();
+            for (final IBaseDataObject p : payloadListArg) {
+                for (int i = 1; i <= childCount; i++) {
+                    children.add(DataObjectFactory.getInstance(new byte[] {(byte) i}, p.shortName() + Family.SEP + i, "CHILD"));
+                }
+                p.setCurrentForm(nextForm);
+            }
+            return children;
+        }
+    }
+
     static final class SimplePlace extends ServiceProviderPlace {
 
         private List<IBaseDataObject> children = Collections.emptyList();
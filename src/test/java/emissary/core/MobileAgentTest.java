@@ -10,8 +10,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class MobileAgentTest extends UnitTest {
@@ -76,6 +84,40 @@ class MobileAgentTest extends UnitTest {
         assertTrue(agent.visitedPlaces.containsAll(Arrays.asList("FOO", "FOOD")), "FOO and FOOD should have both been added");
     }
 
+    @Test
+    void testRunsOnExecutor() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final HDMobileAgent execAgent = new HDMobileAgent("ExecAgent-01", executor) {
+            static final long serialVersionUID = -1526711937421581498L;
+
+            @Override
+            protected void agentControl(final IServiceProviderPlace currentPlace) {
+                threadName.set(Thread.currentThread().getName());
+                done.countDown();
+            }
+        };
+        try {
+            assertTrue(execAgent.isExecutorBacked());
+            assertEquals("ExecAgent-01", execAgent.getName());
+            assertFalse(execAgent.isInUse());
+
+            execAgent.go(d, place);
+            assertTrue(done.await(10, TimeUnit.SECONDS), "Itinerary should run on the executor");
+            assertEquals("ExecAgent-01", threadName.get(), "Executor thread carries the agent name while working");
+
+            // the pooled thread is handed back the way it was found
+            final String poolThreadName = executor.submit(() -> Thread.currentThread().getName()).get();
+            assertNotEquals("ExecAgent-01", poolThreadName);
+            assertFalse(execAgent.isInUse(), "Agent is idle after the itinerary");
+            assertNull(execAgent.getPayload());
+        } finally {
+            execAgent.killAgent();
+            executor.shutdownNow();
+        }
+    }
+
     static final class MobAg extends HDMobileAgent {
         static final long serialVersionUID = 102211824991899593L;
 
@@ -0,0 +1,180 @@
+package emissary.core;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParameterStoreTest extends UnitTest {
+
+    @Test
+    void testKeysKeepInsertionOrder() {
+        final ParameterStore store = new ParameterStore();
+        store.put("C", "1");
+        store.put("A", "2");
+        store.put("B", "3");
+        store.put("A", "4");
+        assertEquals(Arrays.asList("C", "A", "B"), Arrays.asList(store.keySet().toArray()));
+        assertEquals(Arrays.asList("2", "4"), store.get("A"));
+    }
+
+    @Test
+    void testPutAllAndRemoveAll() {
+        final ParameterStore store = new ParameterStore();
+        store.putAll("A", Arrays.asList("1", "2", "3"));
+        store.putAll("B", Collections.emptyList());
+        assertTrue(store.containsKey("A"));
+        assertFalse(store.containsKey("B"), "Empty values must not add a key");
+        assertTrue(store.containsEntry("A", "2"));
+        assertFalse(store.containsEntry("A", "4"));
+
+        final List<Object> removed = store.removeAll("A");
+        assertEquals(Arrays.asList("1", "2", "3"), removed);
+        assertThrows(UnsupportedOperationException.class, () -> removed.add("4"));
+        assertNull(store.get("A"));
+        assertTrue(store.removeAll("A").isEmpty());
+        assertTrue(store.isEmpty());
+    }
+
+    @Test
+    void testValuesAreLive() {
+        final ParameterStore store = new ParameterStore();
+        store.put("A", "1");
+        final List<Object> values = store.get("A");
+        values.add("2");
+        assertEquals("1;2", store.getString("A", ";"));
+
+        values.remove("1");
+        values.remove("2");
+        assertFalse(store.containsKey("A"), "Key must go with its last value");
+
+        values.add("3");
+        assertEquals("3", store.getString("A", ";"), "Reused list must put its key back");
+    }
+
+    @Test
+    void testDetachedValuesJoinReaddedKey() {
+        final ParameterStore store = new ParameterStore();
+        store.put("A", "1");
+        final List<Object> values = store.get("A");
+        store.removeAll("A");
+        store.put("A", "2");
+
+        values.add("3");
+        assertEquals("2;3", store.getString("A", ";"), "Appends to a detached list must not be lost");
+
+        store.removeAll("A");
+        values.add("4");
+        assertEquals("4", store.getString("A", ";"), "Removed values must not come back");
+    }
+
+    @Test
+    void testJoinedStringIsCached() {
+        final ParameterStore store = new ParameterStore();
+        store.put("A", "1");
+        store.put("A", 2);
+        final String joined = store.getString("A", ";");
+        assertEquals("1;2", joined);
+        assertSame(joined, store.getString("A", ";"));
+        assertEquals("1,2", store.getString("A", ","));
+
+        store.put("A", "3");
+        assertEquals("1;2;3", store.getString("A", ";"));
+    }
+
+    @Test
+    void testMutableValuesAreNotCached() {
+        final ParameterStore store = new ParameterStore();
+        final StringBuilder sb = new StringBuilder("x");
+        store.put("A", sb);
+        store.put("A", "y");
+        assertEquals("x;y", store.getString("A", ";"));
+        sb.append("z");
+        assertEquals("xz;y", store.getString("A", ";"));
+    }
+
+    @Test
+    void testSingleValues() {
+        final ParameterStore store = new ParameterStore();
+        store.put("NULL", null);
+        store.put("NUM", 7);
+        assertNull(store.getString("NULL", ";"));
+        assertEquals("7", store.getString("NUM", ";"));
+        assertNull(store.getString("MISSING", ";"));
+    }
+
+    @Test
+    void testCopyIsDetached() {
+        final ParameterStore store = new ParameterStore();
+        store.put("A", "1");
+        final ParameterStore copy = new ParameterStore(store);
+        copy.put("A", "2");
+        copy.put("B", "3");
+        assertEquals(Collections.singletonList("1"), store.get("A"));
+        assertFalse(store.containsKey("B"));
+        assertEquals(Arrays.asList("1", "2"), copy.get("A"));
+    }
+
+    @Test
+    void testKeysAreInterned() {
+        final ParameterStore one = new ParameterStore();
+        final ParameterStore two = new ParameterStore();
+        one.put(new String("SHARED_KEY"), "1");
+        two.put(new String("SHARED_KEY"), "2");
+        assertSame(one.keySet().iterator().next(), two.keySet().iterator().next());
+    }
+
+    @Test
+    void testMapViews() {
+        final ParameterStore store = new ParameterStore();
+        store.put("A", "1");
+        final Map<String, ?> map = store.asMap();
+        assertEquals(Collections.singletonMap("A", Collections.singletonList("1")), map);
+        assertThrows(UnsupportedOperationException.class, () -> store.asReadOnlyMap().get("A").add("2"));
+        store.asMap().get("A").add("2");
+        assertEquals(2, store.get("A").size());
+        assertThrows(UnsupportedOperationException.class, () -> store.asMap().put("B", Collections.emptyList()));
+
+        store.put("B", "3");
+        store.put("C", "4");
+        assertEquals(Arrays.asList("1", "2"), store.asMap().remove("A"));
+        store.asMap().entrySet().removeIf(e -> "B".equals(e.getKey()));
+        assertEquals(Collections.singleton("C"), store.keySet(), "Keys must be removable through the map");
+    }
+
+    @Test
+    void testSerialization() throws IOException, ClassNotFoundException {
+        final ParameterStore store = new ParameterStore();
+        store.put("A", "1");
+        store.put("A", "2");
+        store.put("B", 3L);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(store);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            final ParameterStore read = (ParameterStore) in.readObject();
+            assertEquals(store, read);
+            read.get("A").remove("1");
+            read.get("A").remove("2");
+            assertFalse(read.containsKey("A"));
+        }
+    }
+}
@@ -7,6 +7,7 @@ import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.read.ListAppender;
 import com.google.common.io.Files;
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.LoggerFactory;
@@ -95,6 +96,39 @@ class SeekableByteChannelHelperTest {
         assertArrayEquals(bytes, byteBuffer.array());
     }
 
+    @Test
+    void testPositionalRead() throws IOException {
+        final SeekableByteChannelFactory sbcf = SeekableByteChannelHelper.memory(TEST_BYTES);
+        final ByteBuffer buff = ByteBuffer.allocate(4);
+        assertEquals(4, SeekableByteChannelHelper.read(sbcf, 5, buff));
+        assertEquals("data", new String(buff.array(), StandardCharsets.US_ASCII));
+
+        buff.clear();
+        assertEquals(2, SeekableByteChannelHelper.read(sbcf, 7, buff));
+        assertEquals(-1, SeekableByteChannelHelper.read(sbcf, TEST_BYTES.length, buff));
+    }
+
+    @Test
+    void testWindow() throws IOException {
+        final SeekableByteChannelFactory sbcf = SeekableByteChannelHelper.memory(TEST_BYTES);
+        final ByteBuffer window = SeekableByteChannelHelper.window(sbcf, 5, 100);
+        assertTrue(window.isReadOnly());
+        assertEquals(4, window.remaining());
+        final byte[] bytes = new byte[4];
+        window.get(bytes);
+        assertEquals("data", new String(bytes, StandardCharsets.US_ASCII));
+        assertEquals(0, SeekableByteChannelHelper.window(sbcf, 100, 4).remaining());
+    }
+
+    @Test
+    void testNewInputStream() throws IOException {
+        final SeekableByteChannelFactory sbcf = SeekableByteChannelHelper.memory(TEST_BYTES);
+        try (InputStream is = SeekableByteChannelHelper.newInputStream(sbcf, 2)) {
+            assertEquals('t', is.read());
+            assertArrayEquals("est data".getBytes(StandardCharsets.US_ASCII), IOUtils.toByteArray(is));
+        }
+    }
+
     private static final InputStream IS = new ByteArrayInputStream("Test data".getBytes());
 
     @Test
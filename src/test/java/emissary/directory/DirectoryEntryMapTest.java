@@ -7,10 +7,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DirectoryEntryMapTest extends UnitTest {
@@ -172,6 +177,140 @@ class DirectoryEntryMapTest extends UnitTest {
         }
     }
 
+    @Test
+    void testIndexedQueries() {
+        final DirectoryEntryMap xdm = new DirectoryEntryMap();
+        xdm.addEntry(new DirectoryEntry("A.B.C.http://example.com:1234/SomePlace", "ABC Place", cost, quality));
+        this.dm.addEntries(xdm);
+        final DirectoryEntryList put = new DirectoryEntryList();
+        put.add(new DirectoryEntry("X.B.C.http://example.com:1234/OtherPlace", "XBC Place", cost, quality));
+        this.dm.put("X::C", put);
+
+        assertEquals(2, this.dm.countAllMatching("*.*.*.http://example.com:1234/*"), "Count by host");
+        assertEquals(2, this.dm.countAllMatching("*.B.*.*"), "Count by service name");
+        assertEquals(2, this.dm.countAllMatching("*.*.ID.*"), "Count by service type");
+        assertEquals(3, this.dm.countAllMatching("*.FOOPLACE.*.*"), "Count by service name");
+        assertEquals(1, this.dm.countAllMatching("*.*.ID.http://host2.domain.com:9001/*"), "Count by host and type");
+        assertEquals(0, this.dm.countAllMatching("*.*.*.http://nohost.domain.com:9001/*"), "Count by missing host");
+        assertEquals(5, this.dm.countAllMatching("*"), "Count of partial key");
+
+        final List<DirectoryEntry> removed = this.dm.removeAllOnDirectory("*.*.*.http://example.com:1234/DirectoryPlace");
+        assertEquals(2, removed.size(), "Removed by host");
+        assertEquals(0, this.dm.countAllMatching("*.*.*.http://example.com:1234/*"), "Count by host after removal");
+
+        // entries come back after the lists are gone
+        this.dm.addEntry(new DirectoryEntry("A.B.C.http://example.com:1234/SomePlace", "ABC Place", cost, quality));
+        assertEquals(1, this.dm.collectAllOnDirectory("*.*.*.http://example.com:1234/DirectoryPlace").size(), "Collect by host after add");
+
+        this.dm.clear();
+        assertEquals(0, this.dm.countAllMatching("*.B.*.*"), "Count after clear");
+    }
+
+    @Test
+    void testIndexesShrinkWithRemovedEntries() {
+        final String host2 = "*.*.*.http://host2.domain.com:9001/*";
+        assertEquals(1, this.dm.candidateLists(host2).size());
+
+        this.dm.removeEntry(key2);
+        assertTrue(this.dm.candidateLists(host2).isEmpty(), "List must leave the index of a host it no longer has");
+        assertEquals(2, this.dm.candidateLists("*.*.*.http://host.domain.com:8001/*").size(), "Hosts still in the list stay indexed");
+
+        this.dm.remove("UNKNOWN::TRANSFORM");
+        assertTrue(this.dm.candidateLists("*.*.TRANSFORM.*").isEmpty(), "Removed list must leave the indexes");
+
+        final DirectoryEntryList replacement = new DirectoryEntryList();
+        replacement.add(this.d2);
+        this.dm.put("UNKNOWN::ID", replacement);
+        assertEquals(1, this.dm.candidateLists(host2).size());
+        assertTrue(this.dm.candidateLists("*.*.*.http://host.domain.com:8001/*").isEmpty(), "Replaced list must leave the indexes");
+    }
+
+    @Test
+    void testComputeMergeAndReplaceKeepIndexes() {
+        final String host2 = "*.*.*.http://host2.domain.com:9001/*";
+        final String other = "*.*.*.http://example.com:1234/*";
+        final DirectoryEntry xd = new DirectoryEntry("A.B.C.http://example.com:1234/SomePlace", "ABC Place", cost, quality);
+
+        final DirectoryEntryList added = this.dm.computeIfAbsent("A::C", k -> listOf(xd));
+        assertSame(added, this.dm.computeIfAbsent("A::C", k -> new DirectoryEntryList()), "Present list must be kept");
+        assertEquals(1, this.dm.countAllMatching(other), "Computed list must be indexed");
+
+        this.dm.computeIfPresent("A::C", (k, v) -> null);
+        assertNull(this.dm.get("A::C"));
+        assertTrue(this.dm.candidateLists(other).isEmpty(), "Removed list must leave the indexes");
+
+        this.dm.merge("UNKNOWN::ID", listOf(xd), (a, b) -> {
+            final DirectoryEntryList merged = new DirectoryEntryList(a, DirectoryEntryList.SHALLOW_COPY);
+            merged.addAll(b);
+            return merged;
+        });
+        assertEquals(3, this.dm.get("UNKNOWN::ID").size());
+        assertEquals(1, this.dm.countAllMatching(other), "Merged entries must be indexed");
+
+        // a function that changes the list in place still unindexes what it took out
+        this.dm.compute("UNKNOWN::ID", (k, v) -> {
+            v.removeIf(e -> e.getKey().equals(key2));
+            return v;
+        });
+        assertTrue(this.dm.candidateLists(host2).isEmpty(), "Entries taken out in place must leave the indexes");
+
+        assertNull(this.dm.replace("NO::SUCH", listOf(xd)));
+        assertFalse(this.dm.replace("UNKNOWN::ID", new DirectoryEntryList(), listOf(this.d2)));
+        assertTrue(this.dm.replace("UNKNOWN::ID", this.dm.get("UNKNOWN::ID"), listOf(this.d2)));
+        assertEquals(1, this.dm.candidateLists(host2).size(), "Replacing list must be indexed");
+        assertTrue(this.dm.candidateLists(other).isEmpty(), "Replaced list must leave the indexes");
+
+        this.dm.replaceAll((k, v) -> listOf(xd));
+        assertEquals(2, this.dm.countAllMatching(other), "Every replacing list must be indexed");
+        assertTrue(this.dm.candidateLists(host2).isEmpty(), "Every replaced list must leave the indexes");
+        assertTrue(this.dm.candidateLists("*.*.*.http://host.domain.com:8001/*").isEmpty(), "Every replaced list must leave the indexes");
+    }
+
+    @Test
+    void testConcurrentAddAndRemoveKeepIndexes() throws Exception {
+        final String xkey = "A.B.C.http://example.com:1234/SomePlace";
+        final AtomicBoolean armed = new AtomicBoolean();
+        final AtomicReference<Thread> remover = new AtomicReference<>();
+        final DirectoryEntryMap map = new DirectoryEntryMap() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void index(final String dataId, final DirectoryEntry d) {
+                super.index(dataId, d);
+                if (armed.compareAndSet(true, false)) {
+                    // another thread removes the entry, emptying its list, while this one is adding it back
+                    final Thread t = new Thread(() -> removeEntry(xkey));
+                    remover.set(t);
+                    t.start();
+                    try {
+                        t.join(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        map.addEntry(new DirectoryEntry(xkey, "ABC Place", cost, quality));
+        final DirectoryEntryMap xdm = new DirectoryEntryMap();
+        xdm.addEntry(new DirectoryEntry(xkey, "ABC Place", cost, quality));
+
+        armed.set(true);
+        map.addEntries(xdm);
+        remover.get().join(TimeUnit.SECONDS.toMillis(10));
+
+        final DirectoryEntryList held = map.get("A::C");
+        assertEquals(held == null ? 0 : held.size(), map.countAllMatching("*.*.*.http://example.com:1234/*"),
+                "Every entry in the map must be reachable through its host");
+    }
+
+    private static DirectoryEntryList listOf(final DirectoryEntry... entries) {
+        final DirectoryEntryList list = new DirectoryEntryList();
+        for (final DirectoryEntry e : entries) {
+            list.add(e);
+        }
+        return list;
+    }
+
     @Test
     void testAddCost() {
         final List<String> changed = this.dm.addCostToMatching("*.*.TRANSFORM.*", 100);
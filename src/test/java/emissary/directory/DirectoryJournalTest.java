@@ -0,0 +1,69 @@
+package emissary.directory;
+
+import emissary.client.response.DirectoryChange;
+import emissary.client.response.DirectoryDeltaResponseEntity;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectoryJournalTest extends UnitTest {
+
+    private static final DirectoryEntry ONE = new DirectoryEntry("UNKNOWN.ONE.ID.http://remote:8001/OnePlace", "one", 10, 90);
+    private static final DirectoryEntry TWO = new DirectoryEntry("UNKNOWN.TWO.ID.http://remote:8001/TwoPlace", "two", 20, 80);
+
+    @Test
+    void testChangesSince() {
+        final DirectoryJournal journal = new DirectoryJournal();
+        journal.recordAdded(Arrays.asList(ONE, TWO));
+        final long seen = journal.getSequence();
+        journal.recordRemoved(Collections.singletonList(ONE));
+        journal.recordAdded(Collections.singletonList(ONE));
+
+        final DirectoryDeltaResponseEntity delta = journal.since(journal.getEpoch(), seen);
+        assertTrue(delta.isComplete());
+        assertEquals(4, delta.getSequence());
+        assertEquals(2, delta.getChanges().size());
+
+        final DirectoryChange removed = delta.getChanges().get(0);
+        assertTrue(removed.isRemove());
+        assertEquals(ONE.getKey(), removed.getKey());
+
+        final DirectoryChange added = delta.getChanges().get(1);
+        assertTrue(added.isAdd());
+        assertEquals(ONE.getFullKey(), added.toEntry().getFullKey());
+        assertEquals("one", added.toEntry().getDescription());
+
+        final DirectoryDeltaResponseEntity none = journal.since(journal.getEpoch(), journal.getSequence());
+        assertTrue(none.isComplete());
+        assertTrue(none.getChanges().isEmpty());
+    }
+
+    @Test
+    void testGapsNeedFullTransfer() {
+        final DirectoryJournal journal = new DirectoryJournal(2);
+        journal.recordAdded(Arrays.asList(ONE, TWO));
+        journal.recordRemoved(Collections.singletonList(TWO));
+
+        // the first change has been forgotten
+        assertFalse(journal.since(journal.getEpoch(), 0).isComplete());
+        assertTrue(journal.since(journal.getEpoch(), 1).isComplete());
+        // never seen, from the future or from another start
+        assertFalse(journal.since(null, 3).isComplete());
+        assertFalse(journal.since(journal.getEpoch(), 4).isComplete());
+        assertFalse(journal.since(new DirectoryJournal().getEpoch(), 3).isComplete());
+        assertNotEquals(journal.getEpoch(), new DirectoryJournal().getEpoch());
+
+        final DirectoryDeltaResponseEntity gap = journal.since(null, 0);
+        assertEquals(journal.getEpoch(), gap.getEpoch());
+        assertEquals(3, gap.getSequence());
+        assertTrue(gap.getChanges().isEmpty());
+    }
+}
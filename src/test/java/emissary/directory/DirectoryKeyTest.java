@@ -0,0 +1,99 @@
+package emissary.directory;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectoryKeyTest extends UnitTest {
+
+    private static final String KEY = "UNKNOWN.thePlace.ID.http://host.domain.com:8001/ThePlace$5050";
+
+    @Test
+    void testParse() {
+        final DirectoryKey k = DirectoryKey.of(KEY);
+        assertEquals(KEY, k.getFullKey());
+        assertEquals("UNKNOWN.thePlace.ID.http://host.domain.com:8001/ThePlace", k.getKey());
+        assertEquals("UNKNOWN", k.getDataType());
+        assertEquals("thePlace", k.getServiceName());
+        assertEquals("ID", k.getServiceType());
+        assertEquals("UNKNOWN::ID", k.getDataID());
+        assertEquals("http://host.domain.com:8001/ThePlace", k.getServiceLocation());
+        assertEquals("http://host.domain.com:8001/", k.getServiceHostURL());
+        assertEquals("host.domain.com:8001", k.getServiceHost());
+        assertEquals("ThePlace", k.getServiceClassname());
+        assertEquals(4, k.getTupleCount());
+        assertTrue(k.isComplete());
+        assertTrue(k.isValid());
+        assertTrue(k.hasExpense());
+        assertEquals(5050, k.getExpense(-1));
+    }
+
+    @Test
+    void testShared() {
+        assertSame(DirectoryKey.of(KEY), DirectoryKey.of(KEY), "Parsed keys are reused");
+        assertEquals(new DirectoryKey(KEY), DirectoryKey.of(KEY));
+    }
+
+    @Test
+    void testPartialKeys() {
+        final DirectoryKey form = new DirectoryKey("UNKNOWN");
+        assertEquals("", form.getDataType(), "Bare form has no separators");
+        assertEquals("", form.getServiceLocation());
+        assertEquals("UNKNOWN", form.getKey());
+        assertEquals(-1, form.getExpense(-1));
+        assertFalse(form.isValid());
+        assertFalse(form.isComplete());
+
+        final DirectoryKey noHost = new DirectoryKey("UNKNOWN.s1.ID.http://");
+        assertEquals("UNKNOWN::ID", noHost.getDataID());
+        assertEquals("http://", noHost.getServiceLocation());
+        assertEquals("", noHost.getServiceHost());
+        assertTrue(noHost.isValid());
+        assertFalse(noHost.isComplete(), "Key without host is not complete");
+
+        final DirectoryKey pattern = new DirectoryKey("*.*.*.http://host:8001/*");
+        assertEquals("host:8001", pattern.getServiceHost());
+        assertEquals("*", pattern.getServiceClassname());
+
+        final DirectoryKey twoPart = new DirectoryKey("a.b");
+        assertEquals("b", twoPart.getServiceLocation(), "Matches historical KeyManipulator parsing");
+        assertEquals("", twoPart.getServiceType());
+
+        final DirectoryKey expenseOnly = new DirectoryKey("FOO$100");
+        assertEquals(100, expenseOnly.getExpense(-1));
+        assertEquals("FOO", expenseOnly.getKey());
+
+        final DirectoryKey badExpense = new DirectoryKey("A.B.C.D$x");
+        assertFalse(badExpense.hasExpense());
+        assertEquals(-1, badExpense.getExpense(-1));
+        assertEquals("D", badExpense.getServiceLocation());
+        assertEquals("A.B.C.D", badExpense.getKey());
+    }
+
+    @Test
+    void testSingleFieldsDoNotFillCache() {
+        final String uncached = "FORM.s1.ID.http://other.domain.com:8001/Other$100";
+        assertEquals("FORM", KeyManipulator.getDataType(uncached));
+        assertEquals("other.domain.com:8001", KeyManipulator.getServiceHost(uncached));
+        assertNull(DirectoryKey.cached(uncached), "Asking for one field must not parse the whole key");
+        assertSame(DirectoryKey.of(uncached), DirectoryKey.cached(uncached));
+        assertEquals("FORM::ID", KeyManipulator.getDataID(uncached));
+    }
+
+    @Test
+    void testKeysInUseSurviveEviction() {
+        final String hot = "HOT.s1.ID.http://host.domain.com:8001/Hot$5050";
+        final DirectoryKey parsed = DirectoryKey.of(hot);
+        for (int i = 0; i < DirectoryKey.MAX_CACHED_KEYS * 3; i++) {
+            DirectoryKey.of("COLD" + i + ".s1.ID.http://host.domain.com:8001/Cold$5050");
+            assertSame(parsed, DirectoryKey.of(hot), "A key in steady use stays cached");
+        }
+        assertNull(DirectoryKey.cached("COLD0.s1.ID.http://host.domain.com:8001/Cold$5050"), "Keys seen once are evicted");
+    }
+}
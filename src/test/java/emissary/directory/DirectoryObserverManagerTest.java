@@ -0,0 +1,164 @@
+package emissary.directory;
+
+import emissary.directory.DirectoryObserverManager.Action;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectoryObserverManagerTest extends UnitTest {
+
+    private static final String DIR = "EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://localhost:8001/DirectoryPlace";
+    private static final String ONE = "UNKNOWN.ONE.ID.http://localhost:8001/OnePlace";
+    private static final String TWO = "UNKNOWN.TWO.ID.http://localhost:8001/TwoPlace";
+    private static final String THREE = "OTHER.THREE.ID.http://localhost:8001/ThreePlace";
+
+    private DirectoryObserverManager manager;
+
+    @Override
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        // long enough that nothing is delivered before the test flushes
+        this.manager = new DirectoryObserverManager(DIR, 60000L, 100, 1);
+    }
+
+    @Override
+    @AfterEach
+    public void tearDown() throws Exception {
+        super.tearDown();
+        this.manager.shutDown();
+    }
+
+    @Test
+    void testSynchronousByDefault() {
+        final DirectoryObserverManager sync = new DirectoryObserverManager(DIR);
+        final RecordingObserver observer = new RecordingObserver("*.*.*.*");
+        sync.addObserver(observer);
+        assertFalse(sync.isAsynchronous());
+
+        sync.placeAdd(ONE + "$5050");
+        assertEquals(Collections.singletonList("add " + ONE + "$5050"), observer.calls);
+        assertEquals(0, observer.batches.size());
+    }
+
+    @Test
+    void testChangesAreCoalescedIntoOneBatch() {
+        final RecordingObserver observer = new RecordingObserver("UNKNOWN.*.*.*");
+        this.manager.addObserver(observer);
+        assertTrue(this.manager.isAsynchronous());
+
+        this.manager.placeAdd(Arrays.asList(ONE + "$5050", TWO + "$5050", THREE + "$5050"));
+        this.manager.placeCostChange(ONE + "$6050");
+        this.manager.placeRemove(TWO + "$5050");
+        this.manager.placeAdd(TWO + "$4050");
+        assertTrue(observer.calls.isEmpty(), "Nothing is delivered until the window closes");
+
+        this.manager.flush();
+        assertEquals(1, observer.batches.size());
+        final Map<String, Action> expected = new LinkedHashMap<>();
+        // still an add for a place the observer has not heard of yet
+        expected.put(ONE + "$6050", Action.PLACE_ADD);
+        expected.put(TWO + "$4050", Action.PLACE_ADD);
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(observer.batches.get(0).entrySet()));
+        assertEquals(Arrays.asList("add " + ONE + "$6050", "add " + TWO + "$4050"), observer.calls);
+
+        this.manager.placeRemove(ONE + "$6050");
+        this.manager.flush();
+        assertEquals(2, observer.batches.size());
+        assertEquals("remove " + ONE + "$6050", observer.calls.get(2));
+    }
+
+    @Test
+    void testBatchesAreDeliveredOnNotifierThread() throws Exception {
+        final DirectoryObserverManager quick = new DirectoryObserverManager(DIR, 10L, 100, 1);
+        try {
+            final RecordingObserver observer = new RecordingObserver("*.*.*.*");
+            quick.addObserver(observer);
+            quick.placeAdd(ONE + "$5050");
+            quick.peerUpdate(Collections.emptySet());
+            for (int i = 0; i < 500 && observer.peerUpdates == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(Collections.singletonList("add " + ONE + "$5050"), observer.calls);
+            assertEquals(1, observer.peerUpdates);
+            assertTrue(observer.thread.startsWith("DirectoryObserver-"), observer.thread);
+        } finally {
+            quick.shutDown();
+        }
+    }
+
+    @Test
+    void testShutDownDeliversPending() {
+        final RecordingObserver observer = new RecordingObserver("*.*.*.*");
+        this.manager.addObserver(observer);
+        this.manager.placeAdd(ONE + "$5050");
+        this.manager.shutDown();
+        assertEquals(1, observer.calls.size());
+
+        // after shut down notifications are synchronous
+        this.manager.placeRemove(ONE + "$5050");
+        assertEquals(2, observer.calls.size());
+    }
+
+    @Test
+    void testDeletedObserverHearsNothingMore() {
+        final RecordingObserver observer = new RecordingObserver("*.*.*.*");
+        this.manager.addObserver(observer);
+        this.manager.placeAdd(ONE + "$5050");
+        assertTrue(this.manager.deleteObserver(observer));
+        this.manager.flush();
+        assertTrue(observer.calls.isEmpty());
+    }
+
+    private static final class RecordingObserver extends DirectoryAdapter {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        final List<Map<String, Action>> batches = Collections.synchronizedList(new ArrayList<>());
+        volatile int peerUpdates = 0;
+        volatile String thread = "";
+
+        RecordingObserver(final String pattern) {
+            super(pattern);
+        }
+
+        @Override
+        public void placesChanged(final String observableKey, final Map<String, Action> changes) {
+            this.batches.add(new LinkedHashMap<>(changes));
+            super.placesChanged(observableKey, changes);
+        }
+
+        @Override
+        public void placeRegistered(final String observableKey, final String placeKey) {
+            this.calls.add("add " + placeKey);
+        }
+
+        @Override
+        public void placeDeregistered(final String observableKey, final String placeKey) {
+            this.calls.add("remove " + placeKey);
+        }
+
+        @Override
+        public void placeCostChanged(final String observableKey, final String placeKey) {
+            this.calls.add("cost " + placeKey);
+        }
+
+        @Override
+        public void peerUpdate(final String observableKey, final Set<DirectoryEntry> peers) {
+            this.thread = Thread.currentThread().getName();
+            this.peerUpdates++;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package emissary.directory;
 
+import emissary.client.response.DirectoryChange;
+import emissary.client.response.DirectoryDeltaResponseEntity;
 import emissary.config.ConfigUtil;
 import emissary.config.Configurator;
 import emissary.core.EmissaryException;
@@ -18,6 +20,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -66,6 +69,93 @@ class DirectoryPlaceTest extends UnitTest {
 
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    void testAdaptiveRoutingShedsToIdleReplica() {
+        final List<String> keys = new ArrayList<>();
+        keys.add("DUMDUM.THEPLACE.ID.http://host1.domain.com:8001/thePlace$5050");
+        keys.add("DUMDUM.THEPLACE.ID.http://host2.domain.com:8001/thePlace$5050");
+        doNothing().when(this.master).addPeerDirectories(any(Set.class), any(Boolean.class));
+        this.master.addPlaces(keys);
+        this.master.adaptiveRouting = true;
+
+        PlaceLoad.reset();
+        try {
+            // host1 has one payload in flight and takes 50ms a payload
+            PlaceLoad.started("http://host1.domain.com:8001/thePlace");
+            PlaceLoad.started("http://host1.domain.com:8001/thePlace");
+            PlaceLoad.finished("http://host1.domain.com:8001/thePlace", TimeUnit.MILLISECONDS.toNanos(50));
+            // host2 is idle
+            PlaceLoad.started("http://host2.domain.com:8001/thePlace");
+            PlaceLoad.finished("http://host2.domain.com:8001/thePlace", TimeUnit.MILLISECONDS.toNanos(50));
+            for (int i = 0; i < 10; i++) {
+                final List<DirectoryEntry> next = this.master.nextKeys("DUMDUM::ID", null, null);
+                assertEquals(1, next.size());
+                assertEquals("http://host2.domain.com:8001/thePlace", next.get(0).getServiceLocation());
+            }
+        } finally {
+            PlaceLoad.reset();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testAdaptiveRoutingIgnoresUnknownAndPenalisedReplicas() {
+        final List<String> keys = new ArrayList<>();
+        keys.add("DUMDUM.THEPLACE.ID.http://host1.domain.com:8001/thePlace$5050");
+        keys.add("DUMDUM.THEPLACE.ID.http://host2.domain.com:8001/thePlace$5050");
+        doNothing().when(this.master).addPeerDirectories(any(Set.class), any(Boolean.class));
+        this.master.addPlaces(keys);
+        this.master.adaptiveRouting = true;
+        final String first = this.master.nextKeys("DUMDUM::ID", null, null).get(0).getServiceLocation();
+        final String other = first.contains("host1") ? "http://host2.domain.com:8001/thePlace" : "http://host1.domain.com:8001/thePlace";
+
+        PlaceLoad.reset();
+        try {
+            PlaceLoad.started(first);
+            PlaceLoad.started(first);
+            PlaceLoad.finished(first, TimeUnit.MILLISECONDS.toNanos(50));
+            // nothing is known about the other one, so it is not assumed to be idle
+            for (int i = 0; i < 10; i++) {
+                assertEquals(first, this.master.nextKeys("DUMDUM::ID", null, null).get(0).getServiceLocation());
+            }
+
+            // idle but penalised
+            PlaceLoad.started(other);
+            PlaceLoad.finished(other, TimeUnit.MILLISECONDS.toNanos(50));
+            for (final DirectoryEntry e : this.master.entryMap.collectAllMatching("*.*.*." + other)) {
+                e.addPathWeight(-20);
+            }
+            this.master.entryMapChanged();
+            for (int i = 0; i < 10; i++) {
+                assertEquals(first, this.master.nextKeys("DUMDUM::ID", null, null).get(0).getServiceLocation());
+            }
+        } finally {
+            PlaceLoad.reset();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testDeltaRemovesOnlyPeerEntries() {
+        final String peerKey = "UNKNOWN.PEERPLACE.ID.http://peer.domain.com:8001/PeerPlace";
+        final String thirdKey = "UNKNOWN.THIRDPLACE.ID.http://third.domain.com:8001/ThirdPlace";
+        final List<String> keys = new ArrayList<>();
+        keys.add(peerKey + "$5050");
+        keys.add(thirdKey + "$5050");
+        doNothing().when(this.master).addPeerDirectories(any(Set.class), any(Boolean.class));
+        this.master.addPlaces(keys);
+
+        final List<DirectoryChange> changes = new ArrayList<>();
+        changes.add(DirectoryChange.removed(new DirectoryEntry(peerKey)));
+        changes.add(DirectoryChange.removed(new DirectoryEntry(thirdKey)));
+        this.master.applyRemoteDelta("*.*.*.http://peer.domain.com:8001/DirectoryPlace", new DirectoryDeltaResponseEntity("epoch", 2, true, changes),
+                this.master.entryMap);
+
+        assertTrue(this.master.entryMap.collectAllMatching(peerKey).isEmpty(), "Peer entry must be removed");
+        assertEquals(1, this.master.entryMap.collectAllMatching(thirdKey).size(), "Third host entry must be left for its own host");
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     void testAddEntryInMasterUsingFullKeys() {
@@ -0,0 +1,57 @@
+package emissary.directory;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GlobMatcherTest extends UnitTest {
+
+    private static final String[] KEYS = {
+            "UNKNOWN.FOOPLACE.ID.http://hostb.domain.com:8001/thePlace$5050",
+            "UNKNOWN.FOOPLACE.ID.http://hostb.domain.com:8001/thePlace",
+            "*.*.*.http://hosta.domain.com:8001/DirectoryPlace",
+            "A.B.C.http://example.com:1234/SomePlace",
+            "aaa",
+            "ab",
+            "",
+            "x*y?z"};
+
+    private static final String[] PATTERNS = {
+            "UNKNOWN.*", "*.FOOPLACE.*", "*.ID.*", "*.*.*.*", "UNKNOWN.*.*.*", "UNKNOWN.FOOPLACE.ID.*", "*.*.*.*x", "A.*.*.*", "*.B.*.*",
+            "*.*.DORK.*", "UNKNOWN.?OOPLACE.?D.http://hostb.domain.com:?001/thePlace$5050", "UNKNOWN.?FOOPLACE.ID.*",
+            "*.*.*.http://hosta.domain.com:8001/*", "*", "?", "a*", "*a", "a*a", "**", "*?", "?*", "a?*", "x*y?z", "x**z", "ab", "",
+            "UNKNOWN.FOOPLACE.ID.http://hostb.domain.com:8001/thePlace"};
+
+    @Test
+    void testSameAnswersAsGmatch() {
+        for (final String pattern : PATTERNS) {
+            final GlobMatcher matcher = GlobMatcher.compile(pattern);
+            for (final String key : KEYS) {
+                assertEquals(KeyManipulator.gmatch(key, pattern), matcher.matches(key), "Match of " + key + " against " + pattern);
+            }
+        }
+    }
+
+    @Test
+    void testLongKeys() {
+        final StringBuilder sb = new StringBuilder("UNKNOWN.FOOPLACE.ID.http://host.domain.com:8001/");
+        for (int i = 0; i < 100000; i++) {
+            sb.append('x');
+        }
+        final String key = sb.toString();
+        assertTrue(GlobMatcher.compile("UNKNOWN.*.ID.*").matches(key));
+        assertFalse(GlobMatcher.compile("UNKNOWN.*.ID.*y").matches(key));
+    }
+
+    @Test
+    void testHasWildcard() {
+        assertTrue(GlobMatcher.hasWildcard("a*"));
+        assertTrue(GlobMatcher.hasWildcard("a?"));
+        assertFalse(GlobMatcher.hasWildcard("host:8001"));
+        assertFalse(GlobMatcher.compile("UNKNOWN.FOOPLACE.ID.http://host:8001/Place").isWildcard());
+    }
+}
@@ -19,8 +19,11 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import javax.ws.rs.core.MediaType;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -86,4 +89,149 @@ class HeartbeatManagerTest extends UnitTest {
         assertTrue(response.getContentString().contains("Bad request -> status: 401 message: " + responseString));
     }
 
+    @Test
+    void testHungPeerDoesNotDelayOthers() throws Exception {
+        final String directoryKey = "EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://localhost:8001/DirectoryPlace";
+        final String hung = KeyManipulator.getDefaultDirectoryKey("EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://remote1:8001/DirectoryPlace");
+        final String fine = KeyManipulator.getDefaultDirectoryKey("EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://remote2:8001/DirectoryPlace");
+        final CountDownLatch release = new CountDownLatch(1);
+        final HeartbeatManager mgr = new HeartbeatManager(directoryKey, 3600, 3600) {
+            @Override
+            protected Report probe(final String key) {
+                if (key.equals(hung)) {
+                    // like a blocked socket read, cancelling does not get it back
+                    awaitUninterruptibly(release);
+                }
+                return new Report(true, "ok");
+            }
+
+            @Override
+            public void takeFailureAction(final String key, final boolean permanent) {
+                // no directory to notify
+            }
+        };
+        try {
+            mgr.setTimeoutSeconds(1);
+            mgr.setFailThreshold(2);
+            mgr.addRemoteDirectory(hung);
+            mgr.addRemoteDirectory(fine);
+
+            final long start = System.nanoTime();
+            mgr.heartbeatAll();
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5, "Round waits for the deadline, not the hung peer");
+            assertTrue(mgr.isHealthy(fine));
+            assertEquals(1, mgr.directories.get(hung).failCount());
+
+            // still out from the last round so not sent again, and counted as another failure
+            mgr.heartbeatAll();
+            assertFalse(mgr.isHealthy(hung));
+            assertTrue(mgr.isHealthy(fine));
+
+            release.countDown();
+            final HeartbeatManager.Probe out = mgr.inFlight.get(hung);
+            for (int i = 0; i < 500 && out.isRunning(); i++) {
+                Thread.sleep(10);
+            }
+            mgr.heartbeatAll();
+            assertTrue(mgr.isHealthy(hung));
+        } finally {
+            release.countDown();
+            mgr.shutDown();
+        }
+    }
+
+    @Test
+    void testQueuedHeartbeatsAreTimedFromStart() throws Exception {
+        final String directoryKey = "EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://localhost:8001/DirectoryPlace";
+        final HeartbeatManager mgr = new HeartbeatManager(directoryKey, 3600, 3600) {
+            @Override
+            protected Report probe(final String key) {
+                try {
+                    Thread.sleep(600);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return new Report(false, "interrupted");
+                }
+                return new Report(true, "ok");
+            }
+        };
+        try {
+            mgr.setTimeoutSeconds(1);
+            mgr.setThreads(1);
+            for (int i = 1; i <= 3; i++) {
+                mgr.addRemoteDirectory(KeyManipulator.getDefaultDirectoryKey("EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://remote" + i
+                        + ":8001/DirectoryPlace"));
+            }
+
+            // each answers within the deadline once a worker gets to it, though the last waits longer than that to start
+            mgr.heartbeatAll();
+            for (final String dir : mgr.directories.keySet()) {
+                assertEquals(0, mgr.directories.get(dir).failCount(), dir);
+            }
+            assertTrue(mgr.inFlight.isEmpty());
+        } finally {
+            mgr.shutDown();
+        }
+    }
+
+    @Test
+    void testHeartbeatsNoWorkerStartedAreNotFailures() throws Exception {
+        final String directoryKey = "EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://localhost:8001/DirectoryPlace";
+        final String one = KeyManipulator.getDefaultDirectoryKey("EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://remote1:8001/DirectoryPlace");
+        final String two = KeyManipulator.getDefaultDirectoryKey("EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://remote2:8001/DirectoryPlace");
+        final CountDownLatch release = new CountDownLatch(1);
+        final HeartbeatManager mgr = new HeartbeatManager(directoryKey, 3600, 1) {
+            @Override
+            protected Report probe(final String key) {
+                return new Report(true, "ok");
+            }
+
+            @Override
+            public void takeFailureAction(final String key, final boolean permanent) {
+                // no directory to notify
+            }
+        };
+        try {
+            mgr.setTimeoutSeconds(1);
+            mgr.setThreads(1);
+            mgr.addRemoteDirectory(one);
+            mgr.addRemoteDirectory(two);
+            mgr.directories.get(one).addReport(false, "down");
+            // the only worker is busy past the time the next round is due
+            mgr.workers.execute(() -> awaitUninterruptibly(release));
+
+            final long start = System.nanoTime();
+            mgr.heartbeatAll();
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5, "Round stops waiting when the next is due");
+            assertEquals(1, mgr.directories.get(one).failCount(), "Heartbeat never sent must not count either way");
+            assertEquals(0, mgr.directories.get(two).failCount(), "Heartbeat never sent must not count either way");
+            assertTrue(mgr.inFlight.isEmpty());
+
+            release.countDown();
+            mgr.heartbeatAll();
+            assertEquals(0, mgr.directories.get(one).failCount());
+            assertTrue(mgr.isHealthy(two));
+        } finally {
+            release.countDown();
+            mgr.shutDown();
+        }
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    latch.await(30, TimeUnit.SECONDS);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package emissary.directory;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaceLoadTest extends UnitTest {
+
+    private static final String PLACE = "http://localhost:8001/ToLowerPlace";
+
+    @Override
+    @AfterEach
+    public void tearDown() throws Exception {
+        super.tearDown();
+        PlaceLoad.reset();
+    }
+
+    @Test
+    void testUnknownPlaceIsIdle() {
+        assertEquals(0, PlaceLoad.getInFlight(PLACE));
+        assertEquals(0.0, PlaceLoad.getServiceMillis(PLACE));
+        assertEquals(0.0, PlaceLoad.getScore(PLACE));
+        assertFalse(PlaceLoad.isObserved(PLACE));
+    }
+
+    @Test
+    void testScoreIsInFlightTimesServiceTime() {
+        PlaceLoad.started(PLACE);
+        PlaceLoad.finished(PLACE, TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(100.0, PlaceLoad.getServiceMillis(PLACE), 0.001);
+        assertTrue(PlaceLoad.isObserved(PLACE));
+        // idle again
+        assertEquals(0.0, PlaceLoad.getScore(PLACE));
+
+        PlaceLoad.started(PLACE);
+        PlaceLoad.started(PLACE);
+        PlaceLoad.started(PLACE);
+        PlaceLoad.finished(PLACE, TimeUnit.MILLISECONDS.toNanos(200));
+        // moving average moves a fifth of the way to the new time
+        assertEquals(120.0, PlaceLoad.getServiceMillis(PLACE), 0.001);
+        assertEquals(2, PlaceLoad.getInFlight(PLACE));
+        assertEquals(240.0, PlaceLoad.getScore(PLACE), 0.001);
+    }
+}
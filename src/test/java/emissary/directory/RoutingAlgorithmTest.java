@@ -366,6 +366,20 @@ class RoutingAlgorithmTest extends UnitTest {
         assertEquals(foo2.getKey(), result.getKey(), "Routing must take place to fully qualified key");
     }
 
+    @Test
+    void testRoutingFollowsDirectoryChanges() {
+        this.dir.addTestEntries(this.unknowns);
+        this.payload.pushCurrentForm("UNKNOWN");
+        DirectoryEntry result = this.agent.getNextKeyAccess(this.dir, this.payload);
+        assertEquals(this.unknowns.get(0).getKey(), result.getKey(), "Next keys returns lowest cost");
+
+        final DirectoryEntry cheaper = new DirectoryEntry("UNKNOWN.s0.ID.http://example.com:8001/U$4050");
+        this.dir.addTestEntry(cheaper);
+        this.agent.clearQueue();
+        result = this.agent.getNextKeyAccess(this.dir, this.payload);
+        assertEquals(cheaper.getKey(), result.getKey(), "Routing must see newly added entry");
+    }
+
     /**
      * Extend directory place to allow us to access the entryMap
      */
@@ -404,5 +418,9 @@ class RoutingAlgorithmTest extends UnitTest {
         public int queueSize() {
             return nextKeyQueue.size();
         }
+
+        public void clearQueue() {
+            nextKeyQueue.clear();
+        }
     }
 }
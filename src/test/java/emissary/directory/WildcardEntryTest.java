@@ -2,6 +2,7 @@ package emissary.directory;
 
 import emissary.test.core.junit5.UnitTest;
 
+import com.codahale.metrics.MetricRegistry;
 import org.junit.jupiter.api.Test;
 
 import java.util.Iterator;
@@ -9,6 +10,8 @@ import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class WildcardEntryTest extends UnitTest {
@@ -128,4 +131,52 @@ class WildcardEntryTest extends UnitTest {
 
         assertEquals(count, expected.length, "Too few results");
     }
+
+    @Test
+    void testWildcardedEntryIsCachedUntilMapChanges() {
+        final DirectoryEntryMap map = new DirectoryEntryMap();
+        map.addEntry(new DirectoryEntry("FOO-BAR(*)-*.FOOPLACE.ID.http://host.domain.com:8001/FooPlace", "foo", 50, 50));
+        map.addEntry(new DirectoryEntry("*.ANYPLACE.ID.http://host.domain.com:8001/AnyPlace", "any", 60, 50));
+
+        WildcardCache.resetStats();
+        final DirectoryEntryList first = WildcardEntry.getWildcardedEntry("FOO-BAR(ASCII)-BAZ::ID", map);
+        assertEquals(2, first.size(), "Both wildcard forms merged");
+        assertEquals("FOOPLACE", first.getEntry(0).getServiceName(), "Cheapest first");
+        assertSame(first, WildcardEntry.getWildcardedEntry("FOO-BAR(ASCII)-BAZ::ID", map), "Result reused");
+        assertEquals(1, WildcardCache.getHits());
+        assertEquals(1, WildcardCache.getMisses());
+        assertEquals(0.5, WildcardCache.getHitRate(), 0.001);
+
+        map.addEntry(new DirectoryEntry("FOO-*.CHEAPPLACE.ID.http://host.domain.com:8001/CheapPlace", "cheap", 10, 50));
+        final DirectoryEntryList second = WildcardEntry.getWildcardedEntry("FOO-BAR(ASCII)-BAZ::ID", map);
+        assertNotSame(first, second, "Result rebuilt after change");
+        assertEquals(3, second.size());
+        assertEquals("CHEAPPLACE", second.getEntry(0).getServiceName(), "New cheapest first");
+
+        map.markChanged();
+        assertNotSame(second, WildcardEntry.getWildcardedEntry("FOO-BAR(ASCII)-BAZ::ID", map), "Result rebuilt when marked");
+        assertEquals(3, WildcardCache.getMisses());
+    }
+
+    @Test
+    void testHitsAndMissesAreReported() {
+        final MetricRegistry registry = new MetricRegistry();
+        WildcardCache.registerMetrics(registry);
+        final WildcardCache cache = new WildcardCache();
+        cache.get("A::ID", 0, id -> new DirectoryEntryList());
+        cache.get("A::ID", 0, id -> new DirectoryEntryList());
+        cache.get("A::ID", 0, id -> new DirectoryEntryList());
+        assertEquals(2, registry.counter(WildcardCache.METRIC_PREFIX + "hits").getCount());
+        assertEquals(1, registry.counter(WildcardCache.METRIC_PREFIX + "misses").getCount());
+    }
+
+    @Test
+    void testCacheIsBounded() {
+        final WildcardCache cache = new WildcardCache(2);
+        cache.get("A::ID", 0, id -> new DirectoryEntryList());
+        cache.get("B::ID", 0, id -> new DirectoryEntryList());
+        assertEquals(2, cache.size());
+        cache.get("C::ID", 0, id -> new DirectoryEntryList());
+        assertEquals(1, cache.size(), "Full cache is flushed");
+    }
 }
@@ -1,6 +1,7 @@
 package emissary.kff;
 
 import emissary.core.channels.FillChannelFactory;
+import emissary.core.channels.InMemoryChannelFactory;
 import emissary.core.channels.SeekableByteChannelFactory;
 import emissary.test.core.junit5.UnitTest;
 
@@ -8,6 +9,7 @@ import org.junit.jupiter.api.Test;
 
 import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
@@ -168,4 +170,33 @@ class ChecksumCalculatorTest extends UnitTest {
             assertArrayEquals(crByte.getHash("SHA-256"), crSbcf.getHash("SHA-256"), "SHA-256's do not match!");
         }
     }
+
+    @Test
+    void testSinglePassMatchesByteArrayDigests() throws Exception {
+        final Random random = new Random(1234);
+        for (final int size : new int[] {0, 1, 100, ChecksumCalculator.BUFFER_SIZE, ChecksumCalculator.BUFFER_SIZE * 2 + 17}) {
+            final byte[] b = new byte[size];
+            random.nextBytes(b);
+            // some runs of the same byte so ssdeep has to fall back to smaller block sizes
+            for (int i = 0; i < size / 3; i++) {
+                b[i] = 0;
+            }
+            final SeekableByteChannelFactory sbcf = InMemoryChannelFactory.create(b);
+
+            for (final boolean parallel : new boolean[] {false, true}) {
+                final ChecksumCalculator cc = new ChecksumCalculator(new String[] {"CRC32", "MD5", "SHA-1", "SHA-256", "SSDEEP"});
+                cc.setParallel(parallel);
+                assertEquals(parallel, cc.isParallel());
+                final ChecksumResults crByte = cc.digest(b);
+                final ChecksumResults crSbcf = cc.digest(sbcf);
+
+                final String which = size + " bytes, parallel " + parallel;
+                assertEquals(crByte.getCrc(), crSbcf.getCrc(), "CRC's do not match for " + which);
+                assertEquals(crByte.getSsdeep(), crSbcf.getSsdeep(), "SSDEEP's do not match for " + which);
+                assertArrayEquals(crByte.getHash("MD5"), crSbcf.getHash("MD5"), "MD5's do not match for " + which);
+                assertArrayEquals(crByte.getHash("SHA-1"), crSbcf.getHash("SHA-1"), "SHA-1's do not match for " + which);
+                assertArrayEquals(crByte.getHash("SHA-256"), crSbcf.getHash("SHA-256"), "SHA-256's do not match for " + which);
+            }
+        }
+    }
 }
@@ -0,0 +1,106 @@
+package emissary.kff;
+
+import emissary.test.core.junit5.UnitTest;
+import emissary.util.io.ResourceReader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KffBloomFilterTest extends UnitTest {
+
+    private static final int RECORD_LENGTH = 24;
+
+    @TempDir
+    Path tempDir;
+
+    private Path data;
+
+    @Override
+    @BeforeEach
+    public void setUp() throws Exception {
+        data = tempDir.resolve("known.bin");
+        Files.copy(Paths.get(new ResourceReader().getResource("emissary/kff/KffFileTest/tmp.bin").toURI()), data);
+        KffBloomFilter.resetStats();
+    }
+
+    @Test
+    void testEveryRecordPassesAndMostOthersDoNot() throws Exception {
+        KffBloomFilter bloom = KffBloomFilter.load(data.toString(), RECORD_LENGTH, 0.01);
+        byte[] all = Files.readAllBytes(data);
+        for (int r = 0; r < all.length / RECORD_LENGTH; r++) {
+            assertTrue(bloom.mightContain(Arrays.copyOfRange(all, r * RECORD_LENGTH, r * RECORD_LENGTH + 20)), "Record " + r);
+        }
+
+        Random random = new Random(7);
+        int passed = 0;
+        for (int i = 0; i < 1000; i++) {
+            byte[] hash = new byte[20];
+            random.nextBytes(hash);
+            if (bloom.mightContain(hash)) {
+                passed++;
+            }
+        }
+        assertTrue(passed < 50, "Too many random hashes passed: " + passed);
+        assertEquals(1000 - passed, KffBloomFilter.getMisses());
+    }
+
+    @Test
+    void testSavedNextToDataFileAndRebuiltWhenStale() throws Exception {
+        KffBloomFilter built = KffBloomFilter.load(data.toString(), RECORD_LENGTH, 0.01);
+        Path saved = Paths.get(data + KffBloomFilter.SUFFIX);
+        assertTrue(Files.exists(saved));
+
+        KffBloomFilter loaded = KffBloomFilter.load(data.toString(), RECORD_LENGTH, 0.5);
+        assertEquals(built.getBitCount(), loaded.getBitCount(), "Saved filter should be used as is");
+        assertEquals(built.getHashCount(), loaded.getHashCount());
+
+        Files.setLastModifiedTime(data, FileTime.fromMillis(Files.getLastModifiedTime(data).toMillis() - 60000));
+        KffBloomFilter rebuilt = KffBloomFilter.load(data.toString(), RECORD_LENGTH, 0.5);
+        assertTrue(rebuilt.getBitCount() < built.getBitCount(), "Changed data file should rebuild with the new rate");
+
+        Files.write(saved, new byte[] {1, 2, 3});
+        KffBloomFilter repaired = KffBloomFilter.load(data.toString(), RECORD_LENGTH, 0.01);
+        assertEquals(built.getBitCount(), repaired.getBitCount(), "Corrupt filter should be rebuilt");
+    }
+
+    @Test
+    void testKffFileScreensLookups() throws Exception {
+        byte[] first = Arrays.copyOf(Files.readAllBytes(data), RECORD_LENGTH);
+
+        for (KffFilter filter : new KffFilter[] {new KffFile(data.toString(), "bloomed", KffFilter.FilterType.Ignore),
+                new KffMappedFile(data.toString(), "bloomed", KffFilter.FilterType.Ignore)}) {
+            if (filter instanceof KffFile) {
+                ((KffFile) filter).enableBloomFilter(0.01);
+                assertTrue(((KffFile) filter).isBloomFilterEnabled());
+            } else {
+                ((KffMappedFile) filter).enableBloomFilter(0.01);
+                assertTrue(((KffMappedFile) filter).isBloomFilterEnabled());
+            }
+            KffBloomFilter.resetStats();
+
+            ChecksumResults known = new ChecksumResults();
+            known.setHash("SHA-1", Arrays.copyOf(first, 20));
+            assertTrue(filter.check("known", known));
+            assertEquals(1, KffBloomFilter.getHits());
+
+            ChecksumResults unknown = new ChecksumResults();
+            byte[] hash = Arrays.copyOf(first, 20);
+            hash[0] = (byte) 0xff;
+            unknown.setHash("SHA-1", hash);
+            assertFalse(filter.check("unknown", unknown));
+            assertEquals(1, KffBloomFilter.getMisses() + KffBloomFilter.getFalsePositives());
+        }
+    }
+}
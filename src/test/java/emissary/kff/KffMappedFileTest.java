@@ -0,0 +1,120 @@
+package emissary.kff;
+
+import emissary.test.core.junit5.UnitTest;
+import emissary.util.io.ResourceReader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KffMappedFileTest extends UnitTest {
+
+    private static final String expectedShaHash = "000000206738748EDD92C4E3D2E823896700F849";
+    private static final byte[] expectedSha1Bytes = {(byte) 0, (byte) 0, (byte) 0, (byte) 32, (byte) 103, (byte) 56, (byte) 116,
+            (byte) -114, (byte) -35, (byte) -110, (byte) -60, (byte) -29, (byte) -46, (byte) -24, (byte) 35, (byte) -119,
+            (byte) 103, (byte) 0, (byte) -8, (byte) 73};
+    private static final byte[] expectedCrcBytes = {(byte) -21, (byte) -47, (byte) 5, (byte) -96};
+    private static final String resourcePath = new ResourceReader()
+            .getResource("emissary/kff/KffFileTest/tmp.bin").getPath();
+
+    @Test
+    void testKffMappedFileCheck() throws Exception {
+        KffMappedFile kffFile = new KffMappedFile(resourcePath, "testFilter", KffFilter.FilterType.Unknown);
+        kffFile.setPreferredAlgorithm("SHA-1");
+        assertEquals("testFilter", kffFile.getName());
+        assertEquals(46, kffFile.getRecordCount());
+        assertEquals(1, kffFile.getPageCount());
+
+        ChecksumResults results = new ChecksumResults();
+        results.setHash("SHA-1", expectedSha1Bytes);
+        results.setCrc(crcOf(expectedCrcBytes, 0));
+        assertTrue(kffFile.check(expectedShaHash, results));
+
+        byte[] incorrectSha1Bytes = Arrays.copyOf(expectedSha1Bytes, expectedSha1Bytes.length);
+        incorrectSha1Bytes[19] = (byte) 70;
+        results = new ChecksumResults();
+        results.setHash("SHA-1", incorrectSha1Bytes);
+        assertFalse(kffFile.check(expectedShaHash, results));
+
+        results = new ChecksumResults();
+        results.setHash("SHA-1", expectedSha1Bytes);
+        results.setCrc(0x01020304L);
+        assertFalse(kffFile.check(expectedShaHash, results), "Hash alone should not match when the CRC differs");
+
+        results = new ChecksumResults();
+        results.setHash("MD5", expectedSha1Bytes);
+        assertFalse(kffFile.check(expectedShaHash, results), "Missing preferred algorithm should not match");
+    }
+
+    @Test
+    void testAgreesWithKffFileOnEveryPageSize() throws Exception {
+        KffFile kffFile = new KffFile(resourcePath, "testFilter", KffFilter.FilterType.Unknown);
+        for (int recordsPerPage : new int[] {1, 2, 3, 7, 46, 100}) {
+            KffMappedFile mapped = new KffMappedFile(resourcePath, "testFilter", KffFilter.FilterType.Unknown, 24, recordsPerPage);
+            assertEquals((46 + recordsPerPage - 1) / recordsPerPage, mapped.getPageCount());
+            for (long r = 0; r < mapped.getRecordCount(); r++) {
+                ChecksumResults present = resultsFor(mapped.getRecord(r));
+                assertTrue(mapped.check("record " + r, present), "Record " + r + " with " + recordsPerPage + " records per page");
+                assertTrue(kffFile.check("record " + r, present));
+
+                // nudge the last hash byte so the probe falls between records
+                byte[] rec = mapped.getRecord(r);
+                rec[19]++;
+                ChecksumResults absent = resultsFor(rec);
+                assertEquals(kffFile.check("missing " + r, absent), mapped.check("missing " + r, absent));
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentChecks() throws Exception {
+        KffMappedFile mapped = new KffMappedFile(resourcePath, "testFilter", KffFilter.FilterType.Unknown, 24, 4);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(pool.submit(() -> {
+                    int found = 0;
+                    for (int i = 0; i < 1000; i++) {
+                        if (mapped.check("concurrent", resultsFor(mapped.getRecord(i % mapped.getRecordCount())))) {
+                            found++;
+                        }
+                    }
+                    return found;
+                }));
+            }
+            for (Future<Integer> f : futures) {
+                assertEquals(1000, f.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testKffMappedFileMain() {
+        assertDoesNotThrow(() -> KffMappedFile.main(new String[] {resourcePath, resourcePath}));
+        assertDoesNotThrow(() -> KffMappedFile.main(new String[] {"-bench", resourcePath, "1000", "2"}));
+    }
+
+    private static ChecksumResults resultsFor(byte[] rec) {
+        ChecksumResults results = new ChecksumResults();
+        results.setHash("SHA-1", Arrays.copyOf(rec, 20));
+        results.setCrc(crcOf(rec, 20));
+        return results;
+    }
+
+    private static long crcOf(byte[] b, int offset) {
+        return ((b[offset] & 0xffL) << 24) | ((b[offset + 1] & 0xffL) << 16) | ((b[offset + 2] & 0xffL) << 8) | (b[offset + 3] & 0xffL);
+    }
+}
@@ -2,7 +2,9 @@ package emissary.kff;
 
 import emissary.kff.KffFilter.FilterType;
 import emissary.test.core.junit5.UnitTest;
+import emissary.util.Hexl;
 
+import net.spy.memcached.ConnectionFactoryBuilder;
 import net.spy.memcached.MemcachedClient;
 import net.spy.memcached.internal.GetFuture;
 import net.spy.memcached.internal.OperationFuture;
@@ -19,9 +21,11 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -104,6 +108,109 @@ class KffMemcachedTest extends UnitTest {
         assertTrue(mcdFilter.check(testIdWithSpaces, createSums(mcdFilter)), "Filter should hit");
     }
 
+    @Test
+    void testBatchedLookupsAgainstLocalServer() throws Exception {
+        try (LocalMemcached server = new LocalMemcached()) {
+            MemcachedClient client = createLocalClient(server);
+            try {
+                KffMemcached mcdFilter = new KffMemcached(testIdWithSpaces, "KFF", FilterType.Duplicate, client);
+                setPrivateMembersForTesting(mcdFilter, Boolean.FALSE);
+                mcdFilter.enableBatching(50, 64, 2);
+                assertTrue(mcdFilter.isBatching());
+                server.setDelayMillis(20);
+
+                int count = 32;
+                assertEquals(0, countHits(mcdFilter, count), "Nothing should be known yet");
+                assertTrue(server.getGets() < count, "Lookups should have been batched but took " + server.getGets() + " gets");
+                assertEquals(count, server.getKeysAsked());
+
+                for (int i = 0; i < count; i++) {
+                    String key = Hexl.toUnformattedHexString(sumsFor(mcdFilter, i).getHash(mcdFilter.getPreferredAlgorithm()));
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (!server.contains(key) && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(10);
+                    }
+                }
+                assertEquals(count, countHits(mcdFilter, count), "Everything should be known now");
+                mcdFilter.shutdown();
+                assertFalse(mcdFilter.isBatching());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void testRecentResultsSkipMemcached() throws Exception {
+        try (LocalMemcached server = new LocalMemcached()) {
+            MemcachedClient client = createLocalClient(server);
+            try {
+                KffMemcached mcdFilter = new KffMemcached(testIdWithSpaces, "KFF", FilterType.Duplicate, client);
+                setPrivateMembersForTesting(mcdFilter, Boolean.FALSE);
+                mcdFilter.setRecentResults(100, 60);
+
+                assertFalse(mcdFilter.check("id-0", sumsFor(mcdFilter, 0)), "Filter should not hit");
+                assertTrue(mcdFilter.check("id-1", sumsFor(mcdFilter, 0)), "Filter should hit from the recent results");
+                assertEquals(1, server.getGets(), "Only the first check should reach memcached");
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void testRecentResultsOnlyLimitedByRelativeAgeoff() throws Exception {
+        KffMemcached mcdFilter = new KffMemcached(testIdWithSpaces, "KFF", FilterType.Duplicate, mockMemcachedClient);
+        mcdFilter.ageoff = 30;
+        mcdFilter.setRecentResults(100, 60);
+        assertEquals(TimeUnit.SECONDS.toMillis(30), recentTtlMillis(mcdFilter), "Relative age-off limits the recent results");
+
+        // never expiring
+        mcdFilter.ageoff = 0;
+        mcdFilter.setRecentResults(100, 60);
+        assertEquals(TimeUnit.SECONDS.toMillis(60), recentTtlMillis(mcdFilter), "Age-off of 0 never expires");
+
+        // a unix time rather than seconds from now
+        mcdFilter.ageoff = 2592001;
+        mcdFilter.setRecentResults(100, 60);
+        assertEquals(TimeUnit.SECONDS.toMillis(60), recentTtlMillis(mcdFilter), "Age-off over 30 days is a point in time");
+    }
+
+    private static long recentTtlMillis(KffMemcached mcd) throws NoSuchFieldException, IllegalAccessException {
+        Field ttlField = KffMemcached.RecentResults.class.getDeclaredField("ttlMillis");
+        ttlField.setAccessible(true);
+        return ttlField.getLong(mcd.recent);
+    }
+
+    private static MemcachedClient createLocalClient(LocalMemcached server) throws IOException {
+        return new MemcachedClient(new ConnectionFactoryBuilder().setDaemon(true).setOpTimeout(5000).build(),
+                Collections.singletonList(server.getAddress()));
+    }
+
+    private static ChecksumResults sumsFor(KffMemcached mcd, int i) throws NoSuchAlgorithmException {
+        return new ChecksumCalculator(Collections.singletonList(mcd.getPreferredAlgorithm())).digest(("payload " + i).getBytes());
+    }
+
+    private static int countHits(KffMemcached mcd, int count) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int n = i;
+                results.add(pool.submit(() -> mcd.check("id-" + n, sumsFor(mcd, n))));
+            }
+            int hits = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(30, TimeUnit.SECONDS)) {
+                    hits++;
+                }
+            }
+            return hits;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     private ChecksumResults createSums(KffMemcached mcd) throws NoSuchAlgorithmException {
         List<String> kffalgs = new ArrayList<>();
         kffalgs.add(mcd.getPreferredAlgorithm());
@@ -0,0 +1,168 @@
+package emissary.kff;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in memcached server for tests. It speaks enough of the text protocol for the spymemcached client to get and
+ * set values, keeps them in memory and counts the get commands it is sent.
+ */
+final class LocalMemcached implements Closeable {
+
+    private final ServerSocket server;
+    private final Map<String, byte[][]> values = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Socket> clients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger gets = new AtomicInteger();
+    private final AtomicInteger keysAsked = new AtomicInteger();
+    private volatile int delayMillis;
+
+    LocalMemcached() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "LocalMemcached-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    InetSocketAddress getAddress() {
+        return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+    }
+
+    /** Number of get commands received */
+    int getGets() {
+        return gets.get();
+    }
+
+    /** Number of keys asked for over all get commands */
+    int getKeysAsked() {
+        return keysAsked.get();
+    }
+
+    /** Hold each get answer back this long */
+    void setDelayMillis(int delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                clients.add(socket);
+                Thread t = new Thread(() -> serve(socket), "LocalMemcached-client");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (InputStream in = new BufferedInputStream(socket.getInputStream()); OutputStream out = socket.getOutputStream()) {
+            String line;
+            while ((line = readLine(in)) != null) {
+                String[] parts = line.trim().split(" +");
+                String command = parts[0];
+                if ("get".equals(command) || "gets".equals(command)) {
+                    gets.incrementAndGet();
+                    keysAsked.addAndGet(parts.length - 1);
+                    pause();
+                    ByteArrayOutputStream answer = new ByteArrayOutputStream();
+                    for (int i = 1; i < parts.length; i++) {
+                        byte[][] value = values.get(parts[i]);
+                        if (value != null) {
+                            answer.write(("VALUE " + parts[i] + " " + new String(value[0], StandardCharsets.US_ASCII) + " " + value[1].length
+                                    + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                            answer.write(value[1]);
+                            answer.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                        }
+                    }
+                    answer.write("END\r\n".getBytes(StandardCharsets.US_ASCII));
+                    write(out, answer.toByteArray());
+                } else if ("set".equals(command) || "add".equals(command)) {
+                    byte[] data = new byte[Integer.parseInt(parts[4])];
+                    int read = 0;
+                    while (read < data.length) {
+                        int n = in.read(data, read, data.length - read);
+                        if (n < 0) {
+                            return;
+                        }
+                        read += n;
+                    }
+                    readLine(in);
+                    boolean stored = "set".equals(command) || !values.containsKey(parts[1]);
+                    if (stored) {
+                        values.put(parts[1], new byte[][] {parts[2].getBytes(StandardCharsets.US_ASCII), data});
+                    }
+                    if (parts.length < 6 || !"noreply".equals(parts[5])) {
+                        write(out, (stored ? "STORED\r\n" : "NOT_STORED\r\n").getBytes(StandardCharsets.US_ASCII));
+                    }
+                } else if ("version".equals(command)) {
+                    write(out, "VERSION 1.6.0\r\n".getBytes(StandardCharsets.US_ASCII));
+                } else if ("quit".equals(command)) {
+                    return;
+                } else {
+                    write(out, "ERROR\r\n".getBytes(StandardCharsets.US_ASCII));
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private void pause() {
+        int delay = delayMillis;
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void write(OutputStream out, byte[] bytes) throws IOException {
+        synchronized (out) {
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int len = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, len, StandardCharsets.US_ASCII);
+            }
+            line.write(b);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Socket socket : clients) {
+            socket.close();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package emissary.kff;
 
+import emissary.core.channels.InMemoryChannelFactory;
 import emissary.test.core.junit5.UnitTest;
 import emissary.util.Hexl;
 
@@ -7,6 +8,7 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
@@ -180,4 +182,22 @@ final class SsdeepTest extends UnitTest {
         // Check that the scores match the expected scores.
         assertArrayEquals(RANDOM_COMPARE_EXPECTED_SCORES, scores, "Mismatched random scores");
     }
+
+    @Test
+    void testFuzzyHasherMatchesRepeatedHashing() {
+        final Random random = new Random(99);
+        for (final int size : new int[] {0, 10, 191, 192, 193, 5000, 70000}) {
+            for (final int zeros : new int[] {0, size / 2, size}) {
+                final byte[] data = new byte[size];
+                random.nextBytes(data);
+                Arrays.fill(data, 0, zeros, (byte) 0);
+
+                final Ssdeep.FuzzyHasher hasher = new Ssdeep.FuzzyHasher(size);
+                for (int i = 0; i < size; i += 1000) {
+                    hasher.update(data, i, Math.min(size, i + 1000));
+                }
+                assertEquals(ss.fuzzy_hash(data), hasher.getHash(InMemoryChannelFactory.create(data)), size + " bytes with " + zeros + " zeros");
+            }
+        }
+    }
 }
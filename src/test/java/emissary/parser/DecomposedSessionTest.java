@@ -1,5 +1,7 @@
 package emissary.parser;
 
+import emissary.core.channels.InMemoryChannelFactory;
+import emissary.core.channels.SeekableByteChannelFactory;
 import emissary.test.core.junit5.UnitTest;
 
 import com.google.common.collect.Multimap;
@@ -113,6 +115,20 @@ class DecomposedSessionTest extends UnitTest {
         assertTrue(d.hasData(), "Must indicate presence of data");
     }
 
+    @Test
+    void testDataChannelFactory() {
+        DecomposedSession d = new DecomposedSession();
+        d.setData(DATA);
+        SeekableByteChannelFactory sbcf = InMemoryChannelFactory.create(DATA);
+        d.setDataChannelFactory(sbcf);
+        assertSame(sbcf, d.getDataChannelFactory(), "Data channel factory must be kept");
+        assertNull(d.getData(), "Setting a data channel factory must replace the data array");
+        assertTrue(d.hasData(), "Must indicate presence of data");
+        assertTrue(d.isValid(), "Session with only a data channel factory is valid");
+        d.setData(DATA);
+        assertNull(d.getDataChannelFactory(), "Setting a data array must replace the data channel factory");
+    }
+
     @Test
     void testHasMetaData() {
         DecomposedSession d = new DecomposedSession();
@@ -1,5 +1,7 @@
 package emissary.parser;
 
+import emissary.core.IBaseDataObject;
+import emissary.core.channels.FileChannelFactory;
 import emissary.test.core.junit5.UnitTest;
 
 import org.junit.jupiter.api.AfterEach;
@@ -13,9 +15,12 @@ import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -57,6 +62,34 @@ class SimpleNioParserTest extends UnitTest {
         assertThrows(ParserEOFException.class, sp::getNextSession);
     }
 
+    @Test
+    void testChannelSource() throws Exception {
+        SimpleNioParser sp = new SimpleNioParser(channel);
+        assertTrue(sp.useChannelSource(FileChannelFactory.create(testDataFile)), "Parser must use the channel source");
+        DecomposedSession sd = sp.getNextSession();
+        assertTrue(sd.isValid(), "Session decomposed");
+        assertNull(sd.getData(), "Data must not be copied");
+        assertNotNull(sd.getDataChannelFactory(), "Data must be a view of the source");
+        assertEquals(Integer.toString(DATALEN), sd.getStringMetadataItem(SessionParser.ORIG_DOC_SIZE_KEY), "Original size");
+
+        IBaseDataObject payload = new SessionProducer(sp, "UNKNOWN").createAndLoadDataObject(sd, "name");
+        assertEquals(DATALEN, payload.getChannelSize(), "Payload size");
+        byte[] expected = new byte[DATALEN];
+        Arrays.fill(expected, (byte) 'a');
+        assertArrayEquals(expected, payload.data(), "Payload data read from the source");
+    }
+
+    @Test
+    void testDataChannelFactoryNeedsOneRun() throws ParserException {
+        SimpleNioParser sp = new SimpleNioParser(channel);
+        List<PositionRecord> adjacent = Arrays.asList(new PositionRecord(10, 20), new PositionRecord(30, 5));
+        assertNull(sp.makeDataChannelFactory(adjacent, 0), "No view without a channel source");
+        sp.useChannelSource(FileChannelFactory.create(testDataFile));
+        assertNotNull(sp.makeDataChannelFactory(adjacent, 0), "Adjacent records make one view");
+        List<PositionRecord> gap = Arrays.asList(new PositionRecord(10, 20), new PositionRecord(31, 5));
+        assertNull(sp.makeDataChannelFactory(gap, 0), "Records with a gap between them are copied");
+    }
+
     @BeforeEach
     public void initTestDataFile() throws IOException {
         byte[] DATA = new byte[DATALEN];
@@ -1,6 +1,13 @@
 package emissary.pickup;
 
+import emissary.core.IBaseDataObject;
 import emissary.core.IMobileAgent;
+import emissary.parser.DecomposedSession;
+import emissary.parser.ParserEOFException;
+import emissary.parser.ParserException;
+import emissary.parser.ParserFactory;
+import emissary.parser.SessionParser;
+import emissary.parser.SimpleNioParser;
 import emissary.pickup.file.FilePickUpClient;
 import emissary.pickup.file.FilePickUpPlace;
 import emissary.server.EmissaryServer;
@@ -8,7 +15,24 @@ import emissary.test.core.junit5.UnitTest;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class PickUpPlaceTest extends UnitTest {
@@ -38,4 +62,230 @@ class PickUpPlaceTest extends UnitTest {
         assertTrue(PickUpPlace.implementsPickUpPlace(PickUpSpace.class));
     }
 
+    @Test
+    void testPipelinedSessionsKeepTheirOrder() throws Exception {
+        File file = writeSessions(50);
+        SessionsPlace place = new SessionsPlace(-1);
+        try {
+            assertEquals(50, place.processSessions(file, "sessions"));
+        } finally {
+            place.shutDown();
+        }
+        assertEquals(50, place.dispatched.size());
+        for (int i = 0; i < 50; i++) {
+            IBaseDataObject d = place.dispatched.get(i);
+            assertEquals("sessions-" + (i + 1), d.shortName(), "Sessions must be dispatched in file order");
+            assertEquals(Integer.toString(i + 1), d.getStringParameter(PickUpPlace.SESSION_NUMBER));
+            assertEquals("session " + i, new String(d.data(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void testPipelinedSessionsStopAtParseFailure() throws Exception {
+        File file = writeSessions(20);
+        SessionsPlace place = new SessionsPlace(5);
+        try {
+            assertThrows(ParserException.class, () -> place.processSessions(file, "sessions"));
+        } finally {
+            place.shutDown();
+        }
+        assertEquals(5, place.dispatched.size(), "Sessions parsed before the failure are dispatched");
+    }
+
+    @Test
+    void testChannelSessionsFollowTheFileToTheDoneArea() throws Exception {
+        File file = writeSessions(3);
+        File doneArea = new File(temporaryDirectory, "done");
+        SessionsPlace place = new SessionsPlace(-1);
+        place.channelSessions = true;
+        place.parserFactory = new ParserFactory() {
+            @Override
+            public SessionParser makeSessionParser(SeekableByteChannel channel) {
+                try {
+                    return new SimpleNioParser(channel);
+                } catch (ParserException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        try {
+            assertTrue(place.processDataFile(file, "sessions", false, false, doneArea.getPath()));
+        } finally {
+            place.shutDown();
+        }
+        assertFalse(file.exists(), "File must be moved to the done area");
+        assertEquals(1, place.dispatched.size());
+        IBaseDataObject d = place.dispatched.get(0);
+        assertEquals("session 0\nsession 1\nsession 2\n", new String(d.data(), StandardCharsets.US_ASCII),
+                "Payload must read its data from the moved file");
+    }
+
+    @Test
+    void testChannelSessionsNeedADoneArea() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> new SessionsPlace(-1, 1, false, "CHANNEL_SESSIONS = \"true\"\n"));
+
+        File file = writeSessions(3).getCanonicalFile();
+        File doneArea = new File(temporaryDirectory, "done");
+        SessionsPlace place = new SessionsPlace(-1, 1, false, "CHANNEL_SESSIONS = \"true\"\n" + "DONE_DATA = \"" + doneArea.getPath() + "\"\n");
+        place.holdingArea = file.getParent();
+        place.parserFactory = new ParserFactory() {
+            @Override
+            public SessionParser makeSessionParser(SeekableByteChannel channel) {
+                try {
+                    return new SimpleNioParser(channel);
+                } catch (ParserException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        try {
+            // no done area for this file, so it would be deleted from the holding area
+            assertTrue(place.processDataFile(file, "sessions", false, false, null));
+        } finally {
+            place.shutDown();
+        }
+        assertFalse(file.exists(), "File must not be left in the holding area");
+        assertTrue(new File(doneArea, file.getName()).exists(), "File payloads read from must go to the done area");
+        assertEquals("session 0\nsession 1\nsession 2\n", new String(place.dispatched.get(0).data(), StandardCharsets.US_ASCII),
+                "Payload must read its data from the moved file");
+    }
+
+    @Test
+    void testPipelinedSessionsMatchInlineSessions() throws Exception {
+        File file = writeSessions(10);
+        SessionsPlace inline = new SessionsPlace(-1, 1, true);
+        SessionsPlace pipelined = new SessionsPlace(-1, 3, true);
+        try {
+            assertEquals(10, inline.processSessions(file, "sessions"));
+            assertEquals(10, pipelined.processSessions(file, "sessions"));
+        } finally {
+            inline.shutDown();
+            pipelined.shutDown();
+        }
+        for (int i = 0; i < 10; i++) {
+            IBaseDataObject a = inline.dispatched.get(i);
+            IBaseDataObject b = pipelined.dispatched.get(i);
+            assertEquals("line-" + i, a.shortName(), "Payloads are named by the parser");
+            assertEquals(a.shortName(), b.shortName());
+            assertNull(a.getStringParameter(PickUpPlace.SESSION_NUMBER), "Inline sessions are unchanged");
+            assertEquals(Integer.toString(i + 1), b.getStringParameter(PickUpPlace.SESSION_NUMBER));
+            assertEquals("sessions-" + (i + 1), inline.names.get(i));
+            assertEquals(inline.names.get(i), pipelined.names.get(i));
+        }
+    }
+
+    @Test
+    void testPipelinedSessionsStopAtParserError() throws Exception {
+        File file = writeSessions(20);
+        SessionsPlace place = new SessionsPlace(5);
+        place.parserFactory = new ParserFactory() {
+            @Override
+            public SessionParser makeSessionParser(SeekableByteChannel channel) {
+                return new LineParser(channel, -1, false) {
+                    @Override
+                    public DecomposedSession getNextSession() throws ParserException {
+                        throw new StackOverflowError("Parser blew up");
+                    }
+                };
+            }
+        };
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(30),
+                    () -> assertThrows(StackOverflowError.class, () -> place.processSessions(file, "sessions")));
+        } finally {
+            place.shutDown();
+        }
+        assertTrue(place.dispatched.isEmpty());
+    }
+
+    private File writeSessions(int count) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("session ").append(i).append('\n');
+        }
+        File file = new File(temporaryDirectory, "sessions.txt");
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private static byte[] sessionsConfig(int workers, String extra) {
+        return ("SERVICE_KEY = \"UNKNOWN.FILE_PICK_UP.INPUT.http://localhost:8001/SessionsPlace$5050\"\n" + "SERVICE_DESCRIPTION = \"test place\"\n"
+                + "SESSION_WORKERS = \"" + workers + "\"\n" + "SESSION_QUEUE_SIZE = \"2\"\n" + extra).getBytes();
+    }
+
+    /**
+     * Keeps dispatched payloads instead of handing them to agents
+     */
+    private static final class SessionsPlace extends PickUpPlace {
+        final List<IBaseDataObject> dispatched = Collections.synchronizedList(new ArrayList<>());
+        final List<String> names = Collections.synchronizedList(new ArrayList<>());
+
+        SessionsPlace(int failAfter) throws IOException {
+            this(failAfter, 3, false);
+        }
+
+        SessionsPlace(int failAfter, int workers, boolean named) throws IOException {
+            this(failAfter, workers, named, "");
+        }
+
+        SessionsPlace(int failAfter, int workers, boolean named, String extraConfig) throws IOException {
+            super(new ByteArrayInputStream(sessionsConfig(workers, extraConfig)));
+            parserFactory = new ParserFactory() {
+                @Override
+                public SessionParser makeSessionParser(SeekableByteChannel channel) {
+                    return new LineParser(channel, failAfter, named);
+                }
+            };
+        }
+
+        @Override
+        protected boolean processDataObject(IBaseDataObject d, String fixedName, File theFile, boolean simpleMode) {
+            dispatched.add(d);
+            names.add(fixedName);
+            return true;
+        }
+    }
+
+    /**
+     * A session per line
+     */
+    private static class LineParser extends SessionParser {
+        private final List<String> lines;
+        private final int failAfter;
+        private final boolean named;
+        private int next = 0;
+
+        LineParser(SeekableByteChannel channel, int failAfter, boolean named) {
+            try {
+                ByteBuffer buf = ByteBuffer.allocate((int) channel.size());
+                while (buf.hasRemaining() && channel.read(buf) != -1) {
+                    // fill the buffer
+                }
+                lines = Arrays.asList(new String(buf.array(), StandardCharsets.US_ASCII).split("\n"));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            this.failAfter = failAfter;
+            this.named = named;
+        }
+
+        @Override
+        public String getSessionName(DecomposedSession session) {
+            // "session i" is named "line-i"
+            return named ? "line-" + new String(session.getData(), StandardCharsets.US_ASCII).substring(8) : null;
+        }
+
+        @Override
+        public DecomposedSession getNextSession() throws ParserException {
+            if (next == failAfter) {
+                throw new ParserException("Bad session " + next);
+            }
+            if (next >= lines.size()) {
+                throw new ParserEOFException("Past end of data");
+            }
+            DecomposedSession d = new DecomposedSession();
+            d.setData(lines.get(next++).getBytes(StandardCharsets.US_ASCII));
+            return d;
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package emissary.pool;
+
+import emissary.core.SiblingProcessor;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AgentExecutionModeTest extends UnitTest {
+
+    @Test
+    void testFromString() {
+        assertEquals(AgentExecutionMode.WORK_STEALING, AgentExecutionMode.fromString("work_stealing", AgentExecutionMode.THREAD));
+        assertEquals(AgentExecutionMode.VIRTUAL, AgentExecutionMode.fromString(" VIRTUAL ", AgentExecutionMode.THREAD));
+        assertEquals(AgentExecutionMode.THREAD, AgentExecutionMode.fromString(null, AgentExecutionMode.THREAD));
+        assertEquals(AgentExecutionMode.THREAD, AgentExecutionMode.fromString("BOGUS", AgentExecutionMode.THREAD));
+    }
+
+    @Test
+    void testThreadModeHasNoExecutor() {
+        assertNull(AgentExecutionMode.THREAD.createExecutor(4));
+    }
+
+    @Test
+    void testWorkStealingExecutor() throws Exception {
+        final ExecutorService executor = AgentExecutionMode.WORK_STEALING.createExecutor(3);
+        try {
+            assertTrue(executor instanceof ForkJoinPool);
+            assertEquals(3, ((ForkJoinPool) executor).getParallelism());
+            final Future<Boolean> daemon = executor.submit(() -> Thread.currentThread().isDaemon());
+            assertTrue(daemon.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testVirtualExecutorRuns() throws Exception {
+        // falls back to work stealing before JDK 21
+        final ExecutorService executor = AgentExecutionMode.VIRTUAL.createExecutor(2);
+        assertNotNull(executor);
+        try {
+            assertEquals("ran", executor.submit(() -> "ran").get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testPoolSizedByInFlightLimit() {
+        final String poolSize = System.clearProperty("agent.poolsize");
+        final MobileAgentFactory factory = new MobileAgentFactory();
+        try {
+            factory.maxInFlight = 7;
+            assertEquals(AgentPool.computePoolSize(), AgentPool.computePoolSize(factory), "Thread mode ignores the in flight limit");
+            factory.setExecutionMode(AgentExecutionMode.WORK_STEALING);
+            assertEquals(7, AgentPool.computePoolSize(factory));
+
+            System.setProperty("agent.poolsize", "3");
+            assertEquals(3, AgentPool.computePoolSize(factory), "Explicit pool size wins");
+        } finally {
+            factory.shutdownExecutor();
+            if (poolSize != null) {
+                System.setProperty("agent.poolsize", poolSize);
+            } else {
+                System.clearProperty("agent.poolsize");
+            }
+        }
+    }
+
+    @Test
+    void testWorkStealingSizedToAgentPool() {
+        final AgentPoolTest.MockAgentFactory factory = new AgentPoolTest.MockAgentFactory();
+        factory.setExecutionMode(AgentExecutionMode.WORK_STEALING);
+        final AgentPool pool = new AgentPool(factory, 12, "TestWorkStealingAgentPool");
+        try {
+            assertEquals(12, ((ForkJoinPool) factory.getExecutor()).getParallelism(), "Every pooled agent can be in flight");
+        } finally {
+            pool.kill();
+            factory.shutdownExecutor();
+        }
+    }
+
+    @Test
+    void testShutdownStopsSiblingProcessor() {
+        final AgentPoolTest.MockAgentFactory factory = new AgentPoolTest.MockAgentFactory();
+        factory.siblingParallel = true;
+        final SiblingProcessor processor = factory.getSiblingProcessor();
+        assertNotNull(processor);
+        factory.shutdownExecutor();
+        assertThrows(RejectedExecutionException.class, () -> processor.process(Collections.nCopies(8, null), batch -> batch));
+        assertNotSame(processor, factory.getSiblingProcessor(), "A new processor is made after shutdown");
+        factory.shutdownExecutor();
+    }
+}
@@ -1,16 +1,30 @@
 package emissary.pool;
 
+import emissary.core.IMobileAgent;
 import emissary.test.core.junit5.UnitTest;
 
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
 
 public class AgentPoolTest extends UnitTest {
 
@@ -42,4 +56,118 @@ public class AgentPoolTest extends UnitTest {
             assertEquals(expectedPoolSize, AgentPool.computePoolSize(maxMemoryInBytes, propertyOverride), "Pool Size Calculation Error");
         }
     }
+
+    @Test
+    void testAsyncBorrowWaitsInLine() throws Exception {
+        final AgentPool pool = new AgentPool(new MockAgentFactory(), 1, "TestAsyncAgentPool");
+        try {
+            final IMobileAgent first = pool.borrowAgentAsync().get(5, TimeUnit.SECONDS);
+
+            final CompletableFuture<IMobileAgent> second = pool.borrowAgentAsync();
+            final CompletableFuture<IMobileAgent> third = pool.borrowAgentAsync();
+            assertFalse(second.isDone());
+            assertEquals(2, pool.getWaitingCount());
+
+            pool.returnAgent(first);
+            assertSame(first, second.get(5, TimeUnit.SECONDS), "First in line gets the returned agent");
+            assertFalse(third.isDone());
+            assertEquals(1, pool.getWaitingCount());
+
+            pool.returnAgent(second.get());
+            assertSame(first, third.get(5, TimeUnit.SECONDS));
+            assertEquals(0, pool.getWaitingCount());
+            assertEquals(3, pool.getWaitTimer().getCount());
+        } finally {
+            pool.kill();
+        }
+    }
+
+    @Test
+    void testCancelledRequestLeavesLine() throws Exception {
+        final AgentPool pool = new AgentPool(new MockAgentFactory(), 1, "TestCancelAgentPool");
+        try {
+            final IMobileAgent agent = pool.borrowAgent();
+            final CompletableFuture<IMobileAgent> gaveUp = pool.borrowAgentAsync();
+            final CompletableFuture<IMobileAgent> waiting = pool.borrowAgentAsync();
+            gaveUp.cancel(false);
+
+            pool.returnAgent(agent);
+            assertSame(agent, waiting.get(5, TimeUnit.SECONDS), "Cancelled request is skipped");
+        } finally {
+            pool.kill();
+        }
+    }
+
+    @Test
+    void testBorrowTimesOut() throws Exception {
+        final AgentPool pool = new AgentPool(new MockAgentFactory(), 1, "TestTimeoutAgentPool");
+        try {
+            final IMobileAgent agent = pool.borrowAgent();
+            assertThrows(NoSuchElementException.class, () -> pool.borrowAgent(Duration.ofMillis(50)));
+            assertEquals(0, pool.getWaitingCount(), "Timed out caller leaves the line");
+
+            pool.returnAgent(agent);
+            assertTrue(pool.isAgentAvailable(), "Agent is not handed to a caller that gave up");
+            assertSame(agent, pool.borrowAgent(Duration.ofMillis(50)));
+        } finally {
+            pool.kill();
+        }
+    }
+
+    @Test
+    void testFillPoolAdmitsWaiters() throws Exception {
+        final AgentPool pool = new AgentPool(new MockAgentFactory(), 1, "TestFillAgentPool");
+        try {
+            pool.borrowAgent();
+            final CompletableFuture<IMobileAgent> waiting = pool.borrowAgentAsync();
+            assertFalse(waiting.isDone());
+
+            pool.setMaxTotal(2);
+            pool.fillPool();
+            assertTrue(waiting.isDone(), "Added agents go to the caller waiting in line");
+            assertEquals(0, pool.getWaitingCount());
+        } finally {
+            pool.kill();
+        }
+    }
+
+    @Test
+    void testKillFailsWaiters() throws Exception {
+        final AgentPool pool = new AgentPool(new MockAgentFactory(), 1, "TestKillAgentPool");
+        pool.borrowAgent();
+        final CompletableFuture<IMobileAgent> waiting = pool.borrowAgentAsync();
+        pool.kill();
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void testRegisterMetrics() throws Exception {
+        final AgentPool pool = new AgentPool(new MockAgentFactory(), 1, "TestMetricsAgentPool");
+        try {
+            final MetricRegistry registry = new MetricRegistry();
+            pool.registerMetrics(registry);
+            pool.registerMetrics(registry);
+            pool.borrowAgent();
+            pool.borrowAgentAsync();
+            assertEquals(1, registry.getTimers().get("TestMetricsAgentPool.wait").getCount());
+            assertEquals(1, registry.getGauges().get("TestMetricsAgentPool.waiting").getValue());
+        } finally {
+            pool.kill();
+        }
+    }
+
+    /**
+     * Produce mock agents without threads
+     */
+    static final class MockAgentFactory extends MobileAgentFactory {
+        MockAgentFactory() {
+            setUseNamespace(false);
+        }
+
+        @Override
+        public PooledObject<IMobileAgent> makeObject() {
+            return new DefaultPooledObject<>(mock(IMobileAgent.class));
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package emissary.pool;
+
+import emissary.core.DataObjectFactory;
+import emissary.core.IBaseDataObject;
+import emissary.core.IMobileAgent;
+import emissary.core.Namespace;
+import emissary.place.IServiceProviderPlace;
+import emissary.test.core.junit5.UnitTest;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MoveSpoolTest extends UnitTest {
+
+    private MoveSpool spool;
+
+    @Override
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (spool != null) {
+            spool.quit();
+            for (Thread t : spool.dispatchers) {
+                t.join(5000);
+            }
+        }
+        Namespace.clear();
+        super.tearDown();
+    }
+
+    @Test
+    void testDispatchRecordsLatency() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        final IMobileAgent agent = mock(IMobileAgent.class);
+        final AgentPool pool = mock(AgentPool.class);
+        when(pool.borrowAgent()).thenReturn(agent);
+
+        spool = new MoveSpool(10, 3, 10L, metrics);
+        spool.pool = pool;
+
+        final IServiceProviderPlace place = mock(IServiceProviderPlace.class);
+        when(place.getKey()).thenReturn("UNKNOWN.TOUPPER.ANALYZE.http://localhost:8001/ToUpperPlace");
+        final IBaseDataObject arriving = DataObjectFactory.getInstance(new byte[0], "arriving");
+        final IBaseDataObject sprouted = DataObjectFactory.getInstance(new byte[0], "sprouted");
+
+        assertTrue(spool.arrive(arriving, place, 1, Collections.emptyList()) >= 0);
+        assertTrue(spool.send(sprouted, place) >= 0);
+
+        verify(agent, timeout(5000)).arrive(arriving, place, 1, Collections.emptyList());
+        verify(agent, timeout(5000)).go(sprouted, place);
+
+        assertEquals(1, metrics.timer(MoveSpool.LATENCY_METRIC_PREFIX + "ARRIVE").getCount());
+        assertEquals(1, metrics.timer(MoveSpool.LATENCY_METRIC_PREFIX + "GO").getCount());
+        assertEquals(2, spool.getEnqueCount());
+        assertEquals(2, spool.getDequeCount());
+        assertEquals(Integer.valueOf(2), spool.getMoveCountMap().get("TOUPPER"));
+    }
+
+    @Test
+    void testFullSpoolRejects() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        final CountDownLatch borrowing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final IMobileAgent agent = mock(IMobileAgent.class);
+        final AgentPool pool = mock(AgentPool.class);
+        when(pool.borrowAgent()).thenAnswer(invocation -> {
+            borrowing.countDown();
+            release.await();
+            return agent;
+        });
+
+        spool = new MoveSpool(2, 1, 10L, metrics);
+        spool.pool = pool;
+
+        // the dispatcher holds the first one while it waits for an agent
+        assertTrue(spool.send(DataObjectFactory.getInstance()) >= 0);
+        assertTrue(borrowing.await(5, TimeUnit.SECONDS));
+        assertEquals(1, spool.send(DataObjectFactory.getInstance()));
+        assertEquals(2, spool.send(DataObjectFactory.getInstance()));
+        assertTrue(spool.isFull());
+
+        assertEquals(MoveSpool.SPOOL_FULL, spool.trySend(DataObjectFactory.getInstance(), null), "Full spool pushes back");
+        assertEquals(1, metrics.counter(MoveSpool.REJECTED_METRIC).getCount());
+        assertEquals(3, spool.getEnqueCount());
+        assertEquals(2, spool.getHighWaterMark());
+
+        release.countDown();
+        verify(agent, timeout(5000).times(3)).go(any(), any());
+        assertFalse(spool.isFull());
+    }
+
+    @Test
+    void testSendWaitsForRoom() throws Exception {
+        final IMobileAgent agent = mock(IMobileAgent.class);
+        final CountDownLatch borrowing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AgentPool pool = mock(AgentPool.class);
+        when(pool.borrowAgent()).thenAnswer(invocation -> {
+            borrowing.countDown();
+            release.await();
+            return agent;
+        });
+
+        spool = new MoveSpool(1, 1, 10L, null);
+        spool.pool = pool;
+
+        spool.send(DataObjectFactory.getInstance());
+        assertTrue(borrowing.await(5, TimeUnit.SECONDS));
+        spool.send(DataObjectFactory.getInstance());
+        assertTrue(spool.isFull());
+
+        final CountDownLatch sent = new CountDownLatch(1);
+        final Thread sender = new Thread(() -> {
+            spool.send(DataObjectFactory.getInstance());
+            sent.countDown();
+        });
+        sender.start();
+        assertFalse(sent.await(100, TimeUnit.MILLISECONDS), "Send waits while the spool is full");
+
+        release.countDown();
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        verify(agent, timeout(5000).times(3)).go(any(), any());
+        assertEquals(3, spool.getEnqueCount());
+    }
+
+    @Test
+    void testFailedStartReturnsAgent() throws Exception {
+        final IMobileAgent agent = mock(IMobileAgent.class);
+        final AgentPool pool = mock(AgentPool.class);
+        when(pool.borrowAgent()).thenReturn(agent);
+        doAnswer(invocation -> {
+            throw new IllegalStateException("no");
+        }).when(agent).arrive(any(), any(), anyInt(), any());
+
+        final IServiceProviderPlace place = mock(IServiceProviderPlace.class);
+        when(place.getKey()).thenReturn("UNKNOWN.TOUPPER.ANALYZE.http://localhost:8001/ToUpperPlace");
+
+        spool = new MoveSpool(10, 1, 10L, null);
+        spool.pool = pool;
+        spool.arrive(DataObjectFactory.getInstance(), place, 0, Collections.emptyList());
+
+        verify(pool, timeout(5000)).returnAgent(agent);
+    }
+}
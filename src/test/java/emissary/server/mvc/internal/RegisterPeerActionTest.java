@@ -1,11 +1,13 @@
 package emissary.server.mvc.internal;
 
+import emissary.client.response.DirectoryDeltaResponseEntity;
 import emissary.config.ConfigUtil;
 import emissary.core.Namespace;
 import emissary.directory.DirectoryPlace;
 import emissary.directory.EmissaryNode;
 import emissary.server.mvc.EndpointTestBase;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,9 +21,12 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.Response;
 
+import static emissary.server.mvc.adapters.DirectoryAdapter.DELTA_EPOCH;
+import static emissary.server.mvc.adapters.DirectoryAdapter.DELTA_SEQUENCE;
 import static emissary.server.mvc.adapters.DirectoryAdapter.DIRECTORY_NAME;
 import static emissary.server.mvc.adapters.DirectoryAdapter.TARGET_DIRECTORY;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -33,6 +38,7 @@ class RegisterPeerActionTest extends EndpointTestBase {
     private static final String PEER_KEY_BAD = "EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://otherRemoteHost:8888/DirectoryPlace";
     private static final String DIRNAME = "EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://localhost:9999/DirectoryPlace$5050";
     private static final String REGISTER_PEER_ACTION = "RegisterPeer.action";
+    private static final String DIRECTORY_DELTA_ACTION = "DirectoryDelta.action";
     private static final String SUCCESS_RESULT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
             + "<directory location=\"EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://localhost:9999/DirectoryPlace\">\r\n"
             + "  <entryList dataid=\"EMISSARY_DIRECTORY_SERVICES::STUDY\">\r\n" + "    <entry>\r\n"
@@ -108,6 +114,44 @@ class RegisterPeerActionTest extends EndpointTestBase {
         }
     }
 
+    @Test
+    void directoryDeltaSinceLastSeen() throws IOException {
+        // test
+        final DirectoryDeltaResponseEntity first;
+        try (Response response = target(DIRECTORY_DELTA_ACTION).request().post(Entity.form(formParams))) {
+            // verify
+            assertEquals(200, response.getStatus());
+            first = new ObjectMapper().readValue(response.readEntity(String.class), DirectoryDeltaResponseEntity.class);
+        }
+        // nothing seen yet so a full transfer is needed
+        assertFalse(first.isComplete());
+        assertTrue(first.getSequence() > 0);
+
+        formParams.put(DELTA_EPOCH, Collections.singletonList(first.getEpoch()));
+        formParams.put(DELTA_SEQUENCE, Collections.singletonList(Long.toString(first.getSequence())));
+        try (Response response = target(DIRECTORY_DELTA_ACTION).request().post(Entity.form(formParams))) {
+            assertEquals(200, response.getStatus());
+            final DirectoryDeltaResponseEntity second =
+                    new ObjectMapper().readValue(response.readEntity(String.class), DirectoryDeltaResponseEntity.class);
+            assertTrue(second.isComplete());
+            assertEquals(first.getEpoch(), second.getEpoch());
+            assertEquals(first.getSequence(), second.getSequence());
+            assertTrue(second.getChanges().isEmpty());
+        }
+    }
+
+    @Test
+    void directoryDeltaFailsUnknownPeer() {
+        formParams.replace(DIRECTORY_NAME, Collections.singletonList(PEER_KEY_BAD));
+
+        // test
+        try (Response response = target(DIRECTORY_DELTA_ACTION).request().post(Entity.form(formParams))) {
+            // verify
+            assertEquals(500, response.getStatus());
+            assertTrue(response.readEntity(String.class).startsWith("Registration failed"));
+        }
+    }
+
     @Test
     void failUnknownPeerRegistration() {
         MultivaluedHashMap<String, String> newFormParams = new MultivaluedHashMap<>();
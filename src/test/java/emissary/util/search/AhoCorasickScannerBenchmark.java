@@ -0,0 +1,101 @@
+package emissary.util.search;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the {@link KeywordAutomaton} behind {@link AhoCorasickScanner} against {@link MultiKeywordScanner}. Not run as
+ * part of the tests.
+ */
+public final class AhoCorasickScannerBenchmark {
+
+    private AhoCorasickScannerBenchmark() {}
+
+    /**
+     * Time case insensitive scanning, with <code>[keywordFile dataFile] [rounds]</code>. Lower casing a copy of the data
+     * for {@link MultiKeywordScanner} or a case sensitive automaton is compared with scanning the data as it is with a case
+     * folding automaton, for UTF-8 keywords and for UTF-8, UTF-16LE and UTF-16BE keywords. Without files a dictionary of
+     * random words is looked for in 64MB of random text.
+     */
+    public static void main(final String[] args) throws Exception {
+        final String[] keywords;
+        final byte[] data;
+        if (args.length > 1) {
+            final List<String> lines = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+            keywords = lines.stream().filter(l -> !l.isEmpty()).toArray(String[]::new);
+            data = Files.readAllBytes(Paths.get(args[1]));
+        } else {
+            final Random random = new Random(1);
+            keywords = new String[2000];
+            for (int i = 0; i < keywords.length; i++) {
+                keywords[i] = randomWord(random, 4 + random.nextInt(8));
+            }
+            final StringBuilder text = new StringBuilder(64 * 1024 * 1024);
+            while (text.length() < 64 * 1024 * 1024) {
+                text.append(random.nextInt(50) == 0 ? keywords[random.nextInt(keywords.length)] : randomWord(random, 1 + random.nextInt(10)));
+                text.append(random.nextInt(8) == 0 ? '\n' : ' ');
+            }
+            data = text.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        final int rounds = args.length == 1 ? Integer.parseInt(args[0]) : args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        final String[] lowered = new String[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            lowered[i] = keywords[i].toLowerCase();
+        }
+        final MultiKeywordScanner tree = new MultiKeywordScanner();
+        tree.loadKeywords(lowered);
+        final KeywordAutomaton sensitive = KeywordAutomaton.build(lowered);
+        final KeywordAutomaton folding = KeywordAutomaton.build(keywords, false);
+        final KeywordAutomaton charsets =
+                KeywordAutomaton.build(keywords, false, StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE);
+        System.out.println(keywords.length + " keywords, " + data.length + " bytes, " + folding.getStateCount() + " states, "
+                + charsets.getStateCount() + " states for three charsets");
+
+        final KeywordAutomaton.HitArray hits = new KeywordAutomaton.HitArray();
+        for (int round = 0; round < rounds; round++) {
+            System.out.println("Round " + (round + 1));
+            long t = System.nanoTime();
+            int found = tree.findAll(toLowerCase(data)).size();
+            report("lower case copy, tree scanner", System.nanoTime() - t, data.length, found);
+
+            t = System.nanoTime();
+            hits.clear();
+            final byte[] copy = toLowerCase(data);
+            found = sensitive.scan(copy, 0, copy.length, hits);
+            report("lower case copy, automaton", System.nanoTime() - t, data.length, found);
+
+            t = System.nanoTime();
+            hits.clear();
+            found = folding.scan(data, 0, data.length, hits);
+            report("case folding automaton", System.nanoTime() - t, data.length, found);
+
+            t = System.nanoTime();
+            hits.clear();
+            found = charsets.scan(data, 0, data.length, hits);
+            report("case folding, three charsets", System.nanoTime() - t, data.length, found);
+        }
+    }
+
+    private static byte[] toLowerCase(final byte[] data) {
+        return KeywordAutomaton.toLowerCase(data.clone());
+    }
+
+    private static String randomWord(final Random random, final int length) {
+        final char[] word = new char[length];
+        for (int i = 0; i < length; i++) {
+            final char c = (char) ('a' + random.nextInt(26));
+            word[i] = random.nextBoolean() ? Character.toUpperCase(c) : c;
+        }
+        return new String(word);
+    }
+
+    private static void report(final String what, final long nanos, final int length, final int hits) {
+        System.out.printf("  %-30s %6d ms %8.1f MB/s %9d hits%n", what, TimeUnit.NANOSECONDS.toMillis(nanos),
+                length / (nanos / 1e9) / (1024 * 1024), hits);
+    }
+}
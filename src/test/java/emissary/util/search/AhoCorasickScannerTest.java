@@ -0,0 +1,153 @@
+package emissary.util.search;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AhoCorasickScannerTest extends UnitTest {
+
+    private final String[] defaultKeywords = {"fox", "dog"};
+    private final String defaultData = "the quick brown fox jumped over the lazy dog";
+
+    @Test
+    void testFindAll() {
+        AhoCorasickScanner scanner = new AhoCorasickScanner();
+        scanner.loadKeywords(defaultKeywords);
+        HitList hits = scanner.findAll(defaultData.getBytes());
+        assertEquals(2, hits.size());
+        assertEquals(0, hits.get(0).getID());
+        assertEquals(16, hits.get(0).getOffset());
+        assertEquals(1, hits.get(1).getID());
+        assertEquals(41, hits.get(1).getOffset());
+
+        hits = scanner.findAll(null);
+        assertTrue(hits.isEmpty());
+    }
+
+    @Test
+    void testFindAllStart() {
+        AhoCorasickScanner scanner = new AhoCorasickScanner();
+        scanner.loadKeywords(defaultKeywords);
+        HitList hits = scanner.findAll(defaultData.getBytes(), 28);
+        assertEquals(1, hits.size());
+        assertEquals(1, hits.get(0).getID());
+        assertEquals(41, hits.get(0).getOffset());
+
+        hits = scanner.findAll(null, 0);
+        assertTrue(hits.isEmpty());
+    }
+
+    @Test
+    void testFindAllStartStop() {
+        AhoCorasickScanner scanner = new AhoCorasickScanner();
+        scanner.loadKeywords(defaultKeywords);
+        HitList hits = scanner.findAll(defaultData.getBytes(), 0, 24);
+        assertEquals(1, hits.size());
+        assertEquals(0, hits.get(0).getID());
+        assertEquals(16, hits.get(0).getOffset());
+
+        hits = scanner.findAll(null, 0, 0);
+        assertTrue(hits.isEmpty());
+    }
+
+    @Test
+    void testFindNext() {
+        AhoCorasickScanner scanner = new AhoCorasickScanner();
+        scanner.loadKeywords(defaultKeywords);
+        HitList hits = scanner.findNext(defaultData.getBytes());
+        assertEquals(1, hits.size());
+        assertEquals(0, hits.get(0).getID());
+        assertEquals(16, hits.get(0).getOffset());
+
+        hits = scanner.findNext(defaultData.getBytes());
+        assertEquals(1, hits.size());
+        assertEquals(1, hits.get(0).getID());
+        assertEquals(41, hits.get(0).getOffset());
+
+        hits = scanner.findNext(null);
+        assertTrue(hits.isEmpty());
+    }
+
+    @Test
+    void testFindNextStart() {
+        AhoCorasickScanner scanner = new AhoCorasickScanner();
+        scanner.loadKeywords(defaultKeywords);
+        HitList hits = scanner.findNext(defaultData.getBytes(), 28);
+        assertEquals(1, hits.size());
+        assertEquals(1, hits.get(0).getID());
+        assertEquals(41, hits.get(0).getOffset());
+
+        hits = scanner.findNext(null, 28);
+        assertTrue(hits.isEmpty());
+    }
+
+    @Test
+    void testFindNextStartStop() {
+        AhoCorasickScanner scanner = new AhoCorasickScanner();
+        scanner.loadKeywords(defaultKeywords);
+        HitList hits = scanner.findNext(defaultData.getBytes(), 0, 24);
+        assertEquals(1, hits.size());
+        assertEquals(0, hits.get(0).getID());
+        assertEquals(16, hits.get(0).getOffset());
+
+        hits = scanner.findNext(null, 0, 0);
+        assertTrue(hits.isEmpty());
+    }
+
+    @Test
+    void testLoadKeywordsReplacesAutomaton() {
+        AhoCorasickScanner scanner = new AhoCorasickScanner();
+        scanner.loadKeywords(defaultKeywords);
+        KeywordAutomaton first = scanner.getAutomaton();
+
+        String[] keywords = {"quick", "brown", "lazy"};
+        scanner.loadKeywords(keywords);
+        assertTrue(first != scanner.getAutomaton());
+        HitList hits = scanner.findAll(defaultData.getBytes());
+
+        assertEquals(3, hits.size());
+        assertEquals(0, hits.get(0).getID());
+        assertEquals(4, hits.get(0).getOffset());
+        assertEquals(1, hits.get(1).getID());
+        assertEquals(10, hits.get(1).getOffset());
+        assertEquals(2, hits.get(2).getID());
+        assertEquals(36, hits.get(2).getOffset());
+    }
+
+    @Test
+    void testFindNextOverlapping() {
+        AhoCorasickScanner scanner = new AhoCorasickScanner(KeywordAutomaton.build(new String[] {"she", "he", "hers"}));
+        byte[] data = "ushers".getBytes();
+        HitList hits = scanner.findNext(data);
+        assertEquals(2, hits.size());
+        assertEquals(1, hits.get(0).getID());
+        assertEquals(2, hits.get(0).getOffset());
+        assertEquals(0, hits.get(1).getID());
+        assertEquals(1, hits.get(1).getOffset());
+
+        hits = scanner.findNext();
+        assertEquals(1, hits.size());
+        assertEquals(2, hits.get(0).getID());
+        assertEquals(2, hits.get(0).getOffset());
+
+        assertTrue(scanner.findNext().isEmpty());
+        assertTrue(scanner.findNext(data, 0, 5).size() == 2);
+        assertTrue(scanner.findNext(data, 3, 5).isEmpty(), "Keywords must lie wholly between start and stop");
+    }
+
+    @Test
+    void testFindAllToSink() {
+        AhoCorasickScanner scanner = new AhoCorasickScanner();
+        scanner.loadKeywords(defaultKeywords);
+        KeywordAutomaton.HitArray hits = new KeywordAutomaton.HitArray();
+        byte[] data = defaultData.getBytes();
+        assertEquals(2, scanner.findAll(data, 0, data.length, hits));
+        assertEquals(1, scanner.findAll(data, 17, data.length, hits), "Keyword starting before the start is not a hit");
+        assertEquals(3, hits.size());
+        assertEquals(41, hits.getOffset(2));
+        assertEquals(1, hits.getId(2));
+    }
+}
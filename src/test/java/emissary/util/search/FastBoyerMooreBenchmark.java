@@ -0,0 +1,56 @@
+package emissary.util.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times {@link FastBoyerMoore} with and without its word at a time scan. Not run as part of the tests.
+ */
+public final class FastBoyerMooreBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(FastBoyerMooreBenchmark.class);
+
+    private FastBoyerMooreBenchmark() {}
+
+    /**
+     * Time {@link FastBoyerMoore#scan(byte[], int, int, java.util.Collection)} with and without the word at a time scan on
+     * random text, with <code>[MB]</code> of it, 16 by default
+     */
+    public static void main(final String[] args) {
+        final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        final Random random = new Random(1);
+        final String letters = "etaoinshrdlucmfwypvbgkqjxz ETAOINSHRDLU  \n";
+        final byte[] data = new byte[megabytes * 1024 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) letters.charAt(random.nextInt(letters.length()));
+        }
+        final String[][] keywordSets = {{"k=", "q:"}, {"\nFrom:", "\nTo:"}, {"zq", "xj", "kv", "qq"}, {"ab", "cd", "ef", "gh"}};
+        try {
+            for (int round = 1; round <= 3; round++) {
+                System.out.println("Round " + round);
+                for (final String[] keywordSet : keywordSets) {
+                    final FastBoyerMoore words = new FastBoyerMoore(keywordSet);
+                    final FastBoyerMoore plain = new FastBoyerMoore(words);
+                    plain.endBytes = null;
+                    final List<int[]> hits = new ArrayList<>();
+                    long start = System.nanoTime();
+                    words.scan(data, 0, data.length, hits);
+                    final long wordNanos = System.nanoTime() - start;
+                    hits.clear();
+                    start = System.nanoTime();
+                    plain.scan(data, 0, data.length, hits);
+                    final long plainNanos = System.nanoTime() - start;
+                    System.out.printf("  %-28s %8.0f MB/s word scan %8.0f MB/s without %8d hits%n",
+                            Arrays.toString(keywordSet).replace("\n", "\\n"), megabytes / (wordNanos / 1e9), megabytes / (plainNanos / 1e9),
+                            hits.size());
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Exception in benchmark", e);
+        }
+    }
+}
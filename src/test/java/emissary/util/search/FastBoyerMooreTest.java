@@ -6,8 +6,11 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.fail;
 
 class FastBoyerMooreTest extends UnitTest {
@@ -36,4 +39,31 @@ class FastBoyerMooreTest extends UnitTest {
         }
     }
 
+    @Test
+    void testWordScanFindsSameHits() throws Exception {
+        final FastBoyerMoore scanner = new FastBoyerMoore(new String[] {"ab", "cab", "ba", "abba", "ac"});
+        assertNotNull(scanner.endBytes, "Few end bytes and short keywords should use the word scan");
+        final FastBoyerMoore plain = new FastBoyerMoore(scanner);
+        plain.endBytes = null;
+
+        final Random random = new Random(13);
+        final byte[] data = new byte[5000];
+        for (int i = 0; i < data.length; i++) {
+            // mostly bytes that end nothing, some with the high bit set
+            data[i] = (byte) "abcxyz. \u00e1\u00e2".charAt(random.nextInt(10));
+            if (random.nextInt(4) == 0) {
+                data[i] = (byte) "abcxyz. ".charAt(random.nextInt(8));
+            }
+        }
+        for (final int[] range : new int[][] {{0, data.length}, {17, 4000}, {1, 9}}) {
+            final List<int[]> expected = new ArrayList<>();
+            plain.scan(data, range[0], range[1], expected);
+            final List<int[]> found = new ArrayList<>();
+            scanner.scan(data, range[0], range[1], found);
+            assertEquals(expected.size(), found.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), found.get(i));
+            }
+        }
+    }
 }
@@ -0,0 +1,190 @@
+package emissary.util.search;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeywordAutomatonTest extends UnitTest {
+
+    @Test
+    void testOverlappingKeywords() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(new String[] {"he", "she", "his", "hers", "", "he"});
+        KeywordAutomaton.HitArray hits = new KeywordAutomaton.HitArray(1);
+        byte[] data = "ushers ahishe".getBytes(StandardCharsets.UTF_8);
+        assertEquals(8, automaton.scan(data, 0, data.length, hits));
+        assertEquals("[2:0, 2:5, 1:1, 2:3, 8:2, 11:0, 11:5, 10:1]", describe(hits));
+        assertEquals(6, automaton.getKeywordCount());
+        assertEquals(3, automaton.getKeywordLength(1));
+    }
+
+    @Test
+    void testCaseFoldingAndCharsets() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(new String[] {"Fox", "dog", "lazy dog"}, false, StandardCharsets.UTF_8,
+                StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE, StandardCharsets.US_ASCII);
+        assertFalse(automaton.isCaseSensitive());
+        assertEquals(9, automaton.getPatternCount(), "ASCII is the same as UTF-8 and is not added again");
+
+        String text = "the FOX and the Lazy DOG";
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        KeywordAutomaton.HitArray hits = new KeywordAutomaton.HitArray();
+        assertEquals(3, automaton.scan(utf8, 0, utf8.length, hits));
+        assertEquals("[4:0, 21:1, 16:2]", describe(hits));
+
+        for (Charset charset : new Charset[] {StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE}) {
+            byte[] bytes = text.getBytes(charset);
+            hits.clear();
+            automaton.scan(bytes, 0, bytes.length, hits);
+            List<String> found = Arrays.asList(describe(hits).replaceAll("[\\[\\] ]", "").split(","));
+            assertTrue(found.containsAll(Arrays.asList("8:0", "42:1", "32:2")), charset + " " + found);
+        }
+
+        KeywordAutomaton sensitive = KeywordAutomaton.build(new String[] {"Fox", "dog"});
+        assertTrue(sensitive.isCaseSensitive());
+        hits.clear();
+        assertEquals(0, sensitive.scan(utf8, 0, utf8.length, hits));
+    }
+
+    @Test
+    void testAgreesWithNaiveSearch() {
+        Random random = new Random(17);
+        byte[][] keywords = new byte[300][];
+        for (int i = 0; i < keywords.length; i++) {
+            keywords[i] = new byte[1 + random.nextInt(6)];
+            for (int j = 0; j < keywords[i].length; j++) {
+                // small alphabet so keywords overlap and repeat, including high bytes
+                keywords[i][j] = (byte) (0xfc + random.nextInt(4));
+            }
+        }
+        byte[] data = new byte[5000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (0xfc + random.nextInt(4));
+        }
+
+        KeywordAutomaton automaton = KeywordAutomaton.build(keywords);
+        KeywordAutomaton.HitArray hits = new KeywordAutomaton.HitArray();
+        automaton.scan(data, 0, data.length, hits);
+        assertEquals(naive(keywords, data), describe(hits));
+    }
+
+    @Test
+    void testStreamingAcrossPieces() throws Exception {
+        Random random = new Random(3);
+        String[] keywords = {"abc", "bcd", "cdab", "dabcd", "a"};
+        byte[] data = new byte[KeywordAutomaton.CHANNEL_BUFFER_SIZE * 2 + 123];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        KeywordAutomaton automaton = KeywordAutomaton.build(keywords);
+        KeywordAutomaton.HitArray whole = new KeywordAutomaton.HitArray();
+        automaton.scan(data, 0, data.length, whole);
+
+        KeywordAutomaton.Cursor cursor = automaton.newCursor();
+        KeywordAutomaton.HitArray pieces = new KeywordAutomaton.HitArray();
+        int at = 0;
+        while (at < data.length) {
+            int len = Math.min(data.length - at, 1 + random.nextInt(7));
+            if (random.nextBoolean()) {
+                cursor.scan(data, at, at + len, pieces);
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(len);
+                buffer.put(data, at, len);
+                buffer.flip();
+                cursor.scan(buffer, pieces);
+            }
+            at += len;
+        }
+        assertEquals(data.length, cursor.getPosition());
+        assertEquals(describe(whole), describe(pieces));
+
+        KeywordAutomaton.HitArray channel = new KeywordAutomaton.HitArray();
+        assertEquals(whole.size(), automaton.scan(Channels.newChannel(new ByteArrayInputStream(data)), channel));
+        assertEquals(describe(whole), describe(channel));
+    }
+
+    @Test
+    void testSharedAcrossThreads() throws Exception {
+        Random random = new Random(5);
+        String[] keywords = new String[100_000];
+        for (int i = 0; i < keywords.length; i++) {
+            keywords[i] = Integer.toString(random.nextInt(Integer.MAX_VALUE), 36);
+        }
+        KeywordAutomaton automaton = KeywordAutomaton.build(keywords);
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Character.forDigit(random.nextInt(36), 36);
+        }
+        KeywordAutomaton.HitArray expected = new KeywordAutomaton.HitArray();
+        automaton.scan(data, 0, data.length, expected);
+        String expectedHits = describe(expected);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(pool.submit(() -> {
+                    KeywordAutomaton.HitArray hits = new KeywordAutomaton.HitArray();
+                    KeywordAutomaton.Cursor cursor = automaton.newCursor();
+                    for (int at = 0; at < data.length; at += 4096) {
+                        cursor.scan(data, at, Math.min(data.length, at + 4096), hits);
+                    }
+                    return describe(hits);
+                }));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expectedHits, result.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static String describe(KeywordAutomaton.HitArray hits) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < hits.size(); i++) {
+            list.add(hits.getOffset(i) + ":" + hits.getId(i));
+        }
+        return list.toString();
+    }
+
+    /**
+     * Hits ordered by end, then shortest first, then by id
+     */
+    private static String naive(byte[][] keywords, byte[] data) {
+        List<String> list = new ArrayList<>();
+        for (int end = 1; end <= data.length; end++) {
+            for (int len = 1; len <= end; len++) {
+                for (int id = 0; id < keywords.length; id++) {
+                    byte[] k = keywords[id];
+                    if (k.length != len) {
+                        continue;
+                    }
+                    boolean match = true;
+                    for (int j = 0; j < len && match; j++) {
+                        match = data[end - len + j] == k[j];
+                    }
+                    if (match) {
+                        list.add((end - len) + ":" + id);
+                    }
+                }
+            }
+        }
+        return list.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package emissary.util.search;
+
+import java.util.Random;
+
+/**
+ * Times {@link KeywordScanner} on patterns either side of {@link KeywordScanner#WORD_SCAN_LIMIT}. Not run as part of
+ * the tests.
+ */
+public final class KeywordScannerBenchmark {
+
+    private KeywordScannerBenchmark() {}
+
+    /**
+     * Time finding patterns of several lengths, with and without case, in payloads of several sizes. Patterns up to
+     * {@link KeywordScanner#WORD_SCAN_LIMIT} bytes use the word at a time scan and longer ones Boyer-Moore-Horspool. Each
+     * search looks for a pattern that is only at the end of random text. Takes an optional number of rounds.
+     */
+    public static void main(final String[] args) {
+        final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        final Random random = new Random(1);
+        final String letters = "etaoinshrdlucmfwypvbgkqjxz ETAOINSHRDLU  \n";
+        final int[] sizes = {64, 1024, 64 * 1024, 4 * 1024 * 1024};
+        final int[] lengths = {1, 2, 4, 8, 16, 32, 64};
+        final KeywordScanner scanner = new KeywordScanner();
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("Round " + round);
+            System.out.printf("  %9s %7s %5s %10s %9s%n", "size", "pattern", "case", "search", "MB/s");
+            for (final int size : sizes) {
+                final byte[] data = new byte[size];
+                for (int i = 0; i < size; i++) {
+                    data[i] = (byte) letters.charAt(random.nextInt(letters.length()));
+                }
+                for (final int length : lengths) {
+                    if (length > size) {
+                        continue;
+                    }
+                    // starting with a common letter so its first byte turns up often
+                    final byte[] pattern = new byte[length];
+                    pattern[0] = (byte) (length == 1 ? '0' : 'e');
+                    for (int i = 1; i < length; i++) {
+                        pattern[i] = (byte) ('0' + random.nextInt(10));
+                    }
+                    System.arraycopy(pattern, 0, data, size - length, length);
+                    for (final boolean caseSensitive : new boolean[] {true, false}) {
+                        scanner.resetData(data);
+                        scanner.setCaseSensitive(caseSensitive);
+                        final int searches = Math.max(1, (64 * 1024 * 1024) / size);
+                        System.out.printf("  %9d %7d %5s %10s %9.0f%n", size, length, caseSensitive ? "yes" : "no",
+                                length <= KeywordScanner.WORD_SCAN_LIMIT ? "word" : "horspool", time(scanner, pattern, searches, size));
+                    }
+                }
+            }
+        }
+    }
+
+    private static double time(final KeywordScanner scanner, final byte[] pattern, final int searches, final int size) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < searches; i++) {
+            if (scanner.indexOf(pattern) != size - pattern.length) {
+                throw new IllegalStateException("Pattern not found where it was put");
+            }
+        }
+        return (double) searches * size / (1024 * 1024) / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -177,4 +178,53 @@ class KeywordScannerTest extends UnitTest {
         // we can't continue from last successful index returned, a bad stop ends it
         assertEquals(-1, this.ks.findNext());
     }
+
+    @Test
+    void testWordScanMatchesPlainSearch() {
+        Random random = new Random(11);
+        for (int round = 0; round < 2000; round++) {
+            // a small alphabet of mixed case letters and high bytes so patterns turn up, often more than once
+            byte[] data = new byte[random.nextInt(200)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) "aAbB\n\u00e1\u00c1".charAt(random.nextInt(7));
+            }
+            // either side of the limit, so Boyer-Moore-Horspool is checked too
+            byte[] pattern = new byte[1 + random.nextInt(2 * KeywordScanner.WORD_SCAN_LIMIT)];
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = (byte) "aAbB\n\u00e1\u00c1".charAt(random.nextInt(random.nextBoolean() ? 2 : 7));
+            }
+            boolean caseSensitive = random.nextBoolean();
+            int start = random.nextInt(10) - 2;
+            int stop = random.nextInt(data.length + 2);
+
+            this.ks.resetData(data);
+            this.ks.setCaseSensitive(caseSensitive);
+            int expected = (start >= data.length || stop > data.length) ? -1 : plainIndexOf(data, pattern, Math.max(start, 0), stop, caseSensitive);
+            assertEquals(expected, this.ks.indexOf(pattern, start, stop), "Round " + round);
+            while (expected >= 0) {
+                expected = plainIndexOf(data, pattern, expected + 1, data.length - 1, caseSensitive);
+                assertEquals(expected, this.ks.findNext(), "Round " + round);
+            }
+        }
+    }
+
+    private static int plainIndexOf(byte[] data, byte[] pattern, int start, int stop, boolean caseSensitive) {
+        for (int pos = start; pos + pattern.length <= stop; pos++) {
+            int i = 0;
+            while (i < pattern.length && sameByte(data[pos + i], pattern[i], caseSensitive)) {
+                i++;
+            }
+            if (i == pattern.length) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean sameByte(byte a, byte b, boolean caseSensitive) {
+        if (caseSensitive || a == b) {
+            return a == b;
+        }
+        return a >= 'A' && a <= 'Z' ? a + 32 == b : b >= 'A' && b <= 'Z' && b + 32 == a;
+    }
 }
@@ -114,4 +114,20 @@ class MultiKeywordScannerTest {
         assertEquals(2, hits.get(2).getID());
         assertEquals(36, hits.get(2).getOffset());
     }
+
+    @Test
+    void testCaseInsensitive() {
+        MultiKeywordScanner multiKeywordScanner = new MultiKeywordScanner(false);
+        multiKeywordScanner.loadKeywords(new String[] {"FOX", "Dog"});
+        HitList hits = multiKeywordScanner.findAll("The Quick Brown Fox Jumped Over The Lazy DOG".getBytes());
+        assertEquals(2, hits.size());
+        assertEquals(0, hits.get(0).getID());
+        assertEquals(16, hits.get(0).getOffset());
+        assertEquals(1, hits.get(1).getID());
+        assertEquals(41, hits.get(1).getOffset());
+
+        hits = multiKeywordScanner.findNext(defaultData.getBytes(), 20);
+        assertEquals(1, hits.size());
+        assertEquals(41, hits.get(0).getOffset());
+    }
 }